@@ -73,6 +73,30 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_addClause
 	return solverPtr->okay();
 }
 
+/*
+ * Class:     kodkod_engine_satlab_CryptoMiniSat
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_addClauses
+(JNIEnv * env, jobject, jlong solver, jintArray flat, jint count) {
+	jint* buf = (jint*) env->GetPrimitiveArrayCritical(flat, 0);
+	Solver* solverPtr = ((Solver*)solver);
+	vec<Lit> lits;
+	jint added = 0;
+	for(jint c = 0, i = 0; c < count && solverPtr->okay(); ++c, ++i) {
+		lits.clear();
+		for(; buf[i] != 0; ++i) {
+			int lit = buf[i];
+			lits.push((lit > 0) ?  Lit(abs(lit)-1, false) : Lit(abs(lit)-1, true));
+		}
+		solverPtr->addClause(lits);
+		if (solverPtr->okay()) added++;
+	}
+	env->ReleasePrimitiveArrayCritical(flat, buf, JNI_ABORT);
+	return added;
+}
+
 /*
  * Class:     kodkod_engine_satlab_CryptoMiniSat
  * Method:    solve
@@ -80,7 +104,40 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_addClause
  */
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_solve
 (JNIEnv *, jobject, jlong solver) {
-	return ((Solver*)solver)->solve()==l_True;
+	Solver* solverPtr = ((Solver*)solver);
+	solverPtr->needToInterrupt = false;
+	return solverPtr->solve()==l_True;
+}
+
+/*
+ * Class:     kodkod_engine_satlab_CryptoMiniSat
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_solveAssuming
+(JNIEnv * env, jobject, jlong solver, jintArray assumptions) {
+	jsize length = env->GetArrayLength(assumptions);
+	jint* buf = env->GetIntArrayElements(assumptions, JNI_FALSE);
+	Solver* solverPtr = ((Solver*)solver);
+	vec<Lit> lits;
+	for(int i = 0; i < length; ++i) {
+		int lit = *(buf+i);
+		int var = abs(lit)-1;
+		lits.push((lit > 0) ?  Lit(var, false) : Lit(var, true));
+	}
+	env->ReleaseIntArrayElements(assumptions, buf, JNI_ABORT);
+	solverPtr->needToInterrupt = false;
+	return solverPtr->solve(lits)==l_True;
+}
+
+/*
+ * Class:     kodkod_engine_satlab_CryptoMiniSat
+ * Method:    interrupt
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_interrupt
+(JNIEnv *, jobject, jlong solver) {
+	((Solver*)solver)->needToInterrupt = true;
 }
 
 /*
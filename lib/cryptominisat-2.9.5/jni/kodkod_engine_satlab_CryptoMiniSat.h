@@ -39,6 +39,14 @@ JNIEXPORT void JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_addVariables
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_addClause
   (JNIEnv *, jobject, jlong, jintArray);
 
+/*
+ * Class:     kodkod_engine_satlab_CryptoMiniSat
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_addClauses
+  (JNIEnv *, jobject, jlong, jintArray, jint);
+
 /*
  * Class:     kodkod_engine_satlab_CryptoMiniSat
  * Method:    solve
@@ -47,6 +55,22 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_addClause
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_solve
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     kodkod_engine_satlab_CryptoMiniSat
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_solveAssuming
+  (JNIEnv *, jobject, jlong, jintArray);
+
+/*
+ * Class:     kodkod_engine_satlab_CryptoMiniSat
+ * Method:    interrupt
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_kodkod_engine_satlab_CryptoMiniSat_interrupt
+  (JNIEnv *, jobject, jlong);
+
 /*
  * Class:     kodkod_engine_satlab_CryptoMiniSat
  * Method:    valueOf
@@ -65,6 +65,30 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_addClause
 	return solverPtr->okay();
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Glucose_addClauses
+(JNIEnv * env, jobject, jlong solver, jintArray flat, jint count) {
+	jint* buf = (jint*) env->GetPrimitiveArrayCritical(flat, 0);
+	Solver* solverPtr = ((Solver*)solver);
+	vec<Lit> lits;
+	jint added = 0;
+	for(jint c = 0, i = 0; c < count && solverPtr->okay(); ++c, ++i) {
+		lits.clear();
+		for(; buf[i] != 0; ++i) {
+			int var = buf[i];
+			lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+		}
+		solverPtr->addClause(lits);
+		if (solverPtr->okay()) added++;
+	}
+	env->ReleasePrimitiveArrayCritical(flat, buf, JNI_ABORT);
+	return added;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Glucose
  * Method:    solve
@@ -73,7 +97,39 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_addClause
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_solve
 (JNIEnv *, jobject, jlong solver) {
 	//std::cout << "-> p cnf " << ((Solver*)solver)->nVars() << " " <<  ((Solver*)solver)->nClauses() << "\n";
-	return ((Solver*)solver)->solve();
+	Solver* solverPtr = ((Solver*)solver);
+	solverPtr->clearInterrupt();
+	return solverPtr->solve();
+}
+
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_solveAssuming
+(JNIEnv * env, jobject, jlong solver, jintArray assumptions) {
+	jsize length = env->GetArrayLength(assumptions);
+	jint* buf = env->GetIntArrayElements(assumptions, JNI_FALSE);
+	Solver* solverPtr = ((Solver*)solver);
+	vec<Lit> lits;
+	for(int i = 0; i < length; ++i) {
+		int var = *(buf+i);
+		lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+	}
+	env->ReleaseIntArrayElements(assumptions, buf, JNI_ABORT);
+	solverPtr->clearInterrupt();
+	return solverPtr->solve(lits);
+}
+
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    interrupt
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_kodkod_engine_satlab_Glucose_interrupt
+(JNIEnv *, jobject, jlong solver) {
+	((Solver*)solver)->interrupt();
 }
 
 /*
@@ -39,6 +39,14 @@ JNIEXPORT void JNICALL Java_kodkod_engine_satlab_Glucose_addVariables
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_addClause
   (JNIEnv *, jobject, jlong, jintArray);
 
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Glucose_addClauses
+  (JNIEnv *, jobject, jlong, jintArray, jint);
+
 /*
  * Class:     kodkod_engine_satlab_Glucose
  * Method:    solve
@@ -47,6 +55,22 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_addClause
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_solve
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Glucose_solveAssuming
+  (JNIEnv *, jobject, jlong, jintArray);
+
+/*
+ * Class:     kodkod_engine_satlab_Glucose
+ * Method:    interrupt
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_kodkod_engine_satlab_Glucose_interrupt
+  (JNIEnv *, jobject, jlong);
+
 /*
  * Class:     kodkod_engine_satlab_Glucose
  * Method:    valueOf
@@ -62,6 +62,25 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_addClause
 	return JNI_TRUE;
 }
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Lingeling_addClauses
+  (JNIEnv * env, jobject obj, jlong lgl, jintArray flat, jint count) {
+	jint* buf = (jint*) (*env)->GetPrimitiveArrayCritical(env, flat, 0);
+	LGL* lglPtr = (LGL*)lgl;
+	jint c, i;
+	for(c = 0, i = 0; c < count; i++) {
+		int lit = buf[i];
+		lgladd (lglPtr, lit);
+		if (lit == 0) c++;
+	}
+	(*env)->ReleasePrimitiveArrayCritical(env, flat, buf, JNI_ABORT);
+	return count;
+}
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    solve
@@ -39,6 +39,14 @@ JNIEXPORT void JNICALL Java_kodkod_engine_satlab_Lingeling_addVariables
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_Lingeling_addClause
   (JNIEnv *, jobject, jlong, jintArray);
 
+/*
+ * Class:     kodkod_engine_satlab_Lingeling
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_Lingeling_addClauses
+  (JNIEnv *, jobject, jlong, jintArray, jint);
+
 /*
  * Class:     kodkod_engine_satlab_Lingeling
  * Method:    solve
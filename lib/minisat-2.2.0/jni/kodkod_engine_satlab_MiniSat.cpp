@@ -73,6 +73,30 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_addClause
     return solverPtr->okay();
  }
 
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    addClauses
+ * Signature: (J[II)I
+ */
+JNIEXPORT jint JNICALL Java_kodkod_engine_satlab_MiniSat_addClauses
+  (JNIEnv * env, jobject, jlong solver, jintArray flat, jint count) {
+    jint* buf = (jint*) env->GetPrimitiveArrayCritical(flat, 0);
+    Solver* solverPtr = ((Solver*)solver);
+    vec<Lit> lits;
+    jint added = 0;
+    for(jint c = 0, i = 0; c < count && solverPtr->okay(); ++c, ++i) {
+        lits.clear();
+        for(; buf[i] != 0; ++i) {
+            int var = buf[i];
+            lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+        }
+        solverPtr->addClause(lits);
+        if (solverPtr->okay()) added++;
+    }
+    env->ReleasePrimitiveArrayCritical(flat, buf, JNI_ABORT);
+    return added;
+}
+
 /*
  * Class:     kodkod_engine_satlab_MiniSat
  * Method:    solve
@@ -80,7 +104,39 @@ JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_addClause
  */
 JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_solve
   (JNIEnv *, jobject, jlong solver) {
-   return ((Solver*)solver)->solve();
+   Solver* solverPtr = ((Solver*)solver);
+   solverPtr->clearInterrupt();
+   return solverPtr->solve();
+  }
+
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    solveAssuming
+ * Signature: (J[I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_kodkod_engine_satlab_MiniSat_solveAssuming
+  (JNIEnv * env, jobject, jlong solver, jintArray assumptions) {
+    jsize length = env->GetArrayLength(assumptions);
+    jint* buf = env->GetIntArrayElements(assumptions, JNI_FALSE);
+    Solver* solverPtr = ((Solver*)solver);
+    vec<Lit> lits;
+    for(int i = 0; i < length; ++i) {
+        int var = *(buf+i);
+        lits.push((var > 0) ?  mkLit(var-1) : ~mkLit(-var-1));
+    }
+    env->ReleaseIntArrayElements(assumptions, buf, JNI_ABORT);
+    solverPtr->clearInterrupt();
+    return solverPtr->solve(lits);
+  }
+
+/*
+ * Class:     kodkod_engine_satlab_MiniSat
+ * Method:    interrupt
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_kodkod_engine_satlab_MiniSat_interrupt
+  (JNIEnv *, jobject, jlong solver) {
+   ((Solver*)solver)->interrupt();
   }
 
 /*
@@ -0,0 +1,190 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATFactory;
+
+/**
+ * A benchmark harness that measures the running time of each {@linkplain Stage stage} of the analysis 
+ * on a set of reproducible {@linkplain Workload workloads}, for each of a given set of SAT solvers.  
+ * Each measurement is preceded by a number of warmup runs, whose times are discarded, and it consists 
+ * of a number of timed runs, whose minimum, median and mean are reported.  
+ * 
+ * <p>The harness is run from the command line as follows:</p>
+ * <pre>
+ * java kodkod.bench.Benchmark [-warmup n] [-iterations n] [-solvers s1,s2,...] [-stages s1,s2,...] [-workloads w1,w2,...]
+ * </pre>
+ * <p>Solvers are named after the corresponding static fields of {@link SATFactory} (e.g. DefaultSAT4J, MiniSat); 
+ * by default, all available solvers are measured.  Stages are named after the constants of {@link Stage}; all stages 
+ * are measured by default.  Workloads are given by name (pigeonhole, colouring, ringElection, fileSystem), and all of 
+ * them are measured by default.  The results are printed to standard output as tab-separated values.</p>
+ * 
+ * @specfield warmup: int // number of discarded runs per measurement
+ * @specfield iterations: int // number of timed runs per measurement
+ * @specfield solvers: String -> lone SATFactory
+ * @specfield stages: set Stage
+ * @specfield workloads: seq Workload
+ * @author Emina Torlak
+ */
+public final class Benchmark {
+	private static final String[] SOLVERS = { "DefaultSAT4J", "LightSAT4J", "MiniSat", "Glucose", "CryptoMiniSat", "Lingeling" };
+	
+	private int warmup = 3, iterations = 10;
+	private final Map<String, SATFactory> solvers = new LinkedHashMap<String, SATFactory>();
+	private final Set<Stage> stages = EnumSet.allOf(Stage.class);
+	private final List<Workload> workloads = new ArrayList<Workload>();
+	
+	private Benchmark() {}
+	
+	/**
+	 * Returns the standard workload with the given name.
+	 * @return the standard workload with the given name
+	 * @throws IllegalArgumentException  there is no workload with the given name
+	 */
+	private static Workload workload(String name) { 
+		if (name.equals("pigeonhole")) 			return Workload.pigeonhole(8, 7);
+		else if (name.equals("colouring")) 		return Workload.colouring(30, 60, 4, 42);
+		else if (name.equals("ringElection")) 	return Workload.ringElection(4, 6);
+		else if (name.equals("fileSystem")) 	return Workload.fileSystem(8);
+		else throw new IllegalArgumentException("Unknown workload: " + name);
+	}
+	
+	/**
+	 * Returns the SATFactory stored in the static field of {@link SATFactory} with the given name.
+	 * @return the SATFactory stored in the static field of {@link SATFactory} with the given name.
+	 * @throws IllegalArgumentException  there is no such field
+	 */
+	private static SATFactory solver(String name) { 
+		try {
+			return (SATFactory) SATFactory.class.getField(name).get(null);
+		} catch (NoSuchFieldException | IllegalAccessException | ClassCastException e) {
+			throw new IllegalArgumentException("Unknown solver: " + name);
+		}
+	}
+	
+	/**
+	 * Parses the given command line arguments into a benchmark configuration.
+	 * @return a benchmark configured with the given arguments
+	 * @throws IllegalArgumentException  the arguments are malformed
+	 */
+	private static Benchmark parse(String[] args) { 
+		final Benchmark b = new Benchmark();
+		List<String> solvers = null;
+		List<String> workloads = Arrays.asList("pigeonhole", "colouring", "ringElection", "fileSystem");
+		for(int i = 0; i < args.length; i+=2) { 
+			if (i+1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+			final String value = args[i+1];
+			if (args[i].equals("-warmup")) 				b.warmup = Integer.parseInt(value);
+			else if (args[i].equals("-iterations")) 	b.iterations = Integer.parseInt(value);
+			else if (args[i].equals("-solvers")) 		solvers = Arrays.asList(value.split(","));
+			else if (args[i].equals("-workloads")) 		workloads = Arrays.asList(value.split(","));
+			else if (args[i].equals("-stages")) { 
+				b.stages.clear();
+				for(String s : value.split(",")) b.stages.add(Stage.valueOf(s.toUpperCase()));
+			} else throw new IllegalArgumentException("Unknown option: " + args[i]);
+		}
+		if (b.warmup < 0 || b.iterations < 1) throw new IllegalArgumentException("warmup < 0 || iterations < 1");
+		for(String s : solvers==null ? Arrays.asList(SOLVERS) : solvers) { 
+			final SATFactory factory = solver(s);
+			if (SATFactory.available(factory)) b.solvers.put(s, factory);
+			else if (solvers!=null) throw new IllegalArgumentException("Solver not available: " + s);
+		}
+		for(String w : workloads) 
+			b.workloads.add(workload(w));
+		return b;
+	}
+	
+	/**
+	 * Measures the given stage on the given workload with the given options, and prints
+	 * the results to the given stream.
+	 * @ensures prints the minimum, median and mean time of this.iterations runs of the given stage 
+	 * to the given stream, after discarding this.warmup runs.
+	 */
+	private void measure(Workload workload, Stage stage, String solver, Options options, PrintStream out) { 
+		for(int i = 0; i < warmup; i++) 
+			stage.run(workload, options);
+		final long[] times = new long[iterations];
+		long total = 0;
+		for(int i = 0; i < iterations; i++) { 
+			times[i] = stage.run(workload, options);
+			total += times[i];
+		}
+		Arrays.sort(times);
+		out.println(workload + "\t" + stage + "\t" + solver + "\t" + ms(times[0]) + "\t" + 
+				ms(times[iterations/2]) + "\t" + ms(total / iterations));
+	}
+	
+	/**
+	 * Returns the given number of nanoseconds as a string representing milliseconds.
+	 * @return the given number of nanoseconds as a string representing milliseconds.
+	 */
+	private static String ms(long nanos) { 
+		return String.format("%.3f", nanos / 1e6);
+	}
+	
+	/**
+	 * Runs all measurements specified by this benchmark, and prints the results to the given stream.
+	 */
+	private void run(PrintStream out) { 
+		out.println("workload\tstage\tsolver\tmin(ms)\tmedian(ms)\tmean(ms)");
+		for(Workload workload : workloads) { 
+			for(Stage stage : stages) { 
+				if (stage.usesSolver()) { 
+					for(Map.Entry<String, SATFactory> solver : solvers.entrySet()) { 
+						final Options options = new Options();
+						options.setSolver(solver.getValue());
+						measure(workload, stage, solver.getKey(), options, out);
+					}
+				} else {
+					measure(workload, stage, "-", new Options(), out);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Usage: java kodkod.bench.Benchmark [-warmup n] [-iterations n] [-solvers s1,s2,...] [-stages s1,s2,...] [-workloads w1,w2,...]
+	 */
+	public static void main(String[] args) { 
+		final Benchmark benchmark;
+		try {
+			benchmark = parse(args);
+		} catch (IllegalArgumentException e) { 
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java kodkod.bench.Benchmark [-warmup n] [-iterations n] " +
+					"[-solvers s1,s2,...] [-stages s1,s2,...] [-workloads w1,w2,...]");
+			System.exit(1);
+			return;
+		}
+		benchmark.run(System.out);
+	}
+}
@@ -0,0 +1,229 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.engine.Solution;
+import kodkod.engine.Solver;
+import kodkod.engine.config.Options;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+
+/**
+ * A set of small problems with known answers that guard against the return of 
+ * translation bugs.  Each check solves its problem and compares the outcome 
+ * with the expected one.  
+ * 
+ * <p>The checks are run from the command line as follows:</p>
+ * <pre>
+ * java kodkod.bench.Regressions
+ * </pre>
+ * <p>The result of each check is printed to standard output, and the process exits 
+ * with a non-zero status if any check fails.</p>
+ * 
+ * @specfield failures: int // number of checks that have failed so far
+ * @author Emina Torlak
+ */
+public final class Regressions {
+	private final PrintStream out;
+	private int failures;
+	
+	/**
+	 * Constructs a new set of regression checks that reports to the given stream.
+	 * @ensures this.failures' = 0
+	 */
+	private Regressions(PrintStream out) { 
+		this.out = out;
+		this.failures = 0;
+	}
+	
+	/**
+	 * Reports whether the given check produced the expected value.
+	 * @ensures !expected.equals(actual) => this.failures' = this.failures + 1
+	 */
+	private void check(String name, Object expected, Object actual) { 
+		if (expected.equals(actual)) { 
+			out.println("ok\t" + name);
+		} else { 
+			failures++;
+			out.println("FAILED\t" + name + ":  expected " + expected + " but got " + actual);
+		}
+	}
+	
+	/**
+	 * Checks that the bounds-based decisions made for a partially bound quantifier 
+	 * ignore outer bindings of its declared variables that are shadowed by later declarations.  
+	 * The formula {@code (some x: one s | all y: one univ, x: one y.r | x in t) && some free} 
+	 * is trivially unsatisfiable when s = t = {a0} and r = {(a0, a1)}:  the outer x is a0, 
+	 * which is in t, but the inner x is a1, which is not.
+	 */
+	private void shadowedDeclaration() { 
+		final Relation s = Relation.unary("s"), t = Relation.unary("t"), r = Relation.binary("r"), free = Relation.unary("free");
+		final Universe u = new Universe(Arrays.asList("a0", "a1"));
+		final TupleFactory f = u.factory();
+		final Bounds b = new Bounds(u);
+		b.boundExactly(s, f.setOf("a0"));
+		b.boundExactly(t, f.setOf("a0"));
+		b.boundExactly(r, f.setOf(f.tuple("a0", "a1")));
+		b.bound(free, f.allOf(1));
+		
+		final Variable x = Variable.unary("x"), y = Variable.unary("y");
+		final Formula inner = x.in(t).forAll(y.oneOf(Expression.UNIV).and(x.oneOf(y.join(r))));
+		final Formula formula = inner.forSome(x.oneOf(s)).and(free.some());
+		
+		final Options options = new Options();
+		options.setSkolemDepth(-1);
+		final Solution sol = new Solver(options).solve(formula, b);
+		check("shadowedDeclaration", Solution.Outcome.TRIVIALLY_UNSATISFIABLE, sol.outcome());
+	}
+	
+	/**
+	 * Checks that an existential quantifier whose body is decided by the bounds is not 
+	 * encoded symbolically.  The formula {@code (some x: univ | x in q) && p in q} is trivially 
+	 * true when q = univ, so all 2^4 values of p and 2^2 values of the unconstrained relation r 
+	 * are enumerated, whether or not symbolic encoding is enabled.
+	 */
+	private void decidedSymbolicQuantifier() { 
+		final Relation p = Relation.unary("p"), q = Relation.unary("q"), r = Relation.unary("r");
+		final Universe u = new Universe(Arrays.asList("a0", "a1", "a2", "a3"));
+		final TupleFactory f = u.factory();
+		final Bounds b = new Bounds(u);
+		b.bound(p, f.allOf(1));
+		b.boundExactly(q, f.allOf(1));
+		b.bound(r, f.setOf("a0", "a1"));
+		
+		final Variable x = Variable.unary("x");
+		final Formula formula = x.in(q).forSome(x.oneOf(Expression.UNIV)).and(p.in(q));
+		
+		final Options options = new Options();
+		options.setSkolemDepth(-1);
+		options.setSymmetryBreaking(0);
+		options.setSymbolicThreshold(2);
+		final Iterator<Solution> sols = new Solver(options).solveAll(formula, b);
+		final Solution first = sols.next();
+		int count = first.sat() ? 1 : 0;
+		while(sols.hasNext()) { 
+			if (sols.next().sat()) count++;
+		}
+		check("decidedSymbolicQuantifier (outcome)", Solution.Outcome.TRIVIALLY_SATISFIABLE, first.outcome());
+		check("decidedSymbolicQuantifier (solutions)", 64, count);
+	}
+	
+	/**
+	 * Checks that projected enumeration over a projection without primary variables 
+	 * returns a single solution and then stops, instead of blocking it with an empty clause.  
+	 * The formula {@code some p} has 15 solutions, all of which agree on the empty projection.
+	 */
+	private void emptyProjection() { 
+		final Relation p = Relation.unary("p");
+		final Universe u = new Universe(Arrays.asList("a0", "a1", "a2", "a3"));
+		final Bounds b = new Bounds(u);
+		b.bound(p, u.factory().allOf(1));
+		
+		final Options options = new Options();
+		options.setSymmetryBreaking(0);
+		final Iterator<Solution> sols = new Solver(options).solveAll(p.some(), b, Collections.<Relation>emptySet());
+		int count = 0;
+		while(sols.hasNext()) { 
+			if (sols.next().sat()) count++;
+			else count = -1;
+		}
+		check("emptyProjection", 1, count);
+	}
+	
+	/**
+	 * Checks that compact projected enumeration minimizes each model before excluding its 
+	 * supersets.  The only minimal value of q that satisfies {@code some p && q = univ - p} is 
+	 * the empty set, which excludes all other values, so a single solution is returned.
+	 */
+	private void compactProjection() { 
+		final Relation p = Relation.unary("p"), q = Relation.unary("q");
+		final Universe u = new Universe(Arrays.asList("a0", "a1", "a2", "a3"));
+		final Bounds b = new Bounds(u);
+		b.bound(p, u.factory().allOf(1));
+		b.bound(q, u.factory().allOf(1));
+		
+		final Formula formula = p.some().and(q.eq(Expression.UNIV.difference(p)));
+		final Options options = new Options();
+		options.setSymmetryBreaking(0);
+		final Iterator<Solution> sols = new Solver(options).solveAll(formula, b, Collections.singleton(q), true);
+		int count = 0, empty = 0;
+		while(sols.hasNext()) { 
+			final Solution sol = sols.next();
+			if (sol.sat()) { 
+				count++;
+				if (sol.instance().tuples(q).isEmpty()) empty++;
+			}
+		}
+		check("compactProjection (solutions)", 1, count);
+		check("compactProjection (minimal)", 1, empty);
+	}
+	
+	/**
+	 * Checks that caching gates in compact tables does not change the translation.  
+	 * The ring election workload is solved with and without {@link Options#compactGates()}, 
+	 * and the outcomes and CNF sizes must match.
+	 */
+	private void compactGates() { 
+		final Workload workload = Workload.ringElection(4, 4);
+		final String[] results = new String[2];
+		for(int i = 0; i < 2; i++) { 
+			final Options options = new Options();
+			options.setCompactGates(i==1);
+			final Solution sol = new Solver(options).solve(workload.formula(), workload.bounds());
+			results[i] = sol.outcome() + " with " + sol.stats().variables() + " variables and " + sol.stats().clauses() + " clauses";
+		}
+		check("compactGates", results[0], results[1]);
+	}
+	
+	/**
+	 * Runs all checks.
+	 */
+	private void run() { 
+		shadowedDeclaration();
+		decidedSymbolicQuantifier();
+		emptyProjection();
+		compactProjection();
+		compactGates();
+	}
+	
+	/**
+	 * Usage: java kodkod.bench.Regressions
+	 */
+	public static void main(String[] args) { 
+		final Regressions checks = new Regressions(System.out);
+		checks.run();
+		if (checks.failures > 0) { 
+			System.out.println(checks.failures + " check(s) failed");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.engine.IncrementalSolver;
+import kodkod.engine.Solver;
+import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.BooleanMatrix;
+import kodkod.engine.bool.Dimensions;
+import kodkod.engine.config.AbstractReporter;
+import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.SymmetryDetector;
+import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.instance.Bounds;
+import kodkod.instance.Tuple;
+import kodkod.instance.TupleSet;
+
+/**
+ * A stage of the analysis that can be timed by the {@linkplain Benchmark benchmark harness}.
+ * Stages that do not involve a SAT solver are {@linkplain #usesSolver() solver-independent}, 
+ * and they are measured once per workload rather than once per solver.
+ * @author Emina Torlak
+ */
+public enum Stage {
+	/** Symmetry detection on the bounds of a workload ({@link SymmetryDetector#partition(Bounds)}). */
+	SYMMETRY(false) {
+		long run(Workload workload, Options options) { 
+			final long start = System.nanoTime();
+			SymmetryDetector.partition(workload.bounds());
+			return System.nanoTime() - start;
+		}
+	},
+	/** Composition of two square matrices of fresh variables, with one row per atom in the universe of a workload. */
+	DOT(false) { 
+		long run(Workload workload, Options options) { 
+			final BooleanMatrix[] m = matrices(workload, options);
+			final long start = System.nanoTime();
+			m[0].dot(m[1]);
+			return System.nanoTime() - start;
+		}
+	},
+	/** Transitive closure of a square matrix of fresh variables, with one row per atom in the universe of a workload. */
+	CLOSURE(false) { 
+		long run(Workload workload, Options options) { 
+			final BooleanMatrix[] m = matrices(workload, options);
+			final long start = System.nanoTime();
+			m[0].closure();
+			return System.nanoTime() - start;
+		}
+	},
+	/** Complete translation of a workload to CNF ({@link Translator#translate(Formula, Bounds, Options)}). */
+	TRANSLATE(true) { 
+		long run(Workload workload, Options options) { 
+			final long start = System.nanoTime();
+			final Translation.Whole translation = Translator.translate(workload.formula(), workload.bounds(), options);
+			final long end = System.nanoTime();
+			translation.cnf().free();
+			return end - start;
+		}
+	},
+	/** Translation of a workload's formula to a boolean circuit, including symmetry breaking predicate generation. */
+	BOOLEAN(true) { 
+		long run(Workload workload, Options options) { 
+			final Timer timer = new Timer();
+			final Options opt = options.clone();
+			opt.setReporter(timer);
+			Translator.translate(workload.formula(), workload.bounds(), opt).cnf().free();
+			return timer.toCNF==0 ? 0 : timer.toCNF - timer.toBoolean;
+		}
+	},
+	/** Translation of a workload's boolean circuit to CNF, including the loading of the clauses into the solver. */
+	CNF(true) { 
+		long run(Workload workload, Options options) { 
+			final Timer timer = new Timer();
+			final Options opt = options.clone();
+			opt.setReporter(timer);
+			final Translation.Whole translation = Translator.translate(workload.formula(), workload.bounds(), opt);
+			final long end = System.nanoTime();
+			translation.cnf().free();
+			return timer.toCNF==0 ? 0 : end - timer.toCNF;
+		}
+	},
+	/** End-to-end analysis of a workload ({@link Solver#solve(Formula, Bounds)}). */
+	SOLVE(true) { 
+		long run(Workload workload, Options options) { 
+			final Solver solver = new Solver(options);
+			final long start = System.nanoTime();
+			solver.solve(workload.formula(), workload.bounds());
+			return System.nanoTime() - start;
+		}
+	},
+	/** 
+	 * Scope sweep over a workload with a {@linkplain IncrementalSolver#retractable(Options) retractable} solver:  
+	 * the workload is solved, and then solved again with the upper bound of its largest relation narrowed to half 
+	 * of its tuples, and widened back.  Takes no time if options.solver does not produce incremental assumption solvers. 
+	 */
+	SWEEP(true) { 
+		long run(Workload workload, Options options) { 
+			if (!options.solver().incremental() || !options.solver().assumptions()) return 0;
+			final Bounds bounds = workload.bounds();
+			Relation largest = null;
+			for(Relation r : bounds.relations()) { 
+				if (largest==null || bounds.upperBound(r).size() > bounds.upperBound(largest).size())
+					largest = r;
+			}
+			final TupleSet lower = bounds.lowerBound(largest), upper = bounds.upperBound(largest);
+			final TupleSet half = lower.clone();
+			for(Tuple t : upper) { 
+				if (2*half.size() >= lower.size() + upper.size()) break;
+				half.add(t);
+			}
+			final Bounds narrow = new Bounds(bounds.universe()), wide = new Bounds(bounds.universe());
+			narrow.bound(largest, lower, half);
+			wide.bound(largest, lower, upper);
+			final IncrementalSolver solver = IncrementalSolver.retractable(options);
+			final long start = System.nanoTime();
+			solver.solve(workload.formula(), bounds);
+			solver.solve(Formula.TRUE, narrow);
+			solver.solve(Formula.TRUE, wide);
+			final long end = System.nanoTime();
+			solver.free();
+			return end - start;
+		}
+	};
+	
+	private final boolean usesSolver;
+	
+	private Stage(boolean usesSolver) { 
+		this.usesSolver = usesSolver;
+	}
+	
+	/**
+	 * Returns true if the running time of this stage depends on options.solver.
+	 * @return true if the running time of this stage depends on options.solver.
+	 */
+	public final boolean usesSolver() { return usesSolver; }
+	
+	/**
+	 * Runs this stage on the given workload, using the given options, and returns the 
+	 * number of nanoseconds spent in the stage.
+	 * @return number of nanoseconds spent executing this stage on the given workload
+	 */
+	abstract long run(Workload workload, Options options);
+	
+	/**
+	 * Returns two square matrices of distinct variables, with one row per atom in the universe of the given workload.
+	 * @return two square matrices of distinct variables, with one row per atom in the universe of the given workload
+	 */
+	private static BooleanMatrix[] matrices(Workload workload, Options options) { 
+		final int n = workload.universeSize(), cells = n*n;
+		final BooleanFactory factory = BooleanFactory.factory(2*cells, options);
+		final Dimensions dims = Dimensions.square(n, 2);
+		final BooleanMatrix[] m = { factory.matrix(dims), factory.matrix(dims) };
+		for(int i = 0; i < cells; i++) { 
+			m[0].set(i, factory.variable(i+1));
+			m[1].set(i, factory.variable(cells+i+1));
+		}
+		return m;
+	}
+	
+	/**
+	 * Records the times at which the translation to boolean and to CNF started.
+	 * @author Emina Torlak
+	 */
+	private static final class Timer extends AbstractReporter { 
+		long toBoolean, toCNF;
+		public void translatingToBoolean(Formula formula, Bounds bounds) { toBoolean = System.nanoTime(); }
+		public void translatingToCNF(BooleanFormula circuit) { toCNF = System.nanoTime(); }
+	}
+}
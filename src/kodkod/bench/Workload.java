@@ -0,0 +1,315 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import kodkod.ast.Decls;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.ast.Variable;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+
+/**
+ * A reproducible benchmark problem, consisting of a formula and the bounds 
+ * with respect to which it is to be solved.  The static methods of this class 
+ * construct the standard workloads used by the {@linkplain Benchmark benchmark harness}.
+ * Each call to {@link #formula()} and {@link #bounds()} returns the same object, so 
+ * repeated measurements of a workload operate on identical inputs.
+ * 
+ * @specfield name: String
+ * @specfield formula: Formula
+ * @specfield bounds: Bounds
+ * @author Emina Torlak
+ */
+public abstract class Workload {
+	private final String name;
+	private Formula formula;
+	private Bounds bounds;
+	
+	/**
+	 * Constructs a workload with the given name.
+	 * @ensures this.name' = name
+	 */
+	Workload(String name) { 
+		this.name = name;
+	}
+	
+	/**
+	 * Returns the name of this workload.
+	 * @return this.name
+	 */
+	public final String name() { return name; }
+	
+	/**
+	 * Returns the formula of this workload.
+	 * @return this.formula
+	 */
+	public final synchronized Formula formula() { 
+		if (formula==null) formula = buildFormula();
+		return formula;
+	}
+	
+	/**
+	 * Returns the bounds of this workload.  The returned 
+	 * object is unmodifiable.
+	 * @return this.bounds
+	 */
+	public final synchronized Bounds bounds() { 
+		if (bounds==null) bounds = buildBounds().unmodifiableView();
+		return bounds;
+	}
+	
+	/**
+	 * Returns the size of the universe of this workload.
+	 * @return #this.bounds.universe
+	 */
+	public final int universeSize() { return bounds().universe().size(); }
+	
+	/**
+	 * Builds the formula of this workload.
+	 * @return this.formula
+	 */
+	abstract Formula buildFormula();
+	
+	/**
+	 * Builds the bounds of this workload.
+	 * @return this.bounds
+	 */
+	abstract Bounds buildBounds();
+	
+	/**
+	 * Returns the name of this workload.
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() { return name; }
+	
+	/**
+	 * Returns a list of atoms of the form prefix0, ..., prefix(size-1).
+	 * @return a list of atoms of the form prefix0, ..., prefix(size-1).
+	 */
+	private static List<String> atoms(String prefix, int size) { 
+		final List<String> atoms = new ArrayList<String>(size);
+		for(int i = 0; i < size; i++) 
+			atoms.add(prefix + i);
+		return atoms;
+	}
+	
+	/**
+	 * Returns the pigeonhole workload, which places the given number of pigeons into 
+	 * the given number of holes so that no hole contains more than one pigeon.  The problem 
+	 * is unsatisfiable whenever pigeons > holes, and it is hard for resolution-based solvers.
+	 * @return pigeonhole workload for the given number of pigeons and holes
+	 * @throws IllegalArgumentException  pigeons < 1 || holes < 1
+	 */
+	public static Workload pigeonhole(final int pigeons, final int holes) { 
+		if (pigeons < 1 || holes < 1) throw new IllegalArgumentException("pigeons < 1 || holes < 1");
+		final Relation pigeon = Relation.unary("Pigeon"), hole = Relation.unary("Hole");
+		final Relation nest = Relation.binary("nest");
+		return new Workload("pigeonhole(" + pigeons + "," + holes + ")") {
+			Formula buildFormula() { 
+				final Variable p = Variable.unary("p"), h = Variable.unary("h");
+				final Formula f0 = nest.in(pigeon.product(hole));
+				final Formula f1 = p.join(nest).one().forAll(p.oneOf(pigeon));
+				final Formula f2 = nest.join(h).lone().forAll(h.oneOf(hole));
+				return Formula.and(f0, f1, f2);
+			}
+			Bounds buildBounds() { 
+				final List<String> atoms = atoms("Pigeon", pigeons);
+				atoms.addAll(atoms("Hole", holes));
+				final Universe u = new Universe(atoms);
+				final TupleFactory f = u.factory();
+				final Bounds b = new Bounds(u);
+				final TupleSet ps = f.range(f.tuple("Pigeon0"), f.tuple("Pigeon" + (pigeons-1)));
+				final TupleSet hs = f.range(f.tuple("Hole0"), f.tuple("Hole" + (holes-1)));
+				b.boundExactly(pigeon, ps);
+				b.boundExactly(hole, hs);
+				b.bound(nest, ps.product(hs));
+				return b;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the graph colouring workload, which colours a random graph with the given number 
+	 * of nodes and edges using at most the given number of colours, so that no two adjacent 
+	 * nodes have the same colour.  The graph is generated from the given seed.
+	 * @return graph colouring workload for the given parameters
+	 * @throws IllegalArgumentException  nodes < 2 || edges < 0 || colours < 1
+	 */
+	public static Workload colouring(final int nodes, final int edges, final int colours, final long seed) { 
+		if (nodes < 2 || edges < 0 || colours < 1) throw new IllegalArgumentException("nodes < 2 || edges < 0 || colours < 1");
+		final Relation node = Relation.unary("Node"), colour = Relation.unary("Colour");
+		final Relation edge = Relation.binary("edge"), colouring = Relation.binary("colour");
+		return new Workload("colouring(" + nodes + "," + edges + "," + colours + ")") {
+			Formula buildFormula() { 
+				final Variable n = Variable.unary("n");
+				final Formula f0 = colouring.in(node.product(colour));
+				final Formula f1 = n.join(colouring).one().forAll(n.oneOf(node));
+				final Formula f2 = edge.intersection(colouring.join(colouring.transpose())).no();
+				return Formula.and(f0, f1, f2);
+			}
+			Bounds buildBounds() { 
+				final List<String> atoms = atoms("Node", nodes);
+				atoms.addAll(atoms("Colour", colours));
+				final Universe u = new Universe(atoms);
+				final TupleFactory f = u.factory();
+				final Bounds b = new Bounds(u);
+				final TupleSet ns = f.range(f.tuple("Node0"), f.tuple("Node" + (nodes-1)));
+				final TupleSet cs = f.range(f.tuple("Colour0"), f.tuple("Colour" + (colours-1)));
+				final TupleSet es = f.noneOf(2);
+				final Random random = new Random(seed);
+				for(int i = 0, max = Math.min(edges, nodes*(nodes-1)/2); es.size() < 2*max && i < 100*max; i++) { 
+					final int a = random.nextInt(nodes), c = random.nextInt(nodes);
+					if (a != c) { 
+						es.add(f.tuple("Node"+a, "Node"+c));
+						es.add(f.tuple("Node"+c, "Node"+a));
+					}
+				}
+				b.boundExactly(node, ns);
+				b.boundExactly(colour, cs);
+				b.boundExactly(edge, es);
+				b.bound(colouring, ns.product(cs));
+				return b;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a ring election workload, modeled on the classic leader election protocol for a 
+	 * unidirectional ring.  Each process starts by sending its own identifier to its successor, 
+	 * and forwards only the identifiers that are larger than its own.  A process whose own identifier 
+	 * comes back to it is elected.  The workload asks for a trace of the given length in which 
+	 * more than one process is elected, so it is unsatisfiable for a correct protocol.
+	 * @return ring election workload for the given number of processes and time steps
+	 * @throws IllegalArgumentException  processes < 1 || times < 1
+	 */
+	public static Workload ringElection(final int processes, final int times) { 
+		if (processes < 1 || times < 1) throw new IllegalArgumentException("processes < 1 || times < 1");
+		final Relation process = Relation.unary("Process"), time = Relation.unary("Time");
+		final Relation succ = Relation.binary("succ"), toSend = Relation.ternary("toSend"), elected = Relation.binary("elected");
+		final Relation pord = Relation.binary("pord"), pfirst = Relation.unary("pfirst"), plast = Relation.unary("plast");
+		final Relation tord = Relation.binary("tord"), tfirst = Relation.unary("tfirst"), tlast = Relation.unary("tlast");
+		return new Workload("ringElection(" + processes + "," + times + ")") {
+			Formula buildFormula() { 
+				final Variable p = Variable.unary("p"), q = Variable.unary("q"), t = Variable.unary("t"), id = Variable.unary("id");
+				final List<Formula> fs = new ArrayList<Formula>();
+				fs.add(pord.totalOrder(process, pfirst, plast));
+				fs.add(tord.totalOrder(time, tfirst, tlast));
+				fs.add(succ.function(process, process));
+				fs.add(process.in(p.join(succ.closure())).forAll(p.oneOf(process)));
+				fs.add(toSend.in(process.product(process).product(time)));
+				fs.add(elected.in(process.product(time)));
+				// initially, each process has only its own identifier to send
+				fs.add(p.join(toSend).join(tfirst).eq(p).forAll(p.oneOf(process)));
+				// at each step, some process either sends an identifier to its successor, or nothing changes
+				final Expression t1 = t.join(tord);
+				final Expression sends = p.join(toSend).join(t), sends1 = p.join(toSend).join(t1);
+				final Expression next = p.join(succ);
+				final Expression recvs = next.join(toSend).join(t), recvs1 = next.join(toSend).join(t1);
+				final Formula send = id.in(sends).and(sends1.eq(sends.difference(id))).
+					and(recvs1.eq(recvs.union(id.difference(next.join(pord.transpose().closure()))))).
+					forSome(id.oneOf(process));
+				final Formula others = q.join(toSend).join(t1).eq(q.join(toSend).join(t)).
+					forAll(q.oneOf(process.difference(p).difference(next)));
+				final Formula stutter = toSend.join(t1).eq(toSend.join(t));
+				final Decls pt = p.oneOf(process);
+				fs.add(send.and(others).forSome(pt).or(stutter).forAll(t.oneOf(time.difference(tlast))));
+				// a process is elected when its own identifier comes back to it
+				final Formula electedDef = elected.join(t1).eq(
+						p.in(p.join(toSend).join(t1)).and(p.in(p.join(toSend).join(t)).not()).comprehension(p.oneOf(process)));
+				fs.add(electedDef.forAll(t.oneOf(time.difference(tlast))));
+				fs.add(elected.join(tfirst).no());
+				// more than one process is elected
+				fs.add(elected.join(time).some().and(elected.join(time).one().not()));
+				return Formula.and(fs);
+			}
+			Bounds buildBounds() { 
+				final List<String> atoms = atoms("Process", processes);
+				atoms.addAll(atoms("Time", times));
+				final Universe u = new Universe(atoms);
+				final TupleFactory f = u.factory();
+				final Bounds b = new Bounds(u);
+				final TupleSet ps = f.range(f.tuple("Process0"), f.tuple("Process" + (processes-1)));
+				final TupleSet ts = f.range(f.tuple("Time0"), f.tuple("Time" + (times-1)));
+				b.boundExactly(process, ps);
+				b.boundExactly(time, ts);
+				b.bound(succ, ps.product(ps));
+				b.bound(toSend, ps.product(ps).product(ts));
+				b.bound(elected, ps.product(ts));
+				b.bound(pord, ps.product(ps));
+				b.bound(pfirst, ps);
+				b.bound(plast, ps);
+				b.bound(tord, ts.product(ts));
+				b.bound(tfirst, ts);
+				b.bound(tlast, ts);
+				return b;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a file system workload, in which a file system with the given number of objects 
+	 * is organized as a tree of directories rooted at a single root directory.  The workload asks 
+	 * for a file system in which some directory is its own ancestor, so it is unsatisfiable.
+	 * @return file system workload for the given number of objects
+	 * @throws IllegalArgumentException  objects < 2
+	 */
+	public static Workload fileSystem(final int objects) { 
+		if (objects < 2) throw new IllegalArgumentException("objects < 2");
+		final Relation object = Relation.unary("Object"), dir = Relation.unary("Dir"), file = Relation.unary("File");
+		final Relation root = Relation.unary("Root"), contents = Relation.binary("contents");
+		return new Workload("fileSystem(" + objects + ")") {
+			Formula buildFormula() { 
+				final Variable o = Variable.unary("o"), d = Variable.unary("d");
+				final List<Formula> fs = new ArrayList<Formula>();
+				fs.add(dir.union(file).eq(object));
+				fs.add(dir.intersection(file).no());
+				fs.add(root.one().and(root.in(dir)));
+				fs.add(contents.in(dir.product(object)));
+				fs.add(object.in(root.join(contents.reflexiveClosure())));
+				fs.add(contents.join(o).lone().forAll(o.oneOf(object)));
+				fs.add(contents.join(root).no());
+				fs.add(d.in(d.join(contents.closure())).forSome(d.oneOf(dir)));
+				return Formula.and(fs);
+			}
+			Bounds buildBounds() { 
+				final Universe u = new Universe(atoms("Object", objects));
+				final TupleFactory f = u.factory();
+				final Bounds b = new Bounds(u);
+				final TupleSet os = f.allOf(1);
+				b.boundExactly(object, os);
+				b.bound(dir, os);
+				b.bound(file, os);
+				b.bound(root, os);
+				b.bound(contents, os.product(os));
+				return b;
+			}
+		};
+	}
+}
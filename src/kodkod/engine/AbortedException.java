@@ -22,23 +22,30 @@
 package kodkod.engine;
 
 /**
- * Indicates that a solving or evaluation task has been aborted.
+ * Indicates that a solving or evaluation task has been aborted.  
+ * An aborted solving task may provide the {@linkplain #stats() statistics} 
+ * that it gathered before it was aborted.
  * @author Emina Torlak
  */
 public final class AbortedException extends RuntimeException {
 
 	private static final long serialVersionUID = 201522560152091247L;
+	
+	private final transient Statistics stats;
 
 	/**
 	 * Constructs an aborted exception with no message.
 	 */
-	AbortedException() {}
+	AbortedException() {
+		this.stats = null;
+	}
 
 	/**
 	 * Constructs an aborted exception with the given message.
 	 */
 	AbortedException(String message) {
 		super(message);
+		this.stats = null;
 	}
 
 	/**
@@ -46,6 +53,7 @@ public final class AbortedException extends RuntimeException {
 	 */
 	AbortedException(Throwable cause) {
 		super(cause); 
+		this.stats = null;
 	}
 
 	/**
@@ -53,6 +61,26 @@ public final class AbortedException extends RuntimeException {
 	 */
 	AbortedException(String message, Throwable cause) {
 		super(message, cause);
+		this.stats = null;
+	}
+	
+	/**
+	 * Constructs an aborted exception with the given message, cause and partial statistics.
+	 */
+	AbortedException(String message, Throwable cause, Statistics stats) {
+		super(message, cause);
+		this.stats = stats;
+	}
+	
+	/**
+	 * Returns the statistics gathered by the aborted task before it was aborted, 
+	 * or null if none are available.  Statistics that had not been computed when 
+	 * the task was aborted (e.g. the number of clauses, if the task was aborted 
+	 * during translation) are reported as zero. 
+	 * @return statistics gathered by the aborted task before it was aborted, if any
+	 */
+	public Statistics stats() { 
+		return stats;
 	}
 
 }
@@ -0,0 +1,390 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kodkod.ast.Formula;
+import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.HigherOrderDeclException;
+import kodkod.engine.fol2sat.UnboundLeafException;
+import kodkod.engine.satlab.SATInterruptibleSolver;
+import kodkod.instance.Bounds;
+
+/**
+ * A {@link KodkodSolver} that solves relational satisfiability problems asynchronously, 
+ * on a pool of at most {@code this.maxConcurrent} worker threads.  Problems that are 
+ * submitted while all workers are busy wait in a queue of at most {@code this.queueCapacity} 
+ * problems; a problem that is submitted when the queue is full is rejected, so that 
+ * producers of problems are slowed down to the rate at which they can be solved.
+ * 
+ * <p>Each problem submitted with {@linkplain #solveAsync(Formula, Bounds)} is solved 
+ * with respect to its own {@linkplain CancellationToken token}, which is cancelled 
+ * when the {@linkplain Future future} returned for that problem is {@linkplain Future#cancel(boolean) cancelled}.  
+ * Cancelling the future of a problem that is being solved therefore aborts its translation 
+ * or {@linkplain SATInterruptibleSolver#interrupt() interrupts} its SAT search, and cancelling the future of a 
+ * waiting problem removes it from the queue.</p>
+ * 
+ * <p>The worker threads share {@code this.options}, which must not be modified while
+ * any problem is being solved. Worker threads are daemon threads, and they are released 
+ * when this solver is {@linkplain #free() freed}.</p>
+ * 
+ * <p>An AsyncSolver created with {@linkplain #solver(Options, ExecutorService)} solves its 
+ * problems on the given executor instead of on a pool of its own.  Its concurrency limit and 
+ * queue capacity are then those of the executor, and freeing the solver does not shut the 
+ * executor down.  A cancelled problem that is waiting in the queue of such an executor is 
+ * removed from it only if the executor is a {@link ThreadPoolExecutor}; otherwise, it is 
+ * discarded when it reaches the front of the queue.</p>
+ * 
+ * @specfield options: Options 
+ * @specfield maxConcurrent: int // maximum number of problems solved at the same time
+ * @specfield queueCapacity: int // maximum number of problems waiting to be solved
+ * @author Emina Torlak 
+ */
+public final class AsyncSolver implements KodkodSolver {
+	private static final AtomicInteger POOLS = new AtomicInteger(0);
+	
+	private final Solver solver;
+	private final int queueCapacity;
+	private final ExecutorService executor;
+	/* true if this.executor was created by this solver, and is shut down when this solver is freed */
+	private final boolean owned;
+	private final Set<Task> outstanding;
+	private volatile boolean freed;
+	
+	/**
+	 * Constructs a new AsyncSolver with the default options, as many 
+	 * workers as there are available processors, and a queue that holds 
+	 * four times as many problems as there are workers.
+	 * @ensures this.options' = new Options() && 
+	 *          this.maxConcurrent' = Runtime.getRuntime().availableProcessors() && 
+	 *          this.queueCapacity' = 4 * this.maxConcurrent'
+	 */
+	public AsyncSolver() {
+		this(new Options());
+	}
+	
+	/**
+	 * Constructs a new AsyncSolver with the given options, as many 
+	 * workers as there are available processors, and a queue that holds 
+	 * four times as many problems as there are workers.
+	 * @ensures this.options' = options && 
+	 *          this.maxConcurrent' = Runtime.getRuntime().availableProcessors() && 
+	 *          this.queueCapacity' = 4 * this.maxConcurrent'
+	 * @throws NullPointerException  options = null
+	 */
+	public AsyncSolver(Options options) {
+		this(options, Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Constructs a new AsyncSolver with the given options, concurrency limit, and queue capacity.
+	 * @ensures this.options' = options && this.maxConcurrent' = maxConcurrent && this.queueCapacity' = queueCapacity
+	 * @throws NullPointerException  options = null
+	 * @throws IllegalArgumentException  maxConcurrent < 1 || queueCapacity < 0
+	 */
+	public AsyncSolver(Options options, int maxConcurrent, int queueCapacity) {
+		this(options, pool(maxConcurrent, queueCapacity), true, queueCapacity);
+	}
+	
+	/**
+	 * Constructs a new AsyncSolver with the given options that solves its problems on the given executor.
+	 * @requires owned => executor is a fresh pool with the given queue capacity
+	 * @ensures this.options' = options && this.executor' = executor && this.owned' = owned
+	 */
+	private AsyncSolver(Options options, ExecutorService executor, boolean owned, int queueCapacity) { 
+		this.solver = new Solver(options);
+		this.queueCapacity = queueCapacity;
+		this.executor = executor;
+		this.owned = owned;
+		this.outstanding = Collections.newSetFromMap(new ConcurrentHashMap<Task, Boolean>());
+		this.freed = false;
+	}
+	
+	/**
+	 * Returns a new AsyncSolver with the given options that solves its problems on the 
+	 * given executor.  The problems submitted to the returned solver are subject to the 
+	 * concurrency limit, queueing, and rejection policies of the executor, so its 
+	 * {@linkplain #maxConcurrent() maxConcurrent} and {@linkplain #queueCapacity() queueCapacity} 
+	 * are those of the executor, if it is a {@link ThreadPoolExecutor}, and -1 otherwise.  
+	 * Freeing the returned solver does not shut the executor down.
+	 * @return some s: AsyncSolver | s.options = options && s.executor = executor
+	 * @throws NullPointerException  options = null || executor = null
+	 */
+	public static AsyncSolver solver(Options options, ExecutorService executor) { 
+		if (executor == null) 
+			throw new NullPointerException();
+		return new AsyncSolver(options, executor, false, -1);
+	}
+	
+	/**
+	 * Returns a new pool of at most maxConcurrent daemon threads with a queue 
+	 * of the given capacity.
+	 * @throws IllegalArgumentException  maxConcurrent < 1 || queueCapacity < 0
+	 */
+	private static ThreadPoolExecutor pool(int maxConcurrent, int queueCapacity) { 
+		if (maxConcurrent < 1)
+			throw new IllegalArgumentException("maxConcurrent < 1: " + maxConcurrent);
+		if (queueCapacity < 0)
+			throw new IllegalArgumentException("queueCapacity < 0: " + queueCapacity);
+		final BlockingQueue<Runnable> queue = queueCapacity==0 ? 
+				new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueCapacity);
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60L, TimeUnit.SECONDS, queue, 
+				new WorkerFactory(POOLS.incrementAndGet()), new ThreadPoolExecutor.AbortPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.KodkodSolver#options()
+	 */
+	public Options options() {
+		return solver.options();
+	}
+	
+	/**
+	 * Returns the maximum number of problems that this solver solves at the same time, 
+	 * or -1 if it is determined by an executor that is not a ThreadPoolExecutor.
+	 * @return this.maxConcurrent
+	 */
+	public int maxConcurrent() { 
+		return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getMaximumPoolSize() : -1;
+	}
+	
+	/**
+	 * Returns the maximum number of problems that may wait to be solved, 
+	 * or -1 if it is determined by an executor that is not a ThreadPoolExecutor.
+	 * @return this.queueCapacity
+	 */
+	public int queueCapacity() { 
+		if (owned || !(executor instanceof ThreadPoolExecutor)) 
+			return queueCapacity;
+		final BlockingQueue<Runnable> queue = ((ThreadPoolExecutor) executor).getQueue();
+		return (int) Math.min(Integer.MAX_VALUE, (long) queue.size() + queue.remainingCapacity());
+	}
+	
+	/**
+	 * Returns the number of problems submitted to this solver that are currently waiting to be solved.
+	 * @return number of problems submitted to this solver that are currently waiting to be solved
+	 */
+	public int queued() { 
+		int queued = 0;
+		for(Task task : outstanding) { 
+			if (!task.started) queued++;
+		}
+		return queued;
+	}
+	
+	/**
+	 * Submits the given problem for solving with respect to {@code this.options} and 
+	 * a fresh {@linkplain CancellationToken token}, and returns the future result. 
+	 * The token is cancelled when the returned future is cancelled.  
+	 * The future completes exceptionally, with the exception that would have been thrown by 
+	 * {@link Solver#solve(Formula, Bounds)}, if solving fails. 
+	 * @return some f: Future<Solution> | f.get() = new Solver(this.options).solve(formula, bounds, new CancellationToken())
+	 * @throws NullPointerException  formula = null || bounds = null
+	 * @throws RejectedExecutionException  this solver has been freed, or its queue is full
+	 */
+	public Future<Solution> solveAsync(Formula formula, Bounds bounds) { 
+		return solveAsync(formula, bounds, new CancellationToken());
+	}
+	
+	/**
+	 * Submits the given problem for solving with respect to {@code this.options} and the 
+	 * given token, and returns the future result.  Unless the given token is {@linkplain CancellationToken#NONE NONE}, 
+	 * it is cancelled when the returned future is cancelled.  
+	 * The future completes exceptionally, with the exception that would have been thrown by 
+	 * {@link Solver#solve(Formula, Bounds, CancellationToken)}, if solving fails. 
+	 * @return some f: Future<Solution> | f.get() = new Solver(this.options).solve(formula, bounds, cancellation)
+	 * @throws NullPointerException  formula = null || bounds = null || cancellation = null
+	 * @throws RejectedExecutionException  this solver has been freed, or its queue is full
+	 */
+	public Future<Solution> solveAsync(Formula formula, Bounds bounds, CancellationToken cancellation) { 
+		if (formula == null || bounds == null || cancellation == null) 
+			throw new NullPointerException();
+		if (freed) 
+			throw new RejectedExecutionException("This solver has been freed.");
+		final Task task = new Task(formula, bounds, cancellation);
+		outstanding.add(task);
+		try { 
+			executor.execute(task);
+		} catch (RejectedExecutionException e) { 
+			outstanding.remove(task);
+			throw e;
+		}
+		return task;
+	}
+	
+	/**
+	 * Solves the given problem on one of the workers of this solver, and 
+	 * waits for the solution.  If the calling thread is interrupted while 
+	 * waiting, the problem is cancelled.
+	 * @see kodkod.engine.KodkodSolver#solve(kodkod.ast.Formula, kodkod.instance.Bounds)
+	 * @throws RejectedExecutionException  this solver has been freed, or its queue is full
+	 */
+	public Solution solve(Formula formula, Bounds bounds) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		return solve(formula, bounds, options().cancellation());
+	}
+
+	/**
+	 * Solves the given problem on one of the workers of this solver, and 
+	 * waits for the solution.  If the calling thread is interrupted while 
+	 * waiting, the problem is cancelled.
+	 * @see kodkod.engine.KodkodSolver#solve(kodkod.ast.Formula, kodkod.instance.Bounds, kodkod.engine.CancellationToken)
+	 * @throws RejectedExecutionException  this solver has been freed, or its queue is full
+	 */
+	public Solution solve(Formula formula, Bounds bounds, CancellationToken cancellation) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		final Future<Solution> future = solveAsync(formula, bounds, cancellation);
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new AbortedException("Interrupted.", e);
+		} catch (ExecutionException e) { 
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new AbortedException(cause);
+		}
+	}
+	
+	/**
+	 * Releases the worker threads of this solver, after the problems that 
+	 * have already been submitted are solved.  No problems can be submitted 
+	 * to this solver after it has been freed.  An executor that was given 
+	 * to this solver by the client is not shut down.
+	 * @see kodkod.engine.KodkodSolver#free()
+	 */
+	public void free() {
+		freed = true;
+		if (owned) executor.shutdown();
+	}
+	
+	/**
+	 * Cancels all problems that are being solved or waiting to be solved, and 
+	 * releases the worker threads of this solver.  No problems can be submitted 
+	 * to this solver after it has been freed.  An executor that was given 
+	 * to this solver by the client is not shut down.
+	 */
+	public void freeNow() { 
+		free();
+		for(Task task : outstanding) { 
+			task.cancel(true);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "AsyncSolver(" + maxConcurrent() + " workers, " + queued() + "/" + queueCapacity() + " queued)\n" + options();
+	}
+	
+	/**
+	 * A problem submitted to an async solver.  Cancelling the task cancels its token, 
+	 * unless it is NONE, and removes the task from the queue of its solver.  A task 
+	 * is outstanding until it is done.
+	 * @specfield cancellation: CancellationToken
+	 */
+	private final class Task extends FutureTask<Solution> { 
+		private final CancellationToken cancellation;
+		/* true once a worker has picked up this task */
+		volatile boolean started;
+		
+		/**
+		 * Constructs a task that solves the given problem with respect to the given token.
+		 */
+		Task(final Formula formula, final Bounds bounds, final CancellationToken cancellation) { 
+			super(new Callable<Solution>() {
+				public Solution call() { return solver.solve(formula, bounds, cancellation); }
+			});
+			this.cancellation = cancellation;
+			this.started = false;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.util.concurrent.FutureTask#run()
+		 */
+		public void run() { 
+			started = true;
+			super.run();
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.util.concurrent.FutureTask#cancel(boolean)
+		 */
+		public boolean cancel(boolean mayInterruptIfRunning) { 
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) { 
+				if (cancellation != CancellationToken.NONE) 
+					cancellation.cancel();
+				if (executor instanceof ThreadPoolExecutor) 
+					((ThreadPoolExecutor) executor).remove(this);
+			}
+			return cancelled;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.util.concurrent.FutureTask#done()
+		 */
+		protected void done() { 
+			outstanding.remove(this);
+		}
+	}
+	
+	/**
+	 * Creates the daemon worker threads of an async solver.
+	 */
+	private static final class WorkerFactory implements ThreadFactory { 
+		private final int pool;
+		private final AtomicInteger workers = new AtomicInteger(0);
+		
+		WorkerFactory(int pool) { this.pool = pool; }
+		
+		public Thread newThread(Runnable r) {
+			final Thread t = new Thread(r, "kodkod-solver-" + pool + "-" + workers.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
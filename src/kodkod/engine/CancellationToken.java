@@ -0,0 +1,302 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import kodkod.engine.satlab.SATAssumptionSolver;
+import kodkod.engine.satlab.SATInterruptibleSolver;
+import kodkod.engine.satlab.SATSolver;
+
+/**
+ * A cooperative cancellation signal for a solving task.  A token is cancelled 
+ * either explicitly, with a call to {@linkplain #cancel()}, or automatically, 
+ * when its deadline (if any) passes.  Once cancelled, a token stays cancelled.
+ * 
+ * <p>A solving task that uses a token checks it at safe points during translation 
+ * (e.g. between the bindings of a quantified variable, and between the gates of a 
+ * circuit that is being converted to CNF), and throws an {@link AbortedException} 
+ * at the first such point after the token is cancelled or its deadline passes.  A SAT search that is 
+ * in progress when the token is cancelled, or when its deadline passes, is 
+ * {@linkplain SATInterruptibleSolver#interrupt() interrupted}, 
+ * if the solver supports it.  Solvers that do not support interruption finish their 
+ * search before the task is aborted.  The deadline of a token is enforced by a 
+ * scheduled task only while a SAT search is in progress, so a token that is no longer 
+ * in use is not retained until its deadline.</p>
+ * 
+ * <p>Tokens are safe for concurrent use, and the same token may be shared by 
+ * any number of tasks.</p>
+ * 
+ * @specfield cancelled: boolean
+ * @specfield deadline: lone long // deadline in milliseconds, relative to the creation of this token
+ * @author Emina Torlak
+ */
+public final class CancellationToken {
+	/**
+	 * A token that is never cancelled.
+	 */
+	public static final CancellationToken NONE = new CancellationToken(false);
+	
+	/** Interval, in milliseconds, at which an interrupt is re-sent to a solver that has not yet stopped. */
+	private static final long INTERRUPT_INTERVAL = 10;
+	
+	private static ScheduledThreadPoolExecutor scheduler;
+	
+	private final boolean cancellable;
+	private volatile boolean cancelled;
+	private final Set<SATInterruptibleSolver> solvers;
+	/* true if this token has a deadline, which is given by System.nanoTime() */
+	private final boolean timed;
+	private final long deadline;
+	/* the task that cancels this token at its deadline, scheduled while some solver is registered; guarded by this */
+	private ScheduledFuture<?> expiry;
+	/* the task that re-sends interrupts after this token is cancelled; guarded by this */
+	private ScheduledFuture<?> interrupter;
+	
+	/**
+	 * Constructs a token that is cancelled only by an explicit call to {@linkplain #cancel()}.
+	 * @ensures !this.cancelled' && no this.deadline'
+	 */
+	public CancellationToken() {
+		this(true);
+	}
+	
+	/**
+	 * Constructs a token that is cancelled by an explicit call to {@linkplain #cancel()}, 
+	 * or automatically once the given number of milliseconds have elapsed.
+	 * @ensures !this.cancelled' && this.deadline' = timeoutMillis
+	 * @throws IllegalArgumentException  timeoutMillis < 0
+	 */
+	public CancellationToken(long timeoutMillis) {
+		if (timeoutMillis < 0)
+			throw new IllegalArgumentException("timeoutMillis < 0: " + timeoutMillis);
+		this.cancellable = true;
+		this.cancelled = false;
+		this.solvers = Collections.newSetFromMap(new ConcurrentHashMap<SATInterruptibleSolver, Boolean>());
+		this.timed = true;
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+	
+	/**
+	 * Constructs a token without a deadline that is cancellable iff the given flag is true.
+	 */
+	private CancellationToken(boolean cancellable) {
+		this.cancellable = cancellable;
+		this.cancelled = false;
+		this.solvers = Collections.newSetFromMap(new ConcurrentHashMap<SATInterruptibleSolver, Boolean>());
+		this.timed = false;
+		this.deadline = 0;
+	}
+	
+	/**
+	 * Returns the scheduler, shared by all tokens, that is used to enforce 
+	 * deadlines and to re-send interrupts to SAT solvers.  Unlike a {@link java.util.Timer}, 
+	 * the scheduler keeps running when one of its tasks fails.
+	 * @return the scheduler shared by all tokens
+	 */
+	private static synchronized ScheduledThreadPoolExecutor scheduler() {
+		if (scheduler==null) {
+			scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					final Thread t = new Thread(r, "kodkod-cancellation");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			scheduler.setRemoveOnCancelPolicy(true);
+		}
+		return scheduler;
+	}
+	
+	/**
+	 * Cancels this token, and interrupts the SAT searches, if any, that are 
+	 * being performed on behalf of the tasks that use this token.  The interrupts 
+	 * are re-sent until the searches stop.  Calling this method on a cancelled 
+	 * token has no effect.
+	 * @ensures this.cancelled' 
+	 * @throws UnsupportedOperationException  this = NONE
+	 */
+	public synchronized void cancel() {
+		if (!cancellable)
+			throw new UnsupportedOperationException("The NONE token cannot be cancelled.");
+		if (cancelled) return;
+		cancelled = true;
+		if (expiry!=null) { 
+			expiry.cancel(false);
+			expiry = null;
+		}
+		if (!solvers.isEmpty()) {
+			interrupter = scheduler().scheduleWithFixedDelay(new Runnable() {
+				public void run() { interruptSolvers(); }
+			}, 0, INTERRUPT_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Interrupts all registered solvers, or stops re-sending interrupts if there are none.  
+	 * A solver that fails to handle the interrupt is interrupted again on the next run, 
+	 * and it does not prevent the other solvers from being interrupted.
+	 * @ensures no this.solvers => this.interrupter is cancelled 
+	 * @ensures all s: this.solvers | s.interrupt()
+	 */
+	private void interruptSolvers() { 
+		if (solvers.isEmpty()) { 
+			synchronized(this) { 
+				if (interrupter!=null && solvers.isEmpty()) {  // the searches have stopped 
+					interrupter.cancel(false);
+					interrupter = null;
+				}
+			}
+			return;
+		}
+		for(SATInterruptibleSolver s : solvers) { 
+			try { 
+				s.interrupt();
+			} catch (RuntimeException e) { 
+				// retried on the next run
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if the deadline of this token has passed, and cancels 
+	 * the token if so.
+	 * @ensures this.deadline has passed => this.cancelled'
+	 * @return this.deadline has passed
+	 */
+	private boolean expired() { 
+		if (timed && System.nanoTime() - deadline >= 0) { 
+			cancel();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds the given solver to the searches that are interrupted when this 
+	 * token is cancelled, and schedules the cancellation of this token at 
+	 * its deadline if no search was in progress.
+	 * @ensures this.solvers' = this.solvers + solver
+	 */
+	private synchronized void register(SATInterruptibleSolver solver) { 
+		solvers.add(solver);
+		if (timed && !cancelled && expiry==null) { 
+			expiry = scheduler().schedule(new Runnable() {
+				public void run() { cancel(); }
+			}, StrictMath.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	/**
+	 * Removes the given solver from the searches that are interrupted when 
+	 * this token is cancelled, and cancels the pending deadline task, if any, 
+	 * when no search remains in progress.
+	 * @ensures this.solvers' = this.solvers - solver
+	 */
+	private synchronized void unregister(SATInterruptibleSolver solver) { 
+		solvers.remove(solver);
+		if (solvers.isEmpty() && expiry!=null) { 
+			expiry.cancel(false);
+			expiry = null;
+		}
+	}
+	
+	/**
+	 * Returns true if this token has been cancelled.
+	 * @return this.cancelled
+	 */
+	public boolean isCancelled() { 
+		return cancelled || expired();
+	}
+	
+	/**
+	 * Throws an {@link AbortedException} if this token has been cancelled.  
+	 * Otherwise does nothing.
+	 * @throws AbortedException  this.cancelled
+	 */
+	public void checkpoint() { 
+		if (cancelled || expired()) 
+			throw new AbortedException("Cancelled.");
+	}
+	
+	/**
+	 * Solves the given SAT problem, interrupting the search if this 
+	 * token is cancelled before the search completes.
+	 * @return cnf.solve()
+	 * @throws AbortedException  this.cancelled' 
+	 * @throws kodkod.engine.satlab.SATAbortedException  the call to cnf.solve() was aborted for 
+	 * a reason other than the cancellation of this token
+	 */
+	boolean solve(SATSolver cnf) { 
+		return solve(cnf, null);
+	}
+	
+	/**
+	 * Solves the given SAT problem under the given assumptions, interrupting the search 
+	 * if this token is cancelled before the search completes.  A null array of assumptions 
+	 * is equivalent to calling {@link #solve(SATSolver) solve(cnf)}.
+	 * @requires assumptions != null => cnf in SATAssumptionSolver
+	 * @return assumptions = null => cnf.solve() else cnf.solve(assumptions)
+	 * @throws AbortedException  this.cancelled' 
+	 * @throws kodkod.engine.satlab.SATAbortedException  the call to cnf.solve(...) was aborted for 
+	 * a reason other than the cancellation of this token
+	 */
+	boolean solve(SATSolver cnf, int[] assumptions) { 
+		if (!cancellable) return outcome(cnf, assumptions);
+		final SATInterruptibleSolver interruptible = 
+			cnf instanceof SATInterruptibleSolver ? (SATInterruptibleSolver) cnf : null;
+		if (interruptible != null) register(interruptible);
+		try {
+			checkpoint(); // a cancellation that did not see cnf in this.solvers must be seen here
+			final boolean outcome = outcome(cnf, assumptions);
+			checkpoint();
+			return outcome;
+		} catch (RuntimeException e) { 
+			if (cancelled) throw new AbortedException("Cancelled.", e);
+			throw e;
+		} finally { 
+			if (interruptible != null) unregister(interruptible);
+		}
+	}
+	
+	/**
+	 * Returns the outcome of solving the given SAT problem under the given assumptions, if any.
+	 * @return assumptions = null => cnf.solve() else cnf.solve(assumptions)
+	 */
+	private static boolean outcome(SATSolver cnf, int[] assumptions) { 
+		return assumptions==null ? cnf.solve() : ((SATAssumptionSolver) cnf).solve(assumptions);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() { 
+		return this==NONE ? "CancellationToken.NONE" : "CancellationToken(" + (cancelled ? "cancelled" : "active") + ")";
+	}
+}
@@ -21,7 +21,13 @@
  */
 package kodkod.engine;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 import kodkod.ast.Formula;
+import kodkod.ast.Relation;
 import kodkod.engine.config.Options;
 import kodkod.engine.fol2sat.HigherOrderDeclException;
 import kodkod.engine.fol2sat.SymmetryDetector;
@@ -32,7 +38,13 @@ import kodkod.engine.satlab.SATAbortedException;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
+import kodkod.instance.Instance;
 import kodkod.instance.Universe;
+import kodkod.util.ints.ArrayIntVector;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntTreeSet;
+import kodkod.util.ints.IntVector;
 
 /** 
  * A computational engine for solving a sequence of related relational
@@ -87,9 +99,27 @@ import kodkod.instance.Universe;
  * to specify an {@linkplain SATFactory#incremental() incremental} SAT solver.  Note that these 
  * restrictions prevent unsat core extraction.</p>
  * 
+ * <p>A {@linkplain #retractable(Options) retractable} incremental solver lifts the monotonicity 
+ * restriction on formulas.  It guards the translation of each formula with a fresh activation literal, 
+ * and it solves the accumulated CNF under the assumption that the literals of all formulas that have not been 
+ * {@linkplain #retract(Formula) retracted} are true.  Retracting a formula therefore requires no 
+ * re-translation, and an UNSAT solution does not render a retractable solver unusable.  A retractable solver 
+ * also accepts bounds <code>bi</code> that rebind relations from <code>b0 + ... + bi-1</code>, as long as the new bounds 
+ * lie between the bounds with which the relations were first introduced.  Such bounds narrow the space of 
+ * solutions by fixing some primary variables through assumptions.  They remain in effect until they are replaced 
+ * by another call that rebinds the same relations, so scopes and scenarios can be swept, tightened and 
+ * loosened again over a single translation.  A retractable solver requires {@linkplain Options#solver() opt.solver} 
+ * to produce {@linkplain SATFactory#assumptions() assumption solvers}, and it does not use the total order and 
+ * acyclicity predicates in its formulas to break symmetries.  Its bounds need not induce coarser symmetry classes 
+ * than the initial bounds:  the symmetry breaking predicate for the initial bounds is enforced by assumption only 
+ * while the current bounds, including narrowed ones, respect those classes.</p>
+ * 
  * @specfield options: {@link Options} 
  * @specfield bounds: lone {@link Bounds}
  * @specfield formulas: set {@link Formula}
+ * @specfield retractable: boolean
+ * @specfield narrowed: Relation -> lone (TupleSet -> TupleSet) // narrowed lower and upper bounds of relations in this.bounds
+ * @invariant some narrowed => retractable
  * @invariant formulas.*components & Relation in bounds.relations
  * @invariant some formulas iff some bounds 
  * @invariant options.solver.incremental() && options.logTranslation = 0   
@@ -105,15 +135,26 @@ public final class IncrementalSolver implements KodkodSolver {
 	private final Options options;
 	private Translation.Incremental translation;
 	private Boolean outcome;
+	/**
+	 * Maps each formula in this.formulas to the activation literals that guard its translations, 
+	 * if this solver is retractable.  Otherwise null.
+	 */
+	private final Map<Formula, IntSet> guards;
+	/**
+	 * Narrowed bounds of the relations in this.bounds, if any.
+	 */
+	private Bounds narrowed;
 	
 	/**
 	 * Initializes the solver with the given options.
 	 * @ensures no this.solution' && no this.formulas' && 
-	 *          no this.bounds'&& this.options' = options
+	 *          no this.bounds'&& this.options' = options && this.retractable' = retractable
 	 */
-	private IncrementalSolver(Options options) { 
+	private IncrementalSolver(Options options, boolean retractable) { 
 		this.options = options;
 		this.outcome = null;
+		this.guards = retractable ? new LinkedHashMap<Formula, IntSet>() : null;
+		this.narrowed = null;
 	}
 	
 	/**
@@ -125,7 +166,19 @@ public final class IncrementalSolver implements KodkodSolver {
 	 */
 	public static IncrementalSolver solver(Options options) {
 		Translator.checkIncrementalOptions(options);
-		return new IncrementalSolver(options.clone());
+		return new IncrementalSolver(options.clone(), false);
+	}
+	
+	/**
+	 * Returns a new retractable {@link IncrementalSolver} using the given options.   
+	 * @requires options.solver.incremental() && options.solver.assumptions() && options.logTranslation = 0   
+	 * @return some s: IncrementalSolver | no s.formulas  && no s.bounds  && s.options = options.clone() && s.retractable
+	 * @throws NullPointerException  any of the arguments are null
+	 * @throws IllegalArgumentException any of the preconditions on options are violated
+	 */
+	public static IncrementalSolver retractable(Options options) {
+		Translator.checkRetractableOptions(options);
+		return new IncrementalSolver(options.clone(), true);
 	}
 	
 	/**
@@ -135,21 +188,28 @@ public final class IncrementalSolver implements KodkodSolver {
 	 * call to this method results in an exception.
 	 * @requires this.{@link #usable() usable}()
 	 * @requires f.*components & Relation in (this.bounds + b).relations
-	 * @requires some this.bounds => this.bounds.universe = b.universe && no b.intBound && no (this.bounds.relations & b.relations)
+	 * @requires some this.bounds => this.bounds.universe = b.universe && no b.intBound 
 	 * @requires some this.bounds => 
+	 *            (this.retractable => 
+	 *              (all r: this.bounds.relations & b.relations | 
+	 *                this.bounds.lowerBound[r] in b.lowerBound[r] && b.upperBound[r] in this.bounds.upperBound[r]) else
+	 *              no (this.bounds.relations & b.relations))
+	 * @requires some this.bounds && !this.retractable => 
 	 *            all s: {@link SymmetryDetector#partition(Bounds) partition}(this.bounds) |  
 	 * 				some p: {@link SymmetryDetector#partition(Bounds) partition}(b) | 
 	 * 				   s.elements in p.elements
 	 * @ensures this.formulas' = this.formulas + f
 	 * @ensures some this.bounds =>
-	 *            (this.bounds.relations' = this.bounds.relations + b.relations &&
-	 *             this.bounds.upperBound' = this.bounds.upperBound + b.upperBound &&
-	 *             this.bounds.lowerBound' = this.bounds.lowerBound + b.lowerBound) else
+	 *            (let fresh = b.relations - this.bounds.relations | 
+	 *             this.bounds.relations' = this.bounds.relations + fresh &&
+	 *             this.bounds.upperBound' = this.bounds.upperBound + fresh<:b.upperBound &&
+	 *             this.bounds.lowerBound' = this.bounds.lowerBound + fresh<:b.lowerBound && 
+	 *             this.narrowed' = this.narrowed ++ (b.relations & this.bounds.relations)<:(b.lowerBound ->b.upperBound)) else
 	 *            (this.bounds' = bounds)
 	 * @return some sol: Solution | sol.instance() = null => 
-	 *              UNSAT(this.formulas', this.bounds', this.options) else 
-	 *              sol.instance() in MODELS(Formula.and(this.formulas'), this.bounds', this.options)
-	 * @throws IllegalStateException a prior call returned an UNSAT solution or resulted in an exception
+	 *              UNSAT(this.formulas', this.bounds' ++ this.narrowed', this.options) else 
+	 *              sol.instance() in MODELS(Formula.and(this.formulas'), this.bounds' ++ this.narrowed', this.options)
+	 * @throws IllegalStateException a prior call resulted in an exception, or !this.retractable and a prior call returned an UNSAT solution 
 	 * @throws NullPointerException  any of the arguments are null
 	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by this.bounds + b
 	 * @throws HigherOrderDeclException  the formula contains a higher order declaration
@@ -157,22 +217,50 @@ public final class IncrementalSolver implements KodkodSolver {
 	 * @throws AbortedException this solving task has been aborted
 	 */
 	public Solution solve(Formula f, Bounds b) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		return solve(f, b, options.cancellation());
+	}
+	
+	/**
+	 * Behaves like {@link #solve(Formula, Bounds)}, except that solving is aborted when the 
+	 * given token, rather than {@code this.options.cancellation}, is cancelled.  When solving 
+	 * is aborted, the thrown exception carries the {@linkplain AbortedException#stats() statistics} 
+	 * gathered up to that point, and this solver should not be used again.
+	 * @see #solve(Formula, Bounds)
+	 * @see kodkod.engine.KodkodSolver#solve(kodkod.ast.Formula, kodkod.instance.Bounds, kodkod.engine.CancellationToken)
+	 */
+	public Solution solve(Formula f, Bounds b, CancellationToken cancellation) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		if (cancellation==null) 
+			throw new NullPointerException();
 		if (outcome==Boolean.FALSE)
 			throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) produced an UNSAT solution.");
 
 		if (outcome != null && translation==null) 
 			throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) resulted in an exception.");
 		
+		final CancellationToken saved = options.cancellation();
+		final long startTransl = System.currentTimeMillis();
+		long endTransl = 0;
 		final Solution solution;
 		try {			
-			final long startTransl = System.currentTimeMillis();
-			translation = translation==null ? Translator.translateIncremental(f, b, options) : Translator.translateIncremental(f, b, translation);
-			final long endTransl = System.currentTimeMillis();
+			options.setCancellation(cancellation); // seen by the translation, which shares this.options
+			if (translation != null) {
+				final Set<Relation> rebound = new LinkedHashSet<Relation>(b.relations());
+				rebound.retainAll(translation.bounds().relations());
+				translation = Translator.translateIncremental(f, b, translation);
+				narrow(rebound, b);
+			} else if (guards != null) {
+				translation = Translator.translateRetractable(f, b, options);
+			} else {
+				translation = Translator.translateIncremental(f, b, options);
+			}
+			endTransl = System.currentTimeMillis();
+			if (guards != null) 
+				guard(f, translation.activation());
 			
 			if (translation.trivial()) {
 				final Statistics stats = new Statistics(translation, endTransl - startTransl, 0);
 				if (translation.cnf().solve()) {
-					solution = Solution.triviallySatisfiable(stats, translation.interpret());
+					solution = Solution.triviallySatisfiable(stats, narrow(translation.interpret()));
 				} else {
 					solution = Solution.triviallyUnsatisfiable(stats, null);
 				}	
@@ -181,7 +269,7 @@ public final class IncrementalSolver implements KodkodSolver {
 				
 				translation.options().reporter().solvingCNF(translation.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
 				final long startSolve = System.currentTimeMillis();
-				final boolean sat = cnf.solve();
+				final boolean sat = cancellation.solve(cnf, guards==null ? null : assumptions());
 				final long endSolve = System.currentTimeMillis();
 
 				final Statistics stats = new Statistics(translation, endTransl - startTransl, endSolve - startSolve);
@@ -191,15 +279,20 @@ public final class IncrementalSolver implements KodkodSolver {
 					solution = Solution.unsatisfiable(stats, null);
 				}
 			}
-		} catch (SATAbortedException sae) {
+		} catch (SATAbortedException | AbortedException e) {
+			final long end = System.currentTimeMillis();
+			final Statistics stats = endTransl==0 ? new Statistics(0, 0, 0, end - startTransl, 0, null) : 
+				new Statistics(translation, endTransl - startTransl, end - endTransl);
 			free();
-			throw new AbortedException(sae);		
+			throw new AbortedException(e.getMessage(), e, stats);		
 		} catch (RuntimeException e) {
 			free();
 			throw e;
+		} finally {
+			options.setCancellation(saved);
 		}
 		
-		if (solution.sat()) {
+		if (solution.sat() || guards != null) { // an UNSAT outcome under assumptions does not invalidate the solver
 			outcome = Boolean.TRUE;
 		} else {
 			outcome = Boolean.FALSE;
@@ -209,9 +302,118 @@ public final class IncrementalSolver implements KodkodSolver {
 		return solution;
 	}
 
+	/**
+	 * Records that the translation of the given formula is guarded by the given activation literal, if any.
+	 * @requires this.retractable
+	 * @ensures activation != 0 => this.guards' = this.guards ++ f -> (this.guards[f] + activation)
+	 * @ensures f !in this.guards.Int => this.guards' = this.guards + f -> {}
+	 */
+	private void guard(Formula f, int activation) {
+		IntSet lits = guards.get(f);
+		if (lits == null) {
+			lits = new IntTreeSet();
+			guards.put(f, lits);
+		}
+		if (activation != 0) 
+			lits.add(activation);
+	}
+	
+	/**
+	 * Records the bounds that b gives to the given relations as their narrowed bounds.
+	 * @requires this.retractable
+	 * @ensures this.narrowed' = this.narrowed ++ rebound<:(b.lowerBound -> b.upperBound)
+	 */
+	private void narrow(Set<Relation> rebound, Bounds b) {
+		if (rebound.isEmpty())
+			return;
+		if (narrowed == null) 
+			narrowed = new Bounds(b.universe());
+		for(Relation r : rebound) {
+			narrowed.bound(r, b.lowerBound(r), b.upperBound(r));
+		}
+	}
+	
+	/**
+	 * Binds each relation in this.narrowed to its narrowed lower bound in the given 
+	 * instance, and returns the instance.  This is used to obtain a model of a trivially
+	 * true translation, which is satisfied by every instance within this.bounds.
+	 * @ensures instance.relationTuples' = instance.relationTuples ++ this.narrowed.lowerBound
+	 * @return instance
+	 */
+	private Instance narrow(Instance instance) {
+		if (narrowed != null) {
+			for(Relation r : narrowed.relations()) {
+				instance.add(r, narrowed.lowerBound(r));
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Returns the activation literals of all formulas in this.formulas and, if the current bounds 
+	 * permit it, of the symmetry breaking predicate, followed by the literals that enforce the narrowed 
+	 * bounds in this.narrowed.
+	 * @requires this.retractable
+	 * @return the activation literals of all formulas in this.formulas and of the applicable symmetry 
+	 * breaking predicate, followed by the literals that enforce the narrowed bounds in this.narrowed
+	 */
+	private int[] assumptions() {
+		final IntSet active = new IntTreeSet();
+		for(IntSet lits : guards.values()) {
+			active.addAll(lits);
+		}
+		final int sbp = translation.symmetryAssumption(narrowed == null ? new Bounds(translation.bounds().universe()) : narrowed);
+		if (sbp != 0)
+			active.add(sbp);
+		if (narrowed == null) 
+			return active.toArray();
+		final IntVector lits = new ArrayIntVector(active.toArray());
+		for(Relation r : narrowed.relations()) {
+			for(int lit : translation.assumptions(r, narrowed.lowerBound(r), narrowed.upperBound(r))) {
+				lits.add(lit);
+			}
+		}
+		return lits.toArray();
+	}
+	
+	/**
+	 * Retracts the given formula from this solver, so that it no longer constrains 
+	 * the solutions returned by subsequent calls to {@link #solve(Formula, Bounds) solve}.  
+	 * If the formula was added more than once, all of its copies are retracted.  The 
+	 * bounds that were added together with the formula are retained.   
+	 * @requires this.retractable
+	 * @ensures this.formulas' = this.formulas - f 
+	 * @return f in this.formulas
+	 * @throws IllegalStateException  !this.retractable or !this.usable() 
+	 */
+	public boolean retract(Formula f) {
+		if (guards == null)
+			throw new IllegalStateException("Cannot retract formulas from a solver that is not retractable.");
+		if (!usable())
+			throw new IllegalStateException("Cannot use this solver since a prior call to solve(...) resulted in an exception.");
+		final IntSet lits = guards.remove(f);
+		if (lits == null) 
+			return false;
+		final int[] unit = new int[1];
+		for(IntIterator itr = lits.iterator(); itr.hasNext(); ) {
+			unit[0] = -itr.next();
+			translation.cnf().addClause(unit);
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns true iff this solver is retractable.
+	 * @return this.retractable
+	 */
+	public boolean retractable() {
+		return guards != null;
+	}
+	
 	/**
 	 * Returns true iff this solver has neither returned an UNSAT solution so far
-	 * nor thrown an exception during solving.
+	 * nor thrown an exception during solving.  A retractable solver remains usable 
+	 * after returning an UNSAT solution.
 	 * @return  true iff this solver has neither returned an UNSAT solution so far
 	 * nor thrown an exception during solving
 	 */
@@ -78,6 +78,25 @@ public interface KodkodSolver {
 	public Solution solve(Formula formula, Bounds bounds) 
 	throws HigherOrderDeclException, UnboundLeafException, AbortedException;
 	
+	/**
+	 * Behaves like {@link #solve(Formula, Bounds)}, except that solving is aborted when the 
+	 * given token, rather than {@code this.options.cancellation}, is cancelled.  When solving 
+	 * is aborted, the thrown exception carries the {@linkplain AbortedException#stats() statistics} 
+	 * gathered up to that point. 
+	 * 
+	 * @return some sol:  {@link Solution} | 
+	 *          sol.satisfiable() => sol.instance() in MODELS(formula, bounds, this.options) else UNSAT(formula, bound, this.options)  
+	 *              
+	 * @throws NullPointerException  formula = null || bounds = null || cancellation = null
+	 * @throws UnboundLeafException  the formula contains an undeclared variable or a relation not mapped by the given bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but {@code this.options.skolemDepth} is insufficiently large
+	 * @throws AbortedException  this solving task was aborted, either because the given token was cancelled 
+	 * or because the SAT solver terminated abnormally  
+	 */
+	public Solution solve(Formula formula, Bounds bounds, CancellationToken cancellation) 
+	throws HigherOrderDeclException, UnboundLeafException, AbortedException;
+	
 //	/**
 //	 * Attempts to find a set of solutions to the given {@code formula} and {@code bounds} with respect to 
 //	 * {@code this.options} or, optionally, to prove the formula's unsatisfiability.
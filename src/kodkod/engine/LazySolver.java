@@ -0,0 +1,184 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine;
+
+import kodkod.ast.Formula;
+import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.HigherOrderDeclException;
+import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.engine.fol2sat.UnboundLeafException;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.instance.Instance;
+
+/** 
+ * A computational engine for solving relational satisfiability problems 
+ * whose large universally quantified constraints are instantiated on demand.  
+ * 
+ * <p>
+ * A lazy solver does not ground every top-level universally quantified conjunct of a problem up front.  
+ * A conjunct whose estimated number of bindings is at least the solver's threshold is 
+ * {@linkplain Translator#translateLazily(Formula, Bounds, Options, int) deferred}:  only the bindings 
+ * for which its body is decided to be false by the bounds are translated initially.  The solver then 
+ * alternates between solving the translation and checking the resulting model against the deferred 
+ * conjuncts.  The instances of the deferred conjuncts that are violated by the model are 
+ * {@linkplain Translator#refine(Translation.Incremental, Instance) added} to the underlying incremental 
+ * SAT solver, and the search resumes, until the model satisfies every conjunct or the translation becomes 
+ * unsatisfiable.  Since each violated instance is added at most once, this process terminates.  It pays off 
+ * when the deferred conjuncts are satisfied by almost all of their bindings, so that few of their instances 
+ * are ever translated.
+ * </p>
+ * 
+ * <p>We require {@linkplain Options#logTranslation() opt.logTranslation} to be 
+ * {@linkplain Options#setLogTranslation(int) disabled} and {@linkplain Options#solver() opt.solver} 
+ * to specify an {@linkplain kodkod.engine.satlab.SATFactory#incremental() incremental} SAT solver.  
+ * Note that these restrictions prevent unsat core extraction.</p>
+ * 
+ * @specfield options: {@link Options} 
+ * @specfield threshold: int // minimum estimated number of bindings of a deferred conjunct
+ * @invariant options.solver.incremental() && options.logTranslation = 0 && threshold > 0 
+ * @author Emina Torlak 
+ */
+public final class LazySolver implements KodkodSolver {
+	private final Options options;
+	private final int threshold;
+	
+	/**
+	 * Initializes the solver with the given options and threshold.
+	 * @ensures this.options' = options && this.threshold' = threshold
+	 */
+	private LazySolver(Options options, int threshold) { 
+		this.options = options;
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Returns a new {@link LazySolver} using the given options and threshold.   
+	 * @requires options.solver.incremental() && options.logTranslation = 0  
+	 * @requires threshold > 0
+	 * @return some s: LazySolver | s.options = options.clone() && s.threshold = threshold
+	 * @throws NullPointerException  options = null
+	 * @throws IllegalArgumentException any of the preconditions on the arguments are violated
+	 */
+	public static LazySolver solver(Options options, int threshold) {
+		Translator.checkIncrementalOptions(options);
+		if (threshold < 1)
+			throw new IllegalArgumentException("Expected threshold > 0, given threshold = " + threshold);
+		return new LazySolver(options.clone(), threshold);
+	}
+	
+	/**
+	 * Returns a copy of {@code this.options}.
+	 * @return this.options.clone()
+	 */
+	public Options options() { return options.clone(); }
+	
+	/**
+	 * Returns the minimum estimated number of bindings of a deferred conjunct.
+	 * @return this.threshold
+	 */
+	public int threshold() { return threshold; }
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.KodkodSolver#solve(kodkod.ast.Formula, kodkod.instance.Bounds)
+	 */
+	public Solution solve(Formula formula, Bounds bounds) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		return solve(formula, bounds, options.cancellation());
+	}
+	
+	/**
+	 * {@inheritDoc}  The translation time of the returned solution includes 
+	 * the time spent checking models and instantiating deferred conjuncts, and its 
+	 * solving time is the total time spent in the SAT solver.
+	 * @see kodkod.engine.KodkodSolver#solve(kodkod.ast.Formula, kodkod.instance.Bounds, kodkod.engine.CancellationToken)
+	 */
+	public Solution solve(Formula formula, Bounds bounds, CancellationToken cancellation) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		if (cancellation==null) 
+			throw new NullPointerException();
+		
+		final Options opt = options.clone();
+		opt.setCancellation(cancellation);
+		
+		final long start = System.currentTimeMillis();
+		long translTime = 0, solveTime = 0;
+		Translation.Incremental translation = null;
+		try {
+			translation = Translator.translateLazily(formula, bounds, opt, threshold);
+			translTime = System.currentTimeMillis() - start;
+			
+			final SATSolver cnf = translation.cnf();
+			while(true) { 
+				opt.reporter().solvingCNF(translation.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
+				final long startSolve = System.currentTimeMillis();
+				final boolean sat = cancellation.solve(cnf);
+				solveTime += System.currentTimeMillis() - startSolve;
+				if (!sat) 
+					return solution(translation, null, translTime, solveTime);
+				
+				final long startRefine = System.currentTimeMillis();
+				final Instance instance = translation.interpret();
+				final boolean refined = Translator.refine(translation, instance);
+				translTime += System.currentTimeMillis() - startRefine;
+				if (!refined) 
+					return solution(translation, instance, translTime, solveTime);
+			}
+		} catch (SATAbortedException | AbortedException e) {
+			final long end = System.currentTimeMillis();
+			final Statistics stats;
+			if (translation==null) {
+				stats = new Statistics(0, 0, 0, end - start, 0, null);
+			} else {
+				stats = new Statistics(translation, translTime, end - start - translTime);
+			}
+			throw new AbortedException(e.getMessage(), e, stats);
+		} finally { 
+			if (translation!=null) 
+				translation.cnf().free();
+		}
+	}
+	
+	/**
+	 * Returns the solution with the given instance, or an unsatisfiable solution if the 
+	 * instance is null.
+	 * @return the solution with the given instance, or an unsatisfiable solution if the instance is null
+	 */
+	private static Solution solution(Translation.Incremental translation, Instance instance, long translTime, long solveTime) {
+		final Solution sol;
+		if (translation.trivial()) { 
+			final Statistics stats = new Statistics(0, 0, 0, translTime, 0, translation.profile());
+			sol = instance==null ? Solution.triviallyUnsatisfiable(stats, null) : Solution.triviallySatisfiable(stats, instance);
+		} else { 
+			final Statistics stats = new Statistics(translation, translTime, solveTime);
+			sol = instance==null ? Solution.unsatisfiable(stats, null) : Solution.satisfiable(stats, instance);
+		}
+		return sol;
+	}
+	
+	/**
+	 * Releases the resources, if any, associated with this solver.
+	 */
+	public void free() {}
+	
+}
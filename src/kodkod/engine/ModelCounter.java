@@ -0,0 +1,611 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import kodkod.ast.Formula;
+import kodkod.ast.Node;
+import kodkod.ast.Relation;
+import kodkod.ast.RelationPredicate;
+import kodkod.ast.visitor.AbstractReplacer;
+import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.HigherOrderDeclException;
+import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.Translator;
+import kodkod.engine.fol2sat.UnboundLeafException;
+import kodkod.engine.satlab.SATAbortedException;
+import kodkod.engine.satlab.SATBatchSolver;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATInterruptibleSolver;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.instance.Instance;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+import kodkod.util.nodes.AnnotatedNode;
+
+/**
+ * Counts and samples the solutions of relational satisfiability problems, projected onto a set of 
+ * relations.  Two solutions are considered the same if they agree on the values of all relations 
+ * in the projection.  
+ * 
+ * <p>A problem is translated to CNF once, without symmetry breaking, and the resulting clauses are 
+ * replayed into a fresh SAT solver for each query.  In particular, total order and acyclicity predicates 
+ * are expanded into equivalent constraints before translation, rather than being used to fix the values 
+ * of the ordered relations.  Exact counts are computed by enumeration.  
+ * Approximate counts and samples partition the projected solutions into cells with random XOR 
+ * constraints over the primary variables of the projected relations, in the style of 
+ * ApproxMC and UniGen:  an approximate count is within a factor of {@code (1+epsilon)} of the exact 
+ * count with probability at least {@code 1-delta}, and samples are drawn near-uniformly, 
+ * each with a probability that is within a factor of about {@code (1+epsilon)} of uniform.  
+ * The projected relations that are not constrained by the formula are counted and sampled directly 
+ * from their bounds.</p>
+ * 
+ * <p>The SAT solver specified by {@code this.options} must be incremental.</p>
+ * 
+ * @specfield options: Options
+ * @author Emina Torlak
+ */
+public final class ModelCounter {
+	private final Options options;
+	
+	/**
+	 * Constructs a new ModelCounter with the default options.
+	 * @ensures this.options' = new Options()
+	 */
+	public ModelCounter() { 
+		this.options = new Options();
+	}
+	
+	/**
+	 * Constructs a new ModelCounter with the given options.
+	 * @ensures this.options' = options
+	 * @throws NullPointerException  options = null
+	 */
+	public ModelCounter(Options options) { 
+		if (options == null)
+			throw new NullPointerException();
+		this.options = options;
+	}
+	
+	/**
+	 * Returns the Options object used by this ModelCounter.  Its symmetry breaking 
+	 * and translation cache settings are ignored.
+	 * @return this.options
+	 */
+	public Options options() { 
+		return options;
+	}
+	
+	/**
+	 * Returns the number of solutions to the given formula with respect to the given bounds, 
+	 * projected onto the given relations.  The projected solutions are enumerated, so this 
+	 * method should be used only for problems with few of them. 
+	 * @return #{ i: MODELS(formula, bounds, this.options) | i.tuples[projection] }
+	 * @throws NullPointerException  formula = null || bounds = null || projection = null
+	 * @throws IllegalArgumentException  !this.options.solver().incremental() || projection !in bounds.relations
+	 * @throws UnboundLeafException  the formula contains an undeclared variable or a relation not mapped by the given bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but {@code this.options.skolemDepth} is insufficiently large
+	 * @throws AbortedException  this counting task was aborted  
+	 */
+	public BigInteger count(Formula formula, Bounds bounds, Set<Relation> projection) 
+		throws HigherOrderDeclException, UnboundLeafException, AbortedException { 
+		final Problem problem = new Problem(formula, bounds, projection);
+		try { 
+			return problem.scale(problem.cell(NO_XORS, 0, Integer.MAX_VALUE, null), 0);
+		} catch (SATAbortedException sae) {
+			throw new AbortedException(sae);
+		} finally { 
+			problem.cnf.free();
+		}
+	}
+	
+	/**
+	 * Returns an approximation of the number of solutions to the given formula with respect to the 
+	 * given bounds, projected onto the given relations.  The approximation is within a factor of 
+	 * {@code 1+epsilon} of the exact count with probability at least {@code 1-delta}.
+	 * @requires epsilon > 0 && 0 < delta < 1
+	 * @return some c: BigInteger | Pr[ count / (1+epsilon) <= c <= count * (1+epsilon) ] >= 1 - delta, where
+	 *   count = {@link #count(Formula, Bounds, Set) count}(formula, bounds, projection) 
+	 * @throws NullPointerException  formula = null || bounds = null || projection = null || random = null
+	 * @throws IllegalArgumentException  epsilon <= 0 || delta !in (0..1) 
+	 * @throws IllegalArgumentException  !this.options.solver().incremental() || projection !in bounds.relations
+	 * @throws UnboundLeafException  the formula contains an undeclared variable or a relation not mapped by the given bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but {@code this.options.skolemDepth} is insufficiently large
+	 * @throws AbortedException  this counting task was aborted  
+	 */
+	public BigInteger approximateCount(Formula formula, Bounds bounds, Set<Relation> projection, double epsilon, double delta, Random random) 
+		throws HigherOrderDeclException, UnboundLeafException, AbortedException { 
+		if (!(epsilon > 0) || !(delta > 0 && delta < 1))
+			throw new IllegalArgumentException("epsilon must be positive and delta must be in (0..1): " + epsilon + ", " + delta);
+		if (random == null) 
+			throw new NullPointerException();
+		final Problem problem = new Problem(formula, bounds, projection);
+		try { 
+			return problem.approximateCount(epsilon, delta, random);
+		} catch (SATAbortedException sae) {
+			throw new AbortedException(sae);
+		} finally { 
+			problem.cnf.free();
+		}
+	}
+	
+	/**
+	 * Returns an iterator over an unbounded stream of near-uniform samples from the solutions to the 
+	 * given formula with respect to the given bounds, projected onto the given relations.  Each sample 
+	 * is a complete instance of the problem, and its projection is drawn with a probability that is within 
+	 * a factor of about {@code 1+epsilon} of {@code 1/count}, where {@code count} is the number of projected 
+	 * solutions.  The sampler has no samples if the problem is unsatisfiable.  Its SAT solver is 
+	 * held until the sampler is {@linkplain Sampler#free() freed} or sampling is aborted.
+	 * @requires epsilon > 0
+	 * @return a sampler of near-uniform samples from the solutions to the given problem
+	 * @throws NullPointerException  formula = null || bounds = null || projection = null || random = null
+	 * @throws IllegalArgumentException  epsilon <= 0 
+	 * @throws IllegalArgumentException  !this.options.solver().incremental() || projection !in bounds.relations
+	 * @throws UnboundLeafException  the formula contains an undeclared variable or a relation not mapped by the given bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but {@code this.options.skolemDepth} is insufficiently large
+	 * @throws AbortedException  this sampling task was aborted  
+	 */
+	public Sampler sample(Formula formula, Bounds bounds, Set<Relation> projection, double epsilon, Random random) 
+		throws HigherOrderDeclException, UnboundLeafException, AbortedException { 
+		if (!(epsilon > 0))
+			throw new IllegalArgumentException("epsilon must be positive: " + epsilon);
+		if (random == null) 
+			throw new NullPointerException();
+		return new Sampler(new Problem(formula, bounds, projection), epsilon, random);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return options.toString();
+	}
+	
+	private static final List<int[]> NO_XORS = new ArrayList<int[]>(0);
+	/* the tolerance and confidence of the approximate counts used to choose the size of sampled cells */
+	private static final double SAMPLER_EPSILON = 0.8, SAMPLER_DELTA = 0.2;
+	
+	/**
+	 * A problem translated to CNF, with the primary variables of its projected relations, 
+	 * and the projected relations that are not constrained by its formula.
+	 * @specfield translation: Translation.Whole
+	 * @specfield cnf: ReplaySolver
+	 * @invariant translation.cnf = cnf
+	 */
+	private final class Problem { 
+		final Translation.Whole translation;
+		final ReplaySolver cnf;
+		/* the primary variables of the projected relations */
+		final int[] vars;
+		/* the projected relations that have no primary variables but can take more than one value, 
+		 * and, for each, the tuples in its upper bound but not in its lower bound */
+		final Relation[] free;
+		final int[][] freeTuples;
+		final int freeBits;
+		
+		/**
+		 * Translates the given problem and collects the primary variables of the given projection.
+		 */
+		Problem(Formula formula, Bounds bounds, Set<Relation> projection) { 
+			if (!options.solver().incremental())
+				throw new IllegalArgumentException("cannot count solutions without an incremental solver.");
+			if (!bounds.relations().containsAll(projection))
+				throw new IllegalArgumentException("projection is not in bounds.relations: " + projection);
+			
+			final Options opt = options.clone();
+			final ReplaySolver recorder = new ReplaySolver(options.solver());
+			opt.setSymmetryBreaking(0);
+			opt.setTranslationCache(null);
+			opt.setSolver(new SATFactory() {
+				public SATSolver instance() { return recorder; }
+				public String toString() { return "replay(" + options.solver() + ")"; }
+			});
+			try { 
+				this.translation = Translator.translate(expandPredicates(formula), bounds, opt);
+			} catch (RuntimeException e) { 
+				recorder.free();
+				throw e;
+			}
+			this.cnf = recorder;
+			cnf.record(false);
+			
+			final Bounds tbounds = translation.bounds();
+			final IntSet projected = Ints.bestSet(StrictMath.max(1, translation.numPrimaryVariables()+1));
+			final List<Relation> unconstrained = new ArrayList<Relation>();
+			int bits = 0;
+			for(Relation r : projection) { 
+				final IntSet rvars = translation.primaryVariables(r);
+				if (!rvars.isEmpty()) { 
+					projected.addAll(rvars);
+				} else if (tbounds.lowerBound(r).size() < tbounds.upperBound(r).size()) { 
+					unconstrained.add(r);
+					bits += tbounds.upperBound(r).size() - tbounds.lowerBound(r).size();
+				}
+			}
+			this.vars = projected.toArray();
+			this.free = unconstrained.toArray(new Relation[unconstrained.size()]);
+			this.freeTuples = new int[free.length][];
+			this.freeBits = bits;
+			for(int i = 0; i < free.length; i++) { 
+				final IntSet tuples = Ints.bestSet(tbounds.upperBound(free[i]).capacity());
+				tuples.addAll(tbounds.upperBound(free[i]).indexView());
+				tuples.removeAll(tbounds.lowerBound(free[i]).indexView());
+				freeTuples[i] = tuples.toArray();
+			}
+		}
+		
+		/**
+		 * Returns a formula that is equivalent to the given formula, with all of its 
+		 * relation predicates replaced with equivalent constraints.  This prevents the 
+		 * translator from breaking symmetries by fixing the values of relations that 
+		 * are constrained by total order and acyclicity predicates.
+		 * @return a formula equivalent to the given formula, with no relation predicates
+		 */
+		private Formula expandPredicates(Formula formula) { 
+			final Set<Node> shared = AnnotatedNode.annotate(formula).sharedNodes();
+			return formula.accept(new AbstractReplacer(shared) {
+				public Formula visit(RelationPredicate pred) {
+					final Formula ret = lookup(pred);
+					return ret!=null ? ret : cache(pred, pred.toConstraints());
+				}
+			});
+		}
+		
+		/**
+		 * Returns count * 2^(m + this.freeBits).
+		 * @return count * 2^(m + this.freeBits)
+		 */
+		BigInteger scale(int count, int m) { 
+			return BigInteger.valueOf(count).shiftLeft(m + freeBits);
+		}
+		
+		/**
+		 * Returns a random XOR constraint over this.vars, represented as an array whose first 
+		 * element is the parity of the constraint and whose remaining elements are its variables.
+		 * @return a random XOR constraint over this.vars
+		 */
+		int[] randomXor(Random random) { 
+			final int[] xor = new int[vars.length + 1];
+			int size = 1;
+			xor[0] = random.nextBoolean() ? 1 : 0;
+			for(int var : vars) { 
+				if (random.nextBoolean()) xor[size++] = var;
+			}
+			return Arrays.copyOf(xor, size);
+		}
+		
+		/**
+		 * Counts the projected solutions that satisfy the first m of the given XOR constraints, up to the 
+		 * given limit, and adds an instance for each of them to the given list, if it is not null.
+		 * @requires 0 <= m <= xors.size()
+		 * @return min(limit, #{ i: MODELS(this.translation) | i satisfies xors[0..m) }.tuples[projection]) 
+		 */
+		int cell(List<int[]> xors, int m, int limit, List<Instance> instances) { 
+			cnf.reset();
+			for(int i = 0; i < m; i++) { 
+				addXor(xors.get(i));
+			}
+			final int[] block = new int[vars.length];
+			int count = 0;
+			while(count < limit && options.cancellation().solve(cnf)) { 
+				count++;
+				if (instances != null) instances.add(translation.interpret());
+				for(int i = 0; i < vars.length; i++) { 
+					block[i] = cnf.valueOf(vars[i]) ? -vars[i] : vars[i];
+				}
+				cnf.addClause(block);
+			}
+			return count;
+		}
+		
+		/**
+		 * Adds the given XOR constraint to this.cnf, using one auxiliary variable for each 
+		 * of its variables except the last two.
+		 * @requires xor = [parity] + vars
+		 */
+		private void addXor(int[] xor) { 
+			final boolean odd = xor[0]==1;
+			if (xor.length==1) { // empty constraint
+				if (odd) cnf.addClause(new int[0]);
+				return;
+			}
+			int acc = xor[1];
+			for(int i = 2; i < xor.length - 1; i++) { // acc' <=> acc xor x
+				final int x = xor[i];
+				cnf.addVariables(1);
+				final int aux = cnf.numberOfVariables();
+				cnf.addClause(new int[]{ -aux, acc, x });
+				cnf.addClause(new int[]{ -aux, -acc, -x });
+				cnf.addClause(new int[]{ aux, -acc, x });
+				cnf.addClause(new int[]{ aux, acc, -x });
+				acc = aux;
+			}
+			if (xor.length==2) { 
+				cnf.addClause(new int[]{ odd ? acc : -acc });
+			} else { // acc xor x = odd
+				final int x = xor[xor.length-1];
+				cnf.addClause(new int[]{ acc, odd ? x : -x });
+				cnf.addClause(new int[]{ -acc, odd ? -x : x });
+			}
+		}
+		
+		/**
+		 * Returns an approximate count of this problem's projected solutions, with the given 
+		 * tolerance and confidence.  The count is the median of a number of estimates that depends on 
+		 * delta.  Each estimate is obtained by adding random XOR constraints until fewer solutions 
+		 * than a threshold that depends on epsilon remain in the cell.
+		 * @return an approximate count of this problem's projected solutions
+		 */
+		BigInteger approximateCount(double epsilon, double delta, Random random) { 
+			final int threshold = 1 + (int) StrictMath.ceil(9.84 * (1 + epsilon / (1 + epsilon)) * (1 + 1 / epsilon) * (1 + 1 / epsilon));
+			final int iterations = (int) StrictMath.ceil(17 * StrictMath.log(3 / delta) / StrictMath.log(2));
+			final int all = cell(NO_XORS, 0, threshold, null);
+			if (all < threshold) return scale(all, 0);
+			
+			final List<BigInteger> estimates = new ArrayList<BigInteger>(iterations);
+			final List<int[]> xors = new ArrayList<int[]>(vars.length);
+			final int[] counts = new int[vars.length + 1];
+			for(int it = 0; it < iterations; it++) { 
+				xors.clear();
+				for(int i = 0; i < vars.length; i++) { xors.add(randomXor(random)); }
+				// the cells shrink as m grows, so find the least m whose cell is below the threshold by binary search
+				int lo = 1, hi = vars.length;
+				if ((counts[hi] = cell(xors, hi, threshold, null)) >= threshold) continue;
+				while(lo < hi) { 
+					final int mid = (lo + hi) >>> 1;
+					if ((counts[mid] = cell(xors, mid, threshold, null)) < threshold) hi = mid;
+					else lo = mid + 1;
+				}
+				estimates.add(scale(counts[lo], lo));
+			}
+			if (estimates.isEmpty()) return scale(cell(NO_XORS, 0, Integer.MAX_VALUE, null), 0);
+			final BigInteger[] sorted = estimates.toArray(new BigInteger[estimates.size()]);
+			Arrays.sort(sorted);
+			return sorted[sorted.length / 2];
+		}
+		
+		/**
+		 * Returns a copy of the given instance in which each unconstrained projected relation is 
+		 * assigned a random value from its bounds.
+		 * @return a copy of the given instance with random values for this.free
+		 */
+		Instance randomizeFree(Instance instance, Random random) { 
+			if (free.length==0) return instance;
+			final Instance ret = instance.clone();
+			final TupleFactory f = ret.universe().factory();
+			for(int i = 0; i < free.length; i++) { 
+				final TupleSet value = translation.bounds().lowerBound(free[i]).clone();
+				for(int index : freeTuples[i]) { 
+					if (random.nextBoolean()) value.add(f.tuple(free[i].arity(), index));
+				}
+				ret.add(free[i], value);
+			}
+			return ret;
+		}
+	}
+	
+	/**
+	 * An iterator over near-uniform samples of a problem's projected solutions.  If the problem has few 
+	 * projected solutions, they are enumerated once and sampled uniformly.  Otherwise, each sample is 
+	 * drawn uniformly from a random cell of the solutions whose size is between lo and hi.  A sampler 
+	 * holds a SAT solver, which should be released by calling {@link #free()} once no more samples are needed.
+	 * @specfield freed: boolean
+	 * @author Emina Torlak
+	 */
+	public final class Sampler implements Iterator<Instance> { 
+		/* the number of attempts to find a cell of the right size before accepting any non-empty cell */
+		private static final int ATTEMPTS = 16;
+		private final Problem problem;
+		private final Random random;
+		private final int lo, hi, q;
+		private final List<Instance> solutions;
+		private final boolean satisfiable, enumerated;
+		private boolean freed;
+		
+		/**
+		 * Constructs a sampler for the given problem with the given tolerance and source of randomness.
+		 * @ensures !this.freed'
+		 * @throws AbortedException  the construction of the sampler was aborted
+		 */
+		Sampler(Problem problem, double epsilon, Random random) { 
+			this.problem = problem;
+			this.random = random;
+			final int pivot = (int) StrictMath.ceil(3 * StrictMath.sqrt(StrictMath.E) * (1 + 1 / epsilon) * (1 + 1 / epsilon));
+			this.hi = 1 + (int) StrictMath.ceil((1 + epsilon) * pivot);
+			this.lo = (int) StrictMath.floor(pivot / (1 + epsilon));
+			this.solutions = new ArrayList<Instance>();
+			this.freed = false;
+			try { 
+				final int all = problem.cell(NO_XORS, 0, hi + 1, solutions);
+				this.satisfiable = all > 0;
+				this.enumerated = all <= hi;
+				if (enumerated) { 
+					this.q = 0;
+					problem.cnf.free();
+				} else { 
+					solutions.clear();
+					final double count = problem.approximateCount(SAMPLER_EPSILON, SAMPLER_DELTA, random).shiftRight(problem.freeBits).doubleValue();
+					this.q = StrictMath.max(0, (int) StrictMath.ceil(StrictMath.log(1.8 * count / pivot) / StrictMath.log(2)));
+				}
+			} catch (SATAbortedException sae) {
+				problem.cnf.free();
+				throw new AbortedException(sae);
+			} catch (RuntimeException e) {
+				problem.cnf.free();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Returns true if the problem is satisfiable and this sampler has not been freed.
+		 * @return !this.freed and the problem is satisfiable
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() { return satisfiable && !freed; }
+		
+		/**
+		 * Returns the next sample.  If sampling is aborted, this sampler is freed.
+		 * @return the next sample
+		 * @throws NoSuchElementException  !this.hasNext()
+		 * @throws AbortedException  sampling was aborted
+		 * @see java.util.Iterator#next()
+		 */
+		public Instance next() { 
+			if (!hasNext()) throw new NoSuchElementException();
+			if (enumerated) 
+				return problem.randomizeFree(solutions.get(random.nextInt(solutions.size())), random);
+			try { 
+				final List<int[]> xors = new ArrayList<int[]>(q);
+				final List<Instance> cell = new ArrayList<Instance>(hi);
+				for(int attempt = 0; ; attempt++) { 
+					xors.clear();
+					for(int i = 0; i < q; i++) { xors.add(problem.randomXor(random)); }
+					for(int m = StrictMath.max(0, q - 4); m <= q; m++) { 
+						cell.clear();
+						final int size = problem.cell(xors, m, hi + 1, cell);
+						if ((lo <= size && size <= hi) || (attempt >= ATTEMPTS && size > 0)) 
+							return problem.randomizeFree(cell.get(random.nextInt(cell.size())), random);
+					}
+				}
+			} catch (SATAbortedException sae) {
+				free();
+				throw new AbortedException(sae);
+			} catch (AbortedException ae) {
+				free();
+				throw ae;
+			}
+		}
+		
+		/**
+		 * Releases the SAT solver held by this sampler, if any.  A freed sampler has no more samples.
+		 * @ensures this.freed'
+		 */
+		public void free() { 
+			if (!freed) { 
+				freed = true;
+				problem.cnf.free();
+			}
+		}
+		
+		/** @throws UnsupportedOperationException */
+		public void remove() { throw new UnsupportedOperationException(); }
+	}
+	
+	/**
+	 * A SAT solver that records the variables and clauses added to it while recording is on, 
+	 * and that can be reset to a fresh solver containing only the recorded variables and clauses.
+	 * @specfield factory: SATFactory
+	 * @specfield recorded: seq int[]
+	 * @specfield recordedVars: int
+	 */
+	private static final class ReplaySolver implements SATInterruptibleSolver, SATBatchSolver { 
+		private final SATFactory factory;
+		private final List<int[]> recorded;
+		private int recordedVars;
+		private boolean recording;
+		private SATSolver solver;
+		
+		/**
+		 * Constructs a new recording solver backed by an instance of the given factory.
+		 */
+		ReplaySolver(SATFactory factory) { 
+			this.factory = factory;
+			this.recorded = new ArrayList<int[]>();
+			this.recordedVars = 0;
+			this.recording = true;
+			this.solver = factory.instance();
+		}
+		
+		/**
+		 * Turns the recording of variables and clauses on or off.
+		 */
+		void record(boolean recording) { this.recording = recording; }
+		
+		/**
+		 * Replaces the backing solver with a fresh instance of this.factory 
+		 * that contains only the recorded variables and clauses.
+		 */
+		void reset() { 
+			solver.free();
+			solver = factory.instance();
+			solver.addVariables(recordedVars);
+			for(int[] clause : recorded) { 
+				solver.addClause(clause.clone());
+			}
+		}
+		
+		public int numberOfVariables() { return solver.numberOfVariables(); }
+		public int numberOfClauses() { return solver.numberOfClauses(); }
+		
+		public void addVariables(int numVars) {
+			if (recording) recordedVars += numVars;
+			solver.addVariables(numVars);
+		}
+		
+		public boolean addClause(int[] lits) {
+			if (recording) recorded.add(lits.clone());
+			return solver.addClause(lits);
+		}
+		
+		public int addClauses(int[] flat, int count) {
+			if (solver instanceof SATBatchSolver) { 
+				if (recording) { 
+					for(int i = 0, start = 0, end = 0; i < count; i++, start = ++end) { 
+						while(flat[end] != 0) end++;
+						recorded.add(Arrays.copyOfRange(flat, start, end));
+					}
+				}
+				return ((SATBatchSolver) solver).addClauses(flat, count);
+			}
+			int added = 0;
+			for(int i = 0, start = 0, end = 0; i < count; i++, start = ++end) { 
+				while(flat[end] != 0) end++;
+				if (addClause(Arrays.copyOfRange(flat, start, end)))
+					added++;
+			}
+			return added;
+		}
+		
+		public boolean solve() throws SATAbortedException { return solver.solve(); }
+		public boolean valueOf(int variable) { return solver.valueOf(variable); }
+		public void interrupt() { 
+			if (solver instanceof SATInterruptibleSolver) 
+				((SATInterruptibleSolver) solver).interrupt(); 
+		}
+		public void free() { solver.free(); }
+	}
+}
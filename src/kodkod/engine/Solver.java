@@ -22,9 +22,11 @@
 package kodkod.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import kodkod.ast.Formula;
 import kodkod.ast.IntExpression;
@@ -40,7 +42,10 @@ import kodkod.engine.satlab.SATProver;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
+import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
 
 
 /** 
@@ -128,12 +133,31 @@ public final class Solver implements KodkodSolver {
 	 * @see Proof
 	 */
 	public Solution solve(Formula formula, Bounds bounds) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		return solve(formula, bounds, options.cancellation());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.KodkodSolver#solve(kodkod.ast.Formula, kodkod.instance.Bounds, kodkod.engine.CancellationToken)
+	 * @see #solve(Formula, Bounds)
+	 */
+	public Solution solve(Formula formula, Bounds bounds, CancellationToken cancellation) throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		
+		final Options opt;
+		if (cancellation==options.cancellation()) {
+			opt = options;
+		} else {
+			opt = options.clone();
+			opt.setCancellation(cancellation);
+		}
 		
 		final long startTransl = System.currentTimeMillis();
+		long endTransl = 0;
+		Translation.Whole translation = null;
 		
 		try {			
-			final Translation.Whole translation = Translator.translate(formula, bounds, options);
-			final long endTransl = System.currentTimeMillis();
+			translation = Translator.translate(formula, bounds, opt);
+			endTransl = System.currentTimeMillis();
 			
 			if (translation.trivial())
 				return trivial(translation, endTransl - startTransl);
@@ -142,14 +166,22 @@ public final class Solver implements KodkodSolver {
 			
 			options.reporter().solvingCNF(translation.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
 			final long startSolve = System.currentTimeMillis();
-			final boolean isSat = cnf.solve();
+			final boolean isSat = cancellation.solve(cnf);
 			final long endSolve = System.currentTimeMillis();
 
 			final Statistics stats = new Statistics(translation, endTransl - startTransl, endSolve - startSolve);
 			return isSat ? sat(translation, stats) : unsat(translation, stats);
 			
-		} catch (SATAbortedException sae) {
-			throw new AbortedException(sae);
+		} catch (SATAbortedException | AbortedException e) {
+			final long end = System.currentTimeMillis();
+			final Statistics stats;
+			if (translation==null) {
+				stats = new Statistics(0, 0, 0, end - startTransl, 0, null);
+			} else {
+				stats = new Statistics(translation, endTransl - startTransl, end - endTransl);
+				translation.cnf().free();
+			}
+			throw new AbortedException(e.getMessage(), e, stats);
 		}
 	}
 	
@@ -185,6 +217,72 @@ public final class Solver implements KodkodSolver {
 		return new SolutionIterator(formula, bounds, options);
 		
 	}
+	
+	/**
+	 * Attempts to find all solutions to the given formula with respect to the specified bounds that 
+	 * differ in the value of at least one relation in the given projection, or to prove the formula's 
+	 * unsatisfiability.  Calling this method is equivalent to calling 
+	 * {@link #solveAll(Formula, Bounds, Set, boolean) solveAll(formula, bounds, projection, false)}.
+	 * @return an iterator over the Solutions to the formula with respect to the given bounds, 
+	 * one for each distinct value of the projection
+	 * @throws NullPointerException  formula = null || bounds = null || projection = null
+	 * @throws IllegalArgumentException  !this.options.solver().incremental() || projection !in bounds.relations
+	 * @see #solveAll(Formula, Bounds, Set, boolean)
+	 */
+	public Iterator<Solution> solveAll(Formula formula, Bounds bounds, Set<Relation> projection) 
+		throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		return solveAll(formula, bounds, projection, false);
+	}
+	
+	/**
+	 * Attempts to find all solutions to the given formula with respect to the specified bounds that 
+	 * differ in the value of at least one relation in the given projection, or to prove the formula's 
+	 * unsatisfiability.  The formula is translated once, and each solution is excluded from the 
+	 * rest of the search by a clause over the primary variables of the projected relations only.  The 
+	 * projected relations that are not constrained by the formula, including all relations when the formula 
+	 * is trivially satisfiable, are enumerated directly from their bounds, without a call to the SAT solver. 
+	 * As in {@link #solveAll(Formula, Bounds)}, the outcome of the last solution is (trivially) UNSAT, 
+	 * and symmetry breaking may exclude some solutions that are isomorphic to the returned ones.  The 
+	 * only exception is a solution whose exclusion clause would be empty, such as a solution to a 
+	 * formula whose projection has no primary variables:  since all remaining solutions agree with 
+	 * (or, in compact mode, contain) its projection, the iterator ends after it, and its choices 
+	 * for the unconstrained relations, without returning an UNSAT solution.
+	 * 
+	 * <p>If the compact flag is true, each model found by the SAT solver is first minimized, by 
+	 * repeatedly solving under the assumption that its false projected primary variables, and one of its 
+	 * true ones, are false, until none of its true projected variables can be falsified.  The resulting 
+	 * solution then excludes all solutions whose projection contains its own, using a clause over 
+	 * just the primary variables that it sets to true.  The returned solutions form a cover of 
+	 * subset-minimal projections:  the projection of every solution contains the projection of some 
+	 * returned solution, and no returned projection contains another solution's projection.  Minimizing a 
+	 * model takes up to one SAT call per true projected variable.  Unconstrained relations are not 
+	 * enumerated in this mode, since their lower bounds are contained in all of their values.</p>
+	 * 
+	 * @return an iterator over the Solutions to the formula with respect to the given bounds, 
+	 * one for each distinct value of the projection, if compact is false, or one for each 
+	 * minimal value of the projection otherwise
+	 * @throws NullPointerException  formula = null || bounds = null || projection = null
+	 * @throws IllegalArgumentException  !this.options.solver().incremental() || projection !in bounds.relations || 
+	 * (compact && !this.options.solver().assumptions())
+	 * @throws kodkod.engine.fol2sat.UnboundLeafException  the formula contains an undeclared variable or
+	 * a relation not mapped by the given bounds
+	 * @throws kodkod.engine.fol2sat.HigherOrderDeclException  the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but this.options.skolemize is false.
+	 * @throws AbortedException  this solving task was aborted 
+	 * @see #solveAll(Formula, Bounds)
+	 */
+	public Iterator<Solution> solveAll(Formula formula, Bounds bounds, Set<Relation> projection, boolean compact) 
+		throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		
+		if (!options.solver().incremental())
+			throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
+		if (!bounds.relations().containsAll(projection))
+			throw new IllegalArgumentException("projection is not in bounds.relations: " + projection);
+		if (compact && !options.solver().assumptions())
+			throw new IllegalArgumentException("cannot minimize solutions without a solver that supports assumptions.");
+		
+		return new ProjectedSolutionIterator(formula, bounds, projection, compact, options);
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -233,7 +331,7 @@ public final class Solver implements KodkodSolver {
 	 * @return the result of solving a trivially (un)sat formula.
 	 */
 	private static Solution trivial(Translation.Whole translation, long translTime) {
-		final Statistics stats = new Statistics(0, 0, 0, translTime, 0);
+		final Statistics stats = new Statistics(0, 0, 0, translTime, 0, translation.profile());
 		final Solution sol;
 		if (translation.cnf().solve()) {
 			sol = Solution.triviallySatisfiable(stats, translation.interpret());
@@ -291,6 +389,9 @@ public final class Solver implements KodkodSolver {
 			} catch (SATAbortedException sae) {
 				translation.cnf().free();
 				throw new AbortedException(sae);
+			} catch (AbortedException ae) {
+				translation.cnf().free();
+				throw ae;
 			}
 		}
 
@@ -317,7 +418,7 @@ public final class Solver implements KodkodSolver {
 			transl.options().reporter().solvingCNF(primaryVars, cnf.numberOfVariables(), cnf.numberOfClauses());
 			
 			final long startSolve = System.currentTimeMillis();
-			final boolean isSat = cnf.solve();
+			final boolean isSat = transl.options().cancellation().solve(cnf);
 			final long endSolve = System.currentTimeMillis();
 
 			final Statistics stats = new Statistics(transl, translTime, endSolve - startSolve);
@@ -392,4 +493,229 @@ public final class Solver implements KodkodSolver {
 		}
 		
 	}
+	/**
+	 * An iterator over the solutions of a model that differ in the values of a set of projected relations.
+	 * @specfield projection: set Relation
+	 * @specfield compact: boolean
+	 * @author Emina Torlak
+	 */
+	private static final class ProjectedSolutionIterator implements Iterator<Solution> {
+		private Translation.Whole translation;
+		private final long translTime;
+		private final boolean compact;
+		/* the primary variables of the projected relations */
+		private final int[] vars;
+		/* the projected relations that have no primary variables but can take more than one value, 
+		 * and, for each, the tuples in its upper bound but not in its lower bound */
+		private final Relation[] free;
+		private final int[][] freeTuples;
+		/* the current model and the choice of free tuples that extends it, if any */
+		private Instance model;
+		private Statistics modelStats;
+		private final boolean[][] chosen;
+		private boolean found;
+		/* true if the current model's projection excludes all remaining solutions */
+		private boolean last;
+		
+		/**
+		 * Constructs a projected solution iterator for the given formula, bounds, projection, and options.
+		 */
+		ProjectedSolutionIterator(Formula formula, Bounds bounds, Set<Relation> projection, boolean compact, Options options) {
+			final long start = System.currentTimeMillis();
+			this.translation = Translator.translate(formula, bounds, options);
+			this.translTime = System.currentTimeMillis() - start;
+			this.compact = compact;
+			
+			final Bounds tbounds = translation.bounds();
+			final IntSet projected = Ints.bestSet(StrictMath.max(1, translation.numPrimaryVariables()+1));
+			final List<Relation> unconstrained = new ArrayList<Relation>();
+			for(Relation r : projection) { 
+				final IntSet rvars = translation.primaryVariables(r);
+				if (!rvars.isEmpty()) { 
+					projected.addAll(rvars);
+				} else if (!compact && tbounds.lowerBound(r).size() < tbounds.upperBound(r).size()) { 
+					unconstrained.add(r);
+				}
+			}
+			this.vars = projected.toArray();
+			this.free = unconstrained.toArray(new Relation[unconstrained.size()]);
+			this.freeTuples = new int[free.length][];
+			this.chosen = new boolean[free.length][];
+			for(int i = 0; i < free.length; i++) { 
+				final IntSet tuples = Ints.bestSet(tbounds.upperBound(free[i]).capacity());
+				tuples.addAll(tbounds.upperBound(free[i]).indexView());
+				tuples.removeAll(tbounds.lowerBound(free[i]).indexView());
+				freeTuples[i] = tuples.toArray();
+				chosen[i] = new boolean[freeTuples[i].length];
+			}
+		}
+		
+		/**
+		 * Returns true if there is another solution.
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() { return translation != null; }
+		
+		/**
+		 * Returns the next solution if any.
+		 * @see java.util.Iterator#next()
+		 */
+		public Solution next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			try {
+				return (model != null && nextChoice()) ? nextChoiceSolution() : nextModelSolution();
+			} catch (SATAbortedException sae) {
+				translation.cnf().free();
+				throw new AbortedException(sae);
+			} catch (AbortedException ae) {
+				translation.cnf().free();
+				throw ae;
+			}
+		}
+		
+		/** @throws UnsupportedOperationException */
+		public void remove() { throw new UnsupportedOperationException(); }
+		
+		/**
+		 * Solves {@code this.translation.cnf} and, if it is satisfiable, adds a clause that 
+		 * excludes the projection of the found model, minimized first if this.compact is true, from 
+		 * the rest of the search.  If the cnf is unsatisfiable, or if the clause would be empty and 
+		 * there are no unconstrained relations to enumerate, frees the cnf and sets {@code this.translation} to null.
+		 * @requires this.translation != null
+		 * @return current solution
+		 */
+		private Solution nextModelSolution() { 
+			final Translation.Whole transl = translation;
+			final SATSolver cnf = transl.cnf();
+			final boolean trivial = transl.trivial();
+			
+			transl.options().reporter().solvingCNF(transl.numPrimaryVariables(), cnf.numberOfVariables(), cnf.numberOfClauses());
+			final long startSolve = System.currentTimeMillis();
+			final boolean isSat = transl.options().cancellation().solve(cnf);
+			if (isSat && compact) minimize(transl);
+			final long endSolve = System.currentTimeMillis();
+			final Statistics stats = new Statistics(transl, translTime, endSolve - startSolve);
+			
+			if (!isSat) { 
+				model = null;
+				translation = null; // unsat, no more solutions
+				if (!trivial) return unsat(transl, stats); // this also frees up solver resources, if any
+				cnf.free();
+				return Solution.triviallyUnsatisfiable(stats, found ? null : trivialProof(transl.log()));
+			}
+			
+			final Instance instance = transl.interpret();
+			final int[] block = new int[vars.length];
+			int size = 0;
+			for(int var : vars) { 
+				if (cnf.valueOf(var)) block[size++] = -var;
+				else if (!compact) block[size++] = var;
+			}
+			
+			found = true;
+			model = free.length > 0 ? instance : null;
+			modelStats = stats;
+			for(boolean[] c : chosen) { Arrays.fill(c, false); }
+			
+			if (size > 0) { 
+				cnf.addClause(size==block.length ? block : Arrays.copyOf(block, size));
+			} else if (model == null) { // all remaining solutions have this solution's projection (or a superset of it)
+				translation = null;
+				cnf.free();
+			} else { 
+				last = true;
+			}
+			return trivial ? Solution.triviallySatisfiable(stats, instance) : Solution.satisfiable(stats, instance);
+		}
+		
+		/**
+		 * Shrinks the set of projected primary variables that are true in the current model of 
+		 * the given translation's cnf to a subset-minimal one.  Each true variable is tested by solving 
+		 * the cnf under the assumption that it, and all projected variables that are currently false, 
+		 * are false.  A satisfiable test replaces the current model, and an unsatisfiable one means 
+		 * that the variable is true in every model whose false variables include the current ones.
+		 * @requires this.compact && transl = this.translation && transl.cnf in SATAssumptionSolver
+		 * @requires the last call to transl.cnf.solve was satisfiable
+		 * @ensures transl.cnf is left in a satisfying model whose true projected variables 
+		 * are a minimal subset of those in its previous model
+		 * @throws AbortedException  transl.options.cancellation was cancelled during the search
+		 */
+		private void minimize(Translation.Whole transl) { 
+			final SATSolver cnf = transl.cnf();
+			final CancellationToken token = transl.options().cancellation();
+			final boolean[] value = new boolean[vars.length];
+			for(int i = 0; i < vars.length; i++) { value[i] = cnf.valueOf(vars[i]); }
+			
+			boolean current = true; // true if cnf is in a model described by value
+			for(int i = 0; i < vars.length; i++) { 
+				if (!value[i]) continue;
+				value[i] = false;
+				if (token.solve(cnf, falsified(value))) { 
+					for(int j = 0; j < vars.length; j++) { value[j] = cnf.valueOf(vars[j]); }
+					current = true;
+				} else { 
+					value[i] = true;
+					current = false;
+				}
+			}
+			// the last satisfiable test, or the original model, satisfies these assumptions
+			if (!current) token.solve(cnf, falsified(value));
+		}
+		
+		/**
+		 * Returns the negations of the projected variables whose values are false.
+		 * @return { lit: int | some i: [0..vars.length) | !value[i] && lit = -vars[i] }
+		 */
+		private int[] falsified(boolean[] value) { 
+			final int[] lits = new int[vars.length];
+			int size = 0;
+			for(int i = 0; i < vars.length; i++) { 
+				if (!value[i]) lits[size++] = -vars[i];
+			}
+			return Arrays.copyOf(lits, size);
+		}
+		
+		/**
+		 * Advances {@code this.chosen} to the next choice of tuples for the unconstrained relations, 
+		 * and returns true if there was such a choice.  
+		 * @return true if there was a next choice of tuples
+		 */
+		private boolean nextChoice() { 
+			for(boolean[] c : chosen) { 
+				for(int i = 0; i < c.length; i++) { 
+					c[i] = !c[i];
+					if (c[i]) return true;
+				}
+			}
+			return false; // wrapped around to no tuples
+		}
+		
+		/**
+		 * Returns the solution that extends {@code this.model} with the current choice of tuples 
+		 * for the unconstrained relations.
+		 * @requires this.model != null
+		 * @return current solution
+		 */
+		private Solution nextChoiceSolution() { 
+			final Translation.Whole transl = translation;
+			final Instance instance = model.clone();
+			final TupleFactory f = instance.universe().factory();
+			final Bounds tbounds = transl.bounds();
+			boolean all = true;
+			for(int i = 0; i < free.length; i++) { 
+				final TupleSet value = tbounds.lowerBound(free[i]).clone();
+				for(int j = 0; j < chosen[i].length; j++) { 
+					if (chosen[i][j]) value.add(f.tuple(free[i].arity(), freeTuples[i][j]));
+					else all = false;
+				}
+				instance.add(free[i], value);
+			}
+			if (last && all) { // the last choice for the last model
+				model = null;
+				translation = null;
+				transl.cnf().free();
+			}
+			return transl.trivial() ? Solution.triviallySatisfiable(modelStats, instance) : Solution.satisfiable(modelStats, instance);
+		}
+	}
 }
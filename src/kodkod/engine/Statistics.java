@@ -22,6 +22,7 @@
 package kodkod.engine;
 
 import kodkod.engine.fol2sat.Translation;
+import kodkod.engine.fol2sat.TranslationProfile;
 
 /**
  * Stores the statistics gathered while solving
@@ -35,17 +36,19 @@ public final class Statistics {
 	
 	private final int vars, pVars, clauses;
 	private final long translation, solving; 
+	private final TranslationProfile profile;
 	
 	/**
 	 * Constructs a new Statistics object using the provided values.
 	 */
 	Statistics(int primaryVariables, int variables, int clauses, 
-			   long translationTime, long solvingTime) {
+			   long translationTime, long solvingTime, TranslationProfile profile) {
 		this.pVars = primaryVariables;
 		this.vars = variables;
 		this.clauses = clauses;
 		this.translation = translationTime;
 		this.solving = solvingTime;
+		this.profile = profile;
 	}
 	
 	/**
@@ -53,7 +56,7 @@ public final class Statistics {
 	 */
 	Statistics(Translation translation, long translationTime, long solvingTime) { 
 		this(translation.numPrimaryVariables(), translation.cnf().numberOfVariables(), 
-				translation.cnf().numberOfClauses(), translationTime, solvingTime);
+				translation.cnf().numberOfClauses(), translationTime, solvingTime, translation.profile());
 	}
 	
 	/**
@@ -108,6 +111,17 @@ public final class Statistics {
 		return solving;
 	}
 	
+	/**
+	 * Returns the per-phase profile of the translation of this.formula to CNF, 
+	 * or null if the translation was not profiled (e.g. because it was 
+	 * retrieved from a {@linkplain kodkod.engine.fol2sat.TranslationCache cache}
+	 * or produced by an incremental update).
+	 * @return the per-phase profile of the translation of this.formula to CNF, if any
+	 */
+	public TranslationProfile profile() { 
+		return profile;
+	}
+	
 	/**
 	 * Returns a string representation of this
 	 * Statistics object.
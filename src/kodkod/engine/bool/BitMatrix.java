@@ -0,0 +1,203 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.bool;
+
+import kodkod.util.ints.IntBitSet;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+
+/**
+ * A two-dimensional matrix of bits, stored row by row in packed words.  Each row 
+ * starts at a word boundary, so that rows can be combined a word at a time.  Bit matrices 
+ * are used to compute the joins, unions, intersections and closures of {@link BooleanMatrix 
+ * boolean matrices} whose entries are all {@link BooleanConstant#TRUE TRUE}.  Such a matrix is 
+ * viewed as a bit matrix with one row for each prefix of its flat indices, as given by the 
+ * dimensions of the operation.
+ * 
+ * @specfield rows, cols: int
+ * @specfield bits: [0..rows) -> [0..cols)
+ * @author Emina Torlak
+ */
+final class BitMatrix {
+	/** 
+	 * The maximum number of words in a bit matrix.  The bit-parallel operations 
+	 * are used only if the operands and the result of an operation fit into this many words. 
+	 */
+	static final int MAX_WORDS = 1 << 21;
+	
+	private final int rows, cols, stride;
+	private final long[] words;
+	
+	/**
+	 * Constructs an empty bit matrix with the given number of rows and columns.
+	 * @requires rows >= 0 && cols > 0 && fits(rows, cols)
+	 * @ensures this.rows' = rows && this.cols' = cols && no this.bits'
+	 */
+	BitMatrix(int rows, int cols) { 
+		this.rows = rows;
+		this.cols = cols;
+		this.stride = (cols + 63) >>> 6;
+		this.words = new long[rows*stride];
+	}
+	
+	/**
+	 * Returns true if a bit matrix with the given number of rows and columns has at most MAX_WORDS words.
+	 * @return rows * ceil(cols/64) <= MAX_WORDS
+	 */
+	static boolean fits(int rows, int cols) { 
+		return (long)rows * ((cols + 63) >>> 6) <= MAX_WORDS;
+	}
+	
+	/**
+	 * Returns a bit matrix with the given number of rows and columns that 
+	 * contains the bits at the given flat indices.
+	 * @requires indices.max() < rows*cols && fits(rows, cols)
+	 * @return { m: BitMatrix | m.rows = rows && m.cols = cols && 
+	 *            m.bits = { r: int, c: int | r*cols + c in indices } }
+	 */
+	static BitMatrix valueOf(IntSet indices, int rows, int cols) { 
+		final BitMatrix m = new BitMatrix(rows, cols);
+		for(IntIterator itr = indices.iterator(); itr.hasNext(); ) { 
+			final int i = itr.next(), row = i / cols, col = i % cols;
+			m.words[row*m.stride + (col >>> 6)] |= 1L << col;
+		}
+		return m;
+	}
+	
+	/**
+	 * Returns the set of flat indices of the bits in this matrix.  The returned set 
+	 * is backed by a packed bit set if the matrix is dense enough for that to 
+	 * take less space than the best general-purpose set.
+	 * @return { i: int | (i / this.cols) -> (i % this.cols) in this.bits }
+	 */
+	IntSet indices() { 
+		final int capacity = rows*cols;
+		int size = 0;
+		for(long word : words) { size += Long.bitCount(word); }
+		
+		if (size >= (capacity >>> 5) || capacity <= 1024) { 
+			final long[] flat = new long[(capacity >>> 6) + 1];
+			if (stride << 6 == cols) {
+				System.arraycopy(words, 0, flat, 0, words.length);
+			} else {
+				for(int row = 0; row < rows; row++) { 
+					orRow(row, flat, row*cols);
+				}
+			}
+			return new IntBitSet(capacity, flat);
+		} else { 
+			final IntSet ret = Ints.bestSet(capacity);
+			for(int row = 0; row < rows; row++) { 
+				for(int w = row*stride, end = w + stride, base = row*cols; w < end; w++, base += 64) { 
+					for(long word = words[w]; word != 0; word &= word - 1) { 
+						ret.add(base + Long.numberOfTrailingZeros(word));
+					}
+				}
+			}
+			return ret;
+		}
+	}
+	
+	/**
+	 * Sets the bits [offset..offset+this.cols) of the given flat bit vector 
+	 * to the bits in the given row of this matrix.
+	 * @requires flat has room for offset+this.cols bits
+	 */
+	private void orRow(int row, long[] flat, int offset) { 
+		final int shift = offset & 63;
+		int dst = offset >>> 6;
+		for(int w = row*stride, end = w + stride; w < end; w++, dst++) { 
+			final long word = words[w];
+			if (word == 0) continue;
+			flat[dst] |= word << shift;
+			if (shift != 0 && dst + 1 < flat.length) 
+				flat[dst+1] |= word >>> (64 - shift);
+		}
+	}
+	
+	/**
+	 * Returns the boolean product of this and the given bit matrix.
+	 * @requires this.cols = other.rows && fits(this.rows, other.cols)
+	 * @return { m: BitMatrix | m.rows = this.rows && m.cols = other.cols && m.bits = this.bits.(other.bits) }
+	 */
+	BitMatrix dot(BitMatrix other) { 
+		final BitMatrix ret = new BitMatrix(rows, other.cols);
+		final long[] out = ret.words, in = other.words;
+		final int ostride = other.stride;
+		for(int row = 0; row < rows; row++) { 
+			final int dst = row*ostride;
+			for(int w = row*stride, end = w + stride, base = 0; w < end; w++, base += 64) { 
+				for(long word = words[w]; word != 0; word &= word - 1) { 
+					final int src = (base + Long.numberOfTrailingZeros(word)) * ostride;
+					for(int j = 0; j < ostride; j++) { 
+						out[dst + j] |= in[src + j];
+					}
+				}
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Replaces the contents of this matrix with its transitive closure, 
+	 * using Warshall's algorithm over packed rows.
+	 * @requires this.rows = this.cols
+	 * @ensures this.bits' = ^this.bits
+	 */
+	void close() { 
+		for(int k = 0; k < rows; k++) { 
+			final int src = k*stride, kword = k >>> 6;
+			final long kbit = 1L << k;
+			for(int row = 0; row < rows; row++) { 
+				final int dst = row*stride;
+				if ((words[dst + kword] & kbit) != 0) { 
+					for(int j = 0; j < stride; j++) { 
+						words[dst + j] |= words[src + j];
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sets the bits of this matrix to their union with the bits of the given matrix.
+	 * @requires this.rows = other.rows && this.cols = other.cols
+	 * @ensures this.bits' = this.bits + other.bits
+	 */
+	void or(BitMatrix other) { 
+		for(int i = 0; i < words.length; i++) { 
+			words[i] |= other.words[i];
+		}
+	}
+	
+	/**
+	 * Sets the bits of this matrix to their intersection with the bits of the given matrix.
+	 * @requires this.rows = other.rows && this.cols = other.cols
+	 * @ensures this.bits' = this.bits & other.bits
+	 */
+	void and(BitMatrix other) { 
+		for(int i = 0; i < words.length; i++) { 
+			words[i] &= other.words[i];
+		}
+	}
+}
@@ -66,9 +66,13 @@ public abstract class BooleanFactory {
 	 * @ensures #this.components' = numInputVariables && this.components' in BooleanVariable 
 	 * @ensures this.bitwidth' = bitwidth
 	 * @ensures this.comparisonDepth' = comparisonDepth
+	 * @ensures concurrent => this may be used by multiple threads at once
+	 * @ensures compact && !concurrent => gates are cached in {@link GateStore GateStores}
 	 */
-	private BooleanFactory(int numVars, int comparisonDepth, int bitwidth) {
-		this.circuits = new CBCFactory(numVars, 1<<comparisonDepth);
+	private BooleanFactory(int numVars, int comparisonDepth, int bitwidth, boolean concurrent, boolean compact) {
+		final int cmpMax = 1<<comparisonDepth;
+		this.circuits = concurrent ? new CBCFactory.Concurrent(numVars, cmpMax) : 
+			compact ? new CBCFactory.Compact(numVars, cmpMax) : new CBCFactory(numVars, cmpMax);
 		this.bitwidth = bitwidth;
 		this.numVars = numVars;
 	}
@@ -82,6 +86,9 @@ public abstract class BooleanFactory {
 	 * subcomponents being shared.  However, it will also slow down
 	 * gate construction.  </p>
 	 * <p>Integers are created/manipulated according to the specifications in the given Options object.</p>
+	 * <p>If options.translationThreads > 1, the returned factory can be used to build circuits from 
+	 * multiple threads at once.  Otherwise, if options.compactGates is true, the returned factory 
+	 * caches its gates in compact, open-addressed tables.</p>
 	 * @return {f: BooleanFactory | #(f.components & BooleanVariable) = numVars &&
 	 *                              BooleanConstant in f.components && f.components in BooleanVariable + BooleanConstant &&
 	 *                              f.comparisonDepth = options.sharing && 
@@ -93,7 +100,7 @@ public abstract class BooleanFactory {
 	public static BooleanFactory factory(int numVars, Options options) {
 		switch(options.intEncoding()) {
 		case TWOSCOMPLEMENT : 
-			return new TwosComplementFactory(numVars, options.sharing(), options.bitwidth()); 
+			return new TwosComplementFactory(numVars, options.sharing(), options.bitwidth(), options.translationThreads() > 1, options.compactGates()); 
 		default :
 			throw new IllegalArgumentException("unknown encoding: " + options.intEncoding());
 		}
@@ -166,6 +173,26 @@ public abstract class BooleanFactory {
 	 */
 	public final int maxFormula() { return circuits.maxFormula(); }
 	
+	/**
+	 * Returns the number of gates with the given operator in {@code this.components}.
+	 * Only AND, OR and ITE gates are counted; the result for any other operator is 0.
+	 * @return op in AND + OR + ITE => #{g: this.components & (MultiGate + ITEGate) | g.op = op} else 0
+	 */
+	public final int numberOfGates(Operator op) { 
+		return (op==Operator.AND || op==Operator.OR || op==Operator.ITE) ? circuits.numberOfGates(op) : 0; 
+	}
+	
+	/**
+	 * Removes all gates from {@code this.components}, keeping only the variables.  
+	 * Gates built by this factory before the call may no longer be combined with 
+	 * the gates that it builds afterward; their labels, however, remain distinct from 
+	 * the labels of all later gates.
+	 * @ensures this.components' = this.components & BooleanVariable
+	 */
+	public final void clearGates() { 
+		circuits.clearGates();
+	}
+	
 	/**
 	 * Returns the variable with the given label.
 	 * @requires 0 < label <= numberOfVariables()
@@ -436,9 +463,11 @@ public abstract class BooleanFactory {
 		 * @ensures this.bitwidth' = bitwidth
 		 * @ensures this.comparisonDepth' = comparisonDepth
 		 * @ensures this.intEncoding' = BINARY
+		 * @ensures concurrent => this may be used by multiple threads at once
+		 * @ensures compact && !concurrent => gates are cached in {@link GateStore GateStores}
 		 */
-		TwosComplementFactory(int numVars, int comparisonDepth, int bitwidth) {
-			super(numVars, comparisonDepth, bitwidth);
+		TwosComplementFactory(int numVars, int comparisonDepth, int bitwidth, boolean concurrent, boolean compact) {
+			super(numVars, comparisonDepth, bitwidth, concurrent, compact);
 		}
 		/**
 		 * Returns TWOSCOMPLEMENT.
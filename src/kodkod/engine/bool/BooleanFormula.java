@@ -35,7 +35,7 @@ import java.util.Set;
  * @author Emina Torlak
  */
 public abstract class BooleanFormula extends BooleanValue implements Iterable<BooleanFormula> {
-	private BooleanFormula negation;
+	private volatile BooleanFormula negation;
 	
 	/**
 	 * Constructs a boolean formula with the given negation.
@@ -92,10 +92,16 @@ public abstract class BooleanFormula extends BooleanValue implements Iterable<Bo
 	 * @see kodkod.engine.bool.BooleanValue#negation()
 	 */
 	final BooleanFormula negation() {
-		if (negation==null) {
-			negation = new NotGate(this);
+		BooleanFormula ret = negation;
+		if (ret==null) {
+			synchronized(this) { // gates may be shared by concurrent translators
+				ret = negation;
+				if (ret==null) {
+					negation = ret = new NotGate(this);
+				}
+			}
 		}
-		return negation;
+		return ret;
 	}
 	
 	/**
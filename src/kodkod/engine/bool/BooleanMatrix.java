@@ -26,8 +26,10 @@ import static kodkod.engine.bool.BooleanConstant.TRUE;
 import static kodkod.engine.bool.Operator.AND;
 import static kodkod.engine.bool.Operator.OR;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
+import kodkod.engine.config.Options.ClosureEncoding;
 import kodkod.util.collections.Containers;
 import kodkod.util.ints.ArraySequence;
 import kodkod.util.ints.HomogenousSequence;
@@ -182,6 +184,27 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		}
 	}
 	
+	/**
+	 * Returns true if this matrix can store only constants, i.e. if all of its
+	 * non-FALSE entries are TRUE.  Operations on such matrices are performed on 
+	 * packed {@linkplain BitMatrix bit matrices} when possible.
+	 * @return this.elements[int] in TRUE + FALSE 
+	 */
+	private final boolean isConstant() { 
+		return cells instanceof HomogenousSequence;
+	}
+	
+	/**
+	 * Returns a constant matrix with the given dimensions, whose TRUE 
+	 * entries are at the given indices.
+	 * @requires indices is not modifiable using an external handle
+	 * @return { m: BooleanMatrix | m.dimensions = d && m.factory = this.factory && 
+	 *            m.elements = [0..d.capacity)->one FALSE ++ indices->one TRUE }
+	 */
+	private final BooleanMatrix constant(Dimensions d, IntSet indices) { 
+		return new BooleanMatrix(d, factory, new HomogenousSequence<BooleanValue>(TRUE, indices));
+	}
+	
 	/**
 	 * Returns the dimensions of this matrix.
      * @return this.dimensions
@@ -303,6 +326,12 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells);
 		final SparseSequence<BooleanValue> s1 = other.cells;
 		if (cells.isEmpty() || s1.isEmpty()) return ret;
+		final int cap = dims.capacity();
+		if (isConstant() && other.isConstant() && BitMatrix.fits(1, cap)) { 
+			final BitMatrix bits = BitMatrix.valueOf(cells.indices(), 1, cap);
+			bits.and(BitMatrix.valueOf(s1.indices(), 1, cap));
+			return constant(dims, bits.indices());
+		}
 		for(IndexedEntry<BooleanValue> e0 : cells) {
 			BooleanValue v1 = s1.get(e0.index());
 			if (v1!=null)
@@ -354,6 +383,12 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 			return other.clone();
 		else if (other.cells.isEmpty())
 			return this.clone();
+		final int cap = dims.capacity();
+		if (isConstant() && other.isConstant() && BitMatrix.fits(1, cap)) { 
+			final BitMatrix bits = BitMatrix.valueOf(cells.indices(), 1, cap);
+			bits.or(BitMatrix.valueOf(other.cells.indices(), 1, cap));
+			return constant(dims, bits.indices());
+		}
 		final BooleanMatrix ret = new BooleanMatrix(dims, factory, cells, other.cells);
 		final SparseSequence<BooleanValue> retSeq = ret.cells;
 		for(IndexedEntry<BooleanValue> e0 : cells) {
@@ -551,45 +586,106 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		final BooleanMatrix ret =  new BooleanMatrix(dims.dot(other.dims), factory, cells, other.cells);
 		if (cells.isEmpty() || other.cells.isEmpty()) return ret;
 		
-		final SparseSequence<BooleanValue> mutableCells = ret.clone().cells;
 		final int b = other.dims.dimension(0); 
 		final int c = other.dims.capacity() / b; 
 		
-		for(IndexedEntry<BooleanValue> e0 : cells) {
-			int i = e0.index();
-			BooleanValue iVal = e0.value();
-			int rowHead = (i % b)*c, rowTail = rowHead + c - 1;
-			for(Iterator<IndexedEntry<BooleanValue>> iter1 = other.cells.iterator(rowHead, rowTail); iter1.hasNext();) {
-				IndexedEntry<BooleanValue> e1 = iter1.next();
-				BooleanValue retVal = factory.and(iVal, e1.value());
-				if (retVal != FALSE) {
-					int k = (i / b)*c + e1.index()%c;
-					if (retVal==TRUE) mutableCells.put(k, TRUE);
-					else {
-						BooleanValue kVal = mutableCells.get(k);
-						if (kVal != TRUE) {
-							if (kVal==null) {
-								kVal = BooleanAccumulator.treeGate(OR);
-								mutableCells.put(k, kVal);
-							} 
-							((BooleanAccumulator) kVal).add(retVal);
-						}
-					}
-				}
-			}		
+		if (isConstant() && other.isConstant()) { 
+			final int a = dims.capacity() / b;
+			if (BitMatrix.fits(a, b) && BitMatrix.fits(b, c) && BitMatrix.fits(a, c)) { 
+				final BitMatrix product = BitMatrix.valueOf(cells.indices(), a, b).dot(BitMatrix.valueOf(other.cells.indices(), b, c));
+				return constant(ret.dims, product.indices());
+			}
 		}
 		
-		// make mutable gates immutable
-		for(IndexedEntry<BooleanValue> e : mutableCells) {
-			if (e.value()!=TRUE) {
-				ret.fastSet(e.index(), factory.accumulate((BooleanAccumulator) e.value()));
-			} else {
-				ret.fastSet(e.index(), TRUE);
+		// compressed view of other:  the entries of row k are at [rowStart[k]..rowStart[k+1]) in colIds and vals,
+		// and colIds maps each entry to the position of its column in the sorted array of non-empty columns
+		final int nnz = other.cells.size();
+		final int[] rowStart = new int[b+1], colIds = new int[nnz];
+		final BooleanValue[] vals = new BooleanValue[nnz];
+		int n = 0;
+		for(IndexedEntry<BooleanValue> e1 : other.cells) { 
+			rowStart[e1.index() / c + 1]++;
+			colIds[n] = e1.index() % c;
+			vals[n++] = e1.value();
+		}
+		for(int k = 0; k < b; k++) { rowStart[k+1] += rowStart[k]; }
+		final int[] cols = colIds.clone();
+		Arrays.sort(cols);
+		int m = 0;
+		for(int j = 0; j < nnz; j++) { 
+			if (m==0 || cols[m-1] != cols[j]) cols[m++] = cols[j];
+		}
+		for(int j = 0; j < nnz; j++) { 
+			colIds[j] = Arrays.binarySearch(cols, 0, m, colIds[j]);
+		}
+		
+		// accumulate one row of the result at a time
+		final BooleanValue[] row = new BooleanValue[m];
+		final int[] touched = new int[m];
+		int t = 0, r = -1;
+		for(IndexedEntry<BooleanValue> e0 : cells) {
+			final int i = e0.index(), k = i % b;
+			if (i / b != r) { 
+				flushRow(ret, r*c, cols, row, touched, t);
+				t = 0;
+				r = i / b;
+			}
+			final BooleanValue iVal = e0.value();
+			for(int j = rowStart[k], end = rowStart[k+1]; j < end; j++) { 
+				final int id = colIds[j];
+				if (row[id]==TRUE) continue;
+				final BooleanValue retVal = factory.and(iVal, vals[j]);
+				if (retVal!=FALSE) t = addDisjunct(row, touched, t, id, retVal);
 			}
 		}
+		flushRow(ret, r*c, cols, row, touched, t);
 		return ret;
 	}
 	
+	/**
+	 * Adds the given disjunct to the cell at the given position of a scratch row, and returns the 
+	 * number of touched cells in the row.  A cell holds its only disjunct until a second one is 
+	 * added, and an accumulator thereafter. 
+	 * @requires val != FALSE && row[id] != TRUE
+	 * @requires row[touched[0..t)] are the non-null cells of row
+	 * @ensures row'[id] = row[id] OR val && (no row[id] => touched'[t] = id)
+	 * @return no row[id] => t + 1 else t
+	 */
+	private static int addDisjunct(BooleanValue[] row, int[] touched, int t, int id, BooleanValue val) { 
+		final BooleanValue cur = row[id];
+		if (cur==null) { 
+			row[id] = val;
+			touched[t++] = id;
+		} else if (val==TRUE) { 
+			row[id] = TRUE;
+		} else if (cur instanceof BooleanAccumulator) { 
+			((BooleanAccumulator) cur).add(val);
+		} else { 
+			row[id] = BooleanAccumulator.treeGate(OR, cur, val);
+		}
+		return t;
+	}
+	
+	/**
+	 * Stores the given row of a dot product into the given matrix, and clears it.
+	 * @requires row[touched[0..t)] are the non-FALSE values of the row whose first cell is at the given offset
+	 * @requires cols[touched[0..t)] are the columns of those values
+	 * @ensures all i: [0..t) | ret.elements'[offset + cols[touched[i]]] = row[touched[i]] (assembled, if an accumulator) 
+	 * @ensures no row'[int]
+	 */
+	private final void flushRow(BooleanMatrix ret, int offset, int[] cols, BooleanValue[] row, int[] touched, int t) { 
+		Arrays.sort(touched, 0, t);
+		for(int j = 0; j < t; j++) { 
+			final int id = touched[j];
+			final BooleanValue val = row[id];
+			if (val instanceof BooleanAccumulator) 
+				ret.fastSet(offset + cols[id], factory.accumulate((BooleanAccumulator) val));
+			else 
+				ret.fastSet(offset + cols[id], val);
+			row[id] = null;
+		}
+	}
+	
 	/**
 	 * Returns a formula stating that the entries in this matrix are a subset of 
 	 * the entries in the given matrix; i.e. the value of every entry in this matrix
@@ -648,18 +744,67 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 	}
 	
 	/**
-     * Returns the transitive closure of this matrix.
+     * Returns the transitive closure of this matrix, computed by iterative squaring.
      * 
      * @return { m: BooleanMatrix | m = ^this }
      * @throws UnsupportedOperationException  #this.diensions != 2 || !this.dimensions.square()
      */
 	public final BooleanMatrix closure() {
+		return closure(ClosureEncoding.SQUARING);
+	}
+	
+	/**
+     * Returns the transitive closure of this matrix, computed using the given encoding.  
+     * The closure of a matrix that stores only constants is computed directly, 
+     * regardless of the encoding.
+     * 
+     * @return { m: BooleanMatrix | m = ^this }
+     * @throws NullPointerException  encoding = null
+     * @throws UnsupportedOperationException  #this.diensions != 2 || !this.dimensions.square()
+     * @see ClosureEncoding
+     */
+	public final BooleanMatrix closure(ClosureEncoding encoding) {
+		if (encoding == null) 
+			throw new NullPointerException();
 		if (dims.numDimensions() != 2 || !dims.isSquare()) {
 			throw new UnsupportedOperationException("#this.diensions != 2 || !this.dimensions.square()");
 		}
 		if (cells.isEmpty())
 			return clone();
 		
+		final int n = dims.dimension(0);
+		if (isConstant() && BitMatrix.fits(n, n)) { 
+			final BitMatrix bits = BitMatrix.valueOf(cells.indices(), n, n);
+			bits.close();
+			return constant(dims, bits.indices());
+		}
+		
+		switch(encoding) { 
+		case SQUARING 		: return squaringClosure();
+		case WARSHALL 		: return warshallClosure();
+		case DECOMPOSITION 	: return decompositionClosure(new Components(this));
+		case UNROLLING 		: return unrollingClosure(new Components(this).pathBound());
+		case ADAPTIVE 		: 
+			final Components g = new Components(this);
+			final int depth = g.pathBound();
+			return depth <= UNROLLING_DEPTH ? unrollingClosure(depth) : decompositionClosure(g);
+		default : 
+			throw new IllegalArgumentException("unknown encoding: " + encoding);
+		}
+	}
+	
+	/**
+	 * The maximum path length for which the ADAPTIVE closure encoding unrolls 
+	 * the closure rather than decomposing it.
+	 */
+	private static final int UNROLLING_DEPTH = 2;
+	
+	/**
+	 * Returns the transitive closure of this matrix, computed using iterative squaring.
+	 * @requires this.dimensions.numDimensions() = 2 && this.dimensions.isSquare()
+	 * @return { m: BooleanMatrix | m = ^this }
+	 */
+	private final BooleanMatrix squaringClosure() {
 //		System.out.println("closure of " + this);
 		BooleanMatrix ret = this;
 	
@@ -679,6 +824,314 @@ public final class BooleanMatrix implements Iterable<IndexedEntry<BooleanValue>>
 		return ret==this ? clone() : ret;
 	}
 	
+	/**
+	 * Returns the transitive closure of this matrix, computed by extending 
+	 * paths by one edge at a time, until they reach the given length.
+	 * @requires this.dimensions.numDimensions() = 2 && this.dimensions.isSquare()
+	 * @requires depth >= the length of the longest simple path (or cycle) in the graph whose edges are the non-FALSE cells of this
+	 * @return { m: BooleanMatrix | m = ^this }
+	 */
+	private final BooleanMatrix unrollingClosure(int depth) { 
+		BooleanMatrix ret = this;
+		for(int i = 1; i < depth; i++) { 
+			ret = this.or(this.dot(ret));
+		}
+		return ret==this ? clone() : ret;
+	}
+	
+	/**
+	 * Returns the transitive closure of this matrix, computed using Warshall's algorithm.
+	 * @requires this.dimensions.numDimensions() = 2 && this.dimensions.isSquare()
+	 * @return { m: BooleanMatrix | m = ^this }
+	 */
+	private final BooleanMatrix warshallClosure() { 
+		final int n = dims.dimension(0);
+		final BooleanMatrix ret = new BooleanMatrix(dims, factory, new TreeSequence<BooleanValue>());
+		final IntSet[] preds = new IntSet[n];
+		final int[] in = new int[n], out = new int[n], nodes = new int[n];
+		for(IndexedEntry<BooleanValue> e : cells) { 
+			final int i = e.index() / n, j = e.index() % n;
+			ret.cells.put(e.index(), e.value());
+			addPredecessor(preds, j, i);
+			if (i != j) { out[i]++; in[j]++; }
+		}
+		for(int i = 0; i < n; i++) { nodes[i] = i; }
+		ret.warshall(pivots(nodes, 0, n, in, out), preds);
+		return ret;
+	}
+	
+	/**
+	 * Returns the transitive closure of this matrix, computed by closing the paths within each strongly 
+	 * connected component of the given graph using Warshall's algorithm, and propagating paths 
+	 * between components in the reverse topological order.
+	 * @requires this.dimensions.numDimensions() = 2 && this.dimensions.isSquare()
+	 * @requires g is the graph whose edges are the non-FALSE cells of this
+	 * @return { m: BooleanMatrix | m = ^this }
+	 */
+	private final BooleanMatrix decompositionClosure(Components g) { 
+		final int n = dims.dimension(0);
+		final BooleanMatrix ret = new BooleanMatrix(dims, factory, new TreeSequence<BooleanValue>());
+		final IntSet[] preds = new IntSet[n];
+		final int[] in = new int[n], out = new int[n], touched = new int[n], cols = new int[n];
+		final BooleanValue[] row = new BooleanValue[n];
+		for(int i = 0; i < n; i++) { cols[i] = i; }
+		
+		for(int c = 0; c < g.size; c++) { 
+			final int lo = g.compStart[c], hi = g.compStart[c+1], size = hi - lo;
+			
+			// close the paths within the component
+			for(int x = lo; x < hi; x++) { 
+				final int v = g.members[x];
+				for(int y = g.succStart[v], yMax = g.succStart[v+1]; y < yMax; y++) { 
+					final int w = g.succ[y];
+					if (g.comp[w] != c) continue;
+					ret.cells.put(v*n + w, cells.get(v*n + w));
+					addPredecessor(preds, w, v);
+					if (v != w) { out[v]++; in[w]++; }
+				}
+			}
+			if (size > 1)
+				ret.warshall(pivots(g.members, lo, hi, in, out), preds);
+			
+			// extend the edges that leave the component with the (complete) closures of their targets
+			final int[][] exitCols = new int[size][];
+			final BooleanValue[][] exitVals = new BooleanValue[size][];
+			for(int x = lo; x < hi; x++) { 
+				final int a = g.members[x];
+				int t = 0;
+				for(int y = g.succStart[a], yMax = g.succStart[a+1]; y < yMax; y++) { 
+					final int b = g.succ[y];
+					if (g.comp[b] == c) continue;
+					final BooleanValue ab = cells.get(a*n + b);
+					if (row[b] != TRUE) t = addDisjunct(row, touched, t, b, ab);
+					for(Iterator<IndexedEntry<BooleanValue>> itr = ret.cells.iterator(b*n, b*n + n - 1); itr.hasNext(); ) { 
+						final IndexedEntry<BooleanValue> e = itr.next();
+						final int j = e.index() - b*n;
+						if (row[j] == TRUE) continue;
+						final BooleanValue path = factory.and(ab, e.value());
+						if (path != FALSE) t = addDisjunct(row, touched, t, j, path);
+					}
+				}
+				Arrays.sort(touched, 0, t);
+				exitCols[x-lo] = Arrays.copyOf(touched, t);
+				exitVals[x-lo] = new BooleanValue[t];
+				for(int z = 0; z < t; z++) { 
+					final BooleanValue val = row[touched[z]];
+					exitVals[x-lo][z] = val instanceof BooleanAccumulator ? factory.accumulate((BooleanAccumulator) val) : val;
+					row[touched[z]] = null;
+				}
+			}
+			
+			// each member reaches the exits of the members that it reaches (or is) within the component
+			for(int x = lo; x < hi; x++) { 
+				final int i = g.members[x];
+				int t = 0;
+				for(int y = lo; y < hi; y++) { 
+					final int a = g.members[y];
+					final BooleanValue ia = i==a ? TRUE : ret.cells.get(i*n + a);
+					if (ia == null) continue;
+					final int[] exitCol = exitCols[y-lo];
+					final BooleanValue[] exitVal = exitVals[y-lo];
+					for(int z = 0; z < exitCol.length; z++) { 
+						if (row[exitCol[z]] == TRUE) continue;
+						final BooleanValue path = factory.and(ia, exitVal[z]);
+						if (path != FALSE) t = addDisjunct(row, touched, t, exitCol[z], path);
+					}
+				}
+				flushRow(ret, i*n, cols, row, touched, t);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Adds i to preds[j], creating preds[j] if needed.
+	 * @ensures preds'[j] = preds[j] + i
+	 */
+	private final void addPredecessor(IntSet[] preds, int j, int i) { 
+		if (preds[j] == null) 
+			preds[j] = Ints.bestSet(dims.dimension(0));
+		preds[j].add(i);
+	}
+	
+	/**
+	 * Returns the nodes in nodes[lo..hi) that have both incoming and outgoing edges, 
+	 * sorted in the ascending order of the product of their in- and out-degrees.
+	 * @return nodes in nodes[lo..hi) that have both incoming and outgoing edges, 
+	 * sorted in the ascending order of the product of their in- and out-degrees.
+	 */
+	private static int[] pivots(int[] nodes, int lo, int hi, int[] in, int[] out) { 
+		final long[] keys = new long[hi - lo];
+		int size = 0;
+		for(int x = lo; x < hi; x++) { 
+			final int v = nodes[x];
+			if (in[v] > 0 && out[v] > 0) 
+				keys[size++] = (((long) in[v] * out[v]) << 32) | v;
+		}
+		Arrays.sort(keys, 0, size);
+		final int[] ret = new int[size];
+		for(int x = 0; x < size; x++) { ret[x] = (int) keys[x]; }
+		return ret;
+	}
+	
+	/**
+	 * Extends the paths in this matrix through each of the given pivots, in the given order, 
+	 * using Warshall's algorithm.
+	 * @requires this.dimensions.numDimensions() = 2 && this.dimensions.isSquare()
+	 * @requires this.cells can store any value at any index
+	 * @requires all j: [0..#preds) | preds[j] = { i: int | this.elements[i*#preds + j] != FALSE } or 
+	 *           (no preds[j] and preds[j] = null)  
+	 * @ensures this.elements' contains the paths in this.elements that pass only through the given pivots
+	 * @ensures preds is updated to reflect this.elements'
+	 */
+	private final void warshall(int[] pivots, IntSet[] preds) { 
+		final int n = dims.dimension(0);
+		int[] cols = new int[16];
+		BooleanValue[] vals = new BooleanValue[16];
+		for(int k : pivots) { 
+			if (preds[k] == null) continue;
+			// paths k->j for j != k; extending i->k with k->k->j or i->k->k yields nothing new
+			int m = 0;
+			for(Iterator<IndexedEntry<BooleanValue>> itr = cells.iterator(k*n, k*n + n - 1); itr.hasNext(); ) { 
+				final IndexedEntry<BooleanValue> e = itr.next();
+				final int j = e.index() - k*n;
+				if (j == k) continue;
+				if (m == cols.length) { 
+					cols = Arrays.copyOf(cols, 2*m);
+					vals = Arrays.copyOf(vals, 2*m);
+				}
+				cols[m] = j;
+				vals[m++] = e.value();
+			}
+			if (m == 0) continue;
+			for(int i : preds[k].toArray()) { 
+				if (i == k) continue;
+				final BooleanValue ik = cells.get(i*n + k);
+				for(int x = 0; x < m; x++) { 
+					final int ij = i*n + cols[x];
+					final BooleanValue old = cells.get(ij);
+					if (old == TRUE) continue;
+					final BooleanValue path = factory.and(ik, vals[x]);
+					if (path == FALSE) continue;
+					if (old == null) { 
+						cells.put(ij, path);
+						addPredecessor(preds, cols[x], i);
+					} else {
+						cells.put(ij, factory.or(old, path));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The graph whose edges are the non-FALSE cells of a square, 2-dimensional matrix, 
+	 * together with its strongly connected components.  The components are numbered 
+	 * in the reverse topological order:  if there is an edge from component c to a different
+	 * component d, then d < c.
+	 * @specfield n: int // number of nodes
+	 * @specfield edges: [0..n) -> [0..n)
+	 * @specfield comps: [0..size) -> set [0..n) 
+	 */
+	private static final class Components { 
+		/** succ[succStart[v]..succStart[v+1]) are the successors of v, in the ascending order */
+		final int[] succStart, succ;
+		/** comp[v] is the component of v */
+		final int[] comp;
+		/** members[compStart[c]..compStart[c+1]) are the members of the component c */
+		final int[] compStart, members;
+		/** number of components */
+		final int size;
+		
+		/**
+		 * Computes the graph and components of the given matrix, using Tarjan's algorithm.
+		 * @requires m.dimensions.numDimensions() = 2 && m.dimensions.isSquare()
+		 */
+		Components(BooleanMatrix m) { 
+			final int n = m.dims.dimension(0);
+			succStart = new int[n+1];
+			succ = new int[m.cells.size()];
+			int edges = 0;
+			for(IndexedEntry<BooleanValue> e : m.cells) { 
+				succStart[e.index() / n + 1]++;
+				succ[edges++] = e.index() % n;
+			}
+			for(int v = 0; v < n; v++) { succStart[v+1] += succStart[v]; }
+			
+			comp = new int[n];
+			final int[] index = new int[n], low = new int[n], next = new int[n];
+			final int[] stack = new int[n], calls = new int[n];
+			final boolean[] onStack = new boolean[n];
+			Arrays.fill(index, -1);
+			int count = 0, sp = 0, cid = 0;
+			for(int s = 0; s < n; s++) { 
+				if (index[s] >= 0) continue;
+				int csp = 0;
+				index[s] = low[s] = count++;
+				stack[sp++] = s; onStack[s] = true; next[s] = succStart[s]; calls[csp++] = s;
+				while(csp > 0) { 
+					final int v = calls[csp-1];
+					if (next[v] < succStart[v+1]) { 
+						final int w = succ[next[v]++];
+						if (index[w] < 0) { 
+							index[w] = low[w] = count++;
+							stack[sp++] = w; onStack[w] = true; next[w] = succStart[w]; calls[csp++] = w;
+						} else if (onStack[w] && index[w] < low[v]) { 
+							low[v] = index[w];
+						}
+					} else { 
+						csp--;
+						if (csp > 0 && low[v] < low[calls[csp-1]]) 
+							low[calls[csp-1]] = low[v];
+						if (low[v] == index[v]) { 
+							int w;
+							do { 
+								w = stack[--sp];
+								onStack[w] = false;
+								comp[w] = cid;
+							} while(w != v);
+							cid++;
+						}
+					}
+				}
+			}
+			
+			size = cid;
+			compStart = new int[size+1];
+			members = new int[n];
+			for(int v = 0; v < n; v++) { compStart[comp[v]+1]++; }
+			for(int c = 0; c < size; c++) { compStart[c+1] += compStart[c]; }
+			final int[] fill = Arrays.copyOf(compStart, size);
+			for(int v = 0; v < n; v++) { members[fill[comp[v]]++] = v; }
+		}
+		
+		/**
+		 * Returns an upper bound on the length of the longest simple path or cycle in this graph: 
+		 * the largest total size of components along a path in the graph of components, less one 
+		 * if the graph has no cycles.
+		 * @return an upper bound on the length of the longest simple path or cycle in this graph
+		 */
+		int pathBound() { 
+			final int[] longest = new int[size];
+			int max = 0;
+			boolean cyclic = false;
+			for(int c = 0; c < size; c++) { 
+				int tail = 0;
+				for(int x = compStart[c]; x < compStart[c+1]; x++) { 
+					final int v = members[x];
+					for(int y = succStart[v]; y < succStart[v+1]; y++) { 
+						final int d = comp[succ[y]];
+						if (d == c) cyclic = true;
+						else if (longest[d] > tail) tail = longest[d];
+					}
+				}
+				longest[c] = compStart[c+1] - compStart[c] + tail;
+				if (longest[c] > max) max = longest[c];
+			}
+			return cyclic ? max : max - 1;
+		}
+	}
+	
 	/**
      * Returns the transpose of this matrix.
      * 
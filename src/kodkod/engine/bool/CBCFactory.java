@@ -34,6 +34,7 @@ import static kodkod.engine.bool.Operator.VAR;
 
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import kodkod.ast.operator.ExprOperator;
 import kodkod.engine.bool.Operator.Nary;
@@ -48,7 +49,7 @@ import kodkod.util.collections.IdentityHashSet;
  * @invariant no disj factory, factory' : CircuitFactory | some factory.values & factory'.values
  * @author Emina Torlak
  */
-final class CBCFactory {
+class CBCFactory {
 	
 	/**
 	 * Sets used as `scrap paper' for gate comparisons.  Its capacity is 2^(depth), where
@@ -68,7 +69,12 @@ final class CBCFactory {
 	 * @invariant all i: [0..2] | c[i].op.ordinal = i
 	 */
 	private final CacheSet<BooleanFormula>[] cache;
-	private int label, cmpMax;
+	/**
+	 * The label of the next variable or gate.  
+	 * @invariant label.get() = max(this.values.label) + 1
+	 */
+	private final AtomicInteger label;
+	private int cmpMax;
 	
 
 	
@@ -82,7 +88,7 @@ final class CBCFactory {
 	@SuppressWarnings("unchecked") CBCFactory(int numVars, int cmpMax) {
 		assert cmpMax > 0 && numVars >= 0;
 		this.cmpMax = cmpMax;
-		this.label = numVars + 1;
+		this.label = new AtomicInteger(numVars + 1);
 		if (numVars == 0) {
 			vars = new BooleanVariable[0][];
 		} else {
@@ -97,14 +103,51 @@ final class CBCFactory {
 	}
 	
 	/**
-	 * Returns the cache for gates with the given operator.
+	 * Returns the cache for gates with the given operator and hash code.
 	 * @requires op in AND + OR + ITE
 	 * @return cache[op.ordinal]
 	 */
-	private CacheSet<BooleanFormula> opCache(Operator op) {
+	CacheSet<BooleanFormula> opCache(Operator op, int hash) {
 		return cache[op.ordinal];
 	}
 	
+	/**
+	 * Returns an iterator over the cached gates with the given operator and hash code.
+	 * @requires op in AND + OR + ITE
+	 * @return an iterator over { g: this.values | g.op = op && g.hashCode() = hash }
+	 */
+	Iterator<BooleanFormula> gates(Operator op, int hash) { 
+		return opCache(op, hash).get(hash);
+	}
+	
+	/**
+	 * Caches the given gate, whose operator and hash code are given.
+	 * @requires op = gate.op && hash = gate.hashCode() && op in AND + OR + ITE
+	 * @ensures this.values' = this.values + gate
+	 */
+	void add(Operator op, int hash, BooleanFormula gate) { 
+		opCache(op, hash).add(gate);
+	}
+	
+	/**
+	 * Returns the first scrap set used by the calling thread for gate comparisons.
+	 * @return this.scrap0
+	 */
+	Set<BooleanFormula> scrap0() { return scrap0; }
+	
+	/**
+	 * Returns the second scrap set used by the calling thread for gate comparisons.
+	 * @return this.scrap1
+	 */
+	Set<BooleanFormula> scrap1() { return scrap1; }
+	
+	/**
+	 * Returns a fresh label for a gate.
+	 * @ensures this.label' = this.label + 1
+	 * @return this.label
+	 */
+	private int nextLabel() { return label.getAndIncrement(); }
+	
 	/**
 	 * Sets this.cmpMax to the given value.
 	 * @requires cmpMax > 0
@@ -136,7 +179,7 @@ final class CBCFactory {
 			return v == variable(v.label());
 		} else {
 			final BooleanFormula g = (BooleanFormula) v;
-			for(Iterator<BooleanFormula> gates = opCache(g.op()).get(g.hashCode()); gates.hasNext(); ) {
+			for(Iterator<BooleanFormula> gates = gates(g.op(), g.hashCode()); gates.hasNext(); ) {
 		    	if (g==gates.next()) 
 		    		return true;
 		    }
@@ -159,7 +202,25 @@ final class CBCFactory {
 	 * Note that {@link #maxFormula()} >= {@link #maxVariable()} since variables themselves are formulas.
 	 * @return max((this.values & BooleanFormula).label)
 	 */
-	int maxFormula() { return label-1; }
+	int maxFormula() { return label.get()-1; }
+	
+	/**
+	 * Returns the number of gates in {@code this.components} with the given operator.
+	 * @requires op in AND + OR + ITE
+	 * @return #{g: this.components & (MultiGate + ITEGate) | g.op = op}
+	 */
+	int numberOfGates(Operator op) { return cache[op.ordinal].size(); }
+	
+	/**
+	 * Removes all gates from this.values, keeping only the variables.  Labels of 
+	 * gates created after this call are larger than the labels of the removed gates, 
+	 * which are no longer valid arguments to the <tt>assemble</tt> methods.
+	 * @ensures this.values' = this.values & BooleanVariable
+	 */
+	void clearGates() { 
+		for(CacheSet<BooleanFormula> c : cache) 
+			c.clear();
+	}
 	
 	/**
 	 * Returns the boolean variable from this.values with the given label.
@@ -195,23 +256,24 @@ final class CBCFactory {
 	 */
 	void addVariables(int numVars) {
 		assert numVars > 0;
+		final int label = this.label.get();
 		if (label > 1 && maxVariable()==maxFormula()) {
 			final BooleanVariable[] last = vars[vars.length-1];
 			final BooleanVariable[] newLast = new BooleanVariable[last.length+numVars];
 			System.arraycopy(last, 0, newLast, 0, last.length);
-			for(int i = last.length, varLabel = this.label; i < newLast.length; i++, varLabel++)
+			for(int i = last.length, varLabel = label; i < newLast.length; i++, varLabel++)
 				newLast[i] = new BooleanVariable(varLabel);
 			vars[vars.length-1] = newLast;
 		} else {
 			final BooleanVariable[][] newVars = new BooleanVariable[vars.length+1][];	
 			System.arraycopy(vars, 0, newVars, 0, vars.length);
 			final BooleanVariable[] newLast = new BooleanVariable[numVars];
-			for(int i = 0, varLabel = this.label; i < numVars; i++, varLabel++)
+			for(int i = 0, varLabel = label; i < numVars; i++, varLabel++)
 				newLast[i] = new BooleanVariable(varLabel);			
 			newVars[vars.length] = newLast;
 			vars = newVars;			
 		}
-		this.label += numVars;
+		this.label.addAndGet(numVars);
 	}
 	
 	/**
@@ -230,17 +292,26 @@ final class CBCFactory {
 		else if (e==FALSE || i==e) return assemble(AND, i, t);
 		else {
 			final BooleanFormula f0 = (BooleanFormula) i, f1 = (BooleanFormula) t, f2 = (BooleanFormula) e;
-			final int hash = ITE.hash(f0, f1, f2);
-			
-			for(Iterator<BooleanFormula> gates = opCache(ITE).get(hash); gates.hasNext();) {
-				BooleanFormula gate = gates.next();
-				if (gate.input(0)==i && gate.input(1)==t && gate.input(2)==e)
-					return gate;
-			}
-			final BooleanFormula ret = new ITEGate(label++, hash, f0, f1, f2);
-			opCache(ITE).add(ret);
-			return ret;
+			return cache(ITE.hash(f0, f1, f2), f0, f1, f2);
+		}
+	}
+	
+	/**
+	 * Returns the ITE gate with the given inputs, creating and caching it 
+	 * if this.values contains no such gate.
+	 * @requires hash = ITE.hash(f0, f1, f2)
+	 * @return g: ITEGate | g.inputs[0] = f0 && g.inputs[1] = f1 && g.inputs[2] = f2
+	 * @ensures g !in this.values => this.values' = this.values + g, this.values' = this.values
+	 */
+	BooleanFormula cache(int hash, BooleanFormula f0, BooleanFormula f1, BooleanFormula f2) {
+		for(Iterator<BooleanFormula> gates = gates(ITE, hash); gates.hasNext();) {
+			BooleanFormula gate = gates.next();
+			if (gate.input(0)==f0 && gate.input(1)==f1 && gate.input(2)==f2)
+				return gate;
 		}
+		final BooleanFormula ret = new ITEGate(nextLabel(), hash, f0, f1, f2);
+		add(ITE, hash, ret);
+		return ret;
 	}
 		
 	/**
@@ -281,36 +352,49 @@ final class CBCFactory {
 			final Iterator<BooleanValue> inputs = acc.iterator();
 			return assemble(op, inputs.next(), inputs.next());
 		default :
-			final int hash = op.hash((Iterator)acc.iterator());
-			if (asize > cmpMax) {
-				for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
-					BooleanFormula g = gates.next();
-					if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
-						return g;
-					} 
-				}
-			} else {
-				LOOKUP: for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
-					BooleanFormula g = gates.next();
-					if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
-						return g;
-					} else if (g.size() < asize) {
-						scrap0.clear();
-						g.flatten(op, scrap0, cmpMax);
-						if (scrap0.size()==asize) {
-							for(BooleanValue v : acc) {
-								if (!scrap0.contains(v))
-									continue LOOKUP;
-							}
-							return g;
+			return cache(acc, op.hash((Iterator)acc.iterator()));
+		}
+	}
+	
+	/**
+	 * Returns a gate with the same meaning as the given accumulator, creating 
+	 * and caching it if this.values contains no such gate.
+	 * @requires acc.size() > 2 && hash = acc.op.hash(acc.iterator())
+	 * @return g: BooleanFormula | [[g]] = [[acc]] 
+	 * @ensures g !in this.values => this.values' = this.values + g, this.values' = this.values
+	 */
+	BooleanFormula cache(BooleanAccumulator acc, int hash) { 
+		final int asize = acc.size();
+		final Operator.Nary op = acc.op;
+		if (asize > cmpMax) {
+			for(Iterator<BooleanFormula> gates = gates(op, hash); gates.hasNext(); ) {
+				BooleanFormula g = gates.next();
+				if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
+					return g;
+				} 
+			}
+		} else {
+			final Set<BooleanFormula> scrap0 = scrap0();
+			LOOKUP: for(Iterator<BooleanFormula> gates = gates(op, hash); gates.hasNext(); ) {
+				BooleanFormula g = gates.next();
+				if (g.size()==asize && ((NaryGate) g).sameInputs(acc.iterator())) { 
+					return g;
+				} else if (g.size() < asize) {
+					scrap0.clear();
+					g.flatten(op, scrap0, cmpMax);
+					if (scrap0.size()==asize) {
+						for(BooleanValue v : acc) {
+							if (!scrap0.contains(v))
+								continue LOOKUP;
 						}
+						return g;
 					}
 				}
 			}
-			final BooleanFormula ret = new NaryGate(acc, label++, hash);	
-			opCache(acc.op).add(ret);
-			return ret;
 		}
+		final BooleanFormula ret = new NaryGate(acc, nextLabel(), hash);	
+		add(op, hash, ret);
+		return ret;
 	}
 	
 	/**
@@ -345,12 +429,25 @@ final class CBCFactory {
 		} else {
 			l = f1; h = f0;
 		}
-		final int hash = op.hash(l,h);
+		return cache(op, op.hash(l,h), l, h);
+	}
+	
+	/**
+	 * Returns a gate f such that [[f]] = l op h, creating and caching it if 
+	 * this.values contains no such gate.
+	 * @requires l.label < h.label && hash = op.hash(l, h)
+	 * @requires l and h have already been reduced with respect to op
+	 * @return f : BooleanFormula | [[f]] = [[l]] op [[h]]
+	 * @ensures f !in this.values => this.values' = this.values + f,
+	 * 	        this.values' = this.values
+	 */
+	BooleanFormula cache(Operator.Nary op, int hash, BooleanFormula l, BooleanFormula h) {
 		if (l.op()==op || h.op()==op) {
+			final Set<BooleanFormula> scrap0 = scrap0(), scrap1 = scrap1();
 			scrap0.clear();
 			l.flatten(op, scrap0, cmpMax-1);
 			h.flatten(op, scrap0, cmpMax-scrap0.size());
-			for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
+			for(Iterator<BooleanFormula> gates = gates(op, hash); gates.hasNext(); ) {
 				BooleanFormula gate = gates.next();
 				if (gate.size()==2 && gate.input(0)==l && gate.input(1)==h)
 					return gate;
@@ -362,14 +459,14 @@ final class CBCFactory {
 				}
 			}
 		} else {
-			for(Iterator<BooleanFormula> gates = opCache(op).get(hash); gates.hasNext(); ) {
+			for(Iterator<BooleanFormula> gates = gates(op, hash); gates.hasNext(); ) {
 				BooleanFormula gate = gates.next();
 				if (gate.size()==2 && gate.input(0)==l && gate.input(1)==h)
 					return gate;
 			}
 		}
-		final BooleanFormula ret = new BinaryGate(op, label++, hash, l, h);
-		opCache(op).add(ret);
+		final BooleanFormula ret = new BinaryGate(op, nextLabel(), hash, l, h);
+		add(op, hash, ret);
 		return ret;
 	}
 
@@ -429,6 +526,7 @@ final class CBCFactory {
 		 */
 		BooleanValue assemble(Nary op, BooleanFormula f0, BooleanFormula f1) {
 			assert f0.op() == AND && f1.op() == OR;
+			final Set<BooleanFormula> scrap0 = scrap0(), scrap1 = scrap1();
 			scrap0.clear(); 
 			scrap1.clear();
 			f0.flatten(f0.op(), scrap0, cmpMax);
@@ -457,6 +555,7 @@ final class CBCFactory {
 			assert f0.op() == f1.op();
 			if (f0==f1) return f0;
 			final Operator fop = f0.op();
+			final Set<BooleanFormula> scrap0 = scrap0(), scrap1 = scrap1();
 			scrap0.clear(); 
 			scrap1.clear();
 			f0.flatten(fop, scrap0, cmpMax);
@@ -640,4 +739,146 @@ final class CBCFactory {
 		XoX			/* VAR op VAR */
 	};
 
-}
\ No newline at end of file
+	/**
+	 * A CBCFactory that can be used by multiple threads at once.  Each gate table 
+	 * is split into stripes by hash code, and each stripe is guarded by its own 
+	 * monitor, so threads contend only when they build gates whose hash codes 
+	 * fall into the same stripe.  Labels are drawn from an atomic counter, and 
+	 * every thread compares gates using its own scrap sets.  Variables may be added 
+	 * only while no other thread is using the factory.
+	 * @author Emina Torlak
+	 */
+	static final class Concurrent extends CBCFactory {
+		/* number of stripes per gate table; must be a power of 2 */
+		private static final int STRIPES = 64;
+		private final CacheSet<BooleanFormula>[][] stripes;
+		private final ThreadLocal<Set<BooleanFormula>[]> scraps;
+		
+		/**
+		 * Constructs a concurrent CircuitFactory using the given max comparison parameter, initialized
+		 * to contain the given number of variables. 
+		 * @requires cmpMax > 0 && numVars >= 0
+		 * @ensures #this.values' = numVars && this.values in BooleanVariable
+		 * @ensures this.cmpMax' = cmpMax
+		 */
+		Concurrent(int numVars, int cmpMax) { 
+			super(numVars, cmpMax); 
+			this.stripes = tables(3, STRIPES);
+			for(CacheSet<BooleanFormula>[] table : stripes) {
+				for(int i = 0; i < STRIPES; i++) 
+					table[i] = new CacheSet<BooleanFormula>();
+			}
+			this.scraps = new ThreadLocal<Set<BooleanFormula>[]>() {
+				protected Set<BooleanFormula>[] initialValue() { 
+					final int capacity = cmpMax();
+					return scraps(new IdentityHashSet<BooleanFormula>(capacity), new IdentityHashSet<BooleanFormula>(capacity));
+				}
+			};
+		}
+		
+		/**
+		 * Returns an ops x stripes array of empty gate table slots.
+		 * @return { t: CacheSet<BooleanFormula>[][] | t.length = ops && all i: [0..ops) | t[i].length = stripes } 
+		 */
+		@SuppressWarnings("unchecked") // generic arrays cannot be created directly; all slots are filled with CacheSet<BooleanFormula>
+		private static CacheSet<BooleanFormula>[][] tables(int ops, int stripes) { 
+			return (CacheSet<BooleanFormula>[][]) new CacheSet<?>[ops][stripes];
+		}
+		
+		/**
+		 * Returns an array that holds the given scrap sets.
+		 * @return { a: Set<BooleanFormula>[] | a[0] = scrap0 && a[1] = scrap1 }
+		 */
+		@SuppressWarnings("unchecked") // generic arrays cannot be created directly; the array only ever holds the given sets
+		private static Set<BooleanFormula>[] scraps(Set<BooleanFormula> scrap0, Set<BooleanFormula> scrap1) { 
+			return (Set<BooleanFormula>[]) new Set<?>[]{ scrap0, scrap1 };
+		}
+		
+		/**
+		 * Returns the stripe of the gate table for the given operator that holds gates with the given hash code.
+		 * The stripe is selected by the high bits of the mixed hash, since the low bits select buckets within the stripe.
+		 * @see kodkod.engine.bool.CBCFactory#opCache(kodkod.engine.bool.Operator, int)
+		 */
+		CacheSet<BooleanFormula> opCache(Operator op, int hash) { 
+			return stripes[op.ordinal][(hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(STRIPES))];
+		}
+		
+		Set<BooleanFormula> scrap0() { return scraps.get()[0]; }
+		Set<BooleanFormula> scrap1() { return scraps.get()[1]; }
+		
+		boolean canAssemble(BooleanValue v) { 
+			if (v.op()==CONST) 
+				return true;
+			final BooleanValue pos = v.label() < 0 ? v.negation() : v;
+			if (pos instanceof BooleanVariable) 
+				return super.canAssemble(pos);
+			final CacheSet<BooleanFormula> c = opCache(pos.op(), pos.hashCode());
+			synchronized(c) { return super.canAssemble(pos); }
+		}
+		
+		int numberOfGates(Operator op) { 
+			int size = 0;
+			for(CacheSet<BooleanFormula> c : stripes[op.ordinal]) { 
+				synchronized(c) { size += c.size(); }
+			}
+			return size;
+		}
+		
+		void clearGates() { 
+			for(CacheSet<BooleanFormula>[] table : stripes) {
+				for(CacheSet<BooleanFormula> c : table) { 
+					synchronized(c) { c.clear(); }
+				}
+			}
+		}
+		
+		BooleanFormula cache(int hash, BooleanFormula f0, BooleanFormula f1, BooleanFormula f2) { 
+			final CacheSet<BooleanFormula> c = opCache(ITE, hash);
+			synchronized(c) { return super.cache(hash, f0, f1, f2); }
+		}
+		
+		BooleanFormula cache(BooleanAccumulator acc, int hash) { 
+			final CacheSet<BooleanFormula> c = opCache(acc.op, hash);
+			synchronized(c) { return super.cache(acc, hash); }
+		}
+		
+		BooleanFormula cache(Operator.Nary op, int hash, BooleanFormula l, BooleanFormula h) { 
+			final CacheSet<BooleanFormula> c = opCache(op, hash);
+			synchronized(c) { return super.cache(op, hash, l, h); }
+		}
+	}
+	
+	/**
+	 * A CBCFactory that caches gates in {@link GateStore GateStores} rather than in 
+	 * {@link CacheSet CacheSets}.  A gate store keeps the hash codes and the gates in 
+	 * two parallel arrays that are probed linearly, so caching a gate allocates no 
+	 * entry object, and looking up a gate dereferences only the candidates whose hash 
+	 * codes match.  The gates themselves, and the circuits they form, are the same as those 
+	 * built by a plain CBCFactory.  This factory may be used by only one thread at a time.
+	 * @author Emina Torlak
+	 */
+	static final class Compact extends CBCFactory {
+		private final GateStore[] stores;
+		
+		/**
+		 * Constructs a compact CircuitFactory using the given max comparison parameter, initialized
+		 * to contain the given number of variables. 
+		 * @requires cmpMax > 0 && numVars >= 0
+		 * @ensures #this.values' = numVars && this.values in BooleanVariable
+		 * @ensures this.cmpMax' = cmpMax
+		 */
+		Compact(int numVars, int cmpMax) { 
+			super(numVars, cmpMax);
+			this.stores = new GateStore[]{ new GateStore(), new GateStore(), new GateStore() };
+		}
+		
+		Iterator<BooleanFormula> gates(Operator op, int hash) { return stores[op.ordinal].get(hash); }
+		void add(Operator op, int hash, BooleanFormula gate) { stores[op.ordinal].add(hash, gate); }
+		int numberOfGates(Operator op) { return stores[op.ordinal].size(); }
+		
+		void clearGates() { 
+			for(GateStore store : stores) 
+				store.clear();
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.bool;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash-consing table for gates that is laid out as two parallel arrays, rather 
+ * than as buckets of linked entry objects.  Slot i of the table holds a gate in 
+ * gates[i] and its hash code in hashes[i].  Slots are probed linearly, starting 
+ * from a slot determined by the hash code, and candidates are filtered by 
+ * comparing the stored hash codes, so a lookup dereferences only the gates whose 
+ * hash codes match.  The table allocates no objects per gate, and its footprint 
+ * is one int and one reference per slot.  The table is kept at most three quarters full.
+ * 
+ * @specfield gates: set BooleanFormula
+ * @author Emina Torlak
+ */
+final class GateStore {
+	private static final int INITIAL_CAPACITY = 16;
+	/* @invariant hashes.length = gates.length && gates.length is a power of 2 */
+	private int[] hashes;
+	private BooleanFormula[] gates;
+	private int size;
+	
+	/**
+	 * Constructs an empty gate store.
+	 * @ensures no this.gates'
+	 */
+	GateStore() {
+		this.hashes = new int[INITIAL_CAPACITY];
+		this.gates = new BooleanFormula[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+	
+	/**
+	 * Returns the index of the first slot to probe for the given hash code 
+	 * in a table of the given length.
+	 * @requires length is a power of 2
+	 * @return index of the first slot to probe for the given hash code
+	 */
+	private static int slot(int hash, int length) { 
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return hash & (length-1);
+	}
+	
+	/**
+	 * Returns the number of gates in this store.
+	 * @return #this.gates
+	 */
+	int size() { return size; }
+	
+	/**
+	 * Removes all gates from this store, keeping its capacity.
+	 * @ensures no this.gates'
+	 */
+	void clear() { 
+		Arrays.fill(gates, null);
+		size = 0;
+	}
+	
+	/**
+	 * Returns an iterator over the gates in this store with the given hash code.
+	 * @return an iterator over { g: this.gates | g.hashCode() = hash }
+	 */
+	Iterator<BooleanFormula> get(final int hash) { 
+		return new Iterator<BooleanFormula>() {
+			final int[] hashes = GateStore.this.hashes;
+			final BooleanFormula[] gates = GateStore.this.gates;
+			int next = advance(slot(hash, gates.length));
+			
+			/** Returns the first slot, starting at i, that holds a gate with the given hash code, or -1 if none. */
+			int advance(int i) { 
+				final int mask = gates.length-1;
+				for(; gates[i] != null; i = (i+1) & mask) { 
+					if (hashes[i]==hash) return i;
+				}
+				return -1;
+			}
+			public boolean hasNext() { return next >= 0; }
+			public BooleanFormula next() {
+				if (next < 0) throw new NoSuchElementException();
+				final BooleanFormula ret = gates[next];
+				next = advance((next+1) & (gates.length-1));
+				return ret;
+			}
+			public void remove() { throw new UnsupportedOperationException(); }
+		};
+	}
+	
+	/**
+	 * Adds the given gate, whose hash code is given, to this store.
+	 * @requires hash = gate.hashCode() && gate !in this.gates
+	 * @ensures this.gates' = this.gates + gate
+	 */
+	void add(int hash, BooleanFormula gate) { 
+		if (++size > (gates.length >>> 1) + (gates.length >>> 2)) // keep the load factor at or below 3/4
+			resize(gates.length << 1);
+		insert(hashes, gates, hash, gate);
+	}
+	
+	/**
+	 * Stores the given gate and hash code in the first empty slot of its probe sequence in the given table.
+	 * @requires some i: [0..gates.length) | gates[i] = null
+	 */
+	private static void insert(int[] hashes, BooleanFormula[] gates, int hash, BooleanFormula gate) { 
+		final int mask = gates.length-1;
+		int i = slot(hash, gates.length);
+		while(gates[i] != null) { i = (i+1) & mask; }
+		hashes[i] = hash;
+		gates[i] = gate;
+	}
+	
+	/**
+	 * Moves the contents of this store into a table of the given capacity.
+	 * @requires capacity is a power of 2 && capacity > #this.gates
+	 */
+	private void resize(int capacity) { 
+		final int[] newHashes = new int[capacity];
+		final BooleanFormula[] newGates = new BooleanFormula[capacity];
+		for(int i = 0; i < gates.length; i++) { 
+			if (gates[i] != null) insert(newHashes, newGates, hashes[i], gates[i]);
+		}
+		hashes = newHashes;
+		gates = newGates;
+	}
+}
@@ -21,6 +21,8 @@
  */
 package kodkod.engine.config;
 
+import kodkod.engine.CancellationToken;
+import kodkod.engine.fol2sat.TranslationCache;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.util.ints.IntRange;
 import kodkod.util.ints.Ints;
@@ -33,36 +35,66 @@ import kodkod.util.ints.Ints;
  * @specfield solver: SATFactory // SAT solver factory to use
  * @specfield reporter: Reporter // reporter to use
  * @specfield symmetryBreaking: int // the amount of symmetry breaking to perform
+ * @specfield symmetryBreakingStrategy: SymmetryBreakingStrategy // how lex-leader predicates are generated, default is FIXED_LENGTH
+ * @specfield symmetryBreakingBudget: int // clause budget for ADAPTIVE and GENERATORS symmetry breaking, default is 10000
  * @specfield sharing: int // the depth to which circuits should be checked for equivalence during translation
  * @specfield intEncoding: IntEncoding // encoding to use for translating int expressions
  * @specfield bitwidth: int // the bitwidth to use for integer representation / arithmetic
+ * @specfield closureEncoding: ClosureEncoding // encoding to use for translating transitive closures, default is SQUARING
  * @specfield skolemDepth: int // skolemization depth
+ * @specfield skolemCost: int // estimated number of gates a skolem variable must save to be introduced, default is 0 (no cost check)
  * @specfield logTranslation: [0..2] // log translation events, default is 0 (no logging)
  * @specfield coreGranularity: [0..3] // unsat core granularity, default is 0 (only top-level conjuncts are considered)
+ * @specfield translationThreads: int // number of threads used to translate top-level conjuncts, default is 1 
+ * @specfield streamCNF: boolean // emit CNF for each top-level conjunct as soon as it is translated, default is false 
+ * @specfield compactGates: boolean // cache gates in open-addressed primitive-array tables, default is false 
+ * @specfield symbolicThreshold: int // minimum number of bindings for which an existential quantifier is encoded symbolically, default is 0 (never)
+ * @specfield translationCache: lone TranslationCache // cache of translations to consult before translating, default is none 
+ * @specfield cancellation: CancellationToken // token that aborts solving when cancelled, default is CancellationToken.NONE 
  * @author Emina Torlak
  */
 public final class Options implements Cloneable {
 	private Reporter reporter = new AbstractReporter(){};
 	private SATFactory solver = SATFactory.DefaultSAT4J;
 	private int symmetryBreaking = 20;
+	private SymmetryBreakingStrategy symmetryBreakingStrategy = SymmetryBreakingStrategy.FIXED_LENGTH;
+	private int symmetryBreakingBudget = 10000;
 	private IntEncoding intEncoding = IntEncoding.TWOSCOMPLEMENT;
 	private int bitwidth = 4;
+	private ClosureEncoding closureEncoding = ClosureEncoding.SQUARING;
 	private int sharing = 3;
 	private int skolemDepth = 0;
+	private int skolemCost = 0;
 	private int logTranslation = 0;
 	private int coreGranularity = 0;
+	private int translationThreads = 1;
+	private boolean streamCNF = false;
+	private boolean compactGates = false;
+	private int symbolicThreshold = 0;
+	private TranslationCache translationCache = null;
+	private CancellationToken cancellation = CancellationToken.NONE;
 	
 	/**
 	 * Constructs an Options object initialized with default values.
 	 * @ensures this.solver' = SATFactory.DefaultSAT4J
 	 *          this.reporter' is silent (no messages reported)
 	 *          this.symmetryBreaking' = 20
+	 *          this.symmetryBreakingStrategy' = FIXED_LENGTH
+	 *          this.symmetryBreakingBudget' = 10000
 	 *          this.sharing' = 3
 	 *          this.intEncoding' = BINARY
 	 *          this.bitwidth' = 4
+	 *          this.closureEncoding' = SQUARING
 	 *          this.skolemDepth' = 0
+	 *          this.skolemCost' = 0
 	 *          this.logTranslation' = 0
 	 *          this.coreGranularity' = 0
+	 *          this.translationThreads' = 1
+	 *          this.streamCNF' = false
+	 *          this.compactGates' = false
+	 *          this.symbolicThreshold' = 0
+	 *          this.translationCache' = null
+	 *          this.cancellation' = CancellationToken.NONE
 	 */
 	public Options() {}
 	
@@ -171,6 +203,28 @@ public final class Options implements Cloneable {
 		return intEncoding.range(bitwidth);
 	}
 	
+	/**
+	 * Returns the encoding that will be used for translating transitive closures 
+	 * of {@link kodkod.ast.Expression expressions}.  The default is SQUARING, which 
+	 * produces circuits of logarithmic depth but of size cubic in the number of atoms.  
+	 * The other encodings produce smaller circuits for sparse upper bounds.
+	 * @return this.closureEncoding
+	 */
+	public ClosureEncoding closureEncoding() { 
+		return closureEncoding;
+	}
+	
+	/**
+	 * Sets the closureEncoding option to the given value.
+	 * @ensures this.closureEncoding' = encoding
+	 * @throws NullPointerException  encoding = null
+	 */
+	public void setClosureEncoding(ClosureEncoding encoding) {
+		if (encoding==null)
+			throw new NullPointerException();
+		this.closureEncoding = encoding;
+	}
+	
 	/**
 	 * Returns the 'amount' of symmetry breaking to perform.
 	 * If a non-symmetric solver is chosen for this.solver,
@@ -196,6 +250,50 @@ public final class Options implements Cloneable {
 		this.symmetryBreaking = symmetryBreaking;
 	}
 	
+	/**
+	 * Returns the strategy used to generate lex-leader symmetry breaking predicates.
+	 * The default is FIXED_LENGTH, which compares adjacent atoms of each symmetry class 
+	 * using predicates of length at most this.symmetryBreaking.  The other strategies 
+	 * spend at most this.symmetryBreakingBudget clauses on the comparisons that constrain the 
+	 * most primary variables per clause.  No predicates are generated, regardless of the 
+	 * strategy, if this.symmetryBreaking is 0.
+	 * @return this.symmetryBreakingStrategy
+	 */
+	public SymmetryBreakingStrategy symmetryBreakingStrategy() { 
+		return symmetryBreakingStrategy;
+	}
+	
+	/**
+	 * Sets the symmetryBreakingStrategy option to the given value.
+	 * @ensures this.symmetryBreakingStrategy' = strategy
+	 * @throws NullPointerException  strategy = null
+	 */
+	public void setSymmetryBreakingStrategy(SymmetryBreakingStrategy strategy) { 
+		if (strategy==null)
+			throw new NullPointerException();
+		this.symmetryBreakingStrategy = strategy;
+	}
+	
+	/**
+	 * Returns the estimated number of clauses that may be spent on symmetry breaking 
+	 * predicates when this.symmetryBreakingStrategy is ADAPTIVE or GENERATORS.  
+	 * The default is 10000.
+	 * @return this.symmetryBreakingBudget
+	 */
+	public int symmetryBreakingBudget() { 
+		return symmetryBreakingBudget;
+	}
+	
+	/**
+	 * Sets the symmetryBreakingBudget option to the given value.
+	 * @ensures this.symmetryBreakingBudget' = budget
+	 * @throws IllegalArgumentException  budget !in [0..Integer.MAX_VALUE]
+	 */
+	public void setSymmetryBreakingBudget(int budget) { 
+		checkRange(budget, 0, Integer.MAX_VALUE);
+		this.symmetryBreakingBudget = budget;
+	}
+	
 	/**
 	 * Returns the depth to which circuits are checked for equivalence during translation.
 	 * The default depth is 3, and the minimum allowed depth is 1.  Increasing the sharing
@@ -236,6 +334,36 @@ public final class Options implements Cloneable {
 		this.skolemDepth = skolemDepth;
 	}
 	
+	/**
+	 * Returns the estimated number of gates that each primary variable of a 
+	 * skolem relation must save in order for an existential nested within 
+	 * universal quantifiers to be skolemized.  The skolemizer compares, for 
+	 * each such candidate declaration, the size of the circuit that grounding 
+	 * the existential would produce against the size of the circuit for its skolemized 
+	 * form, and skolemizes the declaration only if the savings are at least 
+	 * skolemCost times the number of primary variables added by its skolem relation.
+	 * Rejected declarations are treated as non-skolemizable, so existentials that 
+	 * depend on them may still be skolemized.  This makes it practical to use a 
+	 * {@linkplain #skolemDepth() skolem depth} greater than 1.  Existentials that are 
+	 * not nested within universals are always skolemized.  The default is 0, which 
+	 * means that every candidate within the skolem depth is skolemized.
+	 * @return this.skolemCost
+	 */
+	public int skolemCost() {
+		return skolemCost;
+	}
+	
+	/**
+	 * Sets the skolem cost to the given value.  A value of 0 disables 
+	 * cost-based selection of skolemized declarations.
+	 * @ensures this.skolemCost' = skolemCost
+	 * @throws IllegalArgumentException  skolemCost !in [0..Integer.MAX_VALUE]
+	 */
+	public void setSkolemCost(int skolemCost) {
+		checkRange(skolemCost, 0, Integer.MAX_VALUE);
+		this.skolemCost = skolemCost;
+	}
+	
 	/**
 	 * Returns the translation logging level (0, 1, or 2), where 0
 	 * means logging is not performed, 1 means only the translations of 
@@ -288,10 +416,161 @@ public final class Options implements Cloneable {
 		this.coreGranularity = coreGranularity;
 	}
 	
+	/**
+	 * Returns the number of threads used to translate the top-level conjuncts of a 
+	 * formula to boolean circuits.  The default is 1, which means that translation is 
+	 * performed sequentially, on the calling thread.  A larger value causes the top-level
+	 * conjuncts to be translated concurrently into a single shared circuit factory.  
+	 * Translation is always sequential when {@linkplain #logTranslation() logging} is enabled.
+	 * Note that concurrent translation is not deterministic: the resulting circuits are 
+	 * equivalent but not necessarily identical across runs.  The same number of threads is 
+	 * used to detect the symmetries of large bounds, which yields the same symmetries as 
+	 * sequential detection.
+	 * @return this.translationThreads
+	 */
+	public int translationThreads() { 
+		return translationThreads;
+	}
+	
+	/**
+	 * Sets the number of threads used for translation.
+	 * @ensures this.translationThreads' = translationThreads
+	 * @throws IllegalArgumentException  translationThreads !in [1..Integer.MAX_VALUE]
+	 */
+	public void setTranslationThreads(int translationThreads) { 
+		checkRange(translationThreads, 1, Integer.MAX_VALUE);
+		this.translationThreads = translationThreads;
+	}
+	
+	/**
+	 * Returns true if the CNF is streamed to the SAT solver during translation.  
+	 * If so, each top-level conjunct of a formula is converted to clauses as soon as its 
+	 * circuit is built, so the complete circuit is never assembled and the solver 
+	 * receives clauses while translation is still running.  Once a conjunct has been 
+	 * converted, its gates and the cached translations of its subformulas are released, 
+	 * so the memory used by the translator is bounded by the largest conjunct rather 
+	 * than by the whole formula.  The price is that subcircuits shared between conjuncts 
+	 * are rebuilt and converted once per conjunct.  Streamed clauses 
+	 * encode both polarities of every gate, so the resulting CNF may also be larger than 
+	 * the default polarity-aware one.  Streaming is performed sequentially (this.translationThreads 
+	 * is ignored), and it is disabled when {@linkplain #logTranslation() logging} is enabled.  
+	 * The default is false.
+	 * @return this.streamCNF
+	 */
+	public boolean streamCNF() { 
+		return streamCNF;
+	}
+	
+	/**
+	 * Sets the streamCNF option to the given value.
+	 * @ensures this.streamCNF' = streamCNF
+	 */
+	public void setStreamCNF(boolean streamCNF) { 
+		this.streamCNF = streamCNF;
+	}
+	
+	/**
+	 * Returns true if the translator caches the gates of a circuit in compact tables.  
+	 * Gates are hash-consed so that each distinct gate is built only once.  By default, the 
+	 * tables that find them are hash sets with one linked entry object per gate.  
+	 * Compact tables instead keep the gates and their hash codes in parallel arrays 
+	 * that are probed linearly.  This saves an object per gate and a dereference per 
+	 * rejected candidate, which lowers the footprint and garbage collection load of 
+	 * translations that build millions of gates.  The choice of tables does not affect 
+	 * the meaning of the translation.  Compact tables are not used when translation is concurrent 
+	 * (this.translationThreads > 1).  The default is false.
+	 * @return this.compactGates
+	 */
+	public boolean compactGates() { 
+		return compactGates;
+	}
+	
+	/**
+	 * Sets the compactGates option to the given value.
+	 * @ensures this.compactGates' = compactGates
+	 */
+	public void setCompactGates(boolean compactGates) { 
+		this.compactGates = compactGates;
+	}
+	
+	/**
+	 * Returns the minimum number of bindings of a quantified variable for which the 
+	 * quantifier is encoded symbolically rather than grounded.  A symbolic encoding 
+	 * represents the variable with a bit-vector of fresh boolean variables, whose width is 
+	 * logarithmic in the number of bindings, and translates the body of the quantified 
+	 * formula once rather than once per binding.  Only quantifiers that are existential 
+	 * in every occurrence (i.e. existential quantifiers that occur only positively, and 
+	 * universal quantifiers that occur only negatively) can be encoded symbolically.  
+	 * The fresh variables are not primary, so they do not affect the enumeration of 
+	 * solutions.  Symbolic encoding is not used when {@linkplain #logTranslation() logging} 
+	 * or incremental solving is enabled, or when translation is concurrent.  The default 
+	 * is 0, which means that quantifiers are always grounded.
+	 * @return this.symbolicThreshold
+	 */
+	public int symbolicThreshold() { 
+		return symbolicThreshold;
+	}
+	
+	/**
+	 * Sets the symbolic encoding threshold to the given value.  A value of 0 
+	 * disables symbolic encoding.
+	 * @ensures this.symbolicThreshold' = symbolicThreshold
+	 * @throws IllegalArgumentException  symbolicThreshold !in [0..Integer.MAX_VALUE]
+	 */
+	public void setSymbolicThreshold(int symbolicThreshold) { 
+		checkRange(symbolicThreshold, 0, Integer.MAX_VALUE);
+		this.symbolicThreshold = symbolicThreshold;
+	}
+	
+	/**
+	 * Returns the translation cache, if any, that is consulted before translating a 
+	 * formula and bounds into a {@linkplain kodkod.engine.fol2sat.Translation.Whole whole translation}.  
+	 * If a problem with the same fingerprint has been translated before, its cached CNF 
+	 * is replayed into a fresh solver instead of translating the problem from scratch.  The 
+	 * cache is not used when {@linkplain #logTranslation() logging} is enabled.  The default is null 
+	 * (no caching).
+	 * @return this.translationCache
+	 */
+	public TranslationCache translationCache() { 
+		return translationCache;
+	}
+	
+	/**
+	 * Sets the translation cache to the given value.  A null value disables caching.
+	 * @ensures this.translationCache' = translationCache
+	 */
+	public void setTranslationCache(TranslationCache translationCache) { 
+		this.translationCache = translationCache;
+	}
+	
+	/**
+	 * Returns the cancellation token that is checked while solving with these options.  
+	 * When the token is cancelled, translation stops at the next safe point and the 
+	 * SAT search, if any, is interrupted, causing the solving task to throw an 
+	 * {@link kodkod.engine.AbortedException}.  The default is {@link CancellationToken#NONE}, 
+	 * which is never cancelled. 
+	 * @return this.cancellation
+	 */
+	public CancellationToken cancellation() { 
+		return cancellation;
+	}
+	
+	/**
+	 * Sets the cancellation token to the given value.
+	 * @ensures this.cancellation' = cancellation
+	 * @throws NullPointerException  cancellation = null
+	 */
+	public void setCancellation(CancellationToken cancellation) { 
+		if (cancellation==null)
+			throw new NullPointerException();
+		this.cancellation = cancellation;
+	}
+	
 	/**
 	 * Returns a shallow copy of this Options object.  In particular, 
-	 * the returned options shares the same {@linkplain #reporter()} 
-	 * and {@linkplain #solver()} factory objects as this Options. 
+	 * the returned options shares the same {@linkplain #reporter()}, 
+	 * {@linkplain #solver()} factory, {@linkplain #translationCache()} and {@linkplain #cancellation()} 
+	 * objects as this Options. 
 	 * @return a shallow copy of this Options object.
 	 */
 	public Options clone() {
@@ -300,12 +579,22 @@ public final class Options implements Cloneable {
 		c.setReporter(reporter);
 		c.setBitwidth(bitwidth);
 		c.setIntEncoding(intEncoding);
+		c.setClosureEncoding(closureEncoding);
 		c.setSharing(sharing);
 		c.setSharing(sharing);
 		c.setSymmetryBreaking(symmetryBreaking);
+		c.setSymmetryBreakingStrategy(symmetryBreakingStrategy);
+		c.setSymmetryBreakingBudget(symmetryBreakingBudget);
 		c.setSkolemDepth(skolemDepth);
+		c.setSkolemCost(skolemCost);
 		c.setLogTranslation(logTranslation);
 		c.setCoreGranularity(coreGranularity);
+		c.setTranslationThreads(translationThreads);
+		c.setStreamCNF(streamCNF);
+		c.setCompactGates(compactGates);
+		c.setSymbolicThreshold(symbolicThreshold);
+		c.setTranslationCache(translationCache);
+		c.setCancellation(cancellation);
 		return c;
 	}
 	
@@ -324,16 +613,36 @@ public final class Options implements Cloneable {
 		b.append(intEncoding);
 		b.append("\n bitwidth: ");
 		b.append(bitwidth);
+		b.append("\n closureEncoding: ");
+		b.append(closureEncoding);
 		b.append("\n sharing: ");
 		b.append(sharing);
 		b.append("\n symmetryBreaking: ");
 		b.append(symmetryBreaking);
+		b.append("\n symmetryBreakingStrategy: ");
+		b.append(symmetryBreakingStrategy);
+		b.append("\n symmetryBreakingBudget: ");
+		b.append(symmetryBreakingBudget);
 		b.append("\n skolemDepth: ");
 		b.append(skolemDepth);
+		b.append("\n skolemCost: ");
+		b.append(skolemCost);
 		b.append("\n logTranslation: ");
 		b.append(logTranslation);
 		b.append("\n coreGranularity: ");
 		b.append(coreGranularity);
+		b.append("\n translationThreads: ");
+		b.append(translationThreads);
+		b.append("\n streamCNF: ");
+		b.append(streamCNF);
+		b.append("\n compactGates: ");
+		b.append(compactGates);
+		b.append("\n symbolicThreshold: ");
+		b.append(symbolicThreshold);
+		b.append("\n translationCache: ");
+		b.append(translationCache);
+		b.append("\n cancellation: ");
+		b.append(cancellation);
 		return b.toString();
 	}
 	
@@ -375,4 +684,63 @@ public final class Options implements Cloneable {
 		abstract IntRange range(int bitwidth) ;
 	}
 	
+	/**
+	 * Encoding options for the translation of {@linkplain kodkod.ast.operator.ExprOperator#CLOSURE transitive closures}.  
+	 * The encodings differ in how they use the structure of the closed relation's upper bound, viewed as a 
+	 * directed graph whose edges are the tuples that may be in the relation.   
+	 */
+	public static enum ClosureEncoding {
+		/**
+		 * Iterative squaring:  the relation is joined with itself log(n) times, where n is the 
+		 * number of atoms with outgoing edges.  
+		 */
+		SQUARING,
+		/**
+		 * Warshall's algorithm:  paths are extended through one intermediate atom at a time, 
+		 * starting with the atoms that have the fewest incoming and outgoing edges.
+		 */
+		WARSHALL,
+		/**
+		 * Strongly connected component decomposition:  paths are closed with Warshall's algorithm 
+		 * only within the strongly connected components of the upper bound, and 
+		 * propagated between components in topological order.
+		 */
+		DECOMPOSITION,
+		/**
+		 * Bounded unrolling:  paths are extended by one edge at a time, up to the length of the 
+		 * longest simple path in the upper bound.  
+		 */
+		UNROLLING,
+		/**
+		 * Chooses among the other encodings based on the structure of the upper bound.
+		 */
+		ADAPTIVE
+	}
+	
+	/**
+	 * Strategies for generating lex-leader symmetry breaking predicates.  Each predicate 
+	 * requires the values of the primary variables, taken in a fixed order, to be lexicographically 
+	 * no greater than their values under a permutation of the atoms in a symmetry class.
+	 */
+	public static enum SymmetryBreakingStrategy {
+		/**
+		 * One predicate for each pair of adjacent atoms in a symmetry class, truncated after 
+		 * {@linkplain Options#symmetryBreaking()} comparisons.
+		 */
+		FIXED_LENGTH,
+		/**
+		 * Predicates for the transpositions of atoms in a symmetry class, nearest atoms first.  
+		 * Comparisons are added one at a time, choosing the one that constrains the most 
+		 * (and least constrained) primary variables per clause, until the 
+		 * {@linkplain Options#symmetryBreakingBudget() budget} is spent.
+		 */
+		ADAPTIVE,
+		/**
+		 * Predicates for a set of generators of the symmetry group, in the style of Shatter: 
+		 * the transpositions of adjacent atoms in each symmetry class, each of which may extend 
+		 * over all tuples moved by its generator.  Comparisons are chosen as for ADAPTIVE.  
+		 */
+		GENERATORS
+	}
+	
 }
@@ -70,7 +70,10 @@ public interface Reporter {
 	 * Reports that the given declaration is being skolemized using the 
 	 * given skolem relation.  The context list contains non-skolemizable 
 	 * quantified declarations on which the given decl depends, in the order of declaration
-	 * (most recent decl is last in the list).
+	 * (most recent decl is last in the list).  If {@linkplain Options#skolemCost() skolemCost}
+	 * is positive, only the declarations chosen for skolemization are reported; the nested 
+	 * existential declarations that were not worth skolemizing appear in the context of 
+	 * the skolems that depend on them.
 	 */
 	public void skolemizing(Decl decl, Relation skolem, List<Decl> context);
 	
@@ -90,6 +93,8 @@ public interface Reporter {
 	/**
 	 * Reports that the given (optimized)
 	 * circuit is being translated to CNF (stage 5 of the analysis).
+	 * The circuit is null if the CNF is instead being replayed from a 
+	 * {@linkplain kodkod.engine.fol2sat.TranslationCache translation cache}.
 	 */
 	public void translatingToCNF(BooleanFormula circuit);
 	
@@ -22,6 +22,7 @@
 package kodkod.engine.fol2sat;
 
 import static kodkod.engine.bool.Operator.AND;
+import kodkod.engine.CancellationToken;
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.bool.BooleanFactory;
 import kodkod.engine.bool.BooleanFormula;
@@ -32,6 +33,7 @@ import kodkod.engine.bool.MultiGate;
 import kodkod.engine.bool.NotGate;
 import kodkod.engine.bool.Operator;
 import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATBatchSolver;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.util.ints.IntSet;
 import kodkod.util.ints.IntTreeSet;
@@ -54,22 +56,24 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 * using the <i>definitional translation algorithm</i>.
 	 * The {@code maxPrimaryVar} parameter is required to contain the maximum label of any primary variable
 	 * allocated during translation from FOL to boolean.  This method assumes that 
-	 * all variables allocated during translation have contiguous labels.
+	 * all variables allocated during translation have contiguous labels.  The given 
+	 * cancellation token is checked before each gate is translated.
 	 * @requires let boolFactory = components.circuit | 
 	 *             boolFactory.maxVariable() = maxPrimaryVar && 
 	 *             no f: boolFactory.components - BooleanVariable | 1 <= f.label <= maxPrimaryVar
 	 * @return some cnf: SATSolver | cnf in factory.instance() && 
 	 *          max(cnf.variables) = max(abs(circuit.label), maxPrimaryVar) && 
 	 *          meaning(circuit) = meaning(cnf.clauses)
+	 * @throws kodkod.engine.AbortedException  cancellation.isCancelled()
 	 */
-	static SATSolver translate(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory) {
+	static SATSolver translate(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory, CancellationToken cancellation) {
 		final int maxLiteral = StrictMath.abs(circuit.label());		
 		final Bool2CNFTranslator translator = new Bool2CNFTranslator(factory.instance()) {
 			final PolarityDetector pdetector = (new PolarityDetector(maxPrimaryVar, maxLiteral)).apply(circuit);
 			boolean positive(int label) { return pdetector.positive(label); }
 			boolean negative(int label) { return pdetector.negative(label); }
 		};
-		return translator.translate(circuit, maxPrimaryVar).solver;
+		return translator.translate(circuit, maxPrimaryVar, cancellation).solver;
 	}
 	
 	/**
@@ -92,17 +96,19 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	/**
 	 * Returns a new Bool2CNFTranslator that is initialized with the translation of the given circuit.  
 	 * The {@code maxPrimaryVar} parameter is required to contain the maximum label of any primary variable
-	 * allocated during translation from FOL to boolean.
+	 * allocated during translation from FOL to boolean.  The given cancellation token is checked 
+	 * before each gate is translated.
 	 * @requires let boolFactory = components.circuit | boolFactory.maxVariable() = maxPrimaryVar
 	 * @requires factory.incremental
 	 * @return some t: Bool2CNFTranslator | t.roots = circuit && t.factory = components.circuit && 
 	 *          max(t.cnf.variables) = max(abs(circuit.label), maxPrimaryVar) && 
 	 *          meaning(circuit) = meaning(t.cnf.clauses)
+	 * @throws kodkod.engine.AbortedException  cancellation.isCancelled()
 	 */
-	static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory) {
+	static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final SATFactory factory, CancellationToken cancellation) {
 		assert factory.incremental();	
 		final Bool2CNFTranslator translator = new Bool2CNFTranslator(factory.instance()) { };
-		return translator.translate(circuit, maxPrimaryVar);
+		return translator.translate(circuit, maxPrimaryVar, cancellation);
 	}
 	
 	/**
@@ -119,12 +125,27 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 		return new Bool2CNFTranslator(translate(value, factory)) { };
 	}
 	
+	/**
+	 * Returns a new Bool2CNFTranslator whose solver is a fresh instance produced by the given factory.
+	 * Circuits can be streamed into the returned translator one at a time by calling 
+	 * {@link #translateIncremental(BooleanFormula, int, Bool2CNFTranslator, CancellationToken)}.  Unlike 
+	 * the translators returned by {@link #translateIncremental(BooleanFormula, int, SATFactory, CancellationToken)}, the 
+	 * returned translator can be used with a non-incremental factory, provided that all 
+	 * circuits are added to it before its solver is first asked to solve the CNF.
+	 * @return some t: Bool2CNFTranslator | no t.roots && t.cnf in factory.instance() && 
+	 *          no t.cnf.variables && no t.cnf.clauses
+	 */
+	static Bool2CNFTranslator translateStreaming(final SATFactory factory) {
+		return new Bool2CNFTranslator(factory.instance()) { };
+	}
+	
 	/**
 	 * Updates the given Bool2CNFTranslator with the translation of the given circuit. 
 	 * The behavior of this method is undefined if it is called 
 	 * after translator.solver has returned UNSAT. The {@code maxPrimaryVar} parameter is required 
 	 * to contain the maximum label of any primary variable
-	 * allocated during translation from FOL to boolean.
+	 * allocated during translation from FOL to boolean.  The given cancellation token is checked 
+	 * before each gate is translated.
 	 * @requires circuit in translator.factory.components
 	 * @requires maxPrimaryVar = translator.factory.maxVariable()
 	 * @requires translator.solver.solve()
@@ -133,16 +154,40 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 *          translator.cnf.clauses in translator.cnf.clauses' && 
 	 *          translator.cnf.clauses' = CNF(circuit) + translator.cnf.clauses
 	 * @return translator
+	 * @throws kodkod.engine.AbortedException  cancellation.isCancelled()
 	 */
-	static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final Bool2CNFTranslator translator) {
-		return translator.translate(circuit, maxPrimaryVar);
+	static Bool2CNFTranslator translateIncremental(final BooleanFormula circuit, final int maxPrimaryVar, final Bool2CNFTranslator translator, CancellationToken cancellation) {
+		return translator.translate(circuit, maxPrimaryVar, cancellation);
+	}
+
+	/**
+	 * Forgets the gates that the given translator has already converted to clauses, 
+	 * and returns the translator.  This method should be called only after the gates 
+	 * have been {@linkplain kodkod.engine.bool.BooleanFactory#clearGates() cleared} from 
+	 * the factory that built them, so that no circuit passed to the translator afterward 
+	 * can contain them. 
+	 * @requires no translator.factory.components & translator.roots.*inputs & BooleanFormula - BooleanVariable
+	 * @ensures the labels of gates in translator.roots are released
+	 * @return translator
+	 */
+	static Bool2CNFTranslator release(final Bool2CNFTranslator translator) { 
+		translator.visited.clear();
+		return translator;
 	}
 
 	private final SATSolver solver;
+	/* this.solver if it accepts batches of clauses; null otherwise */
+	private final SATBatchSolver batcher;
 	private final IntSet visited;
 	private final int[] unaryClause = new int[1];
 	private final int[] binaryClause = new int[2];
 	private final int[] ternaryClause = new int[3];
+	private CancellationToken cancellation;
+	/* clauses that have been generated but not yet added to this.solver, stored as 
+	 * a sequence of zero-terminated literal sequences in batch[0..size) */
+	private int[] batch;
+	private int size, count;
+	private static final int BATCH = 1 << 15;
 	
 	/**
 	 * Constructs a translator for the given circuit.
@@ -151,20 +196,28 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	 */
 	private Bool2CNFTranslator(SATSolver solver) {
 		this.solver = solver;
+		this.batcher = solver instanceof SATBatchSolver ? (SATBatchSolver) solver : null;
 		this.visited = new IntTreeSet();
+		this.cancellation = CancellationToken.NONE;
+		this.batch = batcher==null ? null : new int[BATCH];
+		this.size = 0;
+		this.count = 0;
 	}
 
 	/**
 	 * Applies this translator to the given circuit, adding the translation of the
-	 * circuit to this.solver, and returns the translator.
+	 * circuit to this.solver, and returns the translator.  The given cancellation token 
+	 * is checked before each gate is translated.
 	 * @requires circuit in this.factory.components
 	 * @requires maxPrimaryVar = this.factory.maxPrimaryVariable()
 	 * @ensures this.solver.variables' = this.solver.variables + 
 	 *   { i: int | solver.numberOfVariables() < i <= max(abs(circuit.label), maxPrimaryVar) }
 	 * @effects this.solver.clauses' = this.solver.clauses + CNF(circuit)
 	 * @return this
+	 * @throws kodkod.engine.AbortedException  cancellation.isCancelled()
 	 */
-	private Bool2CNFTranslator translate(BooleanFormula circuit, int maxPrimaryVar) {
+	private Bool2CNFTranslator translate(BooleanFormula circuit, int maxPrimaryVar, CancellationToken cancellation) {
+		this.cancellation = cancellation;
 		final int newVars = Math.max(Math.abs(circuit.label()), maxPrimaryVar) - solver.numberOfVariables();
 //		System.out.println("circuit.label=" + Math.abs(circuit.label()));
 //		System.out.println("maxPrimaryVar=" + maxPrimaryVar);
@@ -172,20 +225,59 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 		if (newVars > 0)
 			solver.addVariables(newVars);
 		
-		if (circuit.op()==Operator.AND) { 
-			for(BooleanFormula input : circuit) { 
-				input.accept(this, null);
-			}
-			for(BooleanFormula input : circuit) { 
-				unaryClause[0] = input.label();
-				solver.addClause(unaryClause);
+		try { 
+			if (circuit.op()==Operator.AND) { 
+				for(BooleanFormula input : circuit) { 
+					input.accept(this, null);
+				}
+				for(BooleanFormula input : circuit) { 
+					add(clause(input.label()));
+				}
+			} else {
+				add(circuit.accept(this, null));
 			}
-		} else {
-			solver.addClause(circuit.accept(this, null));
+		} finally { 
+			flush();
 		}
 		return this;
 	}
 	
+	/**
+	 * Appends the given clause to this.batch, flushing the batch to this.solver 
+	 * if it has grown beyond the batch capacity.  Clauses are passed to solvers 
+	 * that accept them in batches rather than one at a time since each call to a 
+	 * native solver crosses the JNI boundary.  Other solvers are given the clause directly.
+	 * @ensures this.solver in SATBatchSolver => appends the given clause to this.batch, flushing it if needed
+	 * @ensures this.solver !in SATBatchSolver => this.solver.addClause(lits)
+	 */
+	private void add(int[] lits) { 
+		if (batcher==null) { 
+			solver.addClause(lits);
+			return;
+		}
+		final int length = size + lits.length + 1;
+		if (length > batch.length) { 
+			flush();
+			if (lits.length >= batch.length) 
+				batch = new int[lits.length + 1];
+		}
+		System.arraycopy(lits, 0, batch, size, lits.length);
+		size += lits.length;
+		batch[size++] = 0;
+		count++;
+	}
+	
+	/**
+	 * Adds all clauses in this.batch to this.solver and empties the batch.
+	 * @ensures this.solver.clauses' = this.solver.clauses + this.batch && no this.batch'
+	 */
+	private void flush() { 
+		if (count > 0) 
+			batcher.addClauses(batch, count);
+		size = 0;
+		count = 0;
+	}
+	
 	/**
 	 * Returns this.solver.
 	 * @return this.solver
@@ -235,6 +327,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	public final int[] visit(MultiGate multigate, Object arg) {  
 		final int oLit = multigate.label();
 		if (visited.add(oLit)) { 
+			cancellation.checkpoint();
 			final int sgn; final boolean p, n;
 			if (multigate.op()==AND) {
 				sgn = 1; p = positive(oLit); n = negative(oLit);
@@ -247,7 +340,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 			for(BooleanFormula input : multigate) {
 				int iLit = input.accept(this, arg)[0];
 				if (p) {
-					solver.addClause(clause(iLit * sgn, output));
+					add(clause(iLit * sgn, output));
 				}
 				if (n) { 
 					lastClause[i++] = iLit * -sgn;
@@ -255,7 +348,7 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 			}
 			if (n) {
 				lastClause[i] = oLit * sgn;
-				solver.addClause(lastClause);
+				add(lastClause);
 			}
 		}
 		return clause(oLit);        
@@ -273,21 +366,22 @@ abstract class Bool2CNFTranslator implements BooleanVisitor<int[], Object> {
 	public final int[] visit(ITEGate itegate, Object arg) {
 		final int oLit = itegate.label();
 		if (visited.add(oLit)) {
+			cancellation.checkpoint();
 			final int i = itegate.input(0).accept(this, arg)[0];
 			final int t = itegate.input(1).accept(this, arg)[0];
 			final int e = itegate.input(2).accept(this, arg)[0];
 			final boolean p = positive(oLit), n = negative(oLit);
 			if (p) {
-				solver.addClause(clause(-i, t, -oLit));
-				solver.addClause(clause(i, e, -oLit));
+				add(clause(-i, t, -oLit));
+				add(clause(i, e, -oLit));
 				// redundant clause that strengthens unit propagation
-				solver.addClause(clause(t, e, -oLit));
+				add(clause(t, e, -oLit));
 			}
 			if (n) {
-				solver.addClause(clause(-i, -t, oLit));	
-				solver.addClause(clause(i, -e, oLit));
+				add(clause(-i, -t, oLit));	
+				add(clause(i, -e, oLit));
 				// redundant clause that strengthens unit propagation
-				solver.addClause(clause(-t, -e, oLit));
+				add(clause(-t, -e, oLit));
 			}	
 		}
 		return clause(oLit);
@@ -0,0 +1,390 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import static kodkod.engine.bool.BooleanConstant.FALSE;
+import static kodkod.engine.bool.BooleanConstant.TRUE;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import kodkod.ast.BinaryExpression;
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.ComparisonFormula;
+import kodkod.ast.ConstantExpression;
+import kodkod.ast.ConstantFormula;
+import kodkod.ast.Expression;
+import kodkod.ast.Formula;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.NaryExpression;
+import kodkod.ast.NaryFormula;
+import kodkod.ast.NotFormula;
+import kodkod.ast.Relation;
+import kodkod.ast.UnaryExpression;
+import kodkod.ast.Variable;
+import kodkod.engine.bool.BooleanConstant;
+import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.BooleanMatrix;
+import kodkod.engine.bool.BooleanValue;
+import kodkod.util.ints.IndexedEntry;
+
+/**
+ * Decides formulas whose truth value is fixed by the bounds on their leaves, 
+ * without building any circuits.  The value of each expression is approximated 
+ * by a pair of constant matrices:  the lower matrix contains the tuples that 
+ * are in the expression's value in every instance within the bounds, and the upper 
+ * matrix contains the tuples that are in its value in some instance within the bounds.  
+ * A formula is decided if it holds, or fails to hold, for all values between these 
+ * approximations.  Formulas and expressions whose meaning is not monotone in the 
+ * approximations (e.g. cardinality and integer constraints) are never decided.
+ * 
+ * <p>The decider is used by {@link FOL2BoolTranslator} to skip the bindings of 
+ * quantified variables for which the body of a quantified formula is decided.</p>
+ * @specfield interpreter: LeafInterpreter
+ * @author Emina Torlak
+ */
+final class BoundsDecider {
+	private final LeafInterpreter interpreter;
+	/* approximations of the expressions that have no free variables */
+	private final Map<Expression, Approximation> closed;
+	private final Map<Formula, Boolean> decidable;
+	
+	/**
+	 * Constructs a new decider that approximates the leaves 
+	 * using the given interpreter.
+	 * @ensures this.interpreter' = interpreter
+	 */
+	BoundsDecider(LeafInterpreter interpreter) {
+		this.interpreter = interpreter;
+		this.closed = new IdentityHashMap<Expression, Approximation>();
+		this.decidable = new IdentityHashMap<Formula, Boolean>();
+	}
+	
+	/**
+	 * Returns TRUE (resp. FALSE) if the given formula is true (resp. false) in 
+	 * every instance within this.interpreter's bounds, when its free variables are bound 
+	 * as in the given environment.  Otherwise returns null.  Formulas with free 
+	 * variables that are not bound in the given environment, or that are bound to null, 
+	 * are decided only if their value does not depend on those variables. 
+	 * @return TRUE (resp. FALSE) if the given formula is decided to be true (resp. false); 
+	 * null otherwise
+	 */
+	final BooleanConstant decide(Formula formula, Environment<BooleanMatrix> env) {
+		return decidable(formula) ? eval(formula, env) : null;
+	}
+	
+	/**
+	 * Returns true if the given formula may be decided by this decider; i.e., 
+	 * it is a supported atomic formula, or a boolean combination of formulas 
+	 * at least one of which is decidable.
+	 * @return true if the given formula may be decided by this decider
+	 */
+	private boolean decidable(Formula formula) { 
+		Boolean ret = decidable.get(formula);
+		if (ret==null) { 
+			if (formula instanceof ConstantFormula) { 
+				ret = Boolean.TRUE;
+			} else if (formula instanceof NotFormula) { 
+				ret = decidable(((NotFormula)formula).formula());
+			} else if (formula instanceof BinaryFormula) { 
+				final BinaryFormula bin = (BinaryFormula) formula;
+				ret = decidable(bin.left()) || decidable(bin.right());
+			} else if (formula instanceof NaryFormula) { 
+				ret = Boolean.FALSE;
+				for(Formula child : (NaryFormula)formula) { 
+					if (decidable(child)) { ret = Boolean.TRUE; break; }
+				}
+			} else if (formula instanceof ComparisonFormula) { 
+				final ComparisonFormula comp = (ComparisonFormula) formula;
+				ret = supported(comp.left()) && supported(comp.right());
+			} else if (formula instanceof MultiplicityFormula) { 
+				ret = supported(((MultiplicityFormula)formula).expression());
+			} else {
+				ret = Boolean.FALSE;
+			}
+			decidable.put(formula, ret);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns true if the value of the given expression can be approximated by this decider.
+	 * @return true if the value of the given expression can be approximated by this decider
+	 */
+	private static boolean supported(Expression expr) { 
+		if (expr instanceof Relation || expr instanceof Variable || expr instanceof ConstantExpression) 
+			return true;
+		if (expr instanceof BinaryExpression) { 
+			final BinaryExpression bin = (BinaryExpression) expr;
+			switch(bin.op()) { 
+			case UNION : case INTERSECTION : case DIFFERENCE : case JOIN : case PRODUCT : 
+				return supported(bin.left()) && supported(bin.right());
+			default : 
+				return false;
+			}
+		}
+		if (expr instanceof UnaryExpression) { 
+			final UnaryExpression unary = (UnaryExpression) expr;
+			switch(unary.op()) { 
+			case TRANSPOSE : case CLOSURE : case REFLEXIVE_CLOSURE : 
+				return supported(unary.expression());
+			default : 
+				return false;
+			}
+		}
+		if (expr instanceof NaryExpression) { 
+			final NaryExpression nary = (NaryExpression) expr;
+			switch(nary.op()) { 
+			case UNION : case INTERSECTION : case PRODUCT : 
+				for(Expression child : nary) { 
+					if (!supported(child)) return false;
+				}
+				return true;
+			default : 
+				return false;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the negation of the given value, or null if the value is null.
+	 * @return value = null => null, value.negation()
+	 */
+	private static BooleanConstant not(BooleanConstant value) { 
+		return value==null ? null : value==TRUE ? FALSE : TRUE;
+	}
+	
+	/**
+	 * Returns the three-valued conjunction of the given values, where null stands for an unknown value.
+	 * @return the three-valued conjunction of the given values
+	 */
+	private static BooleanConstant and(BooleanConstant v0, BooleanConstant v1) { 
+		if (v0==FALSE || v1==FALSE) return FALSE;
+		return v0==TRUE && v1==TRUE ? TRUE : null;
+	}
+	
+	/**
+	 * Returns the three-valued disjunction of the given values, where null stands for an unknown value.
+	 * @return the three-valued disjunction of the given values
+	 */
+	private static BooleanConstant or(BooleanConstant v0, BooleanConstant v1) { 
+		return not(and(not(v0), not(v1)));
+	}
+	
+	/**
+	 * Returns the decided value of the given formula in the given environment, or null if it is not decided.
+	 * @return the decided value of the given formula in the given environment, or null if it is not decided
+	 */
+	private BooleanConstant eval(Formula formula, Environment<BooleanMatrix> env) { 
+		if (!decidable(formula)) return null;
+		if (formula instanceof ConstantFormula) { 
+			return BooleanConstant.constant(((ConstantFormula)formula).booleanValue());
+		} else if (formula instanceof NotFormula) { 
+			return not(eval(((NotFormula)formula).formula(), env));
+		} else if (formula instanceof BinaryFormula) { 
+			final BinaryFormula bin = (BinaryFormula) formula;
+			final BooleanConstant left = eval(bin.left(), env);
+			switch(bin.op()) { 
+			case AND 		: return left==FALSE ? FALSE : and(left, eval(bin.right(), env));
+			case OR  		: return left==TRUE ? TRUE : or(left, eval(bin.right(), env));
+			case IMPLIES 	: return left==FALSE ? TRUE : or(not(left), eval(bin.right(), env));
+			case IFF 		: 
+				if (left==null) return null;
+				final BooleanConstant right = eval(bin.right(), env);
+				return right==null ? null : BooleanConstant.constant(left==right);
+			default : 
+				return null;
+			}
+		} else if (formula instanceof NaryFormula) { 
+			final NaryFormula nary = (NaryFormula) formula;
+			final BooleanConstant shortCircuit;
+			switch(nary.op()) { 
+			case AND : shortCircuit = FALSE; break;
+			case OR  : shortCircuit = TRUE; break;
+			default  : return null;
+			}
+			BooleanConstant ret = not(shortCircuit);
+			for(Formula child : nary) { 
+				final BooleanConstant value = eval(child, env);
+				if (value==shortCircuit) return shortCircuit;
+				if (value==null) ret = null;
+			}
+			return ret;
+		} else if (formula instanceof ComparisonFormula) { 
+			final ComparisonFormula comp = (ComparisonFormula) formula;
+			final Approximation left = approximate(comp.left(), env);
+			if (left==null) return null;
+			final Approximation right = approximate(comp.right(), env);
+			if (right==null) return null;
+			switch(comp.op()) { 
+			case SUBSET : return subset(left, right);
+			case EQUALS : return and(subset(left, right), subset(right, left));
+			default 	: return null;
+			}
+		} else if (formula instanceof MultiplicityFormula) { 
+			final MultiplicityFormula mult = (MultiplicityFormula) formula;
+			final Approximation approx = approximate(mult.expression(), env);
+			if (approx==null) return null;
+			final int lower = approx.lower.density(), upper = approx.upper.density();
+			switch(mult.multiplicity()) { 
+			case SOME : return lower > 0 ? TRUE : upper==0 ? FALSE : null;
+			case NO   : return upper==0 ? TRUE : lower > 0 ? FALSE : null;
+			case LONE : return upper <= 1 ? TRUE : lower > 1 ? FALSE : null;
+			case ONE  : return upper==1 && lower==1 ? TRUE : (upper==0 || lower > 1) ? FALSE : null;
+			default   : return null;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns TRUE if left is a subset of right in every instance within the bounds, FALSE 
+	 * if it is a subset in none, and null otherwise.
+	 * @return left.upper in right.lower => TRUE, left.lower !in right.upper => FALSE, null
+	 */
+	private static BooleanConstant subset(Approximation left, Approximation right) { 
+		if (left.upper.subset(right.lower)==TRUE) return TRUE;
+		if (left.lower.subset(right.upper)==FALSE) return FALSE;
+		return null;
+	}
+	
+	/**
+	 * Returns the approximation of the given expression in the given environment, 
+	 * or null if the expression refers to variables that are not bound in the environment 
+	 * or that are bound to null.
+	 * @requires supported(expr)
+	 * @return the approximation of the given expression in the given environment, or null 
+	 */
+	private Approximation approximate(Expression expr, Environment<BooleanMatrix> env) { 
+		if (expr instanceof Variable) { 
+			final BooleanMatrix value = env.lookup((Variable)expr);
+			return value==null ? null : new Approximation(value, false);
+		}
+		Approximation ret = closed.get(expr);
+		if (ret==null) { 
+			ret = approximateChildren(expr, env);
+			if (ret != null && ret.closed) 
+				closed.put(expr, ret);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns the approximation of the given relation, constant, or operator expression, 
+	 * computed from the approximations of its children.
+	 * @requires supported(expr) && expr !in Variable
+	 * @return the approximation of the given expression in the given environment, or null 
+	 */
+	private Approximation approximateChildren(Expression expr, Environment<BooleanMatrix> env) { 
+		if (expr instanceof Relation) { 
+			return new Approximation(interpreter.interpret((Relation)expr), true);
+		} else if (expr instanceof ConstantExpression) { 
+			return new Approximation(interpreter.interpret((ConstantExpression)expr), true);
+		} else if (expr instanceof BinaryExpression) { 
+			final BinaryExpression bin = (BinaryExpression) expr;
+			final Approximation left = approximate(bin.left(), env);
+			if (left==null) return null;
+			final Approximation right = approximate(bin.right(), env);
+			if (right==null) return null;
+			switch(bin.op()) { 
+			case UNION 			: return new Approximation(left.lower.or(right.lower), left.upper.or(right.upper), left.closed && right.closed);
+			case INTERSECTION 	: return new Approximation(left.lower.and(right.lower), left.upper.and(right.upper), left.closed && right.closed);
+			case DIFFERENCE 	: return new Approximation(left.lower.difference(right.upper), left.upper.difference(right.lower), left.closed && right.closed);
+			case JOIN 			: return new Approximation(left.lower.dot(right.lower), left.upper.dot(right.upper), left.closed && right.closed);
+			case PRODUCT 		: return new Approximation(left.lower.cross(right.lower), left.upper.cross(right.upper), left.closed && right.closed);
+			default 			: throw new IllegalArgumentException("Unsupported operator: " + bin.op());
+			}
+		} else if (expr instanceof UnaryExpression) { 
+			final UnaryExpression unary = (UnaryExpression) expr;
+			final Approximation child = approximate(unary.expression(), env);
+			if (child==null) return null;
+			switch(unary.op()) { 
+			case TRANSPOSE 			: return new Approximation(child.lower.transpose(), child.upper.transpose(), child.closed);
+			case CLOSURE 			: return new Approximation(child.lower.closure(), child.upper.closure(), child.closed);
+			case REFLEXIVE_CLOSURE 	: 
+				final Approximation iden = approximate(Expression.IDEN, env);
+				return new Approximation(child.lower.closure().or(iden.lower), child.upper.closure().or(iden.upper), child.closed);
+			default 				: throw new IllegalArgumentException("Unsupported operator: " + unary.op());
+			}
+		} else if (expr instanceof NaryExpression) { 
+			final NaryExpression nary = (NaryExpression) expr;
+			Approximation ret = approximate(nary.child(0), env);
+			for(int i = 1, size = nary.size(); ret != null && i < size; i++) { 
+				final Approximation child = approximate(nary.child(i), env);
+				if (child==null) return null;
+				switch(nary.op()) { 
+				case UNION 			: ret = new Approximation(ret.lower.or(child.lower), ret.upper.or(child.upper), ret.closed && child.closed); break;
+				case INTERSECTION 	: ret = new Approximation(ret.lower.and(child.lower), ret.upper.and(child.upper), ret.closed && child.closed); break;
+				case PRODUCT 		: ret = new Approximation(ret.lower.cross(child.lower), ret.upper.cross(child.upper), ret.closed && child.closed); break;
+				default 			: throw new IllegalArgumentException("Unsupported operator: " + nary.op());
+				}
+			}
+			return ret;
+		}
+		throw new IllegalArgumentException("Unsupported expression: " + expr);
+	}
+	
+	/**
+	 * The lower and upper approximation of an expression's value.  
+	 * Both matrices contain only constant entries.  An approximation is 
+	 * closed if it does not depend on the bindings of any variables.
+	 * @specfield lower, upper: BooleanMatrix
+	 * @specfield closed: boolean
+	 * @invariant lower.elements[int] + upper.elements[int] in BooleanConstant
+	 * @author Emina Torlak
+	 */
+	private static final class Approximation { 
+		final BooleanMatrix lower, upper;
+		final boolean closed;
+		
+		/**
+		 * Constructs an approximation from the given constant matrices.
+		 * @ensures this.lower' = lower && this.upper' = upper && this.closed' = closed
+		 */
+		Approximation(BooleanMatrix lower, BooleanMatrix upper, boolean closed) { 
+			this.lower = lower;
+			this.upper = upper;
+			this.closed = closed;
+		}
+		
+		/**
+		 * Constructs an approximation of the given matrix:  the lower 
+		 * matrix contains its TRUE entries and the upper matrix contains 
+		 * all of its non-FALSE entries.
+		 * @ensures this.lower'.elements = matrix.elements :> TRUE && 
+		 *          this.upper'.elements = (matrix.elements.(BooleanValue - FALSE)) -> TRUE && 
+		 *          this.closed' = closed
+		 */
+		Approximation(BooleanMatrix matrix, boolean closed) { 
+			this.closed = closed;
+			final BooleanFactory factory = matrix.factory();
+			this.lower = factory.matrix(matrix.dimensions());
+			this.upper = factory.matrix(matrix.dimensions());
+			for(IndexedEntry<BooleanValue> entry : matrix) { 
+				upper.set(entry.index(), TRUE);
+				if (entry.value()==TRUE) 
+					lower.set(entry.index(), TRUE);
+			}
+		}
+	}
+}
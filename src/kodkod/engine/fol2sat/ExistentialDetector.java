@@ -0,0 +1,177 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.Comprehension;
+import kodkod.ast.Formula;
+import kodkod.ast.IfExpression;
+import kodkod.ast.IfIntExpression;
+import kodkod.ast.Node;
+import kodkod.ast.NotFormula;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.operator.Quantifier;
+import kodkod.ast.visitor.AbstractVoidVisitor;
+import kodkod.util.collections.IdentityHashSet;
+
+/**
+ * Detects the quantified formulas that are existential in every context in which 
+ * they occur in a given formula:  existentially quantified formulas that occur only 
+ * positively, and universally quantified formulas that occur only negatively.  A
+ * quantified variable of such a formula can be represented by a choice among its 
+ * bindings that is left to the solver, rather than by all of its bindings.  
+ * Formulas that occur in the conditions of if-expressions and in the bodies 
+ * of comprehensions are treated as occurring with both polarities.
+ * @specfield root: Formula
+ * @specfield polarity: root.*children -> lone (1 + 2 + 3) // 1 = positive, 2 = negative, 3 = both
+ * @author Emina Torlak
+ */
+final class ExistentialDetector extends AbstractVoidVisitor {
+	private static final int POSITIVE = 1, NEGATIVE = 2, BOTH = 3;
+	private final Map<Node, Integer> polarities;
+	/* polarity of the node that is currently being visited */
+	private int polarity;
+	
+	/**
+	 * Constructs a new detector.
+	 * @ensures no this.polarity'
+	 */
+	private ExistentialDetector() {
+		this.polarities = new IdentityHashMap<Node, Integer>();
+		this.polarity = POSITIVE;
+	}
+	
+	/**
+	 * Returns the quantified formulas in the given formula that are existential 
+	 * in every context in which they occur.
+	 * @return { q: root.*children & QuantifiedFormula | 
+	 *            (q.quantifier = SOME && q.polarity = 1) || (q.quantifier = ALL && q.polarity = 2) }
+	 */
+	static Set<QuantifiedFormula> detect(Formula root) { 
+		final ExistentialDetector detector = new ExistentialDetector();
+		root.accept(detector);
+		final Set<QuantifiedFormula> ret = new IdentityHashSet<QuantifiedFormula>();
+		for(Map.Entry<Node, Integer> e : detector.polarities.entrySet()) { 
+			if (e.getKey() instanceof QuantifiedFormula) { 
+				final QuantifiedFormula q = (QuantifiedFormula) e.getKey();
+				final int p = e.getValue();
+				if ((q.quantifier()==Quantifier.SOME && p==POSITIVE) || (q.quantifier()==Quantifier.ALL && p==NEGATIVE))
+					ret.add(q);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Records that the given node occurs with the current polarity, and returns 
+	 * true if it has already been visited with that polarity.
+	 * @ensures this.polarity'[n] = this.polarity[n] | this.polarity
+	 * @return some this.polarity[n] && this.polarity[n] | this.polarity = this.polarity[n]
+	 */
+	protected boolean visited(Node n) {
+		final Integer old = polarities.get(n);
+		if (old != null && (old | polarity) == old) return true;
+		polarities.put(n, old==null ? polarity : old | polarity);
+		return false;
+	}
+	
+	/**
+	 * Visits the given formula with the given polarity.
+	 */
+	private void visit(Formula formula, int p) { 
+		final int outer = polarity;
+		polarity = p;
+		formula.accept(this);
+		polarity = outer;
+	}
+	
+	/**
+	 * Returns the polarity opposite to the given one.
+	 * @return p = POSITIVE => NEGATIVE, p = NEGATIVE => POSITIVE, p
+	 */
+	private static int flip(int p) { 
+		return p==BOTH ? BOTH : POSITIVE + NEGATIVE - p;
+	}
+	
+	/**
+	 * Visits the body of the given formula with the opposite polarity.
+	 */
+	public void visit(NotFormula not) { 
+		if (visited(not)) return;
+		visit(not.formula(), flip(polarity));
+	}
+	
+	/**
+	 * Visits the antecedent of an implication with the opposite polarity, 
+	 * and both sides of an equivalence with both polarities.
+	 */
+	public void visit(BinaryFormula binFormula) { 
+		if (visited(binFormula)) return;
+		switch(binFormula.op()) { 
+		case IMPLIES : 
+			visit(binFormula.left(), flip(polarity));
+			visit(binFormula.right(), polarity);
+			break;
+		case IFF :
+			visit(binFormula.left(), BOTH);
+			visit(binFormula.right(), BOTH);
+			break;
+		default : 
+			visit(binFormula.left(), polarity);
+			visit(binFormula.right(), polarity);
+		}
+	}
+	
+	/**
+	 * Visits the declarations and the body of the given comprehension with both polarities.
+	 */
+	public void visit(Comprehension comprehension) { 
+		final int outer = polarity;
+		polarity = BOTH;
+		super.visit(comprehension);
+		polarity = outer;
+	}
+	
+	/**
+	 * Visits the children of the given expression with both polarities.
+	 */
+	public void visit(IfExpression ifExpr) { 
+		final int outer = polarity;
+		polarity = BOTH;
+		super.visit(ifExpr);
+		polarity = outer;
+	}
+	
+	/**
+	 * Visits the children of the given expression with both polarities.
+	 */
+	public void visit(IfIntExpression intExpr) { 
+		final int outer = polarity;
+		polarity = BOTH;
+		super.visit(intExpr);
+		polarity = outer;
+	}
+}
@@ -21,6 +21,7 @@
  */
 package kodkod.engine.fol2sat;
 
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -43,7 +44,14 @@ import kodkod.util.nodes.AnnotatedNode;
  * @author Emina Torlak
  */
 final class FOL2BoolCache {
+	/* maximum total weight of the earlier translations retained by all records, where the 
+	 * weight of a translation is 1 for a BooleanValue and 1 + density for a BooleanMatrix */
+	private static final long MAX_WEIGHT = 1 << 20;
 	private final Map<Node,Record> cache;
+	/* sentinel of the cache-wide list of earlier translations, ordered from the least 
+	 * to the most recently used one */
+	private final Slot lru;
+	private long hits, misses, weight;
 	
 	/**
 	 * Constructs a new translation cache for the given annotated node.
@@ -54,6 +62,7 @@ final class FOL2BoolCache {
 		annotated.node().accept(collector);
 
 		this.cache = new IdentityHashMap<Node, Record>(collector.cache().size());
+		this.lru = new Slot(null, 0, null);
 		for(Map.Entry<Node, Set<Variable>> e :  collector.cache().entrySet()) {
 			Set<Variable> freeVars = e.getValue();
 			if (freeVars.isEmpty())
@@ -74,9 +83,25 @@ final class FOL2BoolCache {
 	@SuppressWarnings("unchecked")
 	<T> T lookup(Node node, Environment<BooleanMatrix> env) {
 		final Record info = cache.get(node);
-		return info==null ? null : (T) info.get(env);
+		if (info==null) return null;
+		final T transl = (T) info.get(env);
+		if (transl==null) misses++;
+		else hits++;
+		return transl;
 	}
 	
+	/**
+	 * Returns the number of lookups of cached nodes that returned a cached translation.
+	 * @return number of lookups of cached nodes that returned a cached translation
+	 */
+	long hits() { return hits; }
+	
+	/**
+	 * Returns the number of lookups of cached nodes that did not return a cached translation.
+	 * @return number of lookups of cached nodes that did not return a cached translation
+	 */
+	long misses() { return misses; }
+	
 	/**
 	 * Caches the given translation for the specified node, if the given node is
 	 * in this.cached.  Otherwise does nothing.  
@@ -90,9 +115,59 @@ final class FOL2BoolCache {
 		final Record info = cache.get(node);
 		if (info != null) {
 			info.set(translation, env);
+			while (weight > MAX_WEIGHT && lru.next != lru) { // evict cache-wide, least recently used first
+				final Slot eldest = lru.next;
+				eldest.owner.entries.remove(eldest.key);
+				remove(eldest);
+			}
 		}
 		return translation;
 	}
+	
+	/**
+	 * Appends the given slot to the end of this.lru, and adds the weight of its translation to this.weight.
+	 * @ensures slot is the most recently used slot in this.lru
+	 */
+	private void add(Slot slot) { 
+		slot.prev = lru.prev;
+		slot.next = lru;
+		lru.prev.next = slot;
+		lru.prev = slot;
+		weight += weight(slot.translation);
+	}
+	
+	/**
+	 * Removes the given slot from this.lru, and subtracts the weight of its translation from this.weight.
+	 * @requires slot in this.lru
+	 * @ensures slot !in this.lru'
+	 */
+	private void remove(Slot slot) { 
+		slot.prev.next = slot.next;
+		slot.next.prev = slot.prev;
+		slot.prev = slot.next = null;
+		weight -= weight(slot.translation);
+	}
+	
+	/**
+	 * Discards all cached translations, keeping only the record of which nodes 
+	 * should be cached.  The hit and miss counts are not affected.
+	 * @ensures no this.cache'[this.cached]
+	 */
+	void clear() { 
+		for(Record info : cache.values()) 
+			info.clear();
+		lru.prev = lru.next = lru;
+		weight = 0;
+	}
+	
+	/**
+	 * Returns the weight of the given translation, which approximates the 
+	 * amount of memory that is retained by caching it.
+	 * @return translation in BooleanMatrix => 1 + translation.density(), 1
+	 */
+	static int weight(Object translation) { 
+		return translation instanceof BooleanMatrix ? 1 + ((BooleanMatrix)translation).density() : 1;
+	}
 		
 	/**
 	 * Collects the free variables of the nodes in a given AST whose
@@ -149,7 +224,9 @@ final class FOL2BoolCache {
 	 * sharing within quantified formulas and comprehensions.
 	 * This implementation assumes that each free variable is 
 	 * mapped to a BooleanMatrix of density one, whose sole entry
-	 * is the BooleanConstant TRUE.
+	 * is the BooleanConstant TRUE.  Translations that are generated 
+	 * for other bindings (e.g. for variables that are encoded symbolically) 
+	 * are not cached.
 	 * @specfield varBinding: Variable -> lone int
 	 * @specfield translation: lone Object
 	 */
@@ -169,7 +246,7 @@ final class FOL2BoolCache {
 		/**
 		 * Sets this.translation to the given translation
 		 * and sets the free variable bindings to those 
-		 * given by the specified environment.
+		 * given by the specified environment.  
 		 * @requires all v: varBinding.int | some env.lookup(v)
 		 * @ensures this.translation' = translation && 
 		 *          this.varBinding' = 
@@ -177,24 +254,109 @@ final class FOL2BoolCache {
 		 *             tupleIndex = env.lookup(v).iterator().next().index() }
 		 */
 		abstract void set(Object transl, Environment<BooleanMatrix> env);
+		
+		/**
+		 * Discards all translations retained by this record.
+		 * @ensures no this.translation'
+		 */
+		void clear() { translation = null; }
+	}
+	
+	/**
+	 * An earlier translation retained by a {@link MultiVarRecord}, linked into 
+	 * the cache-wide list of earlier translations.
+	 */
+	private static final class Slot { 
+		final MultiVarRecord owner;
+		final long key;
+		Object translation;
+		Slot prev, next;
+		
+		/**
+		 * Constructs an unlinked slot for the given translation, stored by the given 
+		 * record under the given key.  A slot with no owner is a list sentinel, and 
+		 * it is linked to itself.
+		 */
+		Slot(MultiVarRecord owner, long key, Object translation) { 
+			this.owner = owner;
+			this.key = key;
+			this.translation = translation;
+			if (owner==null) this.prev = this.next = this;
+		}
 	}
 	
 	/**
 	 * A TranslationInfo for a node with one or more free variables. 
+	 * In addition to the most recent translation, the record retains 
+	 * earlier translations, keyed by the packed tuple indices of the 
+	 * bindings that were used to generate them.  The earlier translations 
+	 * of all records share the weight budget of the enclosing cache, 
+	 * which discards them in least-recently-used order.
+	 * @specfield entries: long -> lone Object // earlier translations, keyed by packed bindings
 	 */
-	private static final class MultiVarRecord extends Record {
+	private final class MultiVarRecord extends Record {
 		final Variable[] vars;
 		final int[] tuples;
+		/* strides[i] is the multiplier of the tuple index of vars[i] in a packed key; 
+		 * null until the first translation is set and empty if the keys do not fit into a long */
+		private long[] strides;
+		private Map<Long, Slot> entries;
 		
 		/**
 		 * Constructs a translation unit for a node which
 		 * has the given set of free variables.
 		 * @ensures this.freeVariables' = vars &&
-		 *          no this.translation' 
+		 *          no this.translation' && no this.entries'
 		 */
 		MultiVarRecord(Set<Variable> freeVariables) {
 			this.vars = freeVariables.toArray(new Variable[freeVariables.size()]);
 			this.tuples = new int[freeVariables.size()];
+			this.strides = null;
+			this.entries = null;
+		}
+		
+		/**
+		 * Returns the packed key for the given tuple indices.
+		 * @requires strides.length = tuples.length
+		 * @return sum(i: [0..vars.length) | tuples[i] * strides[i])
+		 */
+		private long key(int[] tuples) { 
+			long key = 0;
+			for(int i = 0; i < vars.length; i++) 
+				key += tuples[i] * strides[i];
+			return key;
+		}
+		
+		/**
+		 * Returns the packed key for the bindings of this.vars in the given environment.
+		 * @requires strides.length = vars.length
+		 * @return sum(i: [0..vars.length) | e.lookup(vars[i]).iterator().next().index() * strides[i])
+		 */
+		private long key(Environment<BooleanMatrix> e) { 
+			long key = 0;
+			for(int i = 0; i < vars.length; i++) 
+				key += e.lookup(vars[i]).iterator().next().index() * strides[i];
+			return key;
+		}
+		
+		/**
+		 * Initializes this.strides from the dimensions of the bindings 
+		 * of this.vars in the given environment.
+		 * @ensures this.strides' is a mixed-radix encoding of the tuple indices of this.vars,
+		 * or an empty array if the encoding does not fit into a long
+		 */
+		private void initStrides(Environment<BooleanMatrix> e) { 
+			strides = new long[vars.length];
+			long stride = 1;
+			for(int i = vars.length-1; i >= 0; i--) {
+				strides[i] = stride;
+				final int capacity = e.lookup(vars[i]).dimensions().capacity();
+				if (stride > Long.MAX_VALUE / capacity) {
+					strides = new long[0];
+					return;
+				}
+				stride *= capacity;
+			}
 		}
 		
 		/**
@@ -203,16 +365,50 @@ final class FOL2BoolCache {
 		Object get(Environment<BooleanMatrix> e) {
 			if (translation==null) return null;
 			for(int i = 0; i < vars.length; i++) {
-				if (e.lookup(vars[i]).get(tuples[i])!=BooleanConstant.TRUE)
-					return null;
+				if (e.lookup(vars[i]).get(tuples[i])!=BooleanConstant.TRUE) {
+					if (entries==null || !ground(e)) return null;
+					final Slot slot = entries.get(key(e));
+					if (slot==null) return null;
+					remove(slot); // move to the most recently used end
+					add(slot);
+					return slot.translation;
+				}
 			}
 			return translation;
 		}
 		
 		/**
+		 * Returns true if each of this.vars is bound to a single tuple in the given environment.
+		 * @return all v: this.vars | e.lookup(v).density() = 1 && e.lookup(v).iterator().next().value() = TRUE
+		 */
+		private boolean ground(Environment<BooleanMatrix> e) { 
+			for(Variable var : vars) { 
+				final BooleanMatrix varVal = e.lookup(var);
+				if (varVal.density()!=1 || varVal.iterator().next().value()!=BooleanConstant.TRUE)
+					return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Sets this.translation to the given translation, and 
+		 * moves the previous translation into this.entries.
 		 * @see kodkod.engine.fol2sat.FOL2BoolCache.Record#set(java.lang.Object, kodkod.engine.fol2sat.Environment)
 		 */
 		void set(Object transl, Environment<BooleanMatrix> env) {
+			if (!ground(env)) return;
+			if (strides==null) { 
+				initStrides(env);
+			} else if (translation != null && strides.length > 0) { 
+				if (entries==null) 
+					entries = new HashMap<Long, Slot>();
+				final long key = key(tuples);
+				final Slot old = entries.get(key);
+				if (old != null) remove(old);
+				final Slot slot = new Slot(this, key, translation);
+				entries.put(key, slot);
+				add(slot);
+			}
 			translation = transl;
 			for(int i = 0; i < vars.length; i++) {
 				final BooleanMatrix varVal = env.lookup(vars[i]);
@@ -221,6 +417,10 @@ final class FOL2BoolCache {
 					translation = varVal.clone();
 				}
 			}
+			if (entries != null) { 
+				final Slot stale = entries.remove(key(tuples));
+				if (stale != null) remove(stale);
+			}
 		}
 		
 		/**
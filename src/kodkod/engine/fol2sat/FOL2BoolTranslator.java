@@ -22,9 +22,18 @@
 package kodkod.engine.fol2sat;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import kodkod.ast.BinaryExpression;
 import kodkod.ast.BinaryFormula;
@@ -65,6 +74,7 @@ import kodkod.ast.operator.FormulaOperator;
 import kodkod.ast.operator.Multiplicity;
 import kodkod.ast.operator.Quantifier;
 import kodkod.ast.visitor.ReturnVisitor;
+import kodkod.engine.CancellationToken;
 import kodkod.engine.bool.BooleanAccumulator;
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.bool.BooleanFactory;
@@ -113,16 +123,20 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 	 * @requires annotated.source[annotated.sourceSensitiveRoots()] = Nodes.roots(annotated.source[annotated.node])
 	 * @return BooleanAccumulator that is the meaning of the given annotated formula with respect to the given interpreter
 	 * @ensures log.records' contains the translation events that occurred while generating the returned value
+	 * @ensures the cache statistics of the translation are added to the given profile
 	 * @throws HigherOrderDeclException  annotated.node contains a higher order declaration
 	 * @throws UnboundLeafException  annotated.node refers to an undeclared variable 
 	 **/
-	static final BooleanAccumulator translate(final AnnotatedNode<Formula> annotated, LeafInterpreter interpreter, final TranslationLogger logger) {
+	static final BooleanAccumulator translate(final AnnotatedNode<Formula> annotated, LeafInterpreter interpreter, final TranslationLogger logger, TranslationProfile profile) {
 		final FOL2BoolCache cache = new FOL2BoolCache(annotated);
 		final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter) {
 			BooleanValue cache(Formula formula, BooleanValue translation) {
 				logger.log(formula, translation, super.env);
 				return super.cache(formula, translation);
 			}	
+			BooleanConstant decide(Formula formula) { 
+				return null; // every binding is translated so that its translation is logged
+			}
 		};
 		final BooleanAccumulator acc = BooleanAccumulator.treeGate(Operator.AND);
 		
@@ -130,9 +144,198 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 			acc.add(root.accept(translator));
 		}
 		logger.close();
+		profile.addCacheStatistics(cache.hits(), cache.misses());
 		return acc;
 	}
 	
+	/**
+	 * Returns an iterator over the translations of the roots of the given annotated formula, 
+	 * with respect to the given interpreter.  The roots are translated lazily, in the order 
+	 * in which they occur in annotated.node, by a single translator and cache.  The iterator 
+	 * does not retain the translations that it has returned:  before each root other than the 
+	 * first is translated, the cached translations of the subformulas of the previous roots are 
+	 * discarded, so the caller may {@linkplain kodkod.engine.bool.BooleanFactory#clearGates() clear} 
+	 * the gates of interpreter.factory after consuming each translation.  Once all roots have been 
+	 * translated, the cache statistics of the translation are added to the given profile.
+	 * Quantified variables with at least {@code symbolicThreshold} bindings are encoded symbolically 
+	 * where possible (see {@link kodkod.engine.config.Options#symbolicThreshold()}); a threshold of 0 
+	 * disables symbolic encoding.
+	 * @requires interpreter.relations = AnnotatedNode.relations(annotated)
+	 * @requires symbolicThreshold >= 0
+	 * @return an iterator over the translations of Nodes.roots(annotated.node), in order
+	 * @throws HigherOrderDeclException  annotated.node contains a higher order declaration
+	 * @throws UnboundLeafException  annotated.node refers to an undeclared variable 
+	 **/
+	static final Iterator<BooleanValue> translateRoots(final AnnotatedNode<Formula> annotated, LeafInterpreter interpreter, int symbolicThreshold, final TranslationProfile profile) {
+		final FOL2BoolCache cache = new FOL2BoolCache(annotated);
+		final FOL2BoolTranslator translator = new FOL2BoolTranslator(annotated, cache, interpreter, symbolicThreshold) {};
+		final Iterator<Formula> roots = Nodes.roots(annotated.node()).iterator();
+		return new Iterator<BooleanValue>() {
+			public boolean hasNext() { return roots.hasNext(); }
+			boolean first = true;
+			public BooleanValue next() { 
+				final Formula root = roots.next();
+				if (first) first = false;
+				else cache.clear();
+				final BooleanValue transl = root.accept(translator);
+				if (!roots.hasNext()) profile.addCacheStatistics(cache.hits(), cache.misses());
+				return transl;
+			}
+			public void remove() { throw new UnsupportedOperationException(); }
+		};
+	}
+	
+	/**
+	 * Translates the given annotated formula into a boolean value with respect to the 
+	 * given interpreter, using at most the specified number of threads.  The roots of 
+	 * annotated.node are distributed among the threads, each of which translates its share 
+	 * using its own cache.  All threads share interpreter.factory, so it must be safe 
+	 * for concurrent use.  The translations of the roots are conjoined in the order in 
+	 * which the roots occur in annotated.node.  This method waits for all threads to finish 
+	 * even if the calling thread is interrupted; the interrupt status is restored on return.
+	 * The cache statistics of all threads are added to the given profile.  When the translation 
+	 * is performed by a single thread, quantified variables with at least {@code symbolicThreshold} 
+	 * bindings are encoded symbolically where possible (see {@link kodkod.engine.config.Options#symbolicThreshold()}); 
+	 * a threshold of 0 disables symbolic encoding.
+	 * @requires interpreter.relations = AnnotatedNode.relations(annotated)
+	 * @requires threads > 0 && (threads > 1 => interpreter.factory is safe for concurrent use) 
+	 * @requires symbolicThreshold >= 0
+	 * @return a boolean value that is the meaning of annotated.node with respect to the given interpreter
+	 * @throws HigherOrderDeclException  annotated.node contains a higher order declaration
+	 * @throws UnboundLeafException  annotated.node refers to an undeclared variable 
+	 **/
+	static final BooleanValue translate(final AnnotatedNode<Formula> annotated, final LeafInterpreter interpreter, int threads, int symbolicThreshold, final TranslationProfile profile) {
+		final Formula[] roots = threads < 2 ? null : Nodes.roots(annotated.node()).toArray(new Formula[0]);
+		final int workers = threads < 2 ? 1 : StrictMath.min(threads, roots.length);
+		if (workers < 2) { 
+			final FOL2BoolCache cache = new FOL2BoolCache(annotated);
+			final BooleanValue transl = annotated.node().accept(new FOL2BoolTranslator(annotated, cache, interpreter, symbolicThreshold) {});
+			profile.addCacheStatistics(cache.hits(), cache.misses());
+			return transl;
+		}
+		
+		final BooleanValue[] transls = new BooleanValue[roots.length];
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final Runnable worker = new Runnable() {
+			public void run() {
+				final FOL2BoolCache cache = new FOL2BoolCache(annotated);
+				final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter) {};
+				try {
+					for(int i = next.getAndIncrement(); i < roots.length && !done.get(); i = next.getAndIncrement()) {
+						transls[i] = roots[i].accept(translator);
+						if (transls[i]==BooleanConstant.FALSE) 
+							done.set(true);	// the conjunction is FALSE; no need to translate the rest
+					}
+				} catch (RuntimeException | Error e) {
+					done.set(true);
+					throw e;
+				} finally { 
+					profile.addCacheStatistics(cache.hits(), cache.misses());
+				}
+			}
+		};
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(workers);
+		final List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+		Throwable failure = null;
+		boolean interrupted = false;
+		try {
+			for(int i = 0; i < workers; i++) { 
+				futures.add(executor.submit(worker));
+			}
+			for(Future<?> future : futures) { 
+				while(true) {
+					try {
+						future.get();
+						break;
+					} catch (InterruptedException e) { 
+						interrupted = true;
+					} catch (ExecutionException e) { 
+						if (failure==null) failure = e.getCause();
+						break;
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+		
+		if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+		if (failure instanceof Error) throw (Error) failure;
+		
+		final BooleanAccumulator acc = BooleanAccumulator.treeGate(Operator.AND);
+		for(BooleanValue transl : transls) { 
+			if (transl!=null && acc.add(transl)==BooleanConstant.FALSE) 
+				break;
+		}
+		return interpreter.factory().accumulate(acc);
+	}
+	
+	/**
+	 * Translates the given annotated formula into a boolean value with respect to the 
+	 * given interpreter, deferring the instantiation of large universally quantified roots.  
+	 * A root of annotated.node is deferred if it is a universally quantified formula whose 
+	 * declarations have an estimated number of bindings that is at least the given threshold.  
+	 * Deferred roots are added to the given list, and their translation is replaced 
+	 * by a partial instantiation, which consists of the bindings for which the body of 
+	 * the root is decided to be false by the bounds.  The remaining bindings can be instantiated 
+	 * on demand with {@link #instantiate(QuantifiedFormula, LeafInterpreter, LeafInterpreter)}.  The 
+	 * cache statistics of the translation are added to the given profile.
+	 * @requires interpreter.relations = AnnotatedNode.relations(annotated)
+	 * @requires threshold > 0
+	 * @ensures deferred.elems' = deferred.elems + { r: Nodes.roots(annotated.node) | r is deferred }
+	 * @return a boolean value that is implied by the meaning of annotated.node with respect to the given 
+	 * interpreter, and that is equivalent to it when conjoined with the meanings of the deferred roots
+	 * @throws HigherOrderDeclException  annotated.node contains a higher order declaration
+	 * @throws UnboundLeafException  annotated.node refers to an undeclared variable 
+	 **/
+	static final BooleanValue translate(final AnnotatedNode<Formula> annotated, LeafInterpreter interpreter, int threshold, 
+			List<Formula> deferred, TranslationProfile profile) {
+		final FOL2BoolCache cache = new FOL2BoolCache(annotated);
+		final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter) {};
+		final BooleanAccumulator acc = BooleanAccumulator.treeGate(Operator.AND);
+		for(Formula root : Nodes.roots(annotated.node())) { 
+			final BooleanValue transl;
+			if (root instanceof QuantifiedFormula && ((QuantifiedFormula)root).quantifier()==Quantifier.ALL && 
+				translator.bindings(((QuantifiedFormula)root).decls()) >= threshold) { 
+				deferred.add(root);
+				transl = translator.partial((QuantifiedFormula)root);
+			} else {
+				transl = root.accept(translator);
+			}
+			if (acc.add(transl)==BooleanConstant.FALSE)
+				break;
+		}
+		profile.addCacheStatistics(cache.hits(), cache.misses());
+		return interpreter.factory().accumulate(acc);
+	}
+	
+	/**
+	 * Translates the instances of the given universally quantified formula that are violated by 
+	 * an instance, which is represented by the given exact interpreter.  The instances are translated with respect 
+	 * to the given interpreter.  Each instance is the body of the formula, with its variables 
+	 * bound to a tuple of the instance's values of the declarations, guarded by the constraint 
+	 * that each of these tuples is in the value of its declaration.  The instance is checked by 
+	 * translating the formula with respect to the exact interpreter, as the {@link kodkod.engine.Evaluator} does.
+	 * @requires formula.quantifier = ALL && no freeVariables(formula)
+	 * @requires interpreter.relations = instance.relations = AnnotatedNode.relations(annotate(formula)) 
+	 * @requires instance.factory is a constant factory
+	 * @return conjunction of the translations of the instances of the given formula that are 
+	 * false with respect to the given exact interpreter, or TRUE if there are none 
+	 * @throws HigherOrderDeclException  formula contains a higher order declaration
+	 * @throws UnboundLeafException  formula refers to an undeclared variable 
+	 **/
+	static final BooleanValue instantiate(QuantifiedFormula formula, LeafInterpreter interpreter, LeafInterpreter instance) { 
+		final AnnotatedNode<Formula> annotated = AnnotatedNode.annotate((Formula)formula);
+		final FOL2BoolTranslator translator = new FOL2BoolTranslator(new FOL2BoolCache(annotated), interpreter) {};
+		final FOL2BoolTranslator checker = new FOL2BoolTranslator(new FOL2BoolCache(annotated), instance) {};
+		final BooleanAccumulator acc = BooleanAccumulator.treeGate(Operator.AND);
+		translator.instantiate(formula.decls(), formula.formula(), 0, BooleanConstant.FALSE, checker, acc);
+		return interpreter.factory().accumulate(acc);
+	}
+	
 	/**
 	 * Translates the given annotated expression into a boolean
 	 * matrix that is a least sound upper bound on the expression's
@@ -201,6 +404,16 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 
 	private final FOL2BoolCache cache;
 	private final Map<LeafExpression, BooleanMatrix> leafCache;
+	/* Checked between the bindings of quantified variables */
+	private final CancellationToken cancellation;
+	/* Decides the bodies of quantified formulas from bounds; created on first use */
+	private BoundsDecider decider;
+	/* Quantified formulas whose variables may be encoded symbolically, and the minimum 
+	 * number of bindings for which they are */
+	private final Set<QuantifiedFormula> symbolic;
+	private final int symbolicThreshold;
+	/* True while translating the partial instantiation of a deferred quantified formula */
+	private boolean partial;
 	
 	/**
 	 * Constructs a new translator that will use the given translation cache
@@ -212,6 +425,27 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		this.env = Environment.empty();
 		this.cache = cache;
 		this.leafCache = new HashMap<>(64);
+		this.cancellation = interpreter.cancellation();
+		this.symbolic = Collections.emptySet();
+		this.symbolicThreshold = 0;
+	}
+	
+	/**
+	 * Constructs a new translator that will use the given translation cache
+	 * and interpreter to translate the given annotated formula, encoding 
+	 * quantified variables with at least symbolicThreshold bindings symbolically 
+	 * where possible.
+	 * @requires symbolicThreshold >= 0
+	 * @ensures this.node' = manager.node
+	 */   
+	private FOL2BoolTranslator(AnnotatedNode<Formula> annotated, FOL2BoolCache cache,  LeafInterpreter interpreter, int symbolicThreshold) {
+		this.interpreter = interpreter;
+		this.env = Environment.empty();
+		this.cache = cache;
+		this.leafCache = new HashMap<>(64);
+		this.cancellation = interpreter.cancellation();
+		this.symbolic = symbolicThreshold > 0 ? ExistentialDetector.detect(annotated.node()) : Collections.<QuantifiedFormula>emptySet();
+		this.symbolicThreshold = symbolicThreshold;
 	}
 
 	/**
@@ -224,6 +458,9 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		this.env = env;
 		this.cache = cache;
 		this.leafCache = new HashMap<>(64);
+		this.cancellation = interpreter.cancellation();
+		this.symbolic = Collections.emptySet();
+		this.symbolicThreshold = 0;
 	}
 
 	/**
@@ -255,6 +492,40 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		return cache.cache(formula, translation, env);
 	}
 	
+	/**
+	 * Returns TRUE (resp. FALSE) if the given formula, with its free variables 
+	 * bound as in this.env, is true (resp. false) in every instance within this.interpreter's 
+	 * bounds; otherwise returns null.  Bindings of quantified variables for which the 
+	 * body of a quantified formula is decided are not translated.
+	 * @return TRUE (resp. FALSE) if the given formula is decided to be true (resp. false) 
+	 * by the bounds of this.interpreter; null otherwise
+	 */
+	BooleanConstant decide(Formula formula) { 
+		if (decider==null) decider = new BoundsDecider(interpreter);
+		return decider.decide(formula, env);
+	}
+	
+	/**
+	 * Returns the result of {@link #decide(Formula) deciding} the body of a quantified formula 
+	 * after the first currentDecl of its declarations have been bound.  The variables of the 
+	 * remaining declarations are masked in this.env while the body is decided, so that 
+	 * they are not confused with the bindings of outer variables that they shadow.
+	 * @requires 0 < currentDecl <= decls.size()
+	 * @return TRUE (resp. FALSE) if the given formula is decided to be true (resp. false) 
+	 * for all bindings of decls[currentDecl..]; null otherwise
+	 */
+	private BooleanConstant decide(Decls decls, Formula formula, int currentDecl) { 
+		final Environment<BooleanMatrix> bound = env;
+		for(int i = currentDecl, size = decls.size(); i < size; i++) { 
+			env = env.extend(decls.get(i).variable(), null);
+		}
+		try { 
+			return decide(formula);
+		} finally { 
+			env = bound;
+		}
+	}
+	
 	/** 
 	 * Calls lookup(decls) and returns the cached value, if any.  
 	 * If a translation has not been cached, translates decls into a list
@@ -391,6 +662,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 	 * calls cache(...) on it and returns it.
 	 * @return let t = lookup(unaryExpr) | some t => t, 
 	 *      let op = (unaryExpr.op).(TRANSPOSE->transpose + CLOSURE->closure + REFLEXIVE_CLOSURE->(lambda(m)(m.closure().or(iden))) | 
+	 *       (closures are computed using this.interpreter.options.closureEncoding)
 	 *       cache(unaryExpr, op(unaryExpr.child))
 	 */
 	public final BooleanMatrix visit(UnaryExpression unaryExpr) {
@@ -402,8 +674,8 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 
 		switch(op) {
 		case TRANSPOSE         	: ret = child.transpose(); break;
-		case CLOSURE           	: ret = child.closure(); break;
-		case REFLEXIVE_CLOSURE	: ret = child.closure().or(visit((ConstantExpression)Expression.IDEN)); break;
+		case CLOSURE           	: ret = child.closure(interpreter.closureEncoding()); break;
+		case REFLEXIVE_CLOSURE	: ret = child.closure(interpreter.closureEncoding()).or(visit((ConstantExpression)Expression.IDEN)); break;
 		default : 
 			throw new IllegalArgumentException("Unknown operator: " + op);
 		}
@@ -439,6 +711,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		final BooleanMatrix groundValue = factory.matrix(declTransl.dimensions());
 		env = env.extend(decl.variable(), groundValue);
 		for(IndexedEntry<BooleanValue> entry : declTransl) {
+			cancellation.checkpoint();
 			groundValue.set(entry.index(), BooleanConstant.TRUE);
 			comprehension(decls, formula, currentDecl+1, factory.and(entry.value(), declConstraints), 
 					partialIndex + entry.index()*position, matrix);
@@ -517,30 +790,62 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 	 * let quantFormula = "all a: A, b: B, ..., x: X | F(a, b, ..., x)" |
 	 *     (A_0 && B_0 && ... && X_0 => translate(F(A_0, B_0, ..., X_0))) && ... && 
 	 *     (A_|A| && B_|B| && ... && X_|X| => translate(F(A_|A|, B_|B|, ..., X_|X|))
+	 * Bindings for which the body is decided to be true by the bounds (see {@link #decide(Formula)}) 
+	 * are not translated, and those for which it is decided to be false contribute only their 
+	 * declaration constraints.  At each level, the bindings whose declaration constraint 
+	 * is TRUE are visited first, since only they can short-circuit the accumulator.
+	 * If the formula occurs only negatively, a declaration with at least this.symbolicThreshold 
+	 * bindings is translated once, with its variable bound to a {@linkplain #choose(BooleanMatrix, BooleanAccumulator) choice} 
+	 * among the bindings that is left to the solver.  This is sound because the negation 
+	 * of the formula holds iff the body fails for some choice.  If the body translates to 
+	 * a constant for every choice, the choice is dropped, so that a formula that is decided by 
+	 * the bounds still translates to a constant.
 	 * @param decls formula declarations
 	 * @param formula the formula body
 	 * @param currentDecl currently processed declaration; should be 0 initially
 	 * @param declConstraints the constraints implied by the declarations; should be Boolean.FALSE intially
 	 * @param acc the accumulator that contains the top level conjunction; should be an empty AND accumulator initially
+	 * @param symbolic true if the formula occurs only negatively, and its declarations may be encoded symbolically
 	 * @ensures the given accumulator contains the translation of the formula "all decls | formula"
 	 */
-	private void all(Decls decls, Formula formula, int currentDecl, BooleanValue declConstraints, BooleanAccumulator acc) {
+	private void all(Decls decls, Formula formula, int currentDecl, BooleanValue declConstraints, BooleanAccumulator acc, boolean symbolic) {
 		if (acc.isShortCircuited()) return;
 		final BooleanFactory factory = interpreter.factory();
-
+		final BooleanConstant decided = currentDecl > 0 ? decide(decls, formula, currentDecl) : null;
+		if (decided==BooleanConstant.TRUE) return; 
+		
 		if (decls.size()==currentDecl) {
-			acc.add(factory.or(declConstraints, formula.accept(this)));
+			if (decided==null && partial) return; // the binding is instantiated on demand
+			acc.add(factory.or(declConstraints, decided==null ? formula.accept(this) : decided));
 			return;
 		}
 
 		final Decl decl = decls.get(currentDecl);
 		final BooleanMatrix declTransl = visit(decl);
+		if (symbolic && declTransl.density() >= StrictMath.max(2, symbolicThreshold)) { 
+			final BooleanAccumulator declConstraint = BooleanAccumulator.treeGate(Operator.OR);
+			final BooleanAccumulator body = BooleanAccumulator.treeGate(Operator.AND);
+			env = env.extend(decl.variable(), choose(declTransl, declConstraint));
+			all(decls, formula, currentDecl+1, BooleanConstant.FALSE, body, symbolic);
+			env = env.parent();
+			final BooleanValue bodyValue = factory.accumulate(body);
+			if (bodyValue==BooleanConstant.FALSE) // the body fails for every binding
+				acc.add(factory.or(declConstraints, declTransl.none()));
+			else if (bodyValue!=BooleanConstant.TRUE) 
+				acc.add(factory.or(declConstraints, factory.or(factory.not(factory.accumulate(declConstraint)), bodyValue)));
+			return;
+		}
 		final BooleanMatrix groundValue = factory.matrix(declTransl.dimensions());
 		env = env.extend(decl.variable(), groundValue);
-		for(IndexedEntry<BooleanValue> entry : declTransl) {
-			groundValue.set(entry.index(), BooleanConstant.TRUE);
-			all(decls, formula, currentDecl+1, factory.or(factory.not(entry.value()), declConstraints), acc);
-			groundValue.set(entry.index(), BooleanConstant.FALSE);	
+		for(int pass = 0; pass < 2; pass++) { // bindings whose declaration constraint is TRUE go first
+			final boolean constant = pass==0;
+			for(IndexedEntry<BooleanValue> entry : declTransl) {
+				if ((entry.value()==BooleanConstant.TRUE) != constant) continue;
+				cancellation.checkpoint();
+				groundValue.set(entry.index(), BooleanConstant.TRUE);
+				all(decls, formula, currentDecl+1, factory.or(factory.not(entry.value()), declConstraints), acc, symbolic);
+				groundValue.set(entry.index(), BooleanConstant.FALSE);	
+			}
 		}
 		env = env.parent();
 		
@@ -553,35 +858,187 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 	 * let quantFormula = "some a: A, b: B, ..., x: X | F(a, b, ..., x)" |
 	 *     (A_0 && B_0 && ... && X_0 && translate(F(A_0, B_0, ..., X_0))) || ... || 
 	 *     (A_|A| && B_|B| && ... && X_|X| && translate(F(A_|A|, B_|B|, ..., X_|X|))
+	 * Bindings for which the body is decided to be false by the bounds (see {@link #decide(Formula)}) 
+	 * are not translated, and those for which it is decided to be true contribute only their 
+	 * declaration constraints.  At each level, the bindings whose declaration constraint 
+	 * is TRUE are visited first, since only they can short-circuit the accumulator.
+	 * If the formula occurs only positively, a declaration with at least this.symbolicThreshold 
+	 * bindings is translated once, with its variable bound to a {@linkplain #choose(BooleanMatrix, BooleanAccumulator) choice} 
+	 * among the bindings that is left to the solver.  If the body translates to 
+	 * a constant for every choice, the choice is dropped, so that a formula that is decided by 
+	 * the bounds still translates to a constant.
 	 * @param decls formula declarations
 	 * @param formula the formula body
 	 * @param currentDecl currently processed declaration; should be 0 initially
 	 * @param declConstraints the constraints implied by the declarations; should be Boolean.TRUE intially
 	 * @param acc the accumulator that contains the top level conjunction; should be an empty OR accumulator initially
+	 * @param symbolic true if the formula occurs only positively, and its declarations may be encoded symbolically
 	 * @ensures the given accumulator contains the translation of the formula "some decls | formula"
 	 */
-	private void some(Decls decls, Formula formula, int currentDecl, BooleanValue declConstraints, BooleanAccumulator acc) {
+	private void some(Decls decls, Formula formula, int currentDecl, BooleanValue declConstraints, BooleanAccumulator acc, boolean symbolic) {
 		if (acc.isShortCircuited()) return;
 		final BooleanFactory factory = interpreter.factory();
+		final BooleanConstant decided = currentDecl > 0 ? decide(decls, formula, currentDecl) : null;
+		if (decided==BooleanConstant.FALSE) return; 
 
 		if (decls.size()==currentDecl) {
-			acc.add(factory.and(declConstraints, formula.accept(this)));
+			acc.add(factory.and(declConstraints, decided==null ? formula.accept(this) : decided));
 			return;
 		}
 
 		final Decl decl = decls.get(currentDecl);
 		final BooleanMatrix declTransl = visit(decl);
+		if (symbolic && declTransl.density() >= StrictMath.max(2, symbolicThreshold)) { 
+			final BooleanAccumulator declConstraint = BooleanAccumulator.treeGate(Operator.OR);
+			final BooleanAccumulator body = BooleanAccumulator.treeGate(Operator.OR);
+			env = env.extend(decl.variable(), choose(declTransl, declConstraint));
+			some(decls, formula, currentDecl+1, BooleanConstant.TRUE, body, symbolic);
+			env = env.parent();
+			final BooleanValue bodyValue = factory.accumulate(body);
+			if (bodyValue==BooleanConstant.TRUE) // the body holds for every binding
+				acc.add(factory.and(declConstraints, declTransl.some()));
+			else if (bodyValue!=BooleanConstant.FALSE) 
+				acc.add(factory.and(declConstraints, factory.and(factory.accumulate(declConstraint), bodyValue)));
+			return;
+		}
 		final BooleanMatrix groundValue = factory.matrix(declTransl.dimensions());
 		env = env.extend(decl.variable(), groundValue);
-		for(IndexedEntry<BooleanValue> entry : declTransl) {
-			groundValue.set(entry.index(), BooleanConstant.TRUE);
-			some(decls, formula, currentDecl+1, factory.and(entry.value(), declConstraints), acc);
-			groundValue.set(entry.index(), BooleanConstant.FALSE);	
+		for(int pass = 0; pass < 2; pass++) { // bindings whose declaration constraint is TRUE go first
+			final boolean constant = pass==0;
+			for(IndexedEntry<BooleanValue> entry : declTransl) {
+				if ((entry.value()==BooleanConstant.TRUE) != constant) continue;
+				cancellation.checkpoint();
+				groundValue.set(entry.index(), BooleanConstant.TRUE);
+				some(decls, formula, currentDecl+1, factory.and(entry.value(), declConstraints), acc, symbolic);
+				groundValue.set(entry.index(), BooleanConstant.FALSE);	
+			}
 		}
 		env = env.parent();
 
 	}
 
+	/**
+	 * Returns an estimate of the number of bindings of the given declarations.  The 
+	 * estimate is the product of the densities of the translations of the declarations, 
+	 * where each declared variable is bound to the translation of its declaration when 
+	 * translating the subsequent declarations.  
+	 * @return an estimate of the number of bindings of the given declarations
+	 */
+	private long bindings(Decls decls) { 
+		long bindings = 1;
+		for(Decl decl : decls) { 
+			final BooleanMatrix declTransl = visit(decl);
+			bindings = bindings > Long.MAX_VALUE / StrictMath.max(1, declTransl.density()) ? Long.MAX_VALUE : bindings * declTransl.density();
+			env = env.extend(decl.variable(), declTransl);
+		}
+		for(int i = decls.size(); i > 0; i--) { 
+			env = env.parent();
+		}
+		return bindings;
+	}
+	
+	/**
+	 * Returns the partial instantiation of the given universally quantified formula, which 
+	 * consists of the bindings for which the body of the formula is decided to be false 
+	 * by the bounds.  Each such binding contributes only the constraint that it is not 
+	 * a binding of the formula's declarations.
+	 * @requires formula.quantifier = ALL
+	 * @return the conjunction of the translations of the bindings of formula.decls for which formula.formula 
+	 * is decided to be false
+	 */
+	private BooleanValue partial(QuantifiedFormula formula) { 
+		final BooleanAccumulator and = BooleanAccumulator.treeGate(Operator.AND);
+		partial = true;
+		try { 
+			all(formula.decls(), formula.formula(), 0, BooleanConstant.FALSE, and, false);
+		} finally { 
+			partial = false;
+		}
+		return interpreter.factory().accumulate(and);
+	}
+	
+	/**
+	 * Adds to the given accumulator the translations of the instances of the formula "all decls | formula" 
+	 * that are false with respect to checker.interpreter.  The bindings of the declared variables are drawn 
+	 * from the values of the declarations with respect to checker.interpreter, and each declared variable 
+	 * is bound to the same tuple in this.env and checker.env.  
+	 * @param decls formula declarations
+	 * @param formula the formula body
+	 * @param currentDecl currently processed declaration; should be 0 initially
+	 * @param declConstraints the constraints implied by the declarations; should be Boolean.FALSE intially
+	 * @param checker translator that evaluates formulas with respect to an instance
+	 * @param acc the accumulator that contains the top level conjunction; should be an empty AND accumulator initially
+	 * @ensures the given accumulator contains the translations of the violated instances of the formula "all decls | formula"
+	 */
+	private void instantiate(Decls decls, Formula formula, int currentDecl, BooleanValue declConstraints, FOL2BoolTranslator checker, BooleanAccumulator acc) { 
+		if (acc.isShortCircuited()) return;
+		final BooleanFactory factory = interpreter.factory();
+		if (decls.size()==currentDecl) { 
+			if (formula.accept(checker)==BooleanConstant.FALSE)
+				acc.add(factory.or(declConstraints, formula.accept(this)));
+			return;
+		}
+		
+		final Decl decl = decls.get(currentDecl);
+		final BooleanMatrix declTransl = visit(decl);
+		final BooleanMatrix declValue = checker.visit(decl);
+		final BooleanMatrix groundValue = factory.matrix(declTransl.dimensions());
+		final BooleanMatrix checkedValue = checker.interpreter.factory().matrix(declValue.dimensions());
+		env = env.extend(decl.variable(), groundValue);
+		checker.env = checker.env.extend(decl.variable(), checkedValue);
+		for(IndexedEntry<BooleanValue> entry : declValue) { 
+			cancellation.checkpoint();
+			final int index = entry.index();
+			groundValue.set(index, BooleanConstant.TRUE);
+			checkedValue.set(index, BooleanConstant.TRUE);
+			instantiate(decls, formula, currentDecl+1, factory.or(factory.not(declTransl.get(index)), declConstraints), checker, acc);
+			groundValue.set(index, BooleanConstant.FALSE);
+			checkedValue.set(index, BooleanConstant.FALSE);
+		}
+		env = env.parent();
+		checker.env = checker.env.parent();
+	}
+	
+	/**
+	 * Returns a matrix that binds a quantified variable to one of the tuples in the 
+	 * given declaration, chosen by a vector of fresh boolean variables, and adds the 
+	 * constraint that the chosen tuple is in the declaration to the given accumulator.  
+	 * The tuples are numbered in the order of their indices, and the j-th tuple is chosen 
+	 * when the fresh variables encode the number j in binary.  Since the number of fresh 
+	 * variables is logarithmic in the number of tuples, a formula over the returned matrix 
+	 * represents the choice of all of the tuples with a single translation of the formula.  
+	 * Codes that do not number any tuple choose the empty set, and falsify the added constraint.
+	 * @requires declTransl.density() > 1 
+	 * @requires declConstraint.op = OR
+	 * @ensures let n = ceil(log2(declTransl.density())) | 
+	 *           this.interpreter.factory.addVariables(n) &&
+	 *           declConstraint.inputs' = declConstraint.inputs + 
+	 *            { c: BooleanValue | some i: declTransl.indices | c = ret.get(i) && declTransl.get(i) }
+	 * @return { m: BooleanMatrix | m.dimensions = declTransl.dimensions && 
+	 *            m.indices = declTransl.indices && m.get(i) holds iff the fresh variables encode 
+	 *            the position of i in declTransl.indices }
+	 */
+	private BooleanMatrix choose(BooleanMatrix declTransl, BooleanAccumulator declConstraint) { 
+		final BooleanFactory factory = interpreter.factory();
+		final int bits = 32 - Integer.numberOfLeadingZeros(declTransl.density()-1);
+		factory.addVariables(bits);
+		final int firstBit = factory.maxVariable() - bits + 1;
+		final BooleanMatrix choice = factory.matrix(declTransl.dimensions());
+		int code = 0;
+		for(IndexedEntry<BooleanValue> entry : declTransl) { 
+			final BooleanAccumulator selector = BooleanAccumulator.treeGate(Operator.AND);
+			for(int i = 0; i < bits; i++) { 
+				final BooleanValue bit = factory.variable(firstBit + i);
+				selector.add((code & (1<<i)) != 0 ? bit : factory.not(bit));
+			}
+			final BooleanValue chosen = factory.accumulate(selector);
+			choice.set(entry.index(), chosen);
+			declConstraint.add(factory.and(chosen, entry.value()));
+			code++;
+		}
+		return choice;
+	}
+
 	/** 
 	 * Calls lookup(quantFormula) and returns the cached value, if any.  
 	 * If a translation has not been cached, translates the formula,
@@ -598,12 +1055,12 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		switch(quantifier) {
 		case ALL		: 
 			final BooleanAccumulator and = BooleanAccumulator.treeGate(Operator.AND);
-			all(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.FALSE, and); 
+			all(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.FALSE, and, symbolic.contains(quantFormula)); 
 			ret = interpreter.factory().accumulate(and);
 			break;
 		case SOME	: 
 			final BooleanAccumulator or = BooleanAccumulator.treeGate(Operator.OR);
-			some(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.TRUE, or); 
+			some(quantFormula.decls(), quantFormula.formula(), 0, BooleanConstant.TRUE, or, symbolic.contains(quantFormula)); 
 			ret = interpreter.factory().accumulate(or);
 			break;
 		default :
@@ -969,6 +1426,7 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		final BooleanMatrix groundValue = factory.matrix(declTransl.dimensions());
 		env = env.extend(decl.variable(), groundValue);
 		for(IndexedEntry<BooleanValue> entry : declTransl) {
+			cancellation.checkpoint();
 			groundValue.set(entry.index(), BooleanConstant.TRUE);
 			sum(decls, expr, currentDecl+1, factory.and(entry.value(), declConstraints), values);
 			groundValue.set(entry.index(), BooleanConstant.FALSE);	
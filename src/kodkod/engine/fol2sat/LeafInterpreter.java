@@ -29,10 +29,12 @@ import java.util.Set;
 import kodkod.ast.ConstantExpression;
 import kodkod.ast.Expression;
 import kodkod.ast.Relation;
+import kodkod.engine.CancellationToken;
 import kodkod.engine.bool.BooleanFactory;
 import kodkod.engine.bool.BooleanMatrix;
 import kodkod.engine.bool.Dimensions;
 import kodkod.engine.config.Options;
+import kodkod.engine.config.Options.ClosureEncoding;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleSet;
@@ -56,6 +58,7 @@ import kodkod.util.ints.SparseSequence;
  * @specfield ubounds: relations ->one TupleSet
  * @specfield ibounds: ints -> one TupleSet
  * @specfield factory: BooleanFactory
+ * @specfield options: Options
  * @specfield vars: relations -> set BooleanVariable
  * @invariant all r: relations | r.arity = lbounds[r].arity = ubounds[r].arity && ubounds[r].containsAll(lbounds[r])
  * @invariant all r: relations | lbounds[r].atoms + ubounds[r].atoms in universe 
@@ -72,6 +75,7 @@ final class LeafInterpreter {
 	private final Map<Relation, IntRange> vars;
 	private final Map<Relation, TupleSet> lowers, uppers;
 	private final SparseSequence<TupleSet> ints;
+	private final Options options;
 	
 	/**
 	 * Constructs a new LeafInterpreter using the given values.
@@ -79,16 +83,17 @@ final class LeafInterpreter {
 	 * @ensures this.universe' = universe && this.relations' = lowers.keySet() &&
 	 * this.ints' = ints.indices && this.factory' = factory && 
 	 * this.ubounds' = uppers && this.lbounds' = lowers && 
-	 * this.ibounds' = ints
+	 * this.ibounds' = ints && this.options' = options
 	 */
 	private LeafInterpreter(Universe universe, Map<Relation, TupleSet> lowers, Map<Relation, TupleSet> uppers, 
-			SparseSequence<TupleSet> ints, BooleanFactory factory, Map<Relation, IntRange> vars) {
+			SparseSequence<TupleSet> ints, BooleanFactory factory, Map<Relation, IntRange> vars, Options options) {
 		this.universe = universe;
 		this.lowers = lowers;
 		this.uppers = uppers;
 		this.ints = ints;
 		this.factory = factory;
 		this.vars = vars;
+		this.options = options;
 	}
 	
 	
@@ -98,11 +103,11 @@ final class LeafInterpreter {
 	 * @ensures this.universe' = universe && this.relations' = lowers.keySet() &&
 	 * this.ints' = ints.indices && this.factory' = factory && 
 	 * this.ubounds' = uppers && this.lbounds' = lowers && 
-	 * this.ibounds' = ints
+	 * this.ibounds' = ints && this.options' = options
 	 */
 	@SuppressWarnings("unchecked")
 	private LeafInterpreter(Universe universe, Map<Relation, TupleSet> rbound, SparseSequence<TupleSet> ints, Options options) {
-		this(universe, rbound, rbound, ints, BooleanFactory.constantFactory(options), Collections.EMPTY_MAP);
+		this(universe, rbound, rbound, ints, BooleanFactory.constantFactory(options), Collections.EMPTY_MAP, options);
 	}
 	
 	/**
@@ -140,7 +145,7 @@ final class LeafInterpreter {
 		final Map<Relation, TupleSet> lowers = incremental ? new LinkedHashMap<Relation, TupleSet>(bounds.lowerBounds()) : bounds.lowerBounds();
 		final Map<Relation, TupleSet> uppers = incremental ? new LinkedHashMap<Relation, TupleSet>(bounds.upperBounds()) : bounds.upperBounds();
 		final int numVars = allocateVars(1, vars, bounds.relations(), lowers, uppers);
-		return new LeafInterpreter(bounds.universe(), lowers, uppers, bounds.intBounds(), BooleanFactory.factory(numVars, options), vars);
+		return new LeafInterpreter(bounds.universe(), lowers, uppers, bounds.intBounds(), BooleanFactory.factory(numVars, options), vars, options);
 	}
 	
 	/**
@@ -185,6 +190,24 @@ final class LeafInterpreter {
 		return this.factory;
 	}
 	
+	/**
+	 * Returns the cancellation token that is currently specified by the 
+	 * options with which this interpreter was created.
+	 * @return this.options.cancellation()
+	 */
+	final CancellationToken cancellation() { 
+		return options.cancellation();
+	}
+	
+	/**
+	 * Returns the encoding for transitive closures specified by the 
+	 * options with which this interpreter was created.
+	 * @return this.options.closureEncoding()
+	 */
+	final ClosureEncoding closureEncoding() { 
+		return options.closureEncoding();
+	}
+	
 	/**
 	 * Returns the universe of discourse.
 	 * @return this.universe
@@ -0,0 +1,50 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import kodkod.engine.config.Reporter;
+
+/**
+ * A {@link Reporter} that is also notified of the time and memory consumed 
+ * by each phase of a translation, as recorded in its {@link TranslationProfile}.  
+ * The translator passes these messages only to the reporters that implement 
+ * this interface; all other reporters receive just the {@link Reporter} messages.
+ * 
+ * @author Emina Torlak
+ * @see kodkod.engine.config.Options#setReporter(Reporter)
+ */
+public interface ProfilingReporter extends Reporter {
+
+	/**
+	 * Reports that the given phase of the translation has completed, 
+	 * taking the given number of nanoseconds and allocating the given
+	 * number of bytes on the translating thread (or -1 if allocation 
+	 * tracking is not supported by the virtual machine).
+	 */
+	public void completedPhase(TranslationProfile.Phase phase, long nanos, long allocatedBytes);
+	
+	/**
+	 * Reports that the translation to cnf has completed, 
+	 * with the given profile of its phases.
+	 */
+	public void profiledTranslation(TranslationProfile profile);
+}
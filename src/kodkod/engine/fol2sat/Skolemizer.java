@@ -60,16 +60,22 @@ import kodkod.ast.operator.Multiplicity;
 import kodkod.ast.operator.Quantifier;
 import kodkod.ast.visitor.AbstractDetector;
 import kodkod.ast.visitor.AbstractReplacer;
+import kodkod.ast.visitor.AbstractVoidVisitor;
 import kodkod.engine.bool.BooleanMatrix;
 import kodkod.engine.config.Options;
 import kodkod.engine.config.Reporter;
 import kodkod.instance.Bounds;
 import kodkod.instance.TupleSet;
+import kodkod.util.collections.IdentityHashSet;
 import kodkod.util.nodes.AnnotatedNode;
 
 /**
  * Skolemizes existential quantifiers, up to a given
- * number of nestings (within universal quantifiers). 
+ * number of nestings (within universal quantifiers).  If 
+ * a positive skolem cost is given, an existential that is nested 
+ * within universals is skolemized only if the estimated size of 
+ * the circuit that it saves outweighs the primary variables that
+ * its skolem relation adds.
  * @author Emina Torlak
  */
 abstract class Skolemizer extends AbstractReplacer {	
@@ -129,6 +135,47 @@ abstract class Skolemizer extends AbstractReplacer {
 		}
 	}
 
+	/**
+	 * Estimates the size of a formula as the number of its distinct 
+	 * internal nodes, and counts the uses of a given variable in it.
+	 * @specfield variable: Variable
+	 * @specfield size: int // number of distinct internal nodes visited so far
+	 * @specfield uses: int // number of occurrences of variable visited so far
+	 * @author Emina Torlak
+	 */
+	private static final class SizeEstimator extends AbstractVoidVisitor {
+		final Variable variable;
+		final IdentityHashSet<Node> visited;
+		int size, uses;
+		/**
+		 * Constructs a SizeEstimator for the given variable.
+		 * @ensures this.variable' = variable && this.size' = this.uses' = 0
+		 */
+		SizeEstimator(Variable variable) {
+			this.variable = variable;
+			this.visited = new IdentityHashSet<Node>();
+			this.size = 0;
+			this.uses = 0;
+		}
+		/**
+		 * Increments this.size if the given node has not been visited before.
+		 * @return true if the node has been visited before
+		 */
+		protected boolean visited(Node n) {
+			if (visited.add(n)) {
+				size++;
+				return false;
+			}
+			return true;
+		}
+		/**
+		 * Increments this.uses if the given variable is this.variable.
+		 */
+		public void visit(Variable v) {
+			if (v==variable) uses++;
+		}
+	}
+
 	/* replacement environment; maps skolemized variables to their skolem expressions,
 	 * and non-skolemized variables to themselves */
 	private Environment<Expression> repEnv;
@@ -149,6 +196,8 @@ abstract class Skolemizer extends AbstractReplacer {
 	private boolean negated;
 	/* depth to which to skolemize; negative depth indicates that no skolemization can be done at that point */
 	private int skolemDepth;
+	/* number of gates that each primary variable of a nested skolem must save; 0 if all candidates are skolemized */
+	private final int skolemCost;
 
 	/**
 	 * Constructs a skolem replacer from the given arguments. 
@@ -178,6 +227,7 @@ abstract class Skolemizer extends AbstractReplacer {
 		this.topSkolemConstraints = new ArrayList<Formula>();
 		this.negated = false;
 		this.skolemDepth = options.skolemDepth();
+		this.skolemCost = options.skolemCost();
 	}
 
 	/**
@@ -322,18 +372,11 @@ abstract class Skolemizer extends AbstractReplacer {
 	}
 	
 	/**
-	 * Adds a bound for the given skolem relation to
-	 * this.bounds, and returns the expression that should replace skolemDecl.variable in the final formula.
-	 * @requires skolem !in this.bounds.relations
-	 * @requires skolem.arity = nonSkolems.size() + skolemDecl.variable().arity() 
-	 * @ensures adds a sound upper bound for the given skolem relation to this.bounds
-	 * @return the expression that should replace skolemDecl.variable in the final formula
+	 * Returns a sound upper bound on the value of a skolem relation for the given decl.
+	 * @ensures computes the upper bounds of all nonSkolems that do not have them
+	 * @return a sound upper bound on the value of a skolem relation for the given decl
 	 */
-	private Expression skolemExpr(Decl skolemDecl, Relation skolem) {
-		final int depth = nonSkolems.size();
-		final int arity = depth + skolemDecl.variable().arity();
-
-		Expression skolemExpr = skolem;
+	private BooleanMatrix skolemBound(Decl skolemDecl) {
 		Environment<BooleanMatrix> skolemEnv = Environment.empty();
 
 		for(DeclInfo info : nonSkolems) {
@@ -341,19 +384,67 @@ abstract class Skolemizer extends AbstractReplacer {
 				info.upperBound = upperBound(info.decl.expression(), skolemEnv);
 			}
 			skolemEnv = skolemEnv.extend(info.decl.variable(), info.upperBound);
-			skolemExpr = info.decl.variable().join(skolemExpr);
 		}
 
 		BooleanMatrix matrixBound = upperBound(skolemDecl.expression(), skolemEnv);
-		for(int i = depth-1; i >= 0; i--) {
+		for(int i = nonSkolems.size()-1; i >= 0; i--) {
 			matrixBound = nonSkolems.get(i).upperBound.cross(matrixBound);
 		}
+		return matrixBound;
+	}
+	
+	/**
+	 * Adds the given bound for the given skolem relation to
+	 * this.bounds, and returns the expression that should replace skolemDecl.variable in the final formula.
+	 * @requires skolem !in this.bounds.relations
+	 * @requires skolem.arity = nonSkolems.size() + skolemDecl.variable().arity() 
+	 * @requires matrixBound = this.skolemBound(skolemDecl)
+	 * @ensures adds a sound upper bound for the given skolem relation to this.bounds
+	 * @return the expression that should replace skolemDecl.variable in the final formula
+	 */
+	private Expression skolemExpr(Decl skolemDecl, Relation skolem, BooleanMatrix matrixBound) {
+		final int arity = nonSkolems.size() + skolemDecl.variable().arity();
+
+		Expression skolemExpr = skolem;
+		for(DeclInfo info : nonSkolems) {
+			skolemExpr = info.decl.variable().join(skolemExpr);
+		}
 
 		final TupleSet skolemBound = bounds.universe().factory().setOf(arity, matrixBound.denseIndices());
 		bounds.bound(skolem, skolemBound);
 
 		return skolemExpr;
 	}	
+	
+	/**
+	 * Returns true if the given decl, which is being considered for skolemization
+	 * in a quantified formula with the given body, should be skolemized.  Every
+	 * decl that is not nested within a universal is skolemized, as is every decl when
+	 * this.skolemCost is 0.  Otherwise, the decl is skolemized only if the estimated
+	 * number of gates saved by skolemizing it is at least this.skolemCost times the
+	 * number of primary variables added by its skolem relation.  Grounding the decl 
+	 * translates the body once per context binding and value of the decl, whereas
+	 * skolemizing it translates the body once per context binding, at the cost of 
+	 * a join with the skolem for each use of the decl's variable and a range and 
+	 * multiplicity constraint.
+	 * @requires skolemBound = this.skolemBound(this.visit(decl))
+	 * @return true if the given decl should be skolemized
+	 */
+	private boolean worthSkolemizing(Decl decl, Formula body, BooleanMatrix skolemBound) {
+		if (skolemCost==0 || nonSkolems.isEmpty()) return true;
+		double bindings = 1;
+		for(DeclInfo info : nonSkolems) {
+			bindings *= info.upperBound.density();
+		}
+		final double added = skolemBound.density();
+		if (added==0) return true;
+		final double values = added / bindings;
+		final SizeEstimator estimator = new SizeEstimator(decl.variable());
+		body.accept(estimator);
+		final double grounded = bindings * values * estimator.size;
+		final double skolemized = bindings * (estimator.size + (estimator.uses + 2) * values);
+		return grounded - skolemized >= skolemCost * added;
+	}
 		
 	/**
 	 * Returns a formula that properly constrains the given skolem's domain.
@@ -390,14 +481,24 @@ abstract class Skolemizer extends AbstractReplacer {
 		if (skolemDepth>=0 && (negated && quant==ALL || !negated && quant==SOME)) { // skolemizable formula
 			final List<Formula> rangeConstraints = new LinkedList<Formula>();
 			final List<Formula> domConstraints = new LinkedList<Formula>();
+			Decls rejected = null; // decls that are not worth skolemizing, starting with the first such decl
 			
 			for(Decl decl : decls) {	
+				if (rejected!=null) { 
+					rejected = rejected.and(decl);
+					continue;
+				}
 				final Decl skolemDecl = visit(decl);
+				final BooleanMatrix skolemBound = skolemBound(skolemDecl);
+				if (!worthSkolemizing(decl, qf.formula(), skolemBound)) { 
+					rejected = decl;
+					continue;
+				}
 				
 				final Relation skolem = Relation.nary("$"+ skolemDecl.variable().name(), nonSkolems.size() + skolemDecl.variable().arity());
 				reporter.skolemizing(decl, skolem, nonSkolemsView);
 				
-				final Expression skolemExpr = skolemExpr(skolemDecl, skolem);
+				final Expression skolemExpr = skolemExpr(skolemDecl, skolem, skolemBound);
 				
 				final Multiplicity mult = decl.multiplicity();
 				rangeConstraints.add(source(skolemExpr.in(skolemDecl.expression()), decl));
@@ -411,26 +512,18 @@ abstract class Skolemizer extends AbstractReplacer {
 				repEnv = repEnv.extend(decl.variable(), skolemExpr);
 			}
 		
-			ret = source(Formula.and(rangeConstraints), decls).compose(negated ? IMPLIES : AND, qf.formula().accept(this));
+			if (rangeConstraints.isEmpty()) { // no decl is worth skolemizing
+				ret = visit(qf, decls);
+			} else { 
+				final Formula formula = rejected==null ? qf.formula().accept(this) : source(visit(qf, rejected), qf);
+				ret = source(Formula.and(rangeConstraints), decls).compose(negated ? IMPLIES : AND, formula);
+			}
 			
 			if (!domConstraints.isEmpty()) 
 				topSkolemConstraints.add(source(Formula.and(domConstraints), decls));
 			
 		} else { // non-skolemizable formula
-		
-			final Decls newDecls = visit((Decls)qf.decls());
-			if (skolemDepth>=nonSkolems.size()+newDecls.size()) { // could skolemize below
-				for(Decl d: newDecls) { nonSkolems.add(new DeclInfo(d)); }
-				final Formula formula = qf.formula().accept(this);
-				ret = ((newDecls==decls && formula==qf.formula()) ? qf : formula.quantify(quant, newDecls));
-				for(int i = newDecls.size(); i > 0; i--) { nonSkolems.remove(nonSkolems.size()-1); }
-			} else { // can't skolemize below
-				final int oldDepth = skolemDepth;
-				skolemDepth = -1; 
-				final Formula formula = qf.formula().accept(this);
-				ret = ((newDecls==decls && formula==qf.formula()) ? qf : formula.quantify(quant, newDecls));
-				skolemDepth = oldDepth;
-			}				
+			ret = visit(qf, decls);
 		}	
 		
 		repEnv = oldRepEnv;
@@ -440,6 +533,32 @@ abstract class Skolemizer extends AbstractReplacer {
 		return source(cache(qf,ret), qf);
 	}
 
+	/**
+	 * Visits the given decls, which are either all of qf's declarations or a suffix of them 
+	 * that is not skolemized, and qf's body, treating the decls as non-skolemizable.  
+	 * The body is visited in a context in which skolemization is possible only if 
+	 * the skolem depth is at least as large as the number of non-skolemizable decls
+	 * in the resulting scope.
+	 * @requires decls is a suffix of qf.decls
+	 * @ensures extends the replacement environment with identity mappings for the given decls
+	 * @return decls=qf.decls and nothing changes ? qf : qf.formula.accept(this).quantify(qf.quantifier, this.visit(decls))
+	 */
+	private Formula visit(QuantifiedFormula qf, Decls decls) { 
+		final Decls newDecls = visit(decls);
+		final Formula formula;
+		if (skolemDepth>=nonSkolems.size()+newDecls.size()) { // could skolemize below
+			for(Decl d: newDecls) { nonSkolems.add(new DeclInfo(d)); }
+			formula = qf.formula().accept(this);
+			for(int i = newDecls.size(); i > 0; i--) { nonSkolems.remove(nonSkolems.size()-1); }
+		} else { // can't skolemize below
+			final int oldDepth = skolemDepth;
+			skolemDepth = -1; 
+			formula = qf.formula().accept(this);
+			skolemDepth = oldDepth;
+		}
+		return (newDecls==qf.decls() && formula==qf.formula()) ? qf : formula.quantify(qf.quantifier(), newDecls);
+	}
+
 	/** 
 	 * Calls not.formula.accept(this) after flipping the negation flag and returns the result. 
 	 * @see kodkod.ast.visitor.AbstractReplacer#visit(kodkod.ast.NotFormula)
@@ -32,6 +32,7 @@ import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import kodkod.ast.Formula;
@@ -71,18 +72,20 @@ final class SymmetryBreaker {
 	/**
 	 * Constructs a new symmetry breaker for the given Bounds, and calls 
 	 * the given reporter's {@linkplain Reporter#detectedSymmetries(Set)} method
-	 * with the detected symmetries.
+	 * with the detected symmetries.  Symmetries are detected using up to the
+	 * given number of threads.
 	 * <b>Note that the constructor does not make a local copy of the given
 	 * bounds, so the caller must ensure that all modifications of the
 	 * given bounds are symmetry preserving.</b>  
 	 * @ensures reporter.detectedSymmetries(this.symmteries')
+	 * @requires threads > 0
 	 * @ensures this.bounds' = bounds && this.symmetries' = SymmetryDetector.partition(bounds) && no this.broken'
 	 **/
-	SymmetryBreaker(Bounds bounds, Reporter reporter) {
+	SymmetryBreaker(Bounds bounds, int threads, Reporter reporter) {
 		this.bounds = bounds;
 		this.usize = bounds.universe().size();
 		reporter.detectingSymmetries(bounds);
-		this.symmetries = SymmetryDetector.partition(bounds);
+		this.symmetries = SymmetryDetector.partition(bounds, threads);
 		reporter.detectedSymmetries(symmetries);
 //		System.out.println(symmetries);
 	}
@@ -152,7 +155,8 @@ final class SymmetryBreaker {
 		
 	/**
 	 * Generates a lex leader symmetry breaking predicate for this.symmetries 
-	 * (if any), using the specified leaf interpreter and options.symmetryBreaking.
+	 * (if any), using the specified leaf interpreter and options.symmetryBreaking, 
+	 * options.symmetryBreakingStrategy, and options.symmetryBreakingBudget.
 	 * It also invokes options.reporter().generatingSBP() if a non-constant predicate
 	 * is generated.
 	 * @requires interpreter.relations in this.bounds.relations
@@ -164,6 +168,25 @@ final class SymmetryBreaker {
 		if (symmetries.isEmpty() || predLength==0) return BooleanConstant.TRUE;
 		options.reporter().generatingSBP();
 		
+		final BooleanValue sbp;
+		switch(options.symmetryBreakingStrategy()) {
+		case FIXED_LENGTH : sbp = fixedLengthSBP(interpreter, predLength); break;
+		case ADAPTIVE     : sbp = budgetedSBP(interpreter, options.symmetryBreakingBudget(), false); break;
+		case GENERATORS   : sbp = budgetedSBP(interpreter, options.symmetryBreakingBudget(), true); break;
+		default : throw new AssertionError("unknown symmetry breaking strategy: " + options.symmetryBreakingStrategy());
+		}
+		symmetries.clear(); // no symmetries left to break (this is conservative)
+		return sbp;
+	}
+	
+	/**
+	 * Returns a lex leader symmetry breaking predicate that compares the primary variables 
+	 * under the transposition of each pair of adjacent atoms in each of this.symmetries, 
+	 * up to predLength variables per transposition.
+	 * @requires interpreter.relations in this.bounds.relations
+	 * @return a symmetry breaking predicate for this.symmetries
+	 */
+	private BooleanValue fixedLengthSBP(LeafInterpreter interpreter, int predLength) {
 		final List<RelationParts> relParts = relParts();
 		final BooleanFactory factory = interpreter.factory();
 		final BooleanAccumulator sbp = BooleanAccumulator.treeGate(Operator.AND);
@@ -200,7 +223,75 @@ final class SymmetryBreaker {
 				prevIndex = curIndex;
 			}
 		}
-		symmetries.clear(); // no symmetries left to break (this is conservative)
+		return factory.accumulate(sbp);
+	}
+	
+	/**
+	 * Returns a lex leader symmetry breaking predicate for this.symmetries whose estimated size 
+	 * does not exceed the given number of clauses.  The candidate predicates compare the primary 
+	 * variables under the transpositions of adjacent atoms in each of this.symmetries, if generatorsOnly is 
+	 * true.  Otherwise, they compare the variables under the transpositions of all pairs of atoms in each 
+	 * of this.symmetries, taking nearer pairs first, until there are as many candidates as the budget.  
+	 * The candidates are then extended one comparison at a time, choosing the comparison with the highest ratio 
+	 * of the weight of its variables to its estimated cost in clauses, where the weight of a variable that is 
+	 * already constrained by k chosen comparisons is 1/(k+1). 
+	 * @requires interpreter.relations in this.bounds.relations
+	 * @return a symmetry breaking predicate for this.symmetries
+	 */
+	private BooleanValue budgetedSBP(LeafInterpreter interpreter, int budget, boolean generatorsOnly) {
+		final BooleanFactory factory = interpreter.factory();
+		final List<RelationParts> relParts = relParts();
+		final Occurrences[] occurrences = new Occurrences[relParts.size()];
+		for(int i = 0; i < occurrences.length; i++) { 
+			occurrences[i] = new Occurrences(interpreter.interpret(relParts.get(i).relation), relParts.get(i).relation.arity(), usize);
+		}
+		
+		final List<Transposition> candidates = new ArrayList<Transposition>();
+		final PriorityQueue<Transposition> queue = new PriorityQueue<Transposition>(StrictMath.max(1, usize), new Comparator<Transposition>() {
+			public int compare(Transposition t0, Transposition t1) {
+				if (t0.score != t1.score) return t0.score > t1.score ? -1 : 1;
+				final int lcmp = t0.original.size() - t1.original.size();
+				return lcmp != 0 ? lcmp : t0.id - t1.id;
+			}
+		});
+		final int[] constrained = new int[factory.maxVariable()+1];
+		
+		for(int distance = 1; candidates.size() < budget; distance++) { 
+			boolean added = false;
+			for(IntSet sym : symmetries) { 
+				final int[] atoms = sym.toArray();
+				for(int i = distance; i < atoms.length; i++) { 
+					final Transposition t = new Transposition(candidates.size(), atoms[i-distance], atoms[i], occurrences);
+					candidates.add(t);
+					if (t.advance()) {
+						t.score(constrained);
+						queue.add(t);
+					}
+					added = true;
+				}
+			}
+			if (!added || generatorsOnly) break;
+		}
+		
+		for(int remaining = budget; remaining > 0 && !queue.isEmpty(); ) { 
+			final Transposition t = queue.poll();
+			if (!queue.isEmpty() && t.score(constrained) < queue.peek().score) { // stale score
+				queue.add(t);
+			} else if (t.cost <= remaining) { 
+				remaining -= t.cost;
+				t.accept(constrained);
+				if (t.advance()) { 
+					t.score(constrained);
+					queue.add(t);
+				}
+			}
+		}
+		
+		final BooleanAccumulator sbp = BooleanAccumulator.treeGate(Operator.AND);
+		for(Transposition t : candidates) { 
+			if (!t.original.isEmpty())
+				sbp.add(leq(factory, t.original, t.permuted));
+		}
 		return factory.accumulate(sbp);
 	}
 	
@@ -481,6 +572,145 @@ final class SymmetryBreaker {
 		return colParts;	
 	}
 	
+	/**
+	 * The tuples in the upper bound of a relation's matrix that contain each atom.
+	 * @specfield matrix: BooleanMatrix
+	 * @specfield arity: int
+	 */
+	private static final class Occurrences { 
+		private static final int[] NONE = new int[0];
+		final BooleanMatrix matrix;
+		final int arity;
+		/* tuples[a] holds the indices of the non-FALSE cells of this.matrix whose tuples contain the atom a, in the ascending order */
+		private final int[][] tuples;
+		
+		/**
+		 * Constructs the occurrences of the atoms of a universe of the given size in the non-FALSE 
+		 * cells of the given matrix, which represents a relation of the given arity.
+		 */
+		Occurrences(BooleanMatrix matrix, int arity, int usize) { 
+			this.matrix = matrix;
+			this.arity = arity;
+			this.tuples = new int[usize][];
+			final IntSet indices = matrix.denseIndices();
+			final int[] sizes = new int[usize], atoms = new int[arity];
+			for(int pass = 0; pass < 2; pass++) { 
+				for(IntIterator iter = indices.iterator(); iter.hasNext(); ) { 
+					final int index = iter.next();
+					ATOMS : for(int i = 0, tIndex = index; i < arity; i++, tIndex /= usize) { 
+						final int atom = atoms[i] = tIndex % usize;
+						for(int j = 0; j < i; j++) { 
+							if (atoms[j]==atom) continue ATOMS;
+						}
+						if (pass==0) sizes[atom]++;
+						else tuples[atom][sizes[atom]++] = index;
+					}
+				}
+				for(int atom = 0; atom < usize && pass==0; atom++) { 
+					tuples[atom] = sizes[atom]==0 ? NONE : new int[sizes[atom]];
+					sizes[atom] = 0;
+				}
+			}
+		}
+		
+		/**
+		 * Returns the indices of the non-FALSE cells of this.matrix whose tuples contain the given atom.
+		 * @return the indices of the non-FALSE cells of this.matrix whose tuples contain the given atom
+		 */
+		int[] tuples(int atom) { return tuples[atom]; }
+	}
+	
+	/**
+	 * A candidate lex leader comparison of the primary variables with their images under 
+	 * the transposition of two atoms, and the prefix of the comparison chosen so far.  The 
+	 * variables are compared in the order of this.occurrences, and then of their tuple indices.
+	 * Variables whose tuples are fixed by the transposition, or compared earlier, are skipped.
+	 * @specfield atom0, atom1: int
+	 * @specfield original, permuted: seq BooleanValue // the chosen prefix
+	 * @specfield next0, next1: BooleanValue // the next comparison, if any 
+	 */
+	private final class Transposition { 
+		/* the estimated number of clauses needed to compare two variables, or a variable and a constant */
+		private static final int VARIABLE_COST = 6, CONSTANT_COST = 3;
+		final int id, atom0, atom1;
+		final List<BooleanValue> original, permuted;
+		private final Occurrences[] occurrences;
+		private int rel, pos0, pos1;
+		BooleanValue next0, next1;
+		int cost;
+		double score;
+		
+		Transposition(int id, int atom0, int atom1, Occurrences[] occurrences) { 
+			this.id = id;
+			this.atom0 = atom0;
+			this.atom1 = atom1;
+			this.occurrences = occurrences;
+			this.original = new ArrayList<BooleanValue>();
+			this.permuted = new ArrayList<BooleanValue>();
+		}
+		
+		/**
+		 * Advances this transposition to its next comparison, if any, and returns true if 
+		 * there is such a comparison. 
+		 * @ensures sets this.next0, this.next1, and this.cost to the values of the next comparison, if any
+		 * @return true if there is a next comparison
+		 */
+		boolean advance() { 
+			for(; rel < occurrences.length; rel++, pos0 = 0, pos1 = 0) { 
+				final Occurrences occ = occurrences[rel];
+				final int[] t0 = occ.tuples(atom0), t1 = occ.tuples(atom1);
+				while(pos0 < t0.length || pos1 < t1.length) { 
+					final int index;
+					if (pos1==t1.length || (pos0 < t0.length && t0[pos0] <= t1[pos1])) { 
+						index = t0[pos0++];
+						if (pos1 < t1.length && t1[pos1]==index) pos1++;
+					} else { 
+						index = t1[pos1++];
+					}
+					final int permIndex = permutation(occ.arity, index, atom0, atom1);
+					if (permIndex <= index) continue; // fixed, or compared at permIndex
+					next0 = occ.matrix.get(index);
+					next1 = occ.matrix.get(permIndex);
+					if (next0==next1) continue; // the same constant
+					cost = (next0 instanceof BooleanConstant || next1 instanceof BooleanConstant) ? CONSTANT_COST : VARIABLE_COST;
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * Computes the score of the next comparison, given the number of times that each 
+		 * primary variable has been constrained by the chosen comparisons.
+		 * @return this.score' 
+		 */
+		double score(int[] constrained) { 
+			score = (weight(next0, constrained) + weight(next1, constrained)) / cost;
+			return score;
+		}
+		
+		/**
+		 * Adds the next comparison to the chosen prefix, and records that it constrains its primary variables.
+		 * @ensures this.original' = this.original + this.next0 && this.permuted' = this.permuted + this.next1
+		 */
+		void accept(int[] constrained) { 
+			original.add(next0);
+			permuted.add(next1);
+			if (weight(next0, constrained) > 0) constrained[next0.label()]++;
+			if (weight(next1, constrained) > 0) constrained[next1.label()]++;
+		}
+		
+		/**
+		 * Returns the weight of the given value:  1/(k+1) if it is a primary variable constrained k times, 
+		 * and 0 otherwise.
+		 * @return the weight of the given value
+		 */
+		private double weight(BooleanValue v, int[] constrained) { 
+			final int label = v.label();
+			return label > 0 && label < constrained.length ? 1.0 / (1 + constrained[label]) : 0;
+		}
+	}
+	
 	/**
 	 * An entry for a relation and the representative (least atom) for each
 	 * symmetry class in the relation's upper bound.
@@ -1,5 +1,5 @@
 /* 
- * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ * Kodkod -- Copyright (c) 2005-2012, Emina Torlak
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -26,11 +26,14 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import kodkod.ast.Relation;
 import kodkod.instance.Bounds;
@@ -48,27 +51,35 @@ import kodkod.util.ints.Ints;
  * <code>b.intBound</code> can be expressed as a union of cross-products of sets drawn from 
  * <code>{ s0, ..., sn }</code>. 
  * 
+ * <p>The partition is represented by an array that maps each atom to the index of its part 
+ * (or its colour), and it is refined by each tupleset in turn.  Refinement by a tupleset depends
+ * on the current partition only through the colours of the atoms, so the {@linkplain Signature signature} 
+ * of each tupleset -- i.e. its first column, and the distinct sets of tuples that follow each atom 
+ * in the first column -- is computed independently of the partition.  Signatures of large bounds 
+ * may be computed in parallel.</p>
+ * 
  * @author Emina Torlak
  */
 public final class SymmetryDetector {
-	private final Bounds bounds;
-	/* invariant: representatives always holds a sequence of IntSets that partition bounds.universe */
-	private final List<IntSet> parts;
+	/** The minimum total number of tuples in a set of bounds whose signatures are computed in parallel. */
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+	
 	private final int usize;
+	/* invariant: colour[a] is the part of the atom a, size[c] is the number of atoms in the part c, 
+	 * and the parts are numbered [0..colours) */
+	private final int[] colour, size;
+	private int colours;
 	
 	/**
-	 * Constructs a new SymmetryDetector for the given bounds.
-	 * @ensures this.bounds' = bounds
+	 * Constructs a new SymmetryDetector for a universe of the given size,
+	 * and initializes its partition to the whole universe.
 	 */
-	private SymmetryDetector(Bounds bounds) {
-		this.bounds = bounds;
-		this.usize = bounds.universe().size();
-		
-        //	start with the maximum partition -- the whole universe.
-		this.parts = new LinkedList<IntSet>();
-		final IntSet set = Ints.bestSet(usize);
-		for(int i = 0; i < usize; i++) { set.add(i); }
-		this.parts.add(set);
+	private SymmetryDetector(int usize) {
+		this.usize = usize;
+		this.colour = new int[usize];
+		this.size = new int[usize];
+		this.size[0] = usize;
+		this.colours = 1;
 	}
 	
 	/**
@@ -89,42 +100,112 @@ public final class SymmetryDetector {
 	 *                 ts.tuples = { t: Tuple | some part: decomposition | all i: [0 .. ts.arity-1] | t.atomIndex(i) in part.get(i) })	
 	 */
 	public static Set<IntSet> partition(Bounds bounds) {		
-		final SymmetryDetector detector = new SymmetryDetector(bounds);
-		detector.computePartitions();
-		final Set<IntSet> parts = new LinkedHashSet<IntSet>(detector.parts);
-		assert parts.size()==detector.parts.size(); // sanity check
-		return parts;
+		return partition(bounds, 1);
 	}
-
 	
 	/**
-	 * Partitions this.bounds.universe into sets of equivalent atoms.
-	 * @ensures all disj s, q: this.parts'[int] | 
-	 *           some s.ints && some q.ints && (no s.ints & q.ints) &&
-	 *           this.parts'[int].ints = [0..this.bounds.universe.size()) &&
-	 *           (all ts: this.bounds.lowerBound[Relation] + this.bounds.upperBound[Relation] | 
-	 *             all s: this.parts'[int] | all a1, a2: this.bounds.universe.atoms[s.ints] |
-	 *              all t1, t2: ts.tuples | t1.atoms[0] = a1 && t2.atoms[0] = a2 =>
-	 *                t1.atoms[1..ts.arity) = t1.atoms[1..ts.arity) || 
-	 *                t1.atoms[1..ts.arity) = a1 && t1.atoms[1..ts.arity) = a2)
+	 * Returns the coarsest sound partition of {@code bounds.universe} into symmetry classes, 
+	 * using up to the given number of threads to compute the signatures of large bounds. 
+	 * The parts are returned in the ascending order of their smallest atoms.
+	 * @requires threads > 0
+	 * @return partition(bounds)
+	 * @see #partition(Bounds)
 	 */
-	private final void computePartitions() {
-		if (usize==1) return; // nothing more to do 
+	public static Set<IntSet> partition(Bounds bounds, int threads) { 
+		final int usize = bounds.universe().size();
+		final SymmetryDetector detector = new SymmetryDetector(usize);
+		if (usize > 1) { 
+			for(Signature sig : signatures(bounds, threads)) { 
+				if (detector.colours==usize) break;
+				detector.refine(sig);
+			}
+		}
+		return detector.parts();
+	}
 	
-		final Map<IntSet, IntSet> range2domain = new HashMap<IntSet, IntSet>((usize*2) / 3);
-		
-		// refine the partitions based on the bounds for each integer
+	/**
+	 * Returns the parts of this.partition, in the ascending order of their smallest atoms.
+	 * @return the parts of this.partition, in the ascending order of their smallest atoms
+	 */
+	private Set<IntSet> parts() { 
+		final IntSet[] parts = new IntSet[colours];
+		final Set<IntSet> ret = new LinkedHashSet<IntSet>();
+		for(int atom = 0; atom < usize; atom++) { 
+			IntSet part = parts[colour[atom]];
+			if (part == null) { 
+				part = Ints.bestSet(usize);
+				parts[colour[atom]] = part;
+				ret.add(part);
+			}
+			part.add(atom);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns the signatures of the exact bounds of the integers in the given bounds, followed by the 
+	 * signatures of the unique non-empty tuplesets in the bounds, sorted in the order of increasing size.  
+	 * The signatures are computed using up to the given number of threads. 
+	 * @return signatures of the bounds, in the order in which they are used for refinement
+	 */
+	private static Signature[] signatures(Bounds bounds, int threads) { 
+		final List<TupleSet> sets = new ArrayList<TupleSet>();
 		for(IntIterator iter = bounds.ints().iterator(); iter.hasNext();) {
-			TupleSet exact = bounds.exactBound(iter.next());
-			refinePartitions(exact.indexView(), 1, range2domain);
+			sets.add(bounds.exactBound(iter.next()));
 		}
+		sets.addAll(Arrays.asList(sort(bounds)));
+		
+		final int usize = bounds.universe().size();
+		final TupleSet[] tuples = sets.toArray(new TupleSet[sets.size()]);
+		final Signature[] sigs = new Signature[tuples.length];
 		
-		// refine the partitions based on the upper/lower bounds for each relation
-		for(TupleSet s : sort(bounds)) {
-			if (parts.size()==usize) return;
-			refinePartitions(s.indexView(), s.arity(), range2domain);			
+		long total = 0;
+		for(TupleSet s : tuples) { total += s.size(); }
+		final int workers = StrictMath.min(threads, tuples.length);
+		if (workers < 2 || total < PARALLEL_THRESHOLD) { 
+			for(int i = 0; i < tuples.length; i++) { 
+				sigs[i] = Signature.of(tuples[i].indexView().toArray(), tuples[i].arity(), usize);
+			}
+			return sigs;
 		}
 		
+		final AtomicInteger next = new AtomicInteger(0);
+		final Runnable worker = new Runnable() {
+			public void run() {
+				for(int i = next.getAndIncrement(); i < tuples.length; i = next.getAndIncrement()) { 
+					sigs[i] = Signature.of(tuples[i].indexView().toArray(), tuples[i].arity(), usize);
+				}
+			}
+		};
+		final ExecutorService executor = Executors.newFixedThreadPool(workers);
+		final List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+		Throwable failure = null;
+		boolean interrupted = false;
+		try {
+			for(int i = 0; i < workers; i++) { 
+				futures.add(executor.submit(worker));
+			}
+			for(Future<?> future : futures) { 
+				while(true) {
+					try {
+						future.get();
+						break;
+					} catch (InterruptedException e) { 
+						interrupted = true;
+					} catch (ExecutionException e) { 
+						if (failure==null) failure = e.getCause();
+						break;
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+		
+		if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+		if (failure instanceof Error) throw (Error) failure;
+		return sigs;
 	}
 	
 	/**
@@ -151,108 +232,190 @@ public final class SymmetryDetector {
 	}
 	
 	/**
-	 * Refines the atomic partitions in this.parts based on the contents of the given tupleset, 
-	 * decomposed into its constituent IntSet and arity.  The range2domain map is used for 
-	 * intermediate computations for efficiency (to avoid allocating it in each recursive call). 
-	 * @requires all disj s, q: this.parts[int] | 
-	 *            some s.ints && some q.ints && (no s.ints & q.ints) &&
-	 *            this.parts[int].ints = [0..this.bounds.universe.size())
-	 * @ensures  let usize = this.bounds.universe.size(), firstColFactor = usize^(arit-1) |
-	 *            all disj s, q: this.parts'[int] | 
-	 *             some s.ints && some q.ints && (no s.ints & q.ints) &&
-	 *             this.parts'[int].ints = [0..usize) &&
-	 *             all s: this.parts'[int] | all a1, a2: this.bounds.universe.atoms[s.ints] |
-	 *               all t1, t2: set.ints | t1 / firstColFactor = a1 && t2 / firstColFactor = a2 =>
-	 *                 t1 % firstColFactor = t2 % firstColFactor  || 
-	 *                 t1 = a1*((1 - firstColFactor) / (1 - usize)) && 
-	 *                 t2 = a2*((1 - firstColFactor) / (1 - usize)))
+	 * Refines this partition based on the tuples with the given signature.  The atoms 
+	 * of each part are split into those that are not in the first column of the tuples, 
+	 * and those that are, grouped by the tuples that follow them. The groups that consist of a single atom
+	 * followed only by itself are merged.  The partition is then refined based on each set of 
+	 * following tuples in a group that was not merged.
+	 * @ensures all s: this.parts'[int] | all a1, a2: s.ints | 
+	 *            let d = sig.tuples & a1->univ, e = sig.tuples & a2->univ | 
+	 *             (no d && no e) || (d = a1->a1->...->a1 && e = a2->a2->...->a2) || 
+	 *             (d = a1->(e.(a2->univ)) && d.(a1->univ) is expressible using this.parts') 
 	 */
-	private void refinePartitions(IntSet set, int arity, Map<IntSet, IntSet> range2domain) {
-		if (arity==1) {
-			refinePartitions(set);
-			return;
+	private void refine(Signature sig) { 
+		final int[] atoms = sig.atoms;
+		final int n = atoms.length;
+		if (n==0) return;
+		
+		// order the positions of the atoms by colour, so that the atoms of each part are adjacent
+		final long[] keys = new long[n];
+		for(int x = 0; x < n; x++) { 
+			keys[x] = ((long) colour[atoms[x]] << 32) | x;
 		}
+		Arrays.sort(keys);
 		
-		final List<IntSet> otherColumns = new LinkedList<IntSet>();
-		int firstColFactor = (int) StrictMath.pow(usize, arity-1);
-		IntSet firstCol = Ints.bestSet(usize);
-		for(IntIterator rbIter = set.iterator(); rbIter.hasNext(); ) {
-			firstCol.add(rbIter.next() / firstColFactor);
+		if (sig.arity==1) { 
+			for(int lo = 0, hi; lo < n; lo = hi) { 
+				final int c = (int) (keys[lo] >>> 32);
+				for(hi = lo+1; hi < n && (int) (keys[hi] >>> 32)==c; hi++);
+				if (hi - lo < size[c]) 
+					recolour(atoms, keys, lo, hi, c, colours++);
+			}
+			return;
 		}
-		refinePartitions(firstCol);
 		
-		int idenFactor = (1 - firstColFactor) / (1 - usize);
-		for(ListIterator<IntSet> partsIter = parts.listIterator(); partsIter.hasNext(); ) {
-			IntSet part = partsIter.next();
-			if (firstCol.contains(part.min())) { // contains one, contains them all
-				range2domain.clear();
-				for(IntIterator atoms = part.iterator(); atoms.hasNext(); ) {
-					int atom = atoms.next();
-					IntSet atomRange = Ints.bestSet(firstColFactor);
-					for(IntIterator rbIter = set.iterator(atom*firstColFactor, (atom+1)*firstColFactor - 1); 
-					rbIter.hasNext(); ) {
-						atomRange.add(rbIter.next() % firstColFactor);
-					}
-					IntSet atomDomain = range2domain.get(atomRange);
-					if (atomDomain != null) atomDomain.add(atom);
-					else range2domain.put(atomRange, oneOf(usize, atom));
+		final int ranges = sig.ranges.length;
+		final int[] group = new int[ranges], groupSize = new int[ranges], groupRange = new int[ranges], groupAtom = new int[ranges], groupColour = new int[ranges];
+		final boolean[] refined = new boolean[ranges];
+		final List<Signature> rest = new ArrayList<Signature>();
+		Arrays.fill(group, -1);
+		
+		for(int lo = 0, hi; lo < n; lo = hi) { 
+			final int c = (int) (keys[lo] >>> 32);
+			for(hi = lo+1; hi < n && (int) (keys[hi] >>> 32)==c; hi++);
+			
+			// group the atoms of this part by their ranges
+			int groups = 0;
+			for(int x = lo; x < hi; x++) { 
+				final int r = sig.rangeOf[(int) keys[x]];
+				if (group[r] < 0) { 
+					groupRange[groups] = r;
+					groupAtom[groups] = atoms[(int) keys[x]];
+					groupSize[groups] = 0;
+					group[r] = groups++;
 				}
-				partsIter.remove();
-				IntSet idenPartition = Ints.bestSet(usize);
-				for(Map.Entry<IntSet, IntSet> entry : range2domain.entrySet()) {
-					if (entry.getValue().size()==1 && entry.getKey().size()==1 &&
-						entry.getKey().min() == entry.getValue().min() * idenFactor) {
-						idenPartition.add(entry.getValue().min());
-					} else {
-						partsIter.add(entry.getValue());
-						otherColumns.add(entry.getKey());
+				groupSize[group[r]]++;
+			}
+			
+			// colour each group:  the first group keeps c if all atoms of the part are in the first column,  
+			// and the groups that consist of a single atom followed only by itself share a colour
+			int iden = -1;
+			boolean keep = hi - lo == size[c];
+			for(int g = 0; g < groups; g++) { 
+				final int r = groupRange[g];
+				final int d;
+				if (groupSize[g]==1 && sig.diagonal[r]==groupAtom[g]) { 
+					if (iden < 0) iden = keep ? c : colours++;
+					d = iden;
+				} else { 
+					d = keep ? c : colours++;
+					if (!refined[r]) { 
+						refined[r] = true;
+						rest.add(sig.ranges[r]);
 					}
 				}
-				if (!idenPartition.isEmpty())
-					partsIter.add(idenPartition);			
+				keep &= d != c;
+				groupColour[g] = d;
+			}
+			
+			size[c] -= hi - lo;
+			for(int x = lo; x < hi; x++) { 
+				final int d = groupColour[group[sig.rangeOf[(int) keys[x]]]];
+				colour[atoms[(int) keys[x]]] = d;
+				size[d]++;
+			}
+			for(int g = 0; g < groups; g++) { 
+				group[groupRange[g]] = -1;
 			}
 		}
 		
-		// refine based on the remaining columns
-		for(IntSet otherCol : otherColumns) {
-			refinePartitions(otherCol, arity-1, range2domain);
+		for(Signature range : rest) { 
+			if (colours==usize) return;
+			refine(range);
 		}
 	}
 	
 	/**
-	 * Refines the atomic partitions this.parts based on the contents of the given set.
-	 * @requires all disj s, q: this.parts[int] | 
-	 *            some s.ints && some q.ints && (no s.ints & q.ints) &&
-	 *            this.parts[int].ints = [0..this.bounds.universe.size())
-	 * @ensures  all disj s, q: this.parts'[int] | 
-	 *            some s.ints && some q.ints && (no s.ints & q.ints) &&
-	 *            this.parts'[int].ints = [0..this.bounds.universe.size()) &&
-	 *            (all i: [0..this.parts'.size()) | 
-	 *             this.parts'[i].ints in set.ints || no this.parts'[i].ints & set.ints)
+	 * Moves the atoms at the positions keys[lo..hi) from the part c to the part d.
+	 * @ensures colour'[atoms[keys[lo..hi)]] = d && size'[c] = size[c] - (hi - lo) && size'[d] = size[d] + (hi - lo)
 	 */
-	private void refinePartitions(IntSet set) {
-		for(ListIterator<IntSet> partsIter = parts.listIterator(); partsIter.hasNext(); ) {
-			IntSet part = partsIter.next();
-			IntSet intersection = Ints.bestSet(part.min(), part.max());
-			intersection.addAll(part);
-			intersection.retainAll(set);
-			if (!intersection.isEmpty() && intersection.size() < part.size()) {
-				part.removeAll(intersection);
-				partsIter.add(intersection);
+	private void recolour(int[] atoms, long[] keys, int lo, int hi, int c, int d) { 
+		for(int x = lo; x < hi; x++) { 
+			colour[atoms[(int) keys[x]]] = d;
+		}
+		size[c] -= hi - lo;
+		size[d] += hi - lo;
+	}
+	
+	/**
+	 * The signature of a set of tuples of a given arity:  the atoms in its first column, and 
+	 * the distinct sets of tuples that follow those atoms, each with its own signature.
+	 * @specfield arity: int
+	 * @specfield tuples: set [0..usize^arity)
+	 */
+	private static final class Signature { 
+		final int arity;
+		/** the atoms in the first column of this.tuples, in the ascending order */
+		final int[] atoms;
+		/** rangeOf[x] is the index of the range of atoms[x], if arity > 1 */
+		final int[] rangeOf;
+		/** ranges[r] is the signature of the r-th distinct range, if arity > 1 */
+		final Signature[] ranges;
+		/** diagonal[r] is the atom a such that ranges[r] = a->a->...->a, or -1 if there is no such atom */
+		final int[] diagonal;
+		
+		private Signature(int arity, int[] atoms, int[] rangeOf, Signature[] ranges, int[] diagonal) { 
+			this.arity = arity;
+			this.atoms = atoms;
+			this.rangeOf = rangeOf;
+			this.ranges = ranges;
+			this.diagonal = diagonal;
+		}
+		
+		/**
+		 * Returns the signature of the given tuples of the given arity, drawn from a universe of the given size.
+		 * @requires tuples are sorted in the ascending order
+		 * @return { s: Signature | s.arity = arity && s.tuples = tuples[int] }
+		 */
+		static Signature of(int[] tuples, int arity, int usize) { 
+			if (arity==1) 
+				return new Signature(1, tuples, null, null, null);
+			
+			final int factor = (int) StrictMath.pow(usize, arity-1), idenFactor = (1 - factor) / (1 - usize);
+			final Map<Range, Integer> ids = new HashMap<Range, Integer>();
+			final List<int[]> distinct = new ArrayList<int[]>();
+			final int[] atoms = new int[tuples.length], rangeOf = new int[tuples.length];
+			int n = 0;
+			for(int lo = 0, hi; lo < tuples.length; lo = hi) { 
+				final int atom = tuples[lo] / factor;
+				for(hi = lo+1; hi < tuples.length && tuples[hi] / factor==atom; hi++);
+				final int[] range = new int[hi - lo];
+				for(int x = lo; x < hi; x++) { range[x - lo] = tuples[x] % factor; }
+				final Range key = new Range(range);
+				Integer id = ids.get(key);
+				if (id == null) { 
+					id = distinct.size();
+					ids.put(key, id);
+					distinct.add(range);
+				}
+				atoms[n] = atom;
+				rangeOf[n++] = id;
+			}
+			
+			final Signature[] ranges = new Signature[distinct.size()];
+			final int[] diagonal = new int[ranges.length];
+			for(int r = 0; r < ranges.length; r++) { 
+				final int[] range = distinct.get(r);
+				ranges[r] = of(range, arity-1, usize);
+				diagonal[r] = range.length==1 && range[0] % idenFactor==0 ? range[0] / idenFactor : -1;
 			}
+			return new Signature(arity, Arrays.copyOf(atoms, n), Arrays.copyOf(rangeOf, n), ranges, diagonal);
 		}
 	}
 	
 	/**
-	 * Returns an IntSet that can store elements
-	 * in the range [0..size), and that holds
-	 * the given number.
-	 * @requries 0 <= num < size
-	 * @return {s: IntSet | s.ints = num } 
+	 * A sorted array of tuples, compared by value.
 	 */
-	private static final IntSet oneOf(int size, int num) {
-		final IntSet set = Ints.bestSet(size);
-		set.add(num);
-		return set;
+	private static final class Range { 
+		final int[] tuples;
+		final int hash;
+		Range(int[] tuples) { 
+			this.tuples = tuples;
+			this.hash = Ints.superFastHash(tuples);
+		}
+		public int hashCode() { return hash; }
+		public boolean equals(Object o) { 
+			return o instanceof Range && Arrays.equals(tuples, ((Range) o).tuples);
+		}
 	}
 }
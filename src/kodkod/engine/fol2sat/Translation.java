@@ -21,9 +21,12 @@
  */
 package kodkod.engine.fol2sat;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import kodkod.ast.Formula;
 import kodkod.ast.Relation;
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.config.Options;
@@ -32,9 +35,11 @@ import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
+import kodkod.util.ints.ArrayIntVector;
 import kodkod.util.ints.IndexedEntry;
 import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntVector;
 import kodkod.util.ints.Ints;
 
 /**
@@ -68,6 +73,7 @@ public abstract class Translation {
 
 	private final Bounds bounds;
 	private final Options options;
+	private TranslationProfile profile;
 	
 	/**
 	 * Creates a translation using the given bounds and options.   
@@ -92,6 +98,20 @@ public abstract class Translation {
 	 */
 	public final Options options() { return options; }
 	
+	/**
+	 * Returns the profile of the phases that produced this translation, or null 
+	 * if this translation was not profiled.  Translations retrieved from a 
+	 * {@linkplain TranslationCache} and incremental updates are not profiled.
+	 * @return the profile of the phases that produced this translation, if any
+	 */
+	public final TranslationProfile profile() { return profile; }
+	
+	/**
+	 * Sets the profile of this translation.
+	 * @ensures this.profile' = profile
+	 */
+	final void setProfile(TranslationProfile profile) { this.profile = profile; }
+	
 	/** 
 	 * Returns the set of primary variables that represent
 	 * the tuples in the given relation.  If no variables were allocated
@@ -272,7 +292,23 @@ public abstract class Translation {
 	 * {@link Translator} class.
 	 * </p>
 	 * 
+	 * <p>
+	 * A retractable incremental translation additionally guards the translation of each formula with a fresh 
+	 * activation variable, which is not used to represent any relation:  the CNF encodes {@code a => f} 
+	 * rather than {@code f}.  A formula is enforced only when its activation literal is passed to an 
+	 * {@linkplain kodkod.engine.satlab.SATAssumptionSolver assumption solver} as an assumption, and it is 
+	 * permanently retracted by adding the negation of the activation literal as a unit clause.  Retractable 
+	 * translations do not break symmetries using the total order and acyclicity predicates in their formulas, 
+	 * since a formula may later be retracted.  Their symmetry breaking predicate is guarded by an activation 
+	 * variable of its own, since later bounds may narrow relations in ways that split the symmetry classes 
+	 * of the original bounds; it is enforced only by {@linkplain #symmetryAssumption(Bounds) assumption}. 
+	 * </p>
+	 * 
 	 * @specfield symmetries: set IntSet  // partition of the universe into equivalence classes induced this.originalBounds
+	 * @specfield retractable: boolean // true if the translation of each formula is guarded by an activation variable
+	 * @specfield activation: int // activation variable of the most recently translated formula, or 0 if that formula has no guard
+	 * @specfield symmetryActivation: int // activation variable of the symmetry breaking predicate, or 0 if it has no guard
+	 * @specfield deferred: seq Formula // top-level universally quantified formulas whose instances are added on demand
 	 *
 	 * @invariant this.options.logTranslation = 0 && this.options.solver.incremental()
 	 * @invariant this.symmetries = {@linkplain SymmetryDetector#partition(Bounds) partition}(this.originalBounds)	
@@ -298,6 +334,11 @@ public abstract class Translation {
 		 */
 		private final Bool2CNFTranslator incrementer;
 		private final Set<IntSet> symmetries;
+		private final boolean retractable;
+		private int activation;
+		private int symmetryActivation;
+		/* top-level universally quantified formulas whose instances are added on demand */
+		private List<Formula> deferred;
 		
 		/**
 		 * Creates an Incremental translation using the given bounds, options, symmetries of the original bounds, 
@@ -306,14 +347,22 @@ public abstract class Translation {
 		 * @requires options.logTranslation = 0 && options.solver.incremental()
 		 * @requires translator.solver was constructed by calling options.solver.instance()
 		 * @requires all s : SymmetryDetector.partition(bounds) | some p : originalSymmetries | s.ints in p.ints
+		 * @requires retractable => options.solver.assumptions()
+		 * @requires activation != 0 => retractable && activation in this.solver.variables
 		 * @ensures this.bounds' = bounds && this.options' = options  && this.symmetries' = originalSymmetries &&
-		 *         this.incrementer' = incrementer  && this.interpreter' = interpreter
+		 *         this.incrementer' = incrementer  && this.interpreter' = interpreter && 
+		 *         this.retractable' = retractable && this.activation' = activation
 		 */
-		Incremental(Bounds bounds, Options options, Set<IntSet> originalSymmetries, LeafInterpreter interpreter, Bool2CNFTranslator translator) {
+		Incremental(Bounds bounds, Options options, Set<IntSet> originalSymmetries, LeafInterpreter interpreter, Bool2CNFTranslator translator, 
+				boolean retractable, int activation) {
 			super(bounds, options);
 			this.interpreter = interpreter;
 			this.incrementer = translator;
 			this.symmetries = originalSymmetries;
+			this.retractable = retractable;
+			this.activation = activation;
+			this.symmetryActivation = 0;
+			this.deferred = Collections.emptyList();
 		}
 		
 		/**
@@ -322,6 +371,118 @@ public abstract class Translation {
 		 */
 		Set<IntSet> symmetries() { return symmetries; }
 		
+		/**
+		 * Returns true if the translation of each formula added to this translation 
+		 * is guarded by an activation variable.
+		 * @return this.retractable
+		 */
+		public boolean retractable() { return retractable; }
+		
+		/**
+		 * Returns the activation variable that guards the translation of the most recently
+		 * translated formula, or 0 if that formula is unguarded.  The latter is the case if 
+		 * this translation is not retractable or if the formula was translated to TRUE. 
+		 * @return this.activation
+		 */
+		public int activation() { return activation; }
+		
+		/**
+		 * Sets this.activation to the given value.
+		 * @requires activation != 0 => this.retractable && activation in this.solver.variables
+		 * @ensures this.activation' = activation
+		 */
+		void setActivation(int activation) { this.activation = activation; }
+		
+		/**
+		 * Returns the activation variable that guards the symmetry breaking predicate of this 
+		 * translation, or 0 if the predicate is unguarded.  The latter is the case if this 
+		 * translation is not retractable or if it breaks no symmetries.
+		 * @return this.symmetryActivation
+		 */
+		int symmetryActivation() { return symmetryActivation; }
+		
+		/**
+		 * Sets this.symmetryActivation to the given value.
+		 * @requires symmetryActivation != 0 => this.retractable && symmetryActivation in this.solver.variables
+		 * @ensures this.symmetryActivation' = symmetryActivation
+		 */
+		void setSymmetryActivation(int symmetryActivation) { this.symmetryActivation = symmetryActivation; }
+		
+		/**
+		 * Returns the literal that enforces the symmetry breaking predicate of this translation 
+		 * when passed as an assumption, provided that this.bounds, with the relations in {@code narrowed} 
+		 * rebound to their narrowed bounds, induce a coarser set of equivalence classes on the universe 
+		 * than this.symmetries.  Otherwise returns 0, since the predicate could eliminate solutions 
+		 * that lie within the narrowed bounds.
+		 * @requires narrowed.relations in this.bounds.relations && narrowed.universe = this.bounds.universe
+		 * @return this.symmetryActivation != 0 && 
+		 *         (all s: this.symmetries | some p: SymmetryDetector.partition(this.bounds ++ narrowed) | s.ints in p.ints) => 
+		 *         this.symmetryActivation else 0
+		 */
+		public int symmetryAssumption(Bounds narrowed) {
+			if (symmetryActivation == 0) 
+				return 0;
+			final Bounds current = bounds().clone();
+			for(Relation r : narrowed.relations()) { 
+				current.bound(r, narrowed.lowerBound(r), narrowed.upperBound(r));
+			}
+			final Set<IntSet> parts = SymmetryDetector.partition(current, options().translationThreads());
+			EQUIV_CHECK : for(IntSet part : symmetries) {
+				for(IntSet p : parts) {
+					if (p.containsAll(part))
+						continue EQUIV_CHECK;
+				}
+				return 0;
+			}
+			return symmetryActivation;
+		}
+		
+		/**
+		 * Returns the top-level universally quantified formulas whose instances are not 
+		 * translated up front, but added to this translation on demand.
+		 * @return this.deferred
+		 * @see Translator#translateLazily(Formula, kodkod.instance.Bounds, kodkod.engine.config.Options, int)
+		 */
+		List<Formula> deferred() { return deferred; }
+		
+		/**
+		 * Sets this.deferred to the given formulas.
+		 * @ensures this.deferred' = deferred
+		 */
+		void setDeferred(List<Formula> deferred) { this.deferred = deferred; }
+		
+		/**
+		 * Returns the literals over the primary variables of the given relation that restrict 
+		 * its value to lie between the given lower and upper bounds.  The returned literals are meant to be 
+		 * used as {@linkplain kodkod.engine.satlab.SATAssumptionSolver#solve(int[]) assumptions}, 
+		 * which narrow the bounds of {@code r} for a single call to the solver without re-translation.  
+		 * @requires r in this.bounds.relations
+		 * @requires this.bounds.lowerBound[r] in lower && lower in upper && upper in this.bounds.upperBound[r]
+		 * @return { lits: int[] | all i: [0..lits.length) | 
+		 *            (lits[i] > 0 => the tuple represented by lits[i] is in lower - this.bounds.lowerBound[r]) &&
+		 *            (lits[i] < 0 => the tuple represented by -lits[i] is in this.bounds.upperBound[r] - upper) && 
+		 *            #lits = #(lower - this.bounds.lowerBound[r]) + #(this.bounds.upperBound[r] - upper) } 
+		 */
+		public int[] assumptions(Relation r, TupleSet lower, TupleSet upper) {
+			final IntSet vars = primaryVariables(r);
+			if (vars.isEmpty()) 
+				return new int[0];
+			final IntSet tLower = bounds().lowerBound(r).indexView();
+			final IntSet lIndices = lower.indexView(), uIndices = upper.indexView();
+			final IntVector lits = new ArrayIntVector();
+			int lit = vars.min();
+			for(IntIterator iter = bounds().upperBound(r).indexView().iterator(); iter.hasNext();) {
+				final int index = iter.next();
+				if (tLower.contains(index)) continue;
+				if (lIndices.contains(index)) 
+					lits.add(lit);
+				else if (!uIndices.contains(index)) 
+					lits.add(-lit);
+				lit++;
+			}
+			return lits.toArray();
+		}
+		
 		/**
 		 * Returns this.interpreter.
 		 * @return this.interpreter
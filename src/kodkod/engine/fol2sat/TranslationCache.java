@@ -0,0 +1,991 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import kodkod.ast.BinaryExpression;
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.BinaryIntExpression;
+import kodkod.ast.ComparisonFormula;
+import kodkod.ast.ConstantExpression;
+import kodkod.ast.ConstantFormula;
+import kodkod.ast.Decl;
+import kodkod.ast.Decls;
+import kodkod.ast.ExprToIntCast;
+import kodkod.ast.Formula;
+import kodkod.ast.IntComparisonFormula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntToExprCast;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.NaryExpression;
+import kodkod.ast.NaryFormula;
+import kodkod.ast.NaryIntExpression;
+import kodkod.ast.Node;
+import kodkod.ast.ProjectExpression;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.Relation;
+import kodkod.ast.RelationPredicate;
+import kodkod.ast.UnaryExpression;
+import kodkod.ast.UnaryIntExpression;
+import kodkod.ast.Variable;
+import kodkod.ast.visitor.AbstractVoidVisitor;
+import kodkod.engine.AbortedException;
+import kodkod.engine.CancellationToken;
+import kodkod.engine.config.Options;
+import kodkod.engine.satlab.SATAssumptionSolver;
+import kodkod.engine.satlab.SATBatchSolver;
+import kodkod.engine.satlab.SATFactory;
+import kodkod.engine.satlab.SATInterruptibleSolver;
+import kodkod.engine.satlab.SATSolver;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.util.ints.ArrayIntSet;
+import kodkod.util.ints.ArrayIntVector;
+import kodkod.util.ints.IndexedEntry;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+
+/**
+ * A bounded, least-recently-used cache of {@linkplain Translation.Whole whole translations}, 
+ * optionally backed by a directory of translation files.  
+ * A cache is enabled by passing it to {@link Options#setTranslationCache(TranslationCache)}, 
+ * after which {@link Translator#translate(Formula, Bounds, Options)} looks up each (formula, bounds, options) 
+ * triple in the cache before translating it.  
+ * 
+ * <p>Entries are keyed by a fingerprint of the problem that is insensitive to the identity of the 
+ * relations, variables and atoms involved in it.  The fingerprint of a formula captures its structure (including 
+ * node sharing) up to a consistent renaming of its relations and variables;  the fingerprint of a bounds object 
+ * captures the size of its universe, the indices of the lower and upper bounds of the relations in the formula, and 
+ * the indices of its integer bounds.  The options that affect the meaning of a translation (symmetry breaking, 
+ * sharing, skolem depth, bitwidth and integer encoding) are part of the fingerprint as well.  Two problems 
+ * with the same fingerprint therefore have the same CNF encoding, modulo the names of relations and atoms.  On a 
+ * hit, the cached CNF is replayed into a fresh solver obtained from the caller's options, and the cached 
+ * bounds and variable mapping are transferred onto the caller's relations and universe.  The returned 
+ * translation is thus indistinguishable from the one that {@link Translator} would have produced, except that 
+ * the skolem constants (if any) are shared with the cached translation.</p>
+ * 
+ * <p>Because skolem constants are not part of the caller's problem, they cannot be renamed onto it:  all 
+ * problems that hit the same entry share the same skolem {@link Relation} objects, and the solutions to 
+ * those problems bind them to (possibly different) values.  Clients that tell problems apart by the 
+ * identity of their skolem relations, or that keep the skolems of one problem as leaves of another, must 
+ * not use a cache.</p>
+ * 
+ * <p>A hit skips the translation phases that produce a circuit, along with their reporter callbacks, 
+ * but not the cancellation checks:  the caller's {@linkplain Options#cancellation() cancellation token} is 
+ * checked before and after the clauses are replayed, and {@link kodkod.engine.config.Reporter#translatingToCNF(kodkod.engine.bool.BooleanFormula) 
+ * reporter.translatingToCNF} is called with a null circuit before they are replayed.  As after a full translation, 
+ * {@link kodkod.engine.config.Reporter#solvingCNF(int, int, int) reporter.solvingCNF} is called by the 
+ * solver that requested the translation.</p>
+ * 
+ * <p>The cache stores the clauses of each translation, so its footprint is roughly proportional to the 
+ * size of the cached CNFs.  Once the estimated footprint exceeds the budget given at construction time, the 
+ * least recently used entries are evicted.  A translation whose estimated size exceeds the budget on its own is 
+ * never kept in memory.  Translations that are {@linkplain Options#logTranslation() logged} are never cached.
+ * A cache is safe for use by multiple threads.</p>
+ * 
+ * <p>If the cache is backed by a directory, each translation is also written to a file in that directory, 
+ * named after the hash of its fingerprint, and a lookup that misses in memory is answered from the matching 
+ * file, if any.  This allows translations to be reused across runs.  A translation file consists of 
+ * big-endian 32-bit integers:  a magic number, the length and contents of the encoded fingerprint, the number of 
+ * primary and total variables, the bounds and primary variables of each relation in the translation, and the 
+ * zero-terminated clauses.  Files are memory-mapped when read, so the clauses are fed to the solver directly 
+ * from the mapped region, without being parsed into an intermediate representation first.  I/O errors 
+ * never surface to the caller:  a file that cannot be read, or that is malformed, is deleted and the problem 
+ * is translated from scratch, and a translation that cannot be written is simply not persisted.</p>
+ * 
+ * @specfield maxBytes: long // the memory budget of this cache
+ * @specfield directory: lone File // directory in which translations are persisted, if any
+ * @specfield entries: Fingerprint -> lone Translation.Whole
+ * @specfield hits, misses: long
+ * @author Emina Torlak
+ */
+public final class TranslationCache {
+	private static final int MAGIC = 0x4B4B5431; // "KKT1"
+	private static final String SUFFIX = ".kkt";
+	private static final int REPLAY_BATCH = 1 << 16; // number of literals replayed into a solver per batch
+	
+	private final long maxBytes;
+	private final File directory;
+	private final LinkedHashMap<List<Object>, Entry> entries;
+	private long bytes, hits, misses;
+	
+	/**
+	 * Constructs an empty in-memory translation cache with the given memory budget.
+	 * @ensures this.maxBytes' = maxBytes && no this.directory' && no this.entries' && this.hits' = this.misses' = 0
+	 * @throws IllegalArgumentException  maxBytes < 0
+	 */
+	public TranslationCache(long maxBytes) {
+		this(maxBytes, null);
+	}
+	
+	/**
+	 * Constructs an empty translation cache with the given memory budget, 
+	 * which persists its translations in the given directory.  If the directory is null, 
+	 * the cache is not persisted.  
+	 * @ensures this.maxBytes' = maxBytes && this.directory' = directory && no this.entries' && 
+	 *          this.hits' = this.misses' = 0
+	 * @throws IllegalArgumentException  maxBytes < 0
+	 * @throws IllegalArgumentException  directory is not null and it does not denote a directory
+	 */
+	public TranslationCache(long maxBytes, File directory) {
+		if (maxBytes < 0) throw new IllegalArgumentException("maxBytes < 0: " + maxBytes);
+		if (directory!=null && !directory.isDirectory()) 
+			throw new IllegalArgumentException("not a directory: " + directory);
+		this.maxBytes = maxBytes;
+		this.directory = directory;
+		this.entries = new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true);
+		this.bytes = this.hits = this.misses = 0;
+	}
+	
+	/**
+	 * Returns the memory budget of this cache, in bytes.
+	 * @return this.maxBytes
+	 */
+	public long maxBytes() { return maxBytes; }
+	
+	/**
+	 * Returns the directory in which this cache persists its translations, if any.
+	 * @return this.directory
+	 */
+	public File directory() { return directory; }
+	
+	/**
+	 * Returns the estimated number of bytes taken up by the entries in this cache.
+	 * @return estimated number of bytes taken up by this.entries
+	 */
+	public synchronized long bytes() { return bytes; }
+	
+	/**
+	 * Returns the number of entries in this cache.
+	 * @return #this.entries
+	 */
+	public synchronized int size() { return entries.size(); }
+	
+	/**
+	 * Returns the number of lookups that were answered from this cache.
+	 * @return this.hits
+	 */
+	public synchronized long hits() { return hits; }
+	
+	/**
+	 * Returns the number of lookups that could not be answered from this cache.
+	 * @return this.misses
+	 */
+	public synchronized long misses() { return misses; }
+	
+	/**
+	 * Removes all entries from the memory of this cache.  The hit and miss counts 
+	 * and the contents of this.directory are not affected.
+	 * @ensures no this.entries'
+	 */
+	public synchronized void clear() { 
+		entries.clear();
+		bytes = 0;
+	}
+	
+	/**
+	 * Returns a string representation of this cache.
+	 * @return a string representation of this cache.
+	 */
+	public synchronized String toString() { 
+		return "TranslationCache(entries: " + entries.size() + ", bytes: " + bytes + "/" + maxBytes + 
+				", hits: " + hits + ", misses: " + misses + (directory==null ? "" : ", directory: " + directory) + ")";
+	}
+	
+	/**
+	 * Returns the entry for the given key, if any, and increments the hit count if there is one.
+	 * @return this.entries[key]
+	 */
+	private synchronized Entry lookup(List<Object> key) { 
+		final Entry entry = entries.get(key);
+		if (entry!=null) hits++;
+		return entry;
+	}
+	
+	/**
+	 * Adds the given entry to this cache, increments the hit or miss count depending on the 
+	 * value of the given flag, and evicts least recently used entries until the 
+	 * footprint of this cache is within its budget.
+	 * @ensures entry.bytes <= this.maxBytes => this.entries'[key] = entry
+	 */
+	private synchronized void store(List<Object> key, Entry entry, boolean hit) { 
+		if (hit) hits++;
+		else misses++;
+		if (entry.bytes > maxBytes) return;
+		final Entry old = entries.put(key, entry);
+		if (old!=null) bytes -= old.bytes;
+		bytes += entry.bytes;
+		for(Iterator<Entry> itr = entries.values().iterator(); bytes > maxBytes && itr.hasNext(); ) { 
+			bytes -= itr.next().bytes;
+			itr.remove();
+		}
+	}
+	
+	/**
+	 * Returns a whole translation of the given formula with respect to the given bounds and options.  
+	 * If this cache contains a translation of an equivalent problem, the result is obtained from the 
+	 * cached translation.  Otherwise, the problem is translated and its translation is added to the cache.
+	 * @requires options.logTranslation = 0
+	 * @return some t: Translation.Whole |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options
+	 * @see Translator#translate(Formula, Bounds, Options)
+	 */
+	Translation.Whole translate(Formula formula, Bounds bounds, Options options) {
+		final Fingerprint fingerprint = new Fingerprint(options);
+		formula.accept(fingerprint);
+		final List<Object> key = fingerprint.key(bounds);
+		
+		final Entry cached = lookup(key);
+		if (cached!=null) 
+			return cached.translation(fingerprint.relations, bounds, options);
+		
+		final int[] code = directory==null ? null : Fingerprint.encode(key);
+		final File file = directory==null ? null : new File(directory, Fingerprint.hash(code) + SUFFIX);
+		if (file!=null && file.isFile()) { 
+			Entry loaded;
+			try { 
+				loaded = Entry.read(file, code);
+			} catch (IOException e) { // unreadable or corrupt:  discard the file and translate from scratch
+				file.delete();
+				loaded = null;
+			}
+			if (loaded!=null) { 
+				store(key, loaded, true);
+				return loaded.translation(fingerprint.relations, bounds, options);
+			}
+		}
+		
+		final Recorder recorder = new Recorder(options.solver());
+		final Translation.Whole translation = Translator.translate(formula, bounds, options, recorder);
+		final Recorder.Solver cnf = (Recorder.Solver) translation.cnf();
+		final Entry entry = new Entry(fingerprint.relations, bounds, translation, cnf);
+		store(key, entry, false);
+		if (file!=null) { 
+			try { 
+				entry.write(file, code);
+			} catch (IOException e) { // the translation is still usable; it just won't be persisted
+				file.delete();
+			}
+		}
+		final Map<Relation, IntSet> varUsage = new IdentityHashMap<Relation, IntSet>();
+		for(Relation r : translation.bounds().relations()) { 
+			final IntSet vars = translation.primaryVariables(r);
+			if (!vars.isEmpty()) varUsage.put(r, vars);
+		}
+		return new Translation.Whole(translation.bounds(), options, cnf.solver, varUsage, translation.numPrimaryVariables(), null);
+	}
+	
+	/**
+	 * A cached translation.  The relations bound by a cached translation are represented 
+	 * either by their position in the canonical sequence of relations computed by a {@link Fingerprint}, 
+	 * or, in the case of skolem constants, by the relations themselves.  
+	 * @specfield slots: seq (int + Relation) // canonical index or skolem constant for each bound relation
+	 * @specfield lower, upper, vars: slots -> IntSet 
+	 * @specfield maxPrimaryVar, numVars: int
+	 * @specfield clauses: seq int // zero-terminated clauses of the translation
+	 * @author Emina Torlak
+	 */
+	private static final class Entry { 
+		final int[] canonical;
+		final Relation[] skolems;
+		final IntSet[] lower, upper, vars;
+		final int maxPrimaryVar, numVars;
+		final IntBuffer clauses;
+		final long bytes;
+		
+		/**
+		 * Creates an entry with the given contents.
+		 */
+		private Entry(int[] canonical, Relation[] skolems, IntSet[] lower, IntSet[] upper, IntSet[] vars, 
+				int maxPrimaryVar, int numVars, IntBuffer clauses, long bytes) { 
+			this.canonical = canonical;
+			this.skolems = skolems;
+			this.lower = lower;
+			this.upper = upper;
+			this.vars = vars;
+			this.maxPrimaryVar = maxPrimaryVar;
+			this.numVars = numVars;
+			this.clauses = clauses;
+			this.bytes = bytes;
+		}
+		
+		/**
+		 * Creates an entry for the given translation of a formula with the given canonical relations 
+		 * and original bounds.
+		 */
+		Entry(List<Relation> relations, Bounds original, Translation.Whole translation, Recorder.Solver cnf) { 
+			final Map<Relation, Integer> index = new IdentityHashMap<Relation, Integer>();
+			for(int i = 0, max = relations.size(); i < max; i++) { 
+				index.put(relations.get(i), i);
+			}
+			final Bounds bounds = translation.bounds();
+			final Set<Relation> originals = original.relations();
+			final List<Relation> slots = new ArrayList<Relation>(bounds.relations().size());
+			for(Relation r : bounds.relations()) { 
+				if (index.containsKey(r) || !originals.contains(r)) 
+					slots.add(r);
+			}
+			final int size = slots.size();
+			this.canonical = new int[size];
+			this.skolems = new Relation[size];
+			this.lower = new IntSet[size];
+			this.upper = new IntSet[size];
+			this.vars = new IntSet[size];
+			long bytes = 0;
+			for(int i = 0; i < size; i++) { 
+				final Relation r = slots.get(i);
+				final Integer idx = index.get(r);
+				canonical[i] = idx==null ? -1 : idx;
+				skolems[i] = idx==null ? r : null;
+				lower[i] = new ArrayIntSet(bounds.lowerBound(r).indexView());
+				upper[i] = new ArrayIntSet(bounds.upperBound(r).indexView());
+				vars[i] = translation.primaryVariables(r);
+				bytes += (lower[i].size() + upper[i].size() + vars[i].size() + 8) << 2;
+			}
+			this.maxPrimaryVar = translation.numPrimaryVariables();
+			this.numVars = cnf.numberOfVariables();
+			this.clauses = IntBuffer.wrap(cnf.clauses());
+			this.bytes = bytes + (clauses.capacity() << 2);
+		}
+		
+		/**
+		 * Returns a translation of the given bounds that is obtained by replaying the 
+		 * clauses of this entry into a fresh solver and binding the given relations and 
+		 * this.skolems to the bounds stored in this entry.
+		 * @requires the fingerprint of (relations, original) is the fingerprint from which this entry was created
+		 * @return a translation of the given bounds that is obtained by replaying the 
+		 * clauses of this entry into a fresh solver and binding the given relations and 
+		 * this.skolems to the bounds stored in this entry.
+		 * @ensures options.reporter.translatingToCNF(null)
+		 * @throws AbortedException  options.cancellation was cancelled before or while the clauses were replayed
+		 */
+		Translation.Whole translation(List<Relation> relations, Bounds original, Options options) { 
+			final TupleFactory factory = original.universe().factory();
+			final Bounds bounds = new Bounds(original.universe());
+			final Map<Relation, IntSet> varUsage = new IdentityHashMap<Relation, IntSet>();
+			for(int i = 0; i < canonical.length; i++) { 
+				final Relation r = canonical[i] < 0 ? skolems[i] : relations.get(canonical[i]);
+				final int arity = r.arity();
+				bounds.bound(r, factory.setOf(arity, lower[i]), factory.setOf(arity, upper[i]));
+				if (!vars[i].isEmpty()) varUsage.put(r, vars[i]);
+			}
+			for(Relation r : original.relations()) { 
+				if (!bounds.relations().contains(r)) 
+					bounds.bound(r, original.lowerBound(r), original.upperBound(r));
+			}
+			for(IndexedEntry<TupleSet> entry : original.intBounds()) { 
+				bounds.boundExactly(entry.index(), entry.value());
+			}
+			
+			final CancellationToken cancellation = options.cancellation();
+			cancellation.checkpoint();
+			options.reporter().translatingToCNF(null); // the circuit was never built for this problem
+			final SATSolver solver = options.solver().instance();
+			try { 
+				solver.addVariables(numVars);
+				final IntBuffer clauses = this.clauses.duplicate();
+				if (solver instanceof SATBatchSolver) 
+					replay(clauses, (SATBatchSolver) solver);
+				else 
+					replay(clauses, solver);
+				cancellation.checkpoint();
+			} catch (AbortedException e) { 
+				solver.free();
+				throw e;
+			}
+			return new Translation.Whole(bounds, options, solver, varUsage, maxPrimaryVar, null);
+		}
+		
+		/**
+		 * Adds the given zero-terminated clauses to the given solver, in batches of 
+		 * about REPLAY_BATCH literals.
+		 * @ensures [[solver.clauses']] = [[solver.clauses]] and [[clauses]]
+		 */
+		private static void replay(IntBuffer clauses, SATBatchSolver solver) { 
+			final int max = clauses.limit();
+			int[] batch = new int[Math.min(max, REPLAY_BATCH)];
+			for(int start = 0; start < max; ) { // replay whole clauses in batches of about REPLAY_BATCH literals
+				int end = start, count = 0;
+				while(end < max) { 
+					int next = end;
+					while(clauses.get(next++)!=0);
+					if (count > 0 && next - start > batch.length) break;
+					end = next;
+					count++;
+				}
+				if (end - start > batch.length) batch = new int[end - start];
+				clauses.position(start);
+				clauses.get(batch, 0, end - start);
+				solver.addClauses(batch, count);
+				start = end;
+			}
+		}
+		
+		/**
+		 * Adds the given zero-terminated clauses to the given solver, one clause at a time.
+		 * @ensures [[solver.clauses']] = [[solver.clauses]] and [[clauses]]
+		 */
+		private static void replay(IntBuffer clauses, SATSolver solver) { 
+			final int max = clauses.limit();
+			for(int start = 0; start < max; ) { 
+				int end = start;
+				while(clauses.get(end)!=0) end++;
+				final int[] clause = new int[end - start];
+				clauses.position(start);
+				clauses.get(clause);
+				solver.addClause(clause);
+				start = end + 1;
+			}
+		}
+		
+		/**
+		 * Writes the given fingerprint code and the contents of this entry to the given file.  The 
+		 * data is first written to a temporary file in the same directory, which is then renamed, 
+		 * so concurrent readers never observe a partially written file.  If an I/O error occurs, 
+		 * the temporary file is deleted.
+		 * @ensures the given file contains the given code and the contents of this entry
+		 * @throws IOException  an I/O error occurs
+		 */
+		void write(File file, int[] code) throws IOException { 
+			final ArrayIntVector header = new ArrayIntVector();
+			header.add(MAGIC);
+			header.add(code.length);
+			for(int c : code) header.add(c);
+			header.add(maxPrimaryVar);
+			header.add(numVars);
+			header.add(canonical.length);
+			for(int i = 0; i < canonical.length; i++) { 
+				header.add(canonical[i]);
+				if (canonical[i] < 0) { 
+					header.add(skolems[i].arity());
+					final String name = skolems[i].name();
+					header.add(name.length());
+					for(int j = 0, max = name.length(); j < max; j++) header.add(name.charAt(j));
+				}
+				for(IntSet s : new IntSet[]{ lower[i], upper[i], vars[i] }) { 
+					header.add(s.size());
+					for(IntIterator itr = s.iterator(); itr.hasNext(); ) header.add(itr.next());
+				}
+			}
+			header.add(clauses.capacity());
+			
+			final ByteBuffer buffer = ByteBuffer.allocate((header.size() + clauses.capacity()) << 2);
+			buffer.asIntBuffer().put(header.toArray()).put(clauses.duplicate());
+			final File tmp = File.createTempFile("kodkod", SUFFIX, file.getParentFile());
+			boolean renamed = false;
+			try { 
+				final FileOutputStream out = new FileOutputStream(tmp);
+				try { 
+					final FileChannel channel = out.getChannel();
+					while(buffer.hasRemaining()) channel.write(buffer);
+				} finally { 
+					out.close();
+				}
+				if (!tmp.renameTo(file)) { 
+					file.delete();
+					if (!tmp.renameTo(file)) 
+						throw new IOException("could not rename " + tmp + " to " + file);
+				}
+				renamed = true;
+			} finally { 
+				if (!renamed) tmp.delete();
+			}
+		}
+		
+		/**
+		 * Reads the entry stored in the given file, if the file was written for a fingerprint with 
+		 * the given code.  Otherwise returns null.  The file is memory-mapped, and the clauses of 
+		 * the returned entry are a view of the mapped region.
+		 * @return entry stored in the given file, if the file was written for a fingerprint with 
+		 * the given code; null otherwise
+		 * @throws IOException  an I/O error occurs, or the file is not a well-formed translation file
+		 */
+		static Entry read(File file, int[] code) throws IOException { 
+			final IntBuffer in;
+			final FileInputStream stream = new FileInputStream(file);
+			try { 
+				final FileChannel channel = stream.getChannel();
+				in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+			} finally { 
+				stream.close();
+			}
+			if (in.remaining() < 2 || in.get()!=MAGIC)
+				throw new IOException("not a translation file: " + file);
+			if (in.get()!=code.length || in.remaining() < code.length) 
+				return null;
+			for(int c : code) { 
+				if (in.get()!=c) return null;
+			}
+			try { 
+				return read(in);
+			} catch (RuntimeException e) { // buffer underflow, negative sizes, etc.
+				throw new IOException("corrupt translation file: " + file, e);
+			}
+		}
+		
+		/**
+		 * Reads the contents of an entry from the given buffer, which is positioned just 
+		 * past the fingerprint code of a translation file. 
+		 * @return entry stored in the given buffer
+		 * @throws IOException  the clauses stored in the buffer are malformed
+		 * @throws RuntimeException  the buffer is not a well-formed translation file 
+		 */
+		private static Entry read(IntBuffer in) throws IOException { 
+			final int maxPrimaryVar = in.get(), numVars = in.get(), size = in.get();
+			final int[] canonical = new int[size];
+			final Relation[] skolems = new Relation[size];
+			final IntSet[] lower = new IntSet[size], upper = new IntSet[size], vars = new IntSet[size];
+			for(int i = 0; i < size; i++) { 
+				canonical[i] = in.get();
+				if (canonical[i] < 0) { 
+					final int arity = in.get();
+					final char[] name = new char[in.get()];
+					for(int j = 0; j < name.length; j++) name[j] = (char) in.get();
+					skolems[i] = Relation.nary(new String(name), arity);
+				}
+				lower[i] = readSet(in);
+				upper[i] = readSet(in);
+				vars[i] = readSet(in);
+			}
+			final int length = in.get();
+			final IntBuffer clauses = in.slice();
+			clauses.limit(length);
+			if (length > 0 && clauses.get(length-1)!=0) 
+				throw new IOException("truncated clauses");
+			for(int i = 0; i < length; i++) { 
+				final int lit = clauses.get(i);
+				if (lit > numVars || lit < -numVars) 
+					throw new IOException("literal out of range: " + lit);
+			}
+			return new Entry(canonical, skolems, lower, upper, vars, maxPrimaryVar, numVars, clauses, 
+					((long) in.capacity()) << 2);
+		}
+		
+		/**
+		 * Reads a set of integers, preceded by its size, from the given buffer.
+		 * @return set of integers read from the given buffer
+		 */
+		private static IntSet readSet(IntBuffer in) { 
+			final int[] ints = new int[in.get()];
+			in.get(ints);
+			return new ArrayIntSet(ints);
+		}
+	}
+	
+	/**
+	 * A SATFactory that wraps the solvers produced by another factory so 
+	 * that the variables and clauses added to them are recorded.
+	 * @specfield factory: SATFactory // the wrapped factory
+	 * @author Emina Torlak
+	 */
+	private static final class Recorder extends SATFactory { 
+		private final SATFactory factory;
+		
+		/**
+		 * Creates a recorder for the given factory.
+		 * @ensures this.factory' = factory
+		 */
+		Recorder(SATFactory factory) { this.factory = factory; }
+		
+		/**
+		 * Returns a recording wrapper for this.factory.instance().
+		 * @see kodkod.engine.satlab.SATFactory#instance()
+		 */
+		@Override
+		public SATSolver instance() { 
+			final SATSolver solver = factory.instance();
+			return solver instanceof SATAssumptionSolver ? new AssumptionSolver(solver) : new Solver(solver); 
+		}
+		
+		/**
+		 * @see kodkod.engine.satlab.SATFactory#incremental()
+		 */
+		@Override
+		public boolean incremental() { return factory.incremental(); }
+		
+		/**
+		 * @see kodkod.engine.satlab.SATFactory#prover()
+		 */
+		@Override
+		public boolean prover() { return factory.prover(); }
+		
+		/**
+		 * @see kodkod.engine.satlab.SATFactory#assumptions()
+		 */
+		@Override
+		public boolean assumptions() { return factory.assumptions(); }
+		
+		/**
+		 * A solver that records the clauses added to it, as a sequence of zero-terminated 
+		 * literal sequences, before passing them on to the wrapped solver.
+		 * @specfield solver: SATSolver // the wrapped solver
+		 * @specfield clauses: seq int
+		 * @author Emina Torlak
+		 */
+		private static class Solver implements SATInterruptibleSolver, SATBatchSolver { 
+			final SATSolver solver;
+			private int[] clauses;
+			private int size;
+			
+			Solver(SATSolver solver) { 
+				this.solver = solver;
+				this.clauses = new int[1024];
+				this.size = 0;
+			}
+			
+			/**
+			 * Returns a copy of the recorded clauses.
+			 * @return this.clauses
+			 */
+			int[] clauses() { 
+				final int[] ret = new int[size];
+				System.arraycopy(clauses, 0, ret, 0, size);
+				return ret;
+			}
+			
+			public int numberOfVariables() { return solver.numberOfVariables(); }
+			public int numberOfClauses() { return solver.numberOfClauses(); }
+			public void addVariables(int numVars) { solver.addVariables(numVars); }
+			
+			public boolean addClause(int[] lits) {
+				final int length = size + lits.length + 1;
+				if (length > clauses.length) { 
+					final int[] grown = new int[Math.max(length, clauses.length << 1)];
+					System.arraycopy(clauses, 0, grown, 0, size);
+					clauses = grown;
+				}
+				System.arraycopy(lits, 0, clauses, size, lits.length);
+				clauses[length-1] = 0;
+				size = length;
+				return solver.addClause(lits);
+			}
+			
+			public int addClauses(int[] flat, int count) {
+				int length = 0;
+				for(int i = 0; i < count; length++) { 
+					if (flat[length]==0) i++;
+				}
+				if (size + length > clauses.length) { 
+					final int[] grown = new int[Math.max(size + length, clauses.length << 1)];
+					System.arraycopy(clauses, 0, grown, 0, size);
+					clauses = grown;
+				}
+				System.arraycopy(flat, 0, clauses, size, length);
+				size += length;
+				if (solver instanceof SATBatchSolver) 
+					return ((SATBatchSolver) solver).addClauses(flat, count);
+				int added = 0;
+				for(int i = 0, start = 0, end = 0; i < count; i++, start = ++end) {
+					while(flat[end] != 0) end++;
+					if (solver.addClause(Arrays.copyOfRange(flat, start, end)))
+						added++;
+				}
+				return added;
+			}
+			
+			public boolean solve() { return solver.solve(); }
+			public boolean valueOf(int variable) { return solver.valueOf(variable); }
+			public void interrupt() { 
+				if (solver instanceof SATInterruptibleSolver) 
+					((SATInterruptibleSolver) solver).interrupt(); 
+			}
+			public void free() { solver.free(); }
+		}
+		
+		/**
+		 * A recording solver that wraps a {@link SATAssumptionSolver}.
+		 * @invariant solver in SATAssumptionSolver
+		 * @author Emina Torlak
+		 */
+		private static final class AssumptionSolver extends Solver implements SATAssumptionSolver { 
+			AssumptionSolver(SATSolver solver) { super(solver); }
+			public boolean solve(int[] assumptions) { return ((SATAssumptionSolver) solver).solve(assumptions); }
+		}
+	}
+	
+	/**
+	 * Computes the fingerprint of a formula and its bounds.  The fingerprint of 
+	 * a formula is a pre-order serialization of its nodes, in which relations and variables 
+	 * are replaced by their position in the sequence of relations (resp. variables) encountered 
+	 * during the traversal, and shared nodes are replaced, after their first occurrence, by 
+	 * a reference to that occurrence.
+	 * @specfield options: Options
+	 * @specfield relations: seq Relation // relations in the order in which they were first encountered
+	 * @specfield key: seq Object 
+	 * @author Emina Torlak
+	 */
+	private static final class Fingerprint extends AbstractVoidVisitor { 
+		private final List<Object> key;
+		private final Map<Node, Integer> ids;
+		final List<Relation> relations;
+		
+		/**
+		 * Creates a fingerprint visitor for the given options.
+		 * @ensures this.key' = [symmetryBreaking, symmetryBreakingStrategy, symmetryBreakingBudget, sharing, skolemDepth, skolemCost, bitwidth, intEncoding, closureEncoding, symbolicThreshold]
+		 */
+		Fingerprint(Options options) { 
+			this.key = new ArrayList<Object>();
+			this.ids = new IdentityHashMap<Node, Integer>();
+			this.relations = new ArrayList<Relation>();
+			key.add(options.symmetryBreaking());
+			key.add(options.symmetryBreakingStrategy());
+			key.add(options.symmetryBreakingBudget());
+			key.add(options.sharing());
+			key.add(options.skolemDepth());
+			key.add(options.skolemCost());
+			key.add(options.bitwidth());
+			key.add(options.intEncoding());
+			key.add(options.closureEncoding());
+			key.add(options.symbolicThreshold());
+		}
+		
+		/**
+		 * Returns the fingerprint of the visited formula and the given bounds.
+		 * @requires this.relations in bounds.relations
+		 * @return this.key + bounds.universe.size + 
+		 *   { r: this.relations | bounds.lowerBound(r).indexView + bounds.upperBound(r).indexView } + 
+		 *   { i: bounds.ints | i + bounds.exactBound(i).indexView }
+		 */
+		List<Object> key(Bounds bounds) { 
+			key.add(bounds.universe().size());
+			for(Relation r : relations) { 
+				final TupleSet upper = bounds.upperBound(r);
+				if (upper==null) throw new UnboundLeafException("Unbound relation: ", r);
+				key.add(new ArrayIntSet(bounds.lowerBound(r).indexView()));
+				key.add(new ArrayIntSet(upper.indexView()));
+			}
+			for(IndexedEntry<TupleSet> entry : bounds.intBounds()) { 
+				key.add(entry.index());
+				key.add(new ArrayIntSet(entry.value().indexView()));
+			}
+			return key;
+		}
+		
+		/**
+		 * Returns an encoding of the given fingerprint as a sequence of integers that does not 
+		 * depend on the identity of the objects in the fingerprint, and that is therefore 
+		 * stable across runs.
+		 * @requires key was produced by Fingerprint.key(Bounds)
+		 * @return an encoding of the given fingerprint as a sequence of integers
+		 */
+		static int[] encode(List<Object> key) { 
+			final ArrayIntVector code = new ArrayIntVector(key.size()*2);
+			for(Object o : key) { 
+				if (o instanceof Integer) { 
+					code.add(0);
+					code.add((Integer)o);
+				} else if (o instanceof Boolean) { 
+					code.add(((Boolean)o) ? 1 : 2);
+				} else if (o instanceof Class) { 
+					code.add(3);
+					encode(((Class<?>)o).getName(), code);
+				} else if (o instanceof Enum) { 
+					final Enum<?> e = (Enum<?>) o;
+					code.add(4);
+					encode(e.getDeclaringClass().getName(), code);
+					code.add(e.ordinal());
+				} else if (o instanceof IntSet) { 
+					final IntSet s = (IntSet) o;
+					code.add(5);
+					code.add(s.size());
+					for(IntIterator itr = s.iterator(); itr.hasNext(); ) code.add(itr.next());
+				} else if (o instanceof String) { 
+					code.add(6);
+					encode((String)o, code);
+				} else {
+					throw new IllegalArgumentException("unexpected key element: " + o);
+				}
+			}
+			return code.toArray();
+		}
+		
+		/**
+		 * Appends the length and the characters of the given string to the given vector.
+		 * @ensures code.elements' = code.elements + str.length + str.chars
+		 */
+		private static void encode(String str, ArrayIntVector code) { 
+			code.add(str.length());
+			for(int i = 0, max = str.length(); i < max; i++) code.add(str.charAt(i));
+		}
+		
+		/**
+		 * Returns the 64-bit FNV-1a hash of the given code as a hexadecimal string.
+		 * @return the 64-bit FNV-1a hash of the given code as a hexadecimal string.
+		 */
+		static String hash(int[] code) { 
+			long hash = 0xcbf29ce484222325L;
+			for(int c : code) { 
+				for(int shift = 0; shift < 32; shift += 8) { 
+					hash ^= (c >>> shift) & 0xff;
+					hash *= 0x100000001b3L;
+				}
+			}
+			return String.format("%016x", hash);
+		}
+		
+		/**
+		 * Returns the canonical identifier of the given leaf, assigning it a new one if necessary.
+		 */
+		private Integer id(Node leaf) { 
+			Integer id = ids.get(leaf);
+			if (id==null) { 
+				id = ids.size();
+				ids.put(leaf, id);
+			}
+			return id;
+		}
+		
+		/**
+		 * Appends the class of the given node to this.key and returns false if the node is 
+		 * visited for the first time.  Otherwise appends a back reference to the node's first 
+		 * occurrence and returns true.
+		 * @see kodkod.ast.visitor.AbstractVoidVisitor#visited(kodkod.ast.Node)
+		 */
+		@Override
+		protected boolean visited(Node n) {
+			final Integer id = ids.get(n);
+			if (id!=null) { 
+				key.add(id);
+				return true;
+			}
+			ids.put(n, ids.size());
+			key.add(n.getClass());
+			return false;
+		}
+		
+		public void visit(Relation relation) { 
+			if (!ids.containsKey(relation)) relations.add(relation);
+			key.add(Relation.class);
+			key.add(id(relation));
+			key.add(relation.arity());
+		}
+		public void visit(Variable variable) { 
+			key.add(Variable.class);
+			key.add(id(variable));
+			key.add(variable.arity());
+		}
+		public void visit(ConstantExpression constExpr) { 
+			key.add(ConstantExpression.class);
+			key.add(constExpr.name());
+		}
+		public void visit(ConstantFormula constant) { 
+			key.add(ConstantFormula.class);
+			key.add(constant.booleanValue());
+		}
+		public void visit(IntConstant intConst) { 
+			key.add(IntConstant.class);
+			key.add(intConst.value()); 
+		}
+		public void visit(Decls decls) { 
+			key.add(decls.size());
+			super.visit(decls);
+		}
+		public void visit(Decl decl) { 
+			key.add(decl.multiplicity());
+			super.visit(decl);
+		}
+		public void visit(NaryExpression expr) { 
+			key.add(expr.op());
+			key.add(expr.size());
+			super.visit(expr);
+		}
+		public void visit(BinaryExpression binExpr) { 
+			key.add(binExpr.op());
+			super.visit(binExpr);
+		}
+		public void visit(UnaryExpression unaryExpr) { 
+			key.add(unaryExpr.op());
+			super.visit(unaryExpr);
+		}
+		public void visit(ProjectExpression project) { 
+			key.add(project.arity());
+			super.visit(project);
+		}
+		public void visit(IntToExprCast castExpr) { 
+			key.add(castExpr.op());
+			super.visit(castExpr);
+		}
+		public void visit(ExprToIntCast intExpr) { 
+			key.add(intExpr.op());
+			super.visit(intExpr);
+		}
+		public void visit(NaryIntExpression intExpr) { 
+			key.add(intExpr.op());
+			key.add(intExpr.size());
+			super.visit(intExpr);
+		}
+		public void visit(BinaryIntExpression intExpr) { 
+			key.add(intExpr.op());
+			super.visit(intExpr);
+		}
+		public void visit(UnaryIntExpression intExpr) { 
+			key.add(intExpr.op());
+			super.visit(intExpr);
+		}
+		public void visit(IntComparisonFormula intComp) { 
+			key.add(intComp.op());
+			super.visit(intComp);
+		}
+		public void visit(QuantifiedFormula quantFormula) { 
+			key.add(quantFormula.quantifier());
+			super.visit(quantFormula);
+		}
+		public void visit(NaryFormula formula) { 
+			key.add(formula.op());
+			key.add(formula.size());
+			super.visit(formula);
+		}
+		public void visit(BinaryFormula binFormula) { 
+			key.add(binFormula.op());
+			super.visit(binFormula);
+		}
+		public void visit(ComparisonFormula compFormula) { 
+			key.add(compFormula.op());
+			super.visit(compFormula);
+		}
+		public void visit(MultiplicityFormula multFormula) { 
+			key.add(multFormula.multiplicity());
+			super.visit(multFormula);
+		}
+		public void visit(RelationPredicate pred) { 
+			key.add(pred.name());
+			if (pred.name()==RelationPredicate.Name.FUNCTION) 
+				key.add(((RelationPredicate.Function)pred).targetMult());
+			super.visit(pred);
+		}
+	}
+}
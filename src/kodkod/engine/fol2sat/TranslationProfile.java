@@ -0,0 +1,239 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.fol2sat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Reporter;
+
+/**
+ * Stores a fine-grained profile of a translation:  the time spent in, and the memory 
+ * allocated by, each {@linkplain Phase phase} of the translation; the number of gates of each 
+ * kind in the resulting circuit; and the hit and miss counts of the caches used 
+ * to share the translations of repeated subformulas.  Times are measured with 
+ * {@link System#nanoTime()}.  Allocated bytes are measured on the translating thread, 
+ * provided that the JVM supports per-thread allocation accounting; otherwise, they are 
+ * reported as -1.  When translation is {@linkplain kodkod.engine.config.Options#translationThreads() multithreaded}, 
+ * the allocations performed by the worker threads are not included.
+ * 
+ * @specfield nanos: Phase -> one long
+ * @specfield bytes: Phase -> one long
+ * @specfield gates: (AND + OR + ITE) -> one int
+ * @specfield cacheHits, cacheMisses: long
+ * @author Emina Torlak
+ */
+public final class TranslationProfile {
+	
+	/**
+	 * The phases of a translation, in the order in which they are executed.
+	 * @author Emina Torlak
+	 */
+	public static enum Phase { 
+		/** Detection of symmetries in the bounds. */
+		SYMMETRY_DETECTION,
+		/** Breaking of matrix symmetries and inlining of predicates. */
+		PREDICATE_INLINING,
+		/** Skolemization. */
+		SKOLEMIZATION,
+		/** Translation of the optimized formula to a boolean circuit. */
+		FOL_TO_BOOLEAN,
+		/** Generation of the symmetry breaking predicate. */
+		SBP_GENERATION,
+		/** Translation of the boolean circuit to CNF. */
+		CNF_CONVERSION
+	}
+	
+	private static final Phase[] PHASES = Phase.values();
+	private static final Operator[] GATES = { Operator.AND, Operator.OR, Operator.ITE };
+	private static final String[] GATE_NAMES = { "and", "or", "ite" };
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	
+	private final ProfilingReporter reporter;
+	private final long[] nanos, bytes;
+	private final int[] gates;
+	private long cacheHits, cacheMisses;
+	private long startNanos, startBytes;
+	
+	/**
+	 * Constructs an empty profile that reports completed phases to the given reporter, 
+	 * if it is a {@link ProfilingReporter}.
+	 * @ensures no this.nanos' && no this.bytes' && no this.gates' && this.cacheHits' = this.cacheMisses' = 0
+	 */
+	TranslationProfile(Reporter reporter) { 
+		this.reporter = reporter instanceof ProfilingReporter ? (ProfilingReporter) reporter : null;
+		this.nanos = new long[PHASES.length];
+		this.bytes = new long[PHASES.length];
+		this.gates = new int[GATES.length];
+	}
+	
+	/**
+	 * Returns the number of bytes allocated so far by the current thread, or -1 if 
+	 * this information is not available.
+	 * @return number of bytes allocated so far by the current thread, or -1 if 
+	 * this information is not available.
+	 */
+	private static long allocatedBytes() { 
+		if (THREADS instanceof com.sun.management.ThreadMXBean) { 
+			final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+	
+	/**
+	 * Marks the start of a phase.
+	 * @ensures the time and allocation counter of the current thread are recorded
+	 */
+	void begin() { 
+		startBytes = allocatedBytes();
+		startNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Marks the end of the given phase, which started at the most recent call to {@link #begin()}.  The
+	 * time and memory consumed since that call are added to the totals for the given phase, and the 
+	 * reporter, if any, is notified of the completed phase.
+	 * @ensures this.nanos'[phase] = this.nanos[phase] + (System.nanoTime() - this.startNanos) && 
+	 *          this.bytes'[phase] = this.bytes[phase] + (allocatedBytes() - this.startBytes)
+	 * @ensures some this.reporter => this.reporter.completedPhase(phase, System.nanoTime() - this.startNanos, allocatedBytes() - this.startBytes)
+	 */
+	void end(Phase phase) { 
+		final long elapsed = System.nanoTime() - startNanos;
+		final long allocated = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+		final int i = phase.ordinal();
+		nanos[i] += elapsed;
+		bytes[i] = (allocated < 0 || bytes[i] < 0) ? -1 : bytes[i] + allocated;
+		if (reporter!=null) reporter.completedPhase(phase, elapsed, allocated);
+	}
+	
+	/**
+	 * Adds the given hit and miss counts to the cache statistics stored in this profile.
+	 * @ensures this.cacheHits' = this.cacheHits + hits && this.cacheMisses' = this.cacheMisses + misses
+	 */
+	synchronized void addCacheStatistics(long hits, long misses) { 
+		cacheHits += hits;
+		cacheMisses += misses;
+	}
+	
+	/**
+	 * Records the number of gates of each kind allocated by the given factory.
+	 * @ensures all op: AND + OR + ITE | this.gates'[op] = factory.numberOfGates(op)
+	 */
+	void recordGates(BooleanFactory factory) { 
+		for(int i = 0; i < GATES.length; i++) 
+			gates[i] = factory.numberOfGates(GATES[i]);
+	}
+	
+	/**
+	 * Adds the number of gates of each kind allocated by the given factory to the 
+	 * counts stored in this profile.  This method is used instead of {@link #recordGates(BooleanFactory)} 
+	 * when the gates of the factory are cleared during translation.
+	 * @ensures all op: AND + OR + ITE | this.gates'[op] = this.gates[op] + factory.numberOfGates(op)
+	 */
+	void addGates(BooleanFactory factory) { 
+		for(int i = 0; i < GATES.length; i++) 
+			gates[i] += factory.numberOfGates(GATES[i]);
+	}
+	
+	/**
+	 * Returns the number of nanoseconds spent in the given phase.
+	 * @return this.nanos[phase]
+	 */
+	public long nanos(Phase phase) { return nanos[phase.ordinal()]; }
+	
+	/**
+	 * Returns the total number of nanoseconds spent in all phases.
+	 * @return sum(this.nanos[Phase])
+	 */
+	public long totalNanos() { 
+		long total = 0;
+		for(long n : nanos) total += n;
+		return total;
+	}
+	
+	/**
+	 * Returns the number of bytes allocated by the translating thread during the 
+	 * given phase, or -1 if this information is not available.
+	 * @return this.bytes[phase]
+	 */
+	public long allocatedBytes(Phase phase) { return bytes[phase.ordinal()]; }
+	
+	/**
+	 * Returns the number of gates with the given operator that were allocated during 
+	 * translation to a boolean circuit (including SBP generation).  The result for operators other 
+	 * than AND, OR and ITE is 0.
+	 * @return op in AND + OR + ITE => this.gates[op] else 0
+	 */
+	public int gates(Operator op) { 
+		for(int i = 0; i < GATES.length; i++) {
+			if (GATES[i]==op) return gates[i];
+		}
+		return 0;
+	}
+	
+	/**
+	 * Returns the number of lookups that found a cached translation of a shared subformula or 
+	 * subexpression during translation to a boolean circuit.
+	 * @return this.cacheHits
+	 */
+	public synchronized long cacheHits() { return cacheHits; }
+	
+	/**
+	 * Returns the number of lookups that did not find a cached translation of a shared subformula or 
+	 * subexpression during translation to a boolean circuit.
+	 * @return this.cacheMisses
+	 */
+	public synchronized long cacheMisses() { return cacheMisses; }
+	
+	/**
+	 * Returns the fraction of cache lookups that were hits, or 0 if there were no lookups.
+	 * @return this.cacheHits / (this.cacheHits + this.cacheMisses)
+	 */
+	public synchronized double cacheHitRate() { 
+		final long lookups = cacheHits + cacheMisses;
+		return lookups==0 ? 0 : ((double) cacheHits) / lookups;
+	}
+	
+	/**
+	 * Returns a string representation of this profile.
+	 * @return a string representation of this profile.
+	 */
+	public String toString() { 
+		final StringBuilder ret = new StringBuilder();
+		for(Phase phase : PHASES) { 
+			final int i = phase.ordinal();
+			ret.append(phase.name().toLowerCase()).append(": ").append(nanos[i]).append(" ns");
+			if (bytes[i] >= 0) ret.append(", ").append(bytes[i]).append(" bytes");
+			ret.append("\n");
+		}
+		ret.append("gates: ");
+		for(int i = 0; i < GATES.length; i++) { 
+			ret.append(i==0 ? "" : ", ").append(GATE_NAMES[i]).append("=").append(gates[i]);
+		}
+		ret.append("\ncache: ").append(cacheHits()).append(" hits, ").append(cacheMisses()).append(" misses");
+		return ret.toString();
+	}
+}
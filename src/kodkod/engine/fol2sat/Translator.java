@@ -27,9 +27,12 @@ import static kodkod.util.nodes.AnnotatedNode.annotate;
 import static kodkod.util.nodes.AnnotatedNode.annotateRoots;
 import static kodkod.util.collections.Containers.setDifference;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,6 +40,7 @@ import kodkod.ast.Expression;
 import kodkod.ast.Formula;
 import kodkod.ast.IntExpression;
 import kodkod.ast.Node;
+import kodkod.ast.QuantifiedFormula;
 import kodkod.ast.Relation;
 import kodkod.ast.RelationPredicate;
 import kodkod.ast.visitor.AbstractReplacer;
@@ -48,7 +52,11 @@ import kodkod.engine.bool.BooleanMatrix;
 import kodkod.engine.bool.BooleanValue;
 import kodkod.engine.bool.Int;
 import kodkod.engine.bool.Operator;
+import kodkod.engine.AbortedException;
+import kodkod.engine.CancellationToken;
 import kodkod.engine.config.Options;
+import kodkod.engine.fol2sat.TranslationProfile.Phase;
+import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATSolver;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
@@ -120,16 +128,33 @@ public final class Translator {
 	 * The CNF representation of the given formula and bounds  is generated so that the magnitude 
 	 * of the literal representing the truth value of a given circuit is strictly larger than the magnitudes of 
 	 * the literals representing the truth values of the circuit's descendants.   
+	 * If options.translationCache is not null and logging is disabled, the translation is 
+	 * obtained from the {@linkplain TranslationCache cache}.
 	 * @return some t: Translation.Whole |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options
 	 * @throws NullPointerException  any of the arguments are null
 	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by the given bounds.
 	 * @throws HigherOrderDeclException  the formula contains a higher order declaration that cannot
 	 * be skolemized, or it can be skolemized but options.skolemize is false.
+	 * @throws AbortedException  options.cancellation was cancelled during translation
 	 */
 	public static Translation.Whole translate(Formula formula, Bounds bounds, Options options)  {
+		final TranslationCache cache = options.translationCache();
+		if (cache!=null && options.logTranslation()==0) 
+			return cache.translate(formula, bounds, options);
 		return (Translation.Whole) (new Translator(formula,bounds,options)).translate();
 	}
 	
+	/**
+	 * Translates the given formula using the specified bounds and options, except that the 
+	 * CNF is added to a solver obtained from the given factory rather than from options.solver.
+	 * @return some t: Translation.Whole |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options &&
+	 *                                      t.solver in factory.instance()
+	 * @see #translate(Formula, Bounds, Options)
+	 */
+	static Translation.Whole translate(Formula formula, Bounds bounds, Options options, SATFactory factory)  {
+		return (Translation.Whole) (new Translator(formula,bounds,options,factory,false,false)).translate();
+	}
+	
 	/**
 	 * Translates the given formula using the specified bounds and options in such a way 
 	 * that the resulting translation can be extended with additional formulas and bounds, subject to 
@@ -143,10 +168,91 @@ public final class Translator {
 	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by the given bounds
 	 * @throws HigherOrderDeclException  the formula contains a higher order declaration
 	 * @throws IllegalArgumentException any of the preconditions on options are violated
+	 * @throws AbortedException  options.cancellation was cancelled during translation
 	 */
 	public static Translation.Incremental translateIncremental(Formula formula, Bounds bounds, Options options)  {
 		checkIncrementalOptions(options);	
-		return (Translation.Incremental) (new Translator(formula, bounds, options, true)).translate();
+		return (Translation.Incremental) (new Translator(formula, bounds, options, true, false)).translate();
+	}
+	
+	/**
+	 * Translates the given formula using the specified bounds and options in such a way 
+	 * that the resulting translation is {@linkplain Translation.Incremental#retractable() retractable}.  
+	 * That is, the translation of the given formula, and of every formula subsequently added to the returned 
+	 * translation via {@link #translateIncremental(Formula, Bounds, Translation.Incremental)}, is guarded 
+	 * by a fresh {@linkplain Translation.Incremental#activation() activation} variable.  We require that 
+	 * the options specify an incremental SAT solver that supports assumptions, and no translation logging.
+	 * @requires options.solver.incremental() && options.solver.assumptions() && options.logTranslation = 0  
+	 * @return some t: Translation.Incremental |  t.originalFormula = formula && t.originalBounds = bounds && 
+	 *           t.options = options && t.retractable
+	 * @throws NullPointerException  any of the arguments are null
+	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by the given bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration
+	 * @throws IllegalArgumentException any of the preconditions on options are violated
+	 * @throws AbortedException  options.cancellation was cancelled during translation
+	 */
+	public static Translation.Incremental translateRetractable(Formula formula, Bounds bounds, Options options)  {
+		checkRetractableOptions(options);	
+		return (Translation.Incremental) (new Translator(formula, bounds, options, true, true)).translate();
+	}
+	
+	/**
+	 * Translates the given formula using the specified bounds and options in such a way that the 
+	 * instances of its large universally quantified conjuncts are added to the resulting translation on demand.  
+	 * A top-level conjunct of the formula (after skolemization) is deferred if it is a universally quantified 
+	 * formula with an estimated number of bindings that is at least the given threshold.  Only a partial 
+	 * instantiation of each deferred conjunct is translated up front, so a model of the returned translation's CNF 
+	 * need not satisfy the formula.  Such a model should be {@linkplain #refine(Translation.Incremental, Instance) checked}, 
+	 * which adds the instances of the deferred conjuncts that it violates to the translation, and the CNF re-solved until 
+	 * no instances are violated.  We require that the options specify an incremental SAT solver, and no translation logging.
+	 * @requires options.solver.incremental() && options.logTranslation = 0 
+	 * @requires threshold > 0 
+	 * @return some t: Translation.Incremental |  t.originalFormula = formula && t.originalBounds = bounds && t.options = options
+	 * @throws NullPointerException  any of the arguments are null
+	 * @throws UnboundLeafException  the formula refers to an undeclared variable or a relation not mapped by the given bounds
+	 * @throws HigherOrderDeclException  the formula contains a higher order declaration
+	 * @throws IllegalArgumentException any of the preconditions on options or the threshold are violated
+	 * @throws AbortedException  options.cancellation was cancelled during translation
+	 */
+	public static Translation.Incremental translateLazily(Formula formula, Bounds bounds, Options options, int threshold)  {
+		checkIncrementalOptions(options);
+		if (threshold < 1) 
+			throw new IllegalArgumentException("Expected threshold > 0, given threshold = " + threshold);
+		return (Translation.Incremental) (new Translator(formula, bounds, options, options.solver(), true, false, threshold)).translate();
+	}
+	
+	/**
+	 * Adds to the given translation the instances of its deferred conjuncts that are violated by 
+	 * the given instance, and returns true if there were any.  Otherwise returns false, in which 
+	 * case the given instance is a model of translation.originalFormula.  
+	 * @requires translation was produced by {@link #translateLazily(Formula, Bounds, Options, int)}
+	 * @requires instance = translation.interpret() after a successful call to translation.cnf.solve()
+	 * @ensures the CNF of each violated instance is added to translation.cnf
+	 * @return true if the given instance violates some instance of a deferred conjunct of translation.originalFormula
+	 * @throws AbortedException  translation.options.cancellation was cancelled during translation
+	 */
+	public static boolean refine(Translation.Incremental translation, Instance instance) { 
+		final List<Formula> deferred = translation.deferred();
+		if (deferred.isEmpty()) 
+			return false;
+		final Options options = translation.options();
+		final LeafInterpreter interpreter = translation.interpreter();
+		final LeafInterpreter evaluator = LeafInterpreter.exact(instance, options);
+		final BooleanFactory factory = interpreter.factory();
+		final BooleanAccumulator acc = BooleanAccumulator.treeGate(Operator.AND);
+		for(Formula formula : deferred) { 
+			if (acc.add(FOL2BoolTranslator.instantiate((QuantifiedFormula) formula, interpreter, evaluator))==BooleanConstant.FALSE)
+				break;
+		}
+		final BooleanValue instances = factory.accumulate(acc);
+		if (instances==BooleanConstant.TRUE) {
+			return false;
+		} else if (instances==BooleanConstant.FALSE) { 
+			translation.cnf().addClause(new int[0]);
+		} else {
+			Bool2CNFTranslator.translateIncremental((BooleanFormula) instances, factory.maxVariable(), translation.incrementer(), options.cancellation());
+		}
+		return true;
 	}
 	
 	/**
@@ -160,20 +266,38 @@ public final class Translator {
 	 * <li>{@code bounds} and {@code translation.bounds} share the same universe;</li>
 	 * <li>{@code bounds} must not specify any integer bounds;</li> 
 	 * <li>{@code bounds.relations} must not contain any members of {@code translation.bounds.relations} 
-	 * (which may be a superset of {@code translation.originalBounds.relations} that also includes Skolem constants); and,</li>
-	 * <li>{@code bounds} must induce a coarser set of equivalence classes on the shared universe than {@code translation.originalBounds}.</li>
+	 * (which may be a superset of {@code translation.originalBounds.relations} that also includes Skolem constants), 
+	 * unless {@code translation} is {@linkplain Translation.Incremental#retractable() retractable}, in which case 
+	 * {@code bounds} may narrow the bounds of these relations, as described below; and,</li>
+	 * <li>{@code bounds} must induce a coarser set of equivalence classes on the shared universe than {@code translation.originalBounds}, 
+	 * unless {@code translation} is retractable, in which case its symmetry breaking predicate is enforced only 
+	 * {@linkplain Translation.Incremental#symmetryAssumption(Bounds) while} the bounds respect its symmetries.</li>
 	 * </ol>
 	 * </p>
 	 * 
 	 * <p>
+	 * If {@code translation} is retractable, the bounds that {@code bounds} gives to the relations in 
+	 * {@code translation.bounds.relations} must lie between the lower and upper bounds in {@code translation.bounds}.  
+	 * Such narrowed bounds are not added to the translation; the formula is translated with respect to 
+	 * {@code translation.bounds}, and the narrowing can be enforced by solving the CNF under the 
+	 * {@linkplain Translation.Incremental#assumptions(Relation, TupleSet, TupleSet) assumptions} 
+	 * computed from the narrowed bounds.
+	 * </p>
+	 * 
+	 * <p>
 	 * The behavior of this method is unspecified if a prior call to {@code translation.cnf.solve()} returned false, or 
 	 * if a prior call to this method resulted in an exception.
 	 * </p>
 	 * 
 	 * @requires translation.cnf.solve()
 	 * @requires formula.*components & Relation in (translation.bounds + bounds).relations
-	 * @requires translation.bounds.universe = bounds.universe && no bounds.intBound && no (translation.bounds.relations & bounds.relations)
-	 * @requires all s: translation.symmetries | 
+	 * @requires translation.bounds.universe = bounds.universe && no bounds.intBound 
+	 * @requires translation.retractable => 
+	 *            (all r: translation.bounds.relations & bounds.relations | 
+	 *              translation.bounds.lowerBound[r] in bounds.lowerBound[r] && bounds.upperBound[r] in translation.bounds.upperBound[r]) else
+	 *            no (translation.bounds.relations & bounds.relations)
+	 * @requires !translation.retractable => 
+	 *           all s: translation.symmetries | 
 	 *            some p: {@link SymmetryDetector#partition(Bounds) partition}(bounds) |
 	 *             s.ints in p.ints       
 	 * @return some t: Translation | 
@@ -219,21 +343,27 @@ public final class Translator {
 		// may be strictly finer if some of the symmetries in transl.symmetries were broken via SymmetryBreaker.breakMatrixSymmetries(...) 
 		// during the generation of transl.  in particular, any symmetries absent from tBounds are precisely those that were broken based
 		// on the total ordering and acyclic predicates in transl.originalFormula.
+		// narrowed bindings for relations that are already in tBounds are skipped, since they are enforced by assumptions.
+		final Set<Relation> oldRelations = new LinkedHashSet<Relation>(tBounds.relations());
 		for(Relation r : bounds.relations()) {
-			tBounds.bound(r, bounds.lowerBound(r), bounds.upperBound(r));
+			if (!oldRelations.contains(r))
+				tBounds.bound(r, bounds.lowerBound(r), bounds.upperBound(r));
 		}
 		
 		// re-translate the given formula with respect to tBounds.  note that we don't have to re-translate 
 		// the conjunction of transl.formula and formula since transl.formula is guaranteed to evaluate to 
 		// TRUE with respect to tBounds (since no bindings that were originally in tBounds were changed by the above loop).
-		final Translation.Incremental updated = translateIncremental(formula, tBounds, tOptions);
+		final Translation.Incremental updated = (Translation.Incremental) (new Translator(formula, tBounds, tOptions, true, transl.retractable())).translate();
 		
 		// we can't return the updated translation as is, since we have to make sure that updated.symmetries is set to
 		// transl.symmetries rather than the potentially finer set of symmetries induced by tBounds. note that 
 		// the updated translation currently has updated.originalBounds = tBounds, while updated.bounds is a copy of 
 		// tBounds with possibly additional skolem relations, as well as new bounds for some relations in formula.*components 
 		// due to symmetry breaking.
-		return new Translation.Incremental(updated.bounds(), tOptions, transl.symmetries(), updated.interpreter(), updated.incrementer());
+		final Translation.Incremental result = new Translation.Incremental(updated.bounds(), tOptions, transl.symmetries(), 
+				updated.interpreter(), updated.incrementer(), updated.retractable(), updated.activation());
+		result.setSymmetryActivation(updated.symmetryActivation());
+		return result;
 	}
 	
 	/** 
@@ -251,8 +381,10 @@ public final class Translator {
 		final Set<Relation> oldRelations = new LinkedHashSet<Relation>(tBounds.relations());
 		
 		// add new relation bindings to the translation bounds.  note that skolemization (below) may also cause extra relations to be added.
+		// narrowed bindings for relations that are already in tBounds are skipped, since they are enforced by assumptions.
 		for(Relation r : bounds.relations()) {
-			tBounds.bound(r, bounds.lowerBound(r), bounds.upperBound(r));
+			if (!oldRelations.contains(r))
+				tBounds.bound(r, bounds.lowerBound(r), bounds.upperBound(r));
 		}
 		final AnnotatedNode<Formula> annotated = 
 			(transl.options().skolemDepth() < 0) ? annotate(formula) : skolemize(annotate(formula), tBounds, tOptions);
@@ -262,29 +394,49 @@ public final class Translator {
 		final LeafInterpreter interpreter = transl.interpreter();
 		interpreter.extend(setDifference(tBounds.relations(), oldRelations), tBounds.lowerBounds(), tBounds.upperBounds());
 		
-		final BooleanValue circuit = FOL2BoolTranslator.translate(annotated, interpreter); 
+		final BooleanFactory factory = interpreter.factory();
+		BooleanValue circuit = FOL2BoolTranslator.translate(annotated, interpreter); 
+		
+		final int activation = transl.retractable() ? activation(circuit, factory) : 0;
+		if (activation != 0) {
+			circuit = factory.implies(factory.variable(activation), circuit);
+		}
+		transl.setActivation(activation);
 	
 		if (circuit==BooleanConstant.FALSE) {
 			// release the old solver and state, and return a fresh trivially false incremental translation.
 			transl.incrementer().solver().free();
 			return new Translation.Incremental(tBounds, tOptions, transl.symmetries(), 
 					LeafInterpreter.empty(tBounds.universe(), tOptions), 
-					Bool2CNFTranslator.translateIncremental(BooleanConstant.FALSE, tOptions.solver()));			
+					Bool2CNFTranslator.translateIncremental(BooleanConstant.FALSE, tOptions.solver()), false, 0);			
 		} else if (circuit==BooleanConstant.TRUE) {
 			// must add any newly allocated primary variables to the solver for interpretation to work correctly 
-			final int maxVar = interpreter.factory().maxVariable();
+			final int maxVar = factory.maxVariable();
 			final int cnfVar = transl.cnf().numberOfVariables();
 			if (maxVar > cnfVar) {
 				transl.cnf().addVariables(maxVar-cnfVar);
 			}
 		} else {
 			// circuit is a formula; add its CNF representation to transl.incrementer.solver()			
-			Bool2CNFTranslator.translateIncremental((BooleanFormula) circuit, interpreter.factory().maxVariable(), transl.incrementer());			
+			Bool2CNFTranslator.translateIncremental((BooleanFormula) circuit, factory.maxVariable(), transl.incrementer(), tOptions.cancellation());			
 		}  
 		
 		return transl;
 	}
 	
+	/**
+	 * Allocates a fresh activation variable in the given factory for guarding the given circuit 
+	 * and returns its label.  If the circuit is TRUE, it needs no guard, and this method returns 0.
+	 * @ensures circuit != TRUE => factory.addVariables(1)
+	 * @return circuit = TRUE => 0 else factory.maxVariable()' 
+	 */
+	private static int activation(BooleanValue circuit, BooleanFactory factory) {
+		if (circuit==BooleanConstant.TRUE) 
+			return 0;
+		factory.addVariables(1);
+		return factory.maxVariable();
+	}
+	
 	/**
 	 * Checks that the given options are suitable for incremental translation.
 	 * @requires options.solver.incremental() && options.logTranslation = 0  
@@ -297,10 +449,26 @@ public final class Translator {
 			throw new IllegalArgumentException("Translation logging must be disabled for incremental translation: " + options);
 	}
 	
+	/**
+	 * Checks that the given options are suitable for retractable incremental translation.
+	 * @requires options.solver.incremental() && options.solver.assumptions() && options.logTranslation = 0  
+	 * @throws IllegalArgumentException any of the preconditions are violated
+	 */
+	public static void checkRetractableOptions(Options options) {
+		checkIncrementalOptions(options);
+		if (!options.solver().assumptions())
+			throw new IllegalArgumentException("A solver that supports assumptions is required for retractable translation: " + options);
+	}
+	
 	/**
 	 * Checks that the given {@code inc} bounds are incremental with respect to the given {@code translation}.
-	 * @requires translation.bounds.universe = inc.universe && no inc.intBound && no (translation.bounds.relations & inc.relations)
-	 * @requires all s: translation.symmetries |  
+	 * @requires translation.bounds.universe = inc.universe && no inc.intBound 
+	 * @requires translation.retractable => 
+	 *            (all r: translation.bounds.relations & inc.relations | 
+	 *              translation.bounds.lowerBound[r] in inc.lowerBound[r] && inc.upperBound[r] in translation.bounds.upperBound[r]) else
+	 *            no (translation.bounds.relations & inc.relations)
+	 * @requires !translation.retractable => 
+	 *           all s: translation.symmetries |  
 	 * 				some p: {@link SymmetryDetector#partition(Bounds) partition}(inc) | 
 	 * 				   s.elements in p.elements
 	 * @throws IllegalArgumentException any of the preconditions are violated
@@ -315,11 +483,19 @@ public final class Translator {
 		final Set<Relation> baseRels = base.relations();
 		for(Relation r : inc.relations()) { 
 			if (baseRels.contains(r)) {
-				incBoundErr(inc.relations(), "relations", "disjoint from", baseRels);
+				if (!translation.retractable()) {
+					incBoundErr(inc.relations(), "relations", "disjoint from", baseRels);
+				} else if (!inc.lowerBound(r).containsAll(base.lowerBound(r))) {
+					incBoundErr(inc.lowerBound(r), "lowerBound[" + r + "]", "a superset of", base.lowerBound(r));
+				} else if (!base.upperBound(r).containsAll(inc.upperBound(r))) {
+					incBoundErr(inc.upperBound(r), "upperBound[" + r + "]", "a subset of", base.upperBound(r));
+				}
 			}  
  		}
+		// the SBP of a retractable translation is enforced only while the bounds respect its symmetries
+		if (translation.retractable()) return;
 		final Set<IntSet> symmetries = translation.symmetries();
-		final Set<IntSet> incSymmetries = SymmetryDetector.partition(inc);
+		final Set<IntSet> incSymmetries = SymmetryDetector.partition(inc, translation.options().translationThreads());
 		EQUIV_CHECK : for(IntSet part : symmetries) {
 			for(IntSet incPart : incSymmetries) {
 				if (incPart.containsAll(part))
@@ -346,40 +522,83 @@ public final class Translator {
 	 * @specfield originalBounds: Bounds
 	 * @specfield bounds: Bounds
 	 * @specfield options: Options
+	 * @specfield solver: SATFactory
+	 * @specfield profile: TranslationProfile
 	 * @specfield incremental: boolean
+	 * @specfield retractable: boolean
+	 * @specfield activation: int // activation variable that guards the translation of originalFormula, if any
+	 * @specfield symmetryActivation: int // activation variable that guards the SBP of a retractable translation, if any
+	 * @specfield lazyThreshold: int // minimum estimated number of bindings of a deferred conjunct, or 0 if no conjuncts are deferred
 	 */
 	private final Formula originalFormula;
 	private final Bounds originalBounds;
 	private final Bounds bounds;
 	private final Options options;
+	private final SATFactory solver;
+	private final TranslationProfile profile;
 	private final boolean logging;
 	private final boolean incremental;
+	private final boolean retractable;
+	private int activation;
+	private int symmetryActivation;
+	private final int lazyThreshold;
 	
 	/**
-	 * Constructs a Translator for the given formula, bounds, options and incremental flag.
-	 * If the flag is true, then the translator produces an initial {@linkplain Translation.Incremental incremental translation}.
-	 * Otherwise, the translator produces a {@linkplain Translation.Whole basic translation}.
+	 * Constructs a Translator for the given formula, bounds, options, solver factory, incremental and retractable flags, 
+	 * and lazy instantiation threshold.
+	 * If the incremental flag is true, then the translator produces an initial {@linkplain Translation.Incremental incremental translation}, 
+	 * which is {@linkplain Translation.Incremental#retractable() retractable} iff the retractable flag is true.
+	 * Otherwise, the translator produces a {@linkplain Translation.Whole basic translation}.  If the lazy 
+	 * threshold is positive, the instances of large top-level universally quantified formulas are deferred.
+	 * @requires retractable => incremental
+	 * @requires lazyThreshold > 0 => incremental && !retractable
 	 * @ensures this.originalFormula' = formula and 
 	 * 	this.options' = options and 
 	 *  this.originalBounds' = bounds and 
 	 * 	this.bounds' = bounds.clone() and
-	 *  this.incremental' = incremental 
+	 *  this.solver' = solver and
+	 *  this.profile' = new TranslationProfile(options.reporter) and
+	 *  this.incremental' = incremental and
+	 *  this.retractable' = retractable and 
+	 *  this.lazyThreshold' = lazyThreshold
 	 */
-	private Translator(Formula formula, Bounds bounds, Options options, boolean incremental) {
+	private Translator(Formula formula, Bounds bounds, Options options, SATFactory solver, boolean incremental, boolean retractable, int lazyThreshold) {
 		this.originalFormula = formula;
 		this.originalBounds = bounds;
 		this.bounds = bounds.clone();
 		this.options = options;
+		this.solver = solver;
+		this.profile = new TranslationProfile(options.reporter());
 		this.logging = options.logTranslation()>0;
 		this.incremental = incremental;
+		this.retractable = retractable;
+		this.activation = 0;
+		this.symmetryActivation = 0;
+		this.lazyThreshold = lazyThreshold;
+	}
+	
+	/**
+	 * Constructs a Translator for the given formula, bounds, options, solver factory, and incremental and retractable flags.
+	 * @ensures this(formula, bounds, options, solver, incremental, retractable, 0)
+	 */
+	private Translator(Formula formula, Bounds bounds, Options options, SATFactory solver, boolean incremental, boolean retractable) {
+		this(formula, bounds, options, solver, incremental, retractable, 0);
+	}
+	
+	/**
+	 * Constructs a Translator for the given formula, bounds, options, and incremental and retractable flags.
+	 * @ensures this(formula, bounds, options, options.solver, incremental, retractable)
+	 */
+	private Translator(Formula formula, Bounds bounds, Options options, boolean incremental, boolean retractable) {
+		this(formula, bounds, options, options.solver(), incremental, retractable);
 	}
 	
 	/**
 	 * Constructs a non-incremental Translator for the given formula, bounds and options.
-	 * @ensures this(formula, bounds, options, false)
+	 * @ensures this(formula, bounds, options, false, false)
 	 */
 	private Translator(Formula formula, Bounds bounds, Options options) {
-		this(formula, bounds, options, false);
+		this(formula, bounds, options, false, false);
 	}
 	
 	/**
@@ -391,11 +610,15 @@ public final class Translator {
 	 * is generated in such a way that the magnitude of a literal representing the truth
 	 * value of a given formula is strictly larger than the magnitudes of the literals representing
 	 * the truth values of the formula's descendants.  
+	 * @ensures this.options.reporter() in ProfilingReporter => this.options.reporter().profiledTranslation(this.profile)
 	 * @throws UnboundLeafException  this.originalFormula refers to an undeclared variable or a relation not mapped by this.bounds.
 	 * @throws HigherOrderDeclException  this.originalFormula contains a higher order declaration that cannot
 	 * be skolemized, or it can be skolemized but this.options.skolemDepth < 0
+	 * @throws AbortedException  this.options.cancellation was cancelled during translation
 	 */
 	private Translation translate()   {
+		final CancellationToken cancellation = options.cancellation();
+		cancellation.checkpoint();
 		final AnnotatedNode<Formula> annotated = logging ? annotateRoots(originalFormula) : annotate(originalFormula);
 		// Remove bindings for unused relations/ints if this is not an incremental translation.  If it is
 		// an incremental translation, we have to keep all bindings since they may be used later on.
@@ -404,12 +627,21 @@ public final class Translator {
 			if (!annotated.usesInts()) bounds.ints().clear();
 		}
 		// Detect symmetries.
-		final SymmetryBreaker breaker = new SymmetryBreaker(bounds, options.reporter());
+		profile.begin();
+		final SymmetryBreaker breaker = new SymmetryBreaker(bounds, options.translationThreads(), options.reporter());
+		profile.end(Phase.SYMMETRY_DETECTION);
+		cancellation.checkpoint();
 		// Optimize formula and bounds by using symmetry information to tighten bounds and 
 		// eliminate top-level predicates, and also by skolemizing.  Then translate the optimize
 		// formula and bounds to a circuit, augment the circuit with a symmetry breaking predicate 
 		// that eliminates any remaining symmetries, and translate everything to CNF.
-		return toBoolean(optimizeFormulaAndBounds(annotated, breaker), breaker);
+		final AnnotatedNode<Formula> optimized = optimizeFormulaAndBounds(annotated, breaker);
+		cancellation.checkpoint();
+		final Translation translation = toBoolean(optimized, breaker);
+		translation.setProfile(profile);
+		if (options.reporter() instanceof ProfilingReporter) 
+			((ProfilingReporter) options.reporter()).profiledTranslation(profile);
+		return translation;
 	}
 	
 	/**
@@ -441,15 +673,29 @@ public final class Translator {
 				annotated = flatten(annotated, false);
 			}
 			if (options.skolemDepth()>=0) {
+				profile.begin();
 				annotated = skolemize(annotated, bounds, options);
+				profile.end(Phase.SKOLEMIZATION);
 			}
 			if (coreGranularity>1) { 
 				annotated = flatten(annotated, options.coreGranularity()==3);
 			}
-			return inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), false));		
+			profile.begin();
+			annotated = inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), false));
+			profile.end(Phase.PREDICATE_INLINING);
+			return annotated;
 		} else {  			
-			annotated = inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), true).keySet());
-			return options.skolemDepth()>=0 ? Skolemizer.skolemize(annotated, bounds, options) : annotated;
+			profile.begin();
+			// a retractable translation cannot tighten bounds based on predicates that may later be retracted
+			annotated = inlinePredicates(annotated, retractable ? Collections.<RelationPredicate>emptySet() : 
+				breaker.breakMatrixSymmetries(annotated.predicates(), true).keySet());
+			profile.end(Phase.PREDICATE_INLINING);
+			if (options.skolemDepth()>=0) { 
+				profile.begin();
+				annotated = Skolemizer.skolemize(annotated, bounds, options);
+				profile.end(Phase.SKOLEMIZATION);
+			}
+			return annotated;
 		}
 	}
 
@@ -544,27 +790,61 @@ public final class Translator {
 		if (logging) {
 			assert !incremental;
 			final TranslationLogger logger = options.logTranslation()==1 ? new MemoryLogger(annotated, bounds) : new FileLogger(annotated, bounds);
-			final BooleanAccumulator circuit = FOL2BoolTranslator.translate(annotated, interpreter, logger);
+			profile.begin();
+			final BooleanAccumulator circuit = FOL2BoolTranslator.translate(annotated, interpreter, logger, profile);
+			profile.end(Phase.FOL_TO_BOOLEAN);
 			final TranslationLog log = logger.log();
 			if (circuit.isShortCircuited()) {
+				profile.recordGates(factory);
 				return trivial(circuit.op().shortCircuit(), log);
 			} else if (circuit.size()==0) { 
+				profile.recordGates(factory);
 				return trivial(circuit.op().identity(), log);
 			}
+			profile.begin();
 			circuit.add(breaker.generateSBP(interpreter, options));
-			return toCNF((BooleanFormula)factory.accumulate(circuit), interpreter, log);
+			profile.end(Phase.SBP_GENERATION);
+			final BooleanFormula root = (BooleanFormula)factory.accumulate(circuit);
+			profile.recordGates(factory);
+			return toCNF(root, interpreter, factory.maxVariable(), log);
+		} else if (options.streamCNF() && !retractable && lazyThreshold==0) {
+			return toCNF(FOL2BoolTranslator.translateRoots(annotated, interpreter, incremental ? 0 : options.symbolicThreshold(), profile), breaker, interpreter);
 		} else {
-			final BooleanValue circuit = (BooleanValue)FOL2BoolTranslator.translate(annotated, interpreter);
-			if (circuit.op()==Operator.CONST) {
+			final int maxRelationVar = factory.maxVariable(); // excludes the variables that encode symbolic quantifiers
+			final List<Formula> deferred = new ArrayList<Formula>();
+			profile.begin();
+			BooleanValue circuit = lazyThreshold > 0 ? 
+				FOL2BoolTranslator.translate(annotated, interpreter, lazyThreshold, deferred, profile) : 
+				FOL2BoolTranslator.translate(annotated, interpreter, options.translationThreads(), incremental ? 0 : options.symbolicThreshold(), profile);
+			profile.end(Phase.FOL_TO_BOOLEAN);
+			if (retractable && (activation = activation(circuit, factory)) != 0) {
+				circuit = factory.implies(factory.variable(activation), circuit);
+			}
+			if (circuit==BooleanConstant.FALSE || (circuit==BooleanConstant.TRUE && deferred.isEmpty())) {
+				profile.recordGates(factory);
 				return trivial((BooleanConstant)circuit, null);
 			} 
-			return toCNF((BooleanFormula)factory.and(circuit, breaker.generateSBP(interpreter, options)), interpreter, null);
+			profile.begin();
+			BooleanValue sbp = breaker.generateSBP(interpreter, options);
+			// later bounds may narrow relations of a retractable translation in ways that split the 
+			// symmetry classes of this.bounds, so its SBP is guarded and enforced only by assumption
+			if (retractable && sbp != BooleanConstant.TRUE) { 
+				factory.addVariables(1);
+				symmetryActivation = factory.maxVariable();
+				sbp = factory.implies(factory.variable(symmetryActivation), sbp);
+			}
+			profile.end(Phase.SBP_GENERATION);
+			final BooleanValue root = factory.and(circuit, sbp);
+			profile.recordGates(factory);
+			if (!deferred.isEmpty()) 
+				return toCNF(root, deferred, interpreter);
+			return toCNF((BooleanFormula)root, interpreter, incremental ? factory.maxVariable() : maxRelationVar, null);
 		}
 	}
 	
 	/**
 	 * Translates the given circuit to CNF, adds the clauses to a SATSolver returned
-	 * by options.solver(), and returns a Translation object constructed from the solver
+	 * by this.solver, and returns a Translation object constructed from the solver
 	 * and the provided arguments.
 	 * @requires SAT(circuit) iff SAT(this.originalFormula, this.originalBounds, this.options)
 	 * @requires circuit.factory = interpreter.factory
@@ -572,6 +852,8 @@ public final class Translator {
 	 *           interpreter.ints = this.bounds.ints() && interpreter.lbounds = this.bounds.lowerBound && 
 	 *           this.interpreter.ubounds = bounds.upperBound && interpreter.ibounds = bounds.intBound 
 	 * @requires log.originalFormula = this.originalFormula && log.bounds = this.bounds
+	 * @requires maxPrimaryVar is the largest label of a variable that is assigned to a relation by 
+	 *           the interpreter or, if this.incremental, of any variable in circuit.factory
 	 * @ensures {@link #completeBounds()}
 	 * @ensures this.options.reporter.translatingToCNF(circuit)
 	 * @return some t: Translation | 
@@ -580,20 +862,134 @@ public final class Translator {
 	 *           t.vars[Relation].int in t.solver.variables && 
 	 *           t.solver.solve() iff SAT(this.formula, this.bounds, this.options)
 	 */
-	private Translation toCNF(BooleanFormula circuit, LeafInterpreter interpreter, TranslationLog log) {	
+	private Translation toCNF(BooleanFormula circuit, LeafInterpreter interpreter, int maxPrimaryVar, TranslationLog log) {	
 		options.reporter().translatingToCNF(circuit);
-		final int maxPrimaryVar = interpreter.factory().maxVariable();
 		if (incremental) {
-			final Bool2CNFTranslator incrementer = Bool2CNFTranslator.translateIncremental(circuit, maxPrimaryVar, options.solver());
-			return new Translation.Incremental(completeBounds(), options, SymmetryDetector.partition(originalBounds), interpreter, incrementer);
+			profile.begin();
+			final Bool2CNFTranslator incrementer = Bool2CNFTranslator.translateIncremental(circuit, maxPrimaryVar, solver, options.cancellation());
+			profile.end(Phase.CNF_CONVERSION);
+			final Translation.Incremental translation = new Translation.Incremental(completeBounds(), options, 
+					SymmetryDetector.partition(originalBounds, options.translationThreads()), interpreter, incrementer, retractable, activation);
+			translation.setSymmetryActivation(symmetryActivation);
+			return translation;
 		} else {
 			final Map<Relation, IntSet> varUsage = interpreter.vars();
 			interpreter = null; // enable gc
-			final SATSolver cnf = Bool2CNFTranslator.translate((BooleanFormula)circuit, maxPrimaryVar, options.solver());
+			profile.begin();
+			final SATSolver cnf = Bool2CNFTranslator.translate((BooleanFormula)circuit, maxPrimaryVar, solver, options.cancellation());
+			profile.end(Phase.CNF_CONVERSION);
 			return new Translation.Whole(completeBounds(), options, cnf, varUsage, maxPrimaryVar, log);
 		}
 	}
 	
+	/**
+	 * Translates the given circuit to CNF, adds the clauses to a SATSolver returned
+	 * by this.solver, and returns an incremental Translation object constructed from the 
+	 * solver and the provided arguments, whose instances of the given deferred formulas 
+	 * are added on demand.  Unlike {@link #toCNF(BooleanFormula, LeafInterpreter, int, TranslationLog)}, this 
+	 * method does not produce a trivial translation if the given circuit is TRUE, since the 
+	 * returned translation needs the interpreter to instantiate the deferred formulas.
+	 * @requires this.incremental && this.lazyThreshold > 0 && !this.retractable
+	 * @requires circuit.factory = interpreter.factory && circuit != FALSE 
+	 * @requires and(circuit, deferred) is equisatisfiable with this.originalFormula with respect to this.originalBounds and this.options
+	 * @requires interpreter.universe = this.bounds.universe && interpreter.relations = this.bounds.relations() && 
+	 *           interpreter.ints = this.bounds.ints() && interpreter.lbounds = this.bounds.lowerBound && 
+	 *           this.interpreter.ubounds = bounds.upperBound && interpreter.ibounds = bounds.intBound 
+	 * @ensures {@link #completeBounds()}
+	 * @return some t: Translation.Incremental | 
+	 *           t.bounds = completeBounds() && t.originalBounds = this.originalBounds &&
+	 *           t.vars = interpreter.vars && t.deferred = deferred &&
+	 *           t.vars[Relation].int in t.solver.variables 
+	 */
+	private Translation.Incremental toCNF(BooleanValue circuit, List<Formula> deferred, LeafInterpreter interpreter) { 
+		final int maxPrimaryVar = interpreter.factory().maxVariable();
+		final Translation.Incremental translation;
+		if (circuit==BooleanConstant.TRUE) { 
+			final Bool2CNFTranslator cnf = Bool2CNFTranslator.translateIncremental(BooleanConstant.TRUE, solver);
+			if (maxPrimaryVar > 0) 
+				cnf.solver().addVariables(maxPrimaryVar);
+			translation = new Translation.Incremental(completeBounds(), options, SymmetryDetector.partition(originalBounds, options.translationThreads()), 
+					interpreter, cnf, false, 0);
+		} else { 
+			translation = (Translation.Incremental) toCNF((BooleanFormula) circuit, interpreter, maxPrimaryVar, null);
+		}
+		translation.setDeferred(deferred);
+		return translation;
+	}
+	
+	/**
+	 * Streams the CNF translations of the given root circuits, followed by the translation of the 
+	 * SBP generated by the given symmetry breaker, to a SATSolver returned by this.solver, and 
+	 * returns a Translation object constructed from the solver and the provided arguments.  Each 
+	 * root is converted to clauses as soon as it is produced by the given iterator, after which 
+	 * the gates of interpreter.factory are cleared, so at most one root circuit is 
+	 * retained at a time.  If some root is FALSE, or if all roots are TRUE, the resulting 
+	 * translation is trivial.
+	 * @requires roots is an iterator returned by {@link FOL2BoolTranslator#translateRoots(kodkod.util.nodes.AnnotatedNode, LeafInterpreter, int, TranslationProfile)}
+	 * @requires SAT(and(roots)) iff SAT(this.originalFormula, this.originalBounds, this.options)
+	 * @requires roots.elements.factory = interpreter.factory
+	 * @requires breaker.bounds = this.bounds
+	 * @requires interpreter.universe = this.bounds.universe && interpreter.relations = this.bounds.relations() && 
+	 *           interpreter.ints = this.bounds.ints() && interpreter.lbounds = this.bounds.lowerBound && 
+	 *           this.interpreter.ubounds = bounds.upperBound && interpreter.ibounds = bounds.intBound 
+	 * @ensures {@link #completeBounds()}
+	 * @ensures this.options.reporter.translatingToCNF(root) for the first non-constant root, if any
+	 * @return some t: Translation | 
+	 *           t.bounds = completeBounds() && t.originalBounds = this.originalBounds &&
+	 *           t.vars = interpreter.vars &&
+	 *           t.vars[Relation].int in t.solver.variables && 
+	 *           t.solver.solve() iff SAT(this.formula, this.bounds, this.options)
+	 */
+	private Translation toCNF(Iterator<BooleanValue> roots, SymmetryBreaker breaker, LeafInterpreter interpreter) {
+		final BooleanFactory factory = interpreter.factory();
+		final int maxPrimaryVar = factory.maxVariable();
+		final Bool2CNFTranslator cnf = Bool2CNFTranslator.translateStreaming(solver);
+		boolean constant = true;
+		while(roots.hasNext()) { 
+			profile.begin();
+			final BooleanValue root = roots.next();
+			profile.end(Phase.FOL_TO_BOOLEAN);
+			profile.addGates(factory);
+			if (root==BooleanConstant.FALSE) { 
+				cnf.solver().free();
+				return trivial(BooleanConstant.FALSE, null);
+			} else if (root!=BooleanConstant.TRUE) { 
+				if (constant) { 
+					options.reporter().translatingToCNF((BooleanFormula)root);
+					constant = false;
+				}
+				profile.begin();
+				Bool2CNFTranslator.translateIncremental((BooleanFormula)root, maxPrimaryVar, cnf, options.cancellation());
+				profile.end(Phase.CNF_CONVERSION);
+			}
+			// the gates of this root are in the solver now, so neither the factory nor the 
+			// CNF translator needs to remember them:  later roots are built from fresh gates
+			factory.clearGates();
+			Bool2CNFTranslator.release(cnf);
+		}
+		if (constant) {
+			cnf.solver().free();
+			return trivial(BooleanConstant.TRUE, null);
+		} 
+		profile.begin();
+		final BooleanValue sbp = breaker.generateSBP(interpreter, options);
+		profile.end(Phase.SBP_GENERATION);
+		profile.addGates(factory);
+		if (sbp!=BooleanConstant.TRUE) { 
+			profile.begin();
+			Bool2CNFTranslator.translateIncremental((BooleanFormula)sbp, maxPrimaryVar, cnf, options.cancellation());
+			profile.end(Phase.CNF_CONVERSION);
+		}
+		factory.clearGates();
+		Bool2CNFTranslator.release(cnf);
+		if (incremental) {
+			return new Translation.Incremental(completeBounds(), options, SymmetryDetector.partition(originalBounds, options.translationThreads()), interpreter, cnf, 
+					retractable, activation);
+		} else {
+			return new Translation.Whole(completeBounds(), options, cnf.solver(), interpreter.vars(), maxPrimaryVar, null);
+		}
+	}
+	
 	/**
 	 * Returns a whole or incremental translation, depending on the value of {@code this.incremental}, 
 	 * using the given trivial outcome, {@linkplain #completeBounds() completeBounds()}, {@code this.options}, 
@@ -609,12 +1005,12 @@ public final class Translator {
 	private Translation trivial(BooleanConstant outcome, TranslationLog log) {
 		if (incremental) {
 			return new Translation.Incremental(completeBounds(), options, 
-					SymmetryDetector.partition(originalBounds), 
+					SymmetryDetector.partition(originalBounds, options.translationThreads()), 
 					LeafInterpreter.empty(bounds.universe(), options), // empty interpreter
-					Bool2CNFTranslator.translateIncremental(outcome, options.solver()));
+					Bool2CNFTranslator.translateIncremental(outcome, solver), retractable, 0);
 		} else {
 			return new Translation.Whole(completeBounds(), options, 
-					Bool2CNFTranslator.translate(outcome, options.solver()), 
+					Bool2CNFTranslator.translate(outcome, solver), 
 					(Map<Relation,IntSet>)Collections.EMPTY_MAP, 0, log);
 		}
 	}
@@ -26,7 +26,7 @@ package kodkod.engine.satlab;
  * 
  * @author Emina Torlak
  */
-final class CryptoMiniSat extends NativeSolver {
+final class CryptoMiniSat extends NativeSolver implements SATAssumptionSolver, SATInterruptibleSolver {
 
 	/**
 	 * Constructs a new MiniSAT wrapper.
@@ -74,6 +74,13 @@ final class CryptoMiniSat extends NativeSolver {
 	 */
 	@Override
 	native boolean addClause(long peer, int[] lits) ;
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#addClauses(long, int[], int)
+	 */
+	@Override
+	native int addClauses(long peer, int[] flat, int count);
 
 	/**
 	 * {@inheritDoc}
@@ -81,6 +88,20 @@ final class CryptoMiniSat extends NativeSolver {
 	 */
 	@Override
 	native boolean solve(long peer) ;
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+	 */
+	@Override
+	native boolean solveAssuming(long peer, int[] assumptions);
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#interrupt(long)
+	 */
+	@Override
+	native void interrupt(long peer) ;
 
 	/**
 	 * {@inheritDoc}
@@ -40,7 +40,7 @@ import java.util.List;
  * executed in a separate process.
  * @author Emina Torlak
  */
-final class ExternalSolver implements SATSolver {
+final class ExternalSolver implements SATInterruptibleSolver {
 	private final StringBuilder buffer;
 	private final int capacity = 8192;
 	private final boolean deleteTemp;
@@ -50,6 +50,8 @@ final class ExternalSolver implements SATSolver {
 	private final BitSet solution;
 	private volatile Boolean sat;
 	private volatile int vars, clauses;
+	private volatile Process process;
+	private volatile boolean interrupted;
 
 
 	/**
@@ -143,7 +145,7 @@ final class ExternalSolver implements SATSolver {
 		buffer.append("0\n");
 		return true;
 	}
-
+	
 	/**
 	 * @see kodkod.engine.satlab.SATSolver#addVariables(int)
 	 */
@@ -206,6 +208,7 @@ final class ExternalSolver implements SATSolver {
 	@SuppressWarnings("resource") // suppressing spurious warning about "out" not being closed (it is, in the finally block)
 	public boolean solve() throws SATAbortedException {
 		if (sat==null) {
+			interrupted = false;
 			flush();
 			Process p = null;
 			BufferedReader out = null;
@@ -219,6 +222,8 @@ final class ExternalSolver implements SATSolver {
 				System.arraycopy(options, 0, command, 1, options.length);
 				command[command.length-1] = inTemp;
 				p = Runtime.getRuntime().exec(command);
+				process = p;
+				if (interrupted) p.destroy(); // interrupted before process was set
 				new Thread(drain(p.getErrorStream())).start();
 				out = outputReader(p);
 				String line = null;
@@ -248,14 +253,21 @@ final class ExternalSolver implements SATSolver {
 						} // not a solution line or a variable line, so ignore it.
 					}
 				}
+				if (interrupted) {
+					sat = null;
+					throw new SATAbortedException("Interrupted.");
+				}
 				if (sat==null) {
 					throw new SATAbortedException("Invalid " + executable + " output: no line specifying the outcome.");
 				}
 			} catch (IOException e) {
-				throw new SATAbortedException(e);
+				if (!interrupted) throw new SATAbortedException(e);
+				sat = null;
+				throw new SATAbortedException("Interrupted.", e);
 			} catch (NumberFormatException e) {
 				throw new SATAbortedException("Invalid "+ executable +" output: encountered a non-integer variable token.", e);
 			} finally {
+				process = null;
 				close(cnf);
 				close(out);
 			}
@@ -263,6 +275,18 @@ final class ExternalSolver implements SATSolver {
 		return sat;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * Interrupting an external solver destroys the process in which it is running.
+	 * @see kodkod.engine.satlab.SATInterruptibleSolver#interrupt()
+	 */
+	public void interrupt() {
+		interrupted = true;
+		final Process p = process;
+		if (p!=null) 
+			p.destroy();
+	}
+	
 	/**
 	 * Returns a runnable that drains the specified input stream.
 	 * @return a runnable that drains the specified input stream.
@@ -26,7 +26,7 @@ package kodkod.engine.satlab;
  * 
  * @author Emina Torlak
  */
-final class Glucose extends NativeSolver {
+final class Glucose extends NativeSolver implements SATAssumptionSolver, SATInterruptibleSolver {
 
 	/**
 	 * Constructs a new Glucose wrapper.
@@ -69,12 +69,30 @@ final class Glucose extends NativeSolver {
 	 */
 	native boolean addClause(long peer, int[] lits);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#addClauses(long, int[], int)
+	 */
+	native int addClauses(long peer, int[] flat, int count);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#solve(long)
 	 */
 	native boolean solve(long peer);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+	 */
+	native boolean solveAssuming(long peer, int[] assumptions);
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#interrupt(long)
+	 */
+	native void interrupt(long peer);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#valueOf(long, int)
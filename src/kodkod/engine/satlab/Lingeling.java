@@ -71,12 +71,25 @@ final class Lingeling extends NativeSolver {
 	 */
 	native boolean addClause(long peer, int[] lits);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#addClauses(long, int[], int)
+	 */
+	native int addClauses(long peer, int[] flat, int count);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#solve(long)
 	 */
 	native boolean solve(long peer);
 	
+	/**
+	 * {@inheritDoc}
+	 * The native peer does not support interruption, so this method does nothing.
+	 * @see kodkod.engine.satlab.NativeSolver#interrupt(long)
+	 */
+	void interrupt(long peer) {}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#valueOf(long, int)
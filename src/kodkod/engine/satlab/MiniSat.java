@@ -26,7 +26,7 @@ package kodkod.engine.satlab;
  * Java wrapper for the MiniSat solver by Niklas E&eacute;n and Niklas S&ouml;rensson.
  * @author Emina Torlak
  */
-final class MiniSat extends NativeSolver {
+final class MiniSat extends NativeSolver implements SATAssumptionSolver, SATInterruptibleSolver {
 	
 	/**
 	 * Constructs a new MiniSAT wrapper.
@@ -72,12 +72,30 @@ final class MiniSat extends NativeSolver {
 	 */
 	native boolean addClause(long peer, int[] lits);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#addClauses(long, int[], int)
+	 */
+	native int addClauses(long peer, int[] flat, int count);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#solve(long)
 	 */
 	native boolean solve(long peer);
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#solveAssuming(long, int[])
+	 */
+	native boolean solveAssuming(long peer, int[] assumptions);
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.NativeSolver#interrupt(long)
+	 */
+	native void interrupt(long peer);
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#valueOf(long, int)
@@ -225,6 +225,13 @@ final class MiniSatProver extends NativeSolver implements SATProver {
 	 */
 	native boolean solve(long peer);
 	
+	/**
+	 * {@inheritDoc}
+	 * The native peer does not support interruption, so this method does nothing.
+	 * @see kodkod.engine.satlab.NativeSolver#interrupt(long)
+	 */
+	void interrupt(long peer) {}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.NativeSolver#valueOf(long, int)
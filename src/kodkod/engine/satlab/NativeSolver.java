@@ -22,6 +22,7 @@
 package kodkod.engine.satlab;
 
 import java.io.File;
+import java.util.Arrays;
 
 
 
@@ -32,13 +33,14 @@ import java.io.File;
  * 
  * @author Emina Torlak
  */
-abstract class NativeSolver implements SATSolver {
+abstract class NativeSolver implements SATBatchSolver {
 	/**
 	 * The memory address of the native instance wrapped by this wrapper.
 	 */
 	private long peer;
 	private Boolean sat;
 	private int clauses, vars;
+	private volatile boolean interrupted;
 	
 	/**
 	 * Constructs a new wrapper for the given 
@@ -48,6 +50,7 @@ abstract class NativeSolver implements SATSolver {
 		this.peer = peer;
 		this.clauses = this.vars = 0;
 		this.sat = null;
+		this.interrupted = false;
 //		System.out.println("created " + peer);
 	}
 	
@@ -138,6 +141,18 @@ abstract class NativeSolver implements SATSolver {
 		return false;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATBatchSolver#addClauses(int[], int)
+	 * @see #addClauses(long, int[], int)
+	 */
+	public final int addClauses(int[] flat, int count) {
+		if (count == 0) 
+			return 0;
+		final int added = addClauses(peer, flat, count);
+		clauses += added;
+		return added;
+	}
 	
 	/**
 	 * Returns a pointer to the C++ peer class (the native instance wrapped by this object).
@@ -161,8 +176,51 @@ abstract class NativeSolver implements SATSolver {
 	public final boolean solve() {
 		if (sat == Boolean.FALSE)
 			return sat;
-		else
-			return (sat = Boolean.valueOf(solve(peer)));
+		interrupted = false;
+		final boolean outcome = solve(peer);
+		if (interrupted) {
+			sat = null;
+			throw new SATAbortedException("Interrupted.");
+		}
+		return (sat = Boolean.valueOf(outcome));
+	}
+	
+	/**
+	 * Implements {@link SATAssumptionSolver#solve(int[])} for the subclasses 
+	 * whose native peers support assumptions.  An unsatisfiable outcome leaves 
+	 * the {@linkplain #status() status} of this solver unknown, so the next call 
+	 * to {@link #solve()} performs a fresh search.
+	 * @see kodkod.engine.satlab.SATAssumptionSolver#solve(int[])
+	 * @see #solveAssuming(long, int[])
+	 */
+	public final boolean solve(int[] assumptions) {
+		for(int lit : assumptions) {
+			validateVariable(StrictMath.abs(lit));
+		}
+		if (sat == Boolean.FALSE)
+			return false;
+		interrupted = false;
+		final boolean outcome = solveAssuming(peer, assumptions);
+		if (interrupted) {
+			sat = null;
+			throw new SATAbortedException("Interrupted.");
+		}
+		sat = outcome ? Boolean.TRUE : null;
+		return outcome;
+	}
+	
+	/**
+	 * Asks this solver to abandon the call to {@link #solve()} that is currently 
+	 * executing in another thread, if any.  Subclasses whose peers support interruption 
+	 * implement {@link SATInterruptibleSolver}; for the others, a request that is 
+	 * noticed after the search has finished abandons the call then.
+	 * @see kodkod.engine.satlab.SATInterruptibleSolver#interrupt()
+	 * @see #interrupt(long)
+	 */
+	public synchronized final void interrupt() {
+		interrupted = true;
+		if (peer!=0) 
+			interrupt(peer);
 	}
 	
 
@@ -237,6 +295,28 @@ abstract class NativeSolver implements SATSolver {
 	 */
 	abstract boolean addClause(long peer, int[] lits);
 	
+	/**
+	 * Ensures that the given native peer logically contains the first {@code count} 
+	 * zero-terminated clauses in the given array, and returns the number of clauses 
+	 * that were added before the peer's clause database became unsatisfiable, if it did.
+	 * Peers that support batching override this method to add all clauses with a single 
+	 * native call.  The default implementation calls {@link #addClause(long, int[])} once per clause.
+	 * @requires count >= 0 && flat contains at least count zero-terminated clauses
+	 * @requires all clauses in flat satisfy the preconditions of {@link #addClause(long, int[])}
+	 * @ensures ensures that the given native peer logically contains the specified clauses
+	 * @return the number of clauses that were added before the peer's clause database became 
+	 * unsatisfiable, if it did; otherwise returns count.
+	 */
+	int addClauses(long peer, int[] flat, int count) {
+		int added = 0;
+		for(int i = 0, start = 0, end = 0; i < count; i++, start = ++end) {
+			while(flat[end] != 0) end++;
+			if (addClause(peer, Arrays.copyOfRange(flat, start, end))) 
+				added++;
+		}
+		return added;
+	}
+	
 	/**
 	 * Calls the solve method on the given native peer.
 	 * @return true if the clauses in the solver are SAT;
@@ -244,6 +324,27 @@ abstract class NativeSolver implements SATSolver {
 	 */
 	abstract boolean solve(long peer);
 	
+	/**
+	 * Calls the solve method on the given native peer, passing it the
+	 * given literals as assumptions.  Peers that do not support assumptions 
+	 * throw an UnsupportedOperationException.
+	 * @requires all i: [0..assumptions.length) | abs(assumptions[i]) in this.variables
+	 * @return true if the clauses in the solver are SAT under the given 
+	 * assumptions; otherwise returns false.
+	 * @throws UnsupportedOperationException  the given peer does not support assumptions
+	 */
+	boolean solveAssuming(long peer, int[] assumptions) {
+		throw new UnsupportedOperationException(this + " does not support assumptions.");
+	}
+	
+	/**
+	 * Asks the given native peer to abandon the search that it is currently 
+	 * performing, if any.  Peers that do not support interruption ignore the request. 
+	 * The request is cleared at the start of the next call to {@link #solve(long) solve(peer)}.
+	 * @ensures requests that the current search of the given native peer, if any, be abandoned
+	 */
+	abstract void interrupt(long peer);
+	
 	/**
 	 * Returns the assignment for the given literal
 	 * by the specified native peer
@@ -0,0 +1,395 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SATSolver that mirrors its variables and clauses into several 
+ * underlying solvers and races them against each other on every call to 
+ * {@linkplain #solve()}.  The outcome of a call to solve() is the outcome 
+ * reported by the first member to terminate normally; the remaining members 
+ * are then {@linkplain SATInterruptibleSolver#interrupt() interrupted} and kept for subsequent 
+ * calls.  Members that cannot be interrupted, or that do not stop within a short 
+ * grace period, are abandoned instead:  they are dropped from the portfolio and freed as soon as 
+ * they terminate.  A portfolio therefore remains incremental if all of its 
+ * members are, but it may shrink after each call to solve().  A portfolio 
+ * that has lost all of its members can no longer be used.  
+ * 
+ * <p>The members may simplify the clauses that they are given in different 
+ * ways, so they need not agree on which clauses changed their state.  The clauses 
+ * of a portfolio are therefore those retained by its primary member, which is the 
+ * first member of the portfolio at the time the clauses are added.</p>
+ * 
+ * @specfield members: seq SATSolver 
+ * @specfield winner: lone members // member whose answer was returned by the last call to solve()
+ * @invariant all m: members | m.variables = this.variables && [[m.clauses]] = [[this.clauses]]
+ * @author Emina Torlak
+ */
+final class PortfolioSolver implements SATInterruptibleSolver, SATBatchSolver {
+	private final List<SATSolver> members;
+	private final ThreadPoolExecutor executor;
+	/* milliseconds to wait for a racer to stop after it has been interrupted */
+	private static final long GRACE = 1000;
+	private volatile SATSolver[] racing;
+	private SATSolver winner;
+	private Boolean sat;
+	private int vars, clauses;
+	
+	/**
+	 * Constructs a new portfolio that races the given solvers. 
+	 * @requires solvers.length > 0 && no s: solvers[int] | s.variables + s.clauses
+	 * @requires all disj i, j: [0..solvers.length) | solvers[i] != solvers[j]
+	 * @ensures this.members' = solvers[int] && no this.winner'
+	 */
+	PortfolioSolver(SATSolver[] solvers) {
+		assert solvers.length > 0;
+		this.members = new ArrayList<SATSolver>(solvers.length);
+		for(SATSolver s : solvers) { members.add(s); }
+		this.executor = new ThreadPoolExecutor(solvers.length, solvers.length, 1, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						final Thread t = new Thread(r, "kodkod-portfolio");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+		this.racing = null;
+		this.winner = null;
+		this.sat = null;
+		this.vars = this.clauses = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#numberOfVariables()
+	 */
+	public int numberOfVariables() {
+		return vars;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#numberOfClauses()
+	 */
+	public int numberOfClauses() {
+		return clauses;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#addVariables(int)
+	 */
+	public void addVariables(int numVars) {
+		checkMembers();
+		if (numVars < 0)
+			throw new IllegalArgumentException("numVars < 0: " + numVars);
+		else if (numVars > 0) {
+			vars += numVars;
+			for(SATSolver s : members) { 
+				s.addVariables(numVars); 
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+	 */
+	public boolean addClause(int[] lits) {
+		checkMembers();
+		if (Boolean.FALSE.equals(sat)) return false;
+		// members may modify the array, so all but the primary get their own copy
+		for(int i = 1, max = members.size(); i < max; i++) { 
+			members.get(i).addClause(lits.clone());
+		}
+		final boolean added = members.get(0).addClause(lits);
+		if (added) clauses++;
+		return added;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * Members that do not accept batches of clauses are given the clauses one at a time.
+	 * @see kodkod.engine.satlab.SATBatchSolver#addClauses(int[], int)
+	 */
+	public int addClauses(int[] flat, int count) {
+		checkMembers();
+		if (Boolean.FALSE.equals(sat)) return 0;
+		// members may modify the array, so all but the primary get their own copy
+		for(int i = 1, max = members.size(); i < max; i++) { 
+			addClauses(members.get(i), flat.clone(), count);
+		}
+		final int added = addClauses(members.get(0), flat, count);
+		clauses += added;
+		return added;
+	}
+	
+	/**
+	 * Adds the first count clauses in the given array to the given solver, either 
+	 * as a batch, if the solver supports it, or one clause at a time.
+	 * @requires flat contains at least count zero-terminated sequences of literals
+	 * @ensures [[solver.clauses']] = ([[solver.clauses]] and [[first count clauses in flat]])
+	 * @return #solver.clauses' - #solver.clauses
+	 */
+	private static int addClauses(SATSolver solver, int[] flat, int count) { 
+		if (solver instanceof SATBatchSolver) 
+			return ((SATBatchSolver) solver).addClauses(flat, count);
+		int added = 0;
+		for(int i = 0, start = 0, end = 0; i < count; i++, start = ++end) {
+			while(flat[end] != 0) end++;
+			if (solver.addClause(Arrays.copyOfRange(flat, start, end)))
+				added++;
+		}
+		return added;
+	}
+	
+	/**
+	 * Throws an IllegalStateException if this portfolio has no members left.
+	 * @throws IllegalStateException  no this.members
+	 */
+	private void checkMembers() { 
+		if (members.isEmpty())
+			throw new IllegalStateException("The portfolio has no members left:  all were abandoned, failed, or freed.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#solve()
+	 */
+	public boolean solve() throws SATAbortedException {
+		if (Boolean.FALSE.equals(sat)) return false;
+		if (members.isEmpty()) 
+			throw new SATAbortedException("The portfolio has no members left:  all were abandoned, failed, or freed.");
+		
+		winner = null;
+		sat = null;
+		
+		if (members.size()==1) { // nothing to race
+			final SATSolver s = members.get(0);
+			racing = new SATSolver[] { s };
+			try {
+				sat = Boolean.valueOf(s.solve());
+			} finally { 
+				racing = null;
+			}
+			winner = s;
+			return sat;
+		}
+		
+		final BlockingQueue<Racer> finished = new LinkedBlockingQueue<Racer>();
+		final List<Racer> racers = new ArrayList<Racer>(members.size());
+		racing = members.toArray(new SATSolver[members.size()]);
+		for(SATSolver s : members) {
+			final Racer r = new Racer(s, finished);
+			racers.add(r);
+			executor.execute(r);
+		}
+		
+		RuntimeException failure = null;
+		try {
+			for(int i = 0, max = racers.size(); i < max && winner==null; i++) {
+				final Racer r = finished.take();
+				if (r.failure==null) {
+					winner = r.solver;
+					sat = r.outcome;
+				} else if (failure==null) {
+					failure = r.failure;
+				}
+			}
+		} catch (InterruptedException e) {
+			failure = new SATAbortedException("Interrupted while waiting for the portfolio.", e);
+		} finally { 
+			stop(racers);
+			racing = null;
+		}
+		
+		if (winner==null) 
+			throw failure instanceof SATAbortedException ? (SATAbortedException) failure : new SATAbortedException(failure);
+		
+		return sat;
+	}
+	
+	/**
+	 * Stops all racers that are still running, and retains in this.members only 
+	 * those solvers that are still usable.  Each running racer that supports 
+	 * interruption is interrupted repeatedly until it terminates or until the 
+	 * grace period elapses, at which point it is abandoned.  Running racers that 
+	 * do not support interruption are abandoned at once.
+	 * @ensures this.members' = { m: this.members | some r: racers | r.solver = m && 
+	 *          r terminated normally or by interruption within the grace period } 
+	 * @ensures all r: racers | r.solver !in this.members' => r.solver is freed once r terminates
+	 */
+	private void stop(List<Racer> racers) {
+		boolean interrupted = false;
+		members.clear();
+		for(Racer r : racers) {
+			if (!r.done()) interrupt(r.solver);
+		}
+		final long deadline = System.currentTimeMillis() + GRACE;
+		for(Racer r : racers) {
+			while(!r.done() && System.currentTimeMillis() < deadline && interrupt(r.solver)) {
+				try {
+					r.await(10);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (r.abandon()) {
+				continue;
+			} else if (r.failure==null || r.failure instanceof SATAbortedException) {
+				members.add(r.solver); // an interrupted solver remains usable
+			} else {
+				r.solver.free();
+			}
+		}
+		if (interrupted) 
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Interrupts the given solver if it supports interruption.
+	 * @return solver in SATInterruptibleSolver
+	 * @ensures solver in SATInterruptibleSolver => solver.interrupt()
+	 */
+	private static boolean interrupt(SATSolver solver) { 
+		if (solver instanceof SATInterruptibleSolver) { 
+			((SATInterruptibleSolver) solver).interrupt();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#valueOf(int)
+	 */
+	public boolean valueOf(int variable) {
+		if (!Boolean.TRUE.equals(sat)) 
+			throw new IllegalStateException();
+		if (variable < 1 || variable > vars)
+			throw new IllegalArgumentException(variable + " !in [1.." + vars+"]");
+		return winner.valueOf(variable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Interrupting a portfolio interrupts all of its racing members that support interruption.
+	 * @see kodkod.engine.satlab.SATInterruptibleSolver#interrupt()
+	 */
+	public void interrupt() {
+		final SATSolver[] r = racing;
+		if (r!=null) {
+			for(SATSolver s : r) { 
+				interrupt(s);
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATSolver#free()
+	 */
+	public synchronized void free() {
+		for(SATSolver s : members) {
+			s.free();
+		}
+		members.clear();
+		winner = null;
+		executor.shutdown();
+	}
+	
+	/**
+	 * Runs solve() on a single member of a portfolio and reports
+	 * its termination to the given queue.  A racer that has been 
+	 * abandoned frees its solver on termination instead.
+	 * @author Emina Torlak
+	 */
+	private static final class Racer implements Runnable {
+		final SATSolver solver;
+		private final BlockingQueue<Racer> finished;
+		private boolean done, abandoned;
+		Boolean outcome;
+		RuntimeException failure;
+		
+		/**
+		 * Constructs a racer for the given solver.
+		 */
+		Racer(SATSolver solver, BlockingQueue<Racer> finished) {
+			this.solver = solver;
+			this.finished = finished;
+			this.done = this.abandoned = false;
+		}
+		
+		public void run() {
+			Boolean o = null;
+			RuntimeException f = null;
+			try {
+				o = Boolean.valueOf(solver.solve());
+			} catch (RuntimeException e) {
+				f = e;
+			}
+			synchronized(this) {
+				outcome = o;
+				failure = f;
+				done = true;
+				notifyAll();
+				if (abandoned) {
+					solver.free();
+					return;
+				}
+			}
+			finished.add(this);
+		}
+		
+		/**
+		 * Returns true if the solver has terminated.
+		 * @return true if the solver has terminated.
+		 */
+		synchronized boolean done() { return done; }
+		
+		/**
+		 * Waits at most the given number of milliseconds for the solver to terminate.
+		 */
+		synchronized void await(long millis) throws InterruptedException {
+			if (!done) wait(millis);
+		}
+		
+		/**
+		 * Abandons this racer if its solver has not yet terminated.
+		 * @return true if this racer was abandoned; false if its solver
+		 * had already terminated.
+		 */
+		synchronized boolean abandon() {
+			if (!done) abandoned = true;
+			return abandoned;
+		}
+	}
+}
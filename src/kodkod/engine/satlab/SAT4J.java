@@ -23,6 +23,7 @@ package kodkod.engine.satlab;
 
 import java.util.NoSuchElementException;
 
+import org.sat4j.core.VecInt;
 import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.ISolver;
 import org.sat4j.specs.IVecInt;
@@ -35,7 +36,7 @@ import org.sat4j.specs.IteratorInt;
  * 
  * @author Emina Torlak
  */
-final class SAT4J implements SATSolver {
+final class SAT4J implements SATAssumptionSolver, SATInterruptibleSolver {
 	private ISolver solver;
 	private final ReadOnlyIVecInt wrapper;
 	private Boolean sat; 
@@ -105,7 +106,7 @@ final class SAT4J implements SATSolver {
 		}
 		return false;
 	}
-
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.SATSolver#solve()
@@ -116,7 +117,30 @@ final class SAT4J implements SATSolver {
 				sat = Boolean.valueOf(solver.isSatisfiable());
 			return sat;
 		} catch (org.sat4j.specs.TimeoutException e) {
-			throw new RuntimeException("timed out");
+			throw new SATAbortedException("Interrupted.", e);
+		} 
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * An unsatisfiable outcome leaves the status of this.clauses unknown, 
+	 * so the next call to {@link #solve()} performs a fresh search.
+	 * @see kodkod.engine.satlab.SATAssumptionSolver#solve(int[])
+	 */
+	public boolean solve(int[] assumptions) {
+		for(int lit : assumptions) {
+			if (lit==0 || StrictMath.abs(lit) > vars)
+				throw new IllegalArgumentException(lit + " !in [1.." + vars+"]");
+		}
+		try {
+			if (Boolean.FALSE.equals(sat)) 
+				return false;
+			final boolean outcome = solver.isSatisfiable(new VecInt(assumptions.clone()));
+			sat = outcome ? Boolean.TRUE : null;
+			return outcome;
+		} catch (org.sat4j.specs.TimeoutException e) {
+			sat = null;
+			throw new SATAbortedException("Interrupted.", e);
 		} 
 	}
 
@@ -132,6 +156,15 @@ final class SAT4J implements SATSolver {
 		return solver.model(variable);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see kodkod.engine.satlab.SATInterruptibleSolver#interrupt()
+	 */
+	public synchronized final void interrupt() {
+		if (solver!=null) 
+			solver.expireTimeout();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.SATSolver#free()
@@ -0,0 +1,60 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+/**
+ * Provides an interface to a SAT solver that can decide the satisfiability 
+ * of its clauses under a set of assumptions.  Assumptions are unit literals 
+ * that hold for the duration of a single call to {@link #solve(int[])} only. 
+ * A call that returns false therefore does not render the solver unusable:  clauses  
+ * and variables can still be added to it, and it can be queried again, with 
+ * or without assumptions.
+ * 
+ * @specfield variables: set [1..)
+ * @specfield clauses: set Clause
+ * @invariant all i: [2..) | i in variables => i-1 in variables
+ * @invariant all c: clauses | all lit: c.literals | lit in variables || -lit in variables
+ * @invariant all c: clauses | all disj i,j: c.literals | abs(i) != abs(j)
+ * @author Emina Torlak
+ */
+public interface SATAssumptionSolver extends SATSolver {
+
+	/**
+	 * Returns true if there is a satisfying assignment for this.clauses 
+	 * that makes all of the given literals true.  Otherwise returns false.  
+	 * If so, the satisfying assignment for a given variable can be obtained by 
+	 * calling {@link #valueOf(int)}.  The assumptions are not added to this.clauses, 
+	 * and no reference to the specified array is kept.  If the outcome is false, 
+	 * subsequent calls to {@link #addVariables(int)}, {@link #addClause(int[])}, 
+	 * {@link #solve()} and {@link #solve(int[])} behave as if this method had not been 
+	 * called, except that {@link #valueOf(int)} throws an IllegalStateException 
+	 * until the next successful call to solve.
+	 * @requires all i: [0..assumptions.length) | abs(assumptions[i]) in this.variables
+	 * @return true if this.clauses && [[assumptions]] is satisfiable; otherwise false.
+	 * @throws NullPointerException  assumptions = null
+	 * @throws IllegalArgumentException  some i: [0..assumptions.length) | abs(assumptions[i]) !in this.variables
+	 * @throws SATAbortedException - the call to solve was cancelled or
+	 * could not terminate normally.
+	 */
+	public abstract boolean solve(int[] assumptions) throws SATAbortedException;
+	
+}
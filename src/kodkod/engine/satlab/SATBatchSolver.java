@@ -0,0 +1,58 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+/**
+ * Provides an interface to a SAT solver that accepts clauses in batches.  
+ * Adding a batch of clauses is equivalent to adding each clause in turn, but 
+ * it is typically cheaper for solvers that are accessed through the Java Native 
+ * Interface, since the batch crosses the native boundary once.
+ * 
+ * @specfield variables: set [1..)
+ * @specfield clauses: set Clause
+ * @invariant all i: [2..) | i in variables => i-1 in variables
+ * @invariant all c: clauses | all lit: c.literals | lit in variables || -lit in variables
+ * @invariant all c: clauses | all disj i,j: c.literals | abs(i) != abs(j)
+ * @author Emina Torlak
+ */
+public interface SATBatchSolver extends SATSolver {
+
+	/**
+	 * Ensures that this solver logically contains the first {@code count} 
+	 * clauses stored in the given array, and returns the number of those 
+	 * clauses that changed this.clauses.  Each clause is stored as the sequence 
+	 * of its literals followed by a 0.  The literals of each clause must satisfy 
+	 * the same requirements as those passed to {@link #addClause(int[])}. 
+	 * No reference to the specified array is kept, so it can be reused. 
+	 * <b>The contents of the array may, however, be modified.</b>  The behavior 
+	 * of this method is undefined if it is called after this.solve() has 
+	 * returned <tt>false</tt>.  
+	 * @requires count >= 0 
+	 * @requires flat contains at least count zero-terminated sequences of literals, 
+	 *           each of which satisfies the preconditions of {@link #addClause(int[])}
+	 * @ensures [[this.clauses']] = ([[this.clauses]] and [[first count clauses in flat]])
+	 * @return #this.clauses' - #this.clauses
+	 * @throws NullPointerException  flat = null
+	 */
+	public abstract int addClauses(int[] flat, int count);
+	
+}
@@ -73,6 +73,8 @@ public abstract class SATFactory {
 		public SATSolver instance() { 
 			return new SAT4J(SolverFactory.instance().defaultSolver()); 
 		}
+		@Override
+		public boolean assumptions() { return true; }
 		public String toString() { return "DefaultSAT4J"; }
 	};
 	
@@ -85,6 +87,8 @@ public abstract class SATFactory {
 		public SATSolver instance() { 
 			return new SAT4J(SolverFactory.instance().lightSolver()); 
 		}
+		@Override
+		public boolean assumptions() { return true; }
 		public String toString() { return "LightSAT4J"; }
 	};
 	
@@ -96,6 +100,8 @@ public abstract class SATFactory {
 		public SATSolver instance() {
 			return new MiniSat();
 		}
+		@Override
+		public boolean assumptions() { return true; }
 		public String toString() { return "MiniSat"; }
 	};
 	
@@ -123,6 +129,8 @@ public abstract class SATFactory {
 		public SATSolver instance() {
 			return new Glucose();
 		}
+		@Override
+		public boolean assumptions() { return true; }
 		public String toString() { return "Glucose"; }
 	};
 	
@@ -133,6 +141,8 @@ public abstract class SATFactory {
 		public SATSolver instance() {
 			return new CryptoMiniSat();
 		}
+		@Override
+		public boolean assumptions() { return true; }
 		public String toString() { return "CryptoMiniSat"; }
 	};
 	
@@ -231,10 +241,59 @@ public abstract class SATFactory {
 			public SATSolver instance() {
 				return new SAT4J(SolverFactory.instance().createSolverByName(solverName));
 			}
+			@Override
+			public boolean assumptions() { return true; }
 			public String toString() { return solverName; }
 		};
 	}
 	
+	/**
+	 * Returns a SATFactory that produces portfolio solvers, each of which races 
+	 * one instance of every given factory's solver.  A portfolio solver 
+	 * mirrors every variable and clause into all of its members, and each call to 
+	 * {@linkplain SATSolver#solve() solve()} returns the answer of the member 
+	 * that terminates first. The remaining members are then stopped:  SAT4J members 
+	 * are interrupted and retained, while members that cannot be interrupted are 
+	 * dropped from the portfolio and freed once they terminate.  The returned 
+	 * factory is incremental iff all of the given factories are incremental.  It 
+	 * never produces {@link SATProver provers} or {@link SATAssumptionSolver assumption solvers}.
+	 * @requires factories.length > 0
+	 * @return a SATFactory that produces portfolio solvers over the given factories
+	 * @throws IllegalArgumentException  factories.length = 0
+	 */
+	public static final SATFactory portfolio(final SATFactory... factories) {
+		if (factories.length==0)
+			throw new IllegalArgumentException("A portfolio requires at least one factory.");
+		final SATFactory[] members = factories.clone();
+		return new SATFactory() {
+			@Override
+			public SATSolver instance() {
+				final SATSolver[] solvers = new SATSolver[members.length];
+				for(int i = 0; i < members.length; i++) {
+					solvers[i] = members[i].instance();
+				}
+				return new PortfolioSolver(solvers);
+			}
+			
+			@Override
+			public boolean incremental() {
+				for(SATFactory f : members) {
+					if (!f.incremental()) return false;
+				}
+				return true;
+			}
+			
+			public String toString() {
+				final StringBuilder b = new StringBuilder("portfolio(");
+				for(int i = 0; i < members.length; i++) {
+					if (i > 0) b.append(", ");
+					b.append(members[i]);
+				}
+				return b.append(")").toString();
+			}
+		};
+	}
+	
 	/**
 	 * Returns a SATFactory that produces SATSolver wrappers for the external
 	 * SAT solver specified by the executable parameter.  The solver's input
@@ -305,5 +364,15 @@ public abstract class SATFactory {
 	public boolean incremental() {
 		return true;
 	}
+	
+	/**
+	 * Returns true if the solvers returned by this.instance() are
+	 * {@link SATAssumptionSolver SATAssumptionSolvers}.  Otherwise returns false.
+	 * @return true if the solvers returned by this.instance() are
+	 * {@link SATAssumptionSolver SATAssumptionSolvers}.  Otherwise returns false.
+	 */
+	public boolean assumptions() {
+		return false;
+	}
 
 }
@@ -0,0 +1,49 @@
+/* 
+ * Kodkod -- Copyright (c) 2005-present, Emina Torlak
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package kodkod.engine.satlab;
+
+/**
+ * Provides an interface to a SAT solver whose search can be abandoned 
+ * from another thread.  
+ * 
+ * @specfield variables: set [1..)
+ * @specfield clauses: set Clause
+ * @invariant all i: [2..) | i in variables => i-1 in variables
+ * @invariant all c: clauses | all lit: c.literals | lit in variables || -lit in variables
+ * @invariant all c: clauses | all disj i,j: c.literals | abs(i) != abs(j)
+ * @author Emina Torlak
+ */
+public interface SATInterruptibleSolver extends SATSolver {
+
+	/**
+	 * Asks this solver to abandon the call to {@link #solve()} that is currently 
+	 * executing in another thread, if any.  An abandoned call throws a 
+	 * {@link SATAbortedException}, after which this solver remains usable if it is 
+	 * {@linkplain SATFactory#incremental() incremental}.  If the request is noticed 
+	 * only after the search has finished, the call is abandoned then.  A request that 
+	 * arrives when no call to {@link #solve()} is executing may be ignored, so callers 
+	 * that need the search to stop must repeat the request until the call returns.
+	 * @ensures requests that the currently executing call to this.solve(), if any, be abandoned
+	 */
+	public abstract void interrupt();
+	
+}